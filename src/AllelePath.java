@@ -128,11 +128,11 @@ public class AllelePath{
 	return this.bubblePath.getJointProbability(other.getBubblePath(), superBubble);
     }
 
-    private void printFractureEndIndex(){
-	HLA.log.append("FractureEndIndex:[");
+    private void printFractureEndIndex(LogHandler log){
+	log.append("FractureEndIndex:[");
 	for(Integer i: this.fractureEndIndex)
-	    HLA.log.append(" " + i.intValue() +"  ");
-	HLA.log.appendln("]");
+	    log.append(" " + i.intValue() +"  ");
+	log.appendln("]");
     }
     
     public void setFractureEndIndex(){
@@ -155,10 +155,10 @@ public class AllelePath{
 	this.orderedEdgeList.addAll(anotherOrderedEdgeList);
     }
 
-    public void printPath(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int superBubbleNum, int n){
-	this.printFractureEndIndex();
-	HLA.log.appendln("IntersectionScore:\t" + this.weightedIntersectionSum + "\t" + this.probability);
-	HLA.log.appendln(this.toFasta().toString());
+    public void printPath(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int superBubbleNum, int n, LogHandler log){
+	this.printFractureEndIndex(log);
+	log.appendln("IntersectionScore:\t" + this.weightedIntersectionSum + "\t" + this.probability);
+	log.appendln(this.toFasta().toString());
 	//HLA.log.appendln(">candidate_" + superBubbleNum + "-" + n + "\n" + this.sequence);//this.toString(g, superBubbleNum, n));
     }
 
@@ -186,7 +186,7 @@ public class AllelePath{
 	
     }
 
-    public void setSequenceString(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int superBubbleNum, int n){
+    public void setSequenceString(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int superBubbleNum, int n, LogHandler log){
 	
 	StringBuffer bf = new StringBuffer();
 	CustomWeightedEdge pre = null;
@@ -196,8 +196,8 @@ public class AllelePath{
 	    CustomWeightedEdge cur = this.orderedEdgeList.get(i);
 	    //cur should never be null
 	    if(cur == null){
-		HLA.log.append("TMP");
-		HLA.log.appendln("HUH??????:\t" + i + "\tSize:\t" + this.orderedEdgeList.size() );
+		log.append("TMP");
+		log.appendln("HUH??????:\t" + i + "\tSize:\t" + this.orderedEdgeList.size() );
 	    }
 	    char curChar;
 	    //if it's not the first node and preEdge and curEdge are not connected
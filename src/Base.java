@@ -3,8 +3,11 @@ Part of Kourami HLA typer/assembler
 (c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
 See LICENSE for licensing.
 */
+import java.io.Serializable;
 
-public class Base{
+public class Base implements Serializable{
+
+    private static final long serialVersionUID = 1L;
     
     public char base; //AaCcGgTT.
     public int iBase; //0 1 2 3 4 A C G T -, 5 for others.
@@ -68,6 +71,17 @@ public class Base{
 	    return 'N';
     }
     
+    //char2ibase for ASCII read bases, indexed by (byte & 0xff)
+    private static final int[] BYTE2IBASE = new int[256];
+    static{
+	for(int i=0; i<256; i++)
+	    BYTE2IBASE[i] = Base.char2ibase((char) i);
+    }
+
+    public static int byte2ibase(byte b){
+	return BYTE2IBASE[b & 0xff];
+    }
+
     public static int char2ibase(char c){
 	if(c == 'A' || c == 'a')
 	    return 0;
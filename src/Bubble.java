@@ -4,8 +4,9 @@ Part of Kourami HLA typer/assembler
 See LICENSE for licensing.
 */
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntIterator;  
 
 import org.jgrapht.*;
 import org.jgrapht.graph.*;
@@ -30,6 +31,8 @@ public class Bubble{
 
     private boolean firstBubble;
 
+    private RunContext ctx; //run of the graph this bubble was found in
+
 
     public Path getNthPath(int n){
 	return this.paths.get(n);
@@ -58,11 +61,11 @@ public class Bubble{
 	    return this.start.size();
 	else{
 	    if(HLA.DEBUG){
-		HLA.log.appendln("---------------->>>>>>>>>>>>>> NOOOOOOOOOOOOOOO!!!!!! ");
-		HLA.log.appendln("starts length:\t" + this.start.size());
-		HLA.log.appendln("ends length:\t" + this.end.size());
-		HLA.log.appendln("bubbleLengths length:\t" + this.bubbleLengths.size());
-		HLA.log.appendln("numPaths:\t" + this.paths.size());
+		this.ctx.log.appendln("---------------->>>>>>>>>>>>>> NOOOOOOOOOOOOOOO!!!!!! ");
+		this.ctx.log.appendln("starts length:\t" + this.start.size());
+		this.ctx.log.appendln("ends length:\t" + this.end.size());
+		this.ctx.log.appendln("bubbleLengths length:\t" + this.bubbleLengths.size());
+		this.ctx.log.appendln("numPaths:\t" + this.paths.size());
 	    }
 	    return -1000;
 	}
@@ -72,7 +75,7 @@ public class Bubble{
     public void trimPaths(int headerExcess, int tailExcess){
 	if(headerExcess > 0 || tailExcess > 0){
 	    if(HLA.DEBUG)
-		HLA.log.appendln("Trimming by :\t" + headerExcess + "\t" + tailExcess);
+		this.ctx.log.appendln("Trimming by :\t" + headerExcess + "\t" + tailExcess);
 	    for(Path p : paths){
 		p.trimPath(headerExcess, tailExcess);
 	    }
@@ -80,16 +83,14 @@ public class Bubble{
 	if(this.bubbleLengths.size() == 1)
 	    this.bubbleLengths.set(0, new Integer(this.bubbleLengths.get(0).intValue() - headerExcess - tailExcess));
 	else{
-	    HLA.log.appendln("Something is wrong: Trimming length inconsistent. Exitting");
-	    HLA.log.outToFile();
-	    System.exit(-1);
+	    this.ctx.fail("Something is wrong: Trimming length inconsistent. Exitting", -1);
 	}
     }
 
     public void printBubbleSequenceSizes(){
 	for(Path p : this.paths)
-	    HLA.log.append(p.getBubbleSequences().size() + "\t");
-	HLA.log.appendln();
+	    this.ctx.log.append(p.getBubbleSequences().size() + "\t");
+	this.ctx.log.appendln();
     }
 
     public ArrayList<Integer> getStart(){
@@ -125,15 +126,15 @@ public class Bubble{
     }
     
     public void printResults(ArrayList<StringBuffer> interBubbleSequences){
-	HLA.log.appendln("Printing\t" + this.paths.size() + "\tpossible sequences"  );
+	this.ctx.log.appendln("Printing\t" + this.paths.size() + "\tpossible sequences"  );
 	for(int i=0; i<this.paths.size(); i++){
 	    Path p = this.paths.get(i);
 	    ArrayList<StringBuffer> bubbleSequences = p.getBubbleSequences();
-	    HLA.log.appendln(">>>>>>>ITBS\t" + interBubbleSequences.size() + "\tBS\t" + bubbleSequences.size());
-	    HLA.log.append(interBubbleSequences.get(0).toString());
+	    this.ctx.log.appendln(">>>>>>>ITBS\t" + interBubbleSequences.size() + "\tBS\t" + bubbleSequences.size());
+	    this.ctx.log.append(interBubbleSequences.get(0).toString());
 	    for(int j=1; j<interBubbleSequences.size(); j++){
-		HLA.log.append("<<" + bubbleSequences.get(j-1).toString() + ">>");
-		HLA.log.append(interBubbleSequences.get(j).toString());
+		this.ctx.log.append("<<" + bubbleSequences.get(j-1).toString() + ">>");
+		this.ctx.log.append(interBubbleSequences.get(j).toString());
 	    }
 	}
     }
@@ -161,13 +162,13 @@ public class Bubble{
 					     , p.getAvgWeightedIntersectionSum()
 					     , p.getProbability());
 	    //output.append(">" + hlagenename + "_" + superbubbleNumber + "_" + pathnum + "-" + p.getAvgWeightedIntersectionSum() + ":" + p.getProbability() + "\n");
-	    HLA.log.appendln("IntersectionScore:\t" + p.getAvgWeightedIntersectionSum() + "\t" + p.getProbability());
+	    this.ctx.log.appendln("IntersectionScore:\t" + p.getAvgWeightedIntersectionSum() + "\t" + p.getProbability());
 	    ArrayList<StringBuffer> bubbleSequences = p.getBubbleSequences();
 	    //each bubbleSequence is padded by interBubbleSequences
 	    //so we print the first interBubbleSequence.
 	    tmpStartIndex = startIndex;
 	    if(superbubbleNumber == 0 || this.firstBubble){
-		HLA.log.append(interBubbleSequences.get(tmpStartIndex).toString());
+		this.ctx.log.append(interBubbleSequences.get(tmpStartIndex).toString());
 		curDNA.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		//output.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		tmpStartIndex++;
@@ -175,19 +176,19 @@ public class Bubble{
 	    
 	    
 	    for(int j=0; j<bubbleSequences.size(); j++){
-		HLA.log.append(" <" + bubbleSequences.get(j) + "> ");//prints the bubble
+		this.ctx.log.append(" <" + bubbleSequences.get(j) + "> ");//prints the bubble
 		curDNA.append(Bubble.stripPadding(bubbleSequences.get(j).toString()));
 		//output.append(Bubble.stripPadding(bubbleSequences.get(j).toString()));
 		//if path ends with bubble, we dont need to print the last interBubbleSequence
 		if(tmpStartIndex < interBubbleSequences.size()){
-		    HLA.log.append(interBubbleSequences.get(tmpStartIndex).toString()); //prints the interBubble
+		    this.ctx.log.append(interBubbleSequences.get(tmpStartIndex).toString()); //prints the interBubble
 		    curDNA.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		    //output.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		}
 		
 		tmpStartIndex++;
 	    }
-	    HLA.log.appendln();
+	    this.ctx.log.appendln();
 	    //curDNA.append("\n");
 	    //output.append("\n");
 	    sequences.add(curDNA);
@@ -207,7 +208,7 @@ public class Bubble{
 					     , p.getAvgWeightedIntersectionSum()
 					     , p.getProbability());
 
-	    HLA.log.appendln("IntersectionScore:\t" + p.getAvgWeightedIntersectionSum() + "\t" + p.getProbability());
+	    this.ctx.log.appendln("IntersectionScore:\t" + p.getAvgWeightedIntersectionSum() + "\t" + p.getProbability());
 	    ArrayList<StringBuffer> bubbleSequences = p.getBubbleSequences();
 	    //each bubbleSequence is padded by interBubbleSequences
 	    //so we print the first interBubbleSequence.
@@ -215,23 +216,23 @@ public class Bubble{
 	    
 	    for(int j=0; j<bubbleSequences.size(); j++){
 		if(bubbles.get(j+bubbleOffset).isFirstBubble()){
-		    HLA.log.append("[FB(" + (j+bubbleOffset) +"]");
-		    HLA.log.append(interBubbleSequences.get(tmpStartIndex).toString());
+		    this.ctx.log.append("[FB(" + (j+bubbleOffset) +"]");
+		    this.ctx.log.append(interBubbleSequences.get(tmpStartIndex).toString());
 		    curDNA.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		    tmpStartIndex++;
 		}
-		HLA.log.append(" <" + bubbleSequences.get(j) + "> ");//prints the bubble
+		this.ctx.log.append(" <" + bubbleSequences.get(j) + "> ");//prints the bubble
 		curDNA.append(Bubble.stripPadding(bubbleSequences.get(j).toString()));
 
 		//if path ends with bubble, we dont need to print the last interBubbleSequence
 		if(tmpStartIndex < interBubbleSequences.size()){
-		    HLA.log.append(interBubbleSequences.get(tmpStartIndex).toString()); //prints the interBubble
+		    this.ctx.log.append(interBubbleSequences.get(tmpStartIndex).toString()); //prints the interBubble
 		    curDNA.append(Bubble.stripPadding(interBubbleSequences.get(tmpStartIndex).toString()));
 		}
 		tmpStartIndex++;
 	    }
 
-	    HLA.log.appendln();
+	    this.ctx.log.appendln();
 	    sequences.add(curDNA);
 	}
 	return tmpStartIndex;
@@ -244,7 +245,7 @@ public class Bubble{
 	for(int i=0; i<this.paths.size(); i++){
 	    Path p = this.paths.get(i);
 	    int pathnum = i;
-	    Path curPath = new Path();
+	    Path curPath = new Path(this.ctx);
 	    curPath.setProbability(p.getProbability());
 	    curPath.setWeightedIntersectionSum(p.getWeightedIntersectionSum());
 	    curPath.setMergedNums(p.getMergedNums());
@@ -301,7 +302,7 @@ public class Bubble{
 			//}
 		    if(interBubblePaths.get(tmpStartIndex).numEdges() > 0){
 			//interBubblePaths.get(tmpStartIndex).toPath(g);
-			Path tmpP = interBubblePaths.get(tmpStartIndex).toPath(g);
+			Path tmpP = interBubblePaths.get(tmpStartIndex).toPath(g, this.ctx);
 			curPath.appendAllEdges(tmpP);//interBubblePaths.get(tmpStartIndex).toPath(g));
 		    }
 		    tmpStartIndex++;
@@ -310,10 +311,10 @@ public class Bubble{
 		curPath.appendAllEdges(bubbleWiseOrderedEdgeLists.get(j));
 		//and then we cap with InterBubble paths
 		if(interBubblePaths.get(tmpStartIndex).numEdges() > 0)
-		    curPath.appendAllEdges(interBubblePaths.get(tmpStartIndex).toPath(g));
+		    curPath.appendAllEdges(interBubblePaths.get(tmpStartIndex).toPath(g, this.ctx));
 		tmpStartIndex++;
 	    }
-	    curPath.setSequenceString(g, superbubbleNumber, i);
+	    curPath.setSequenceString(g, superbubbleNumber, i, this.ctx.log);
 	    resultPaths.add(curPath);
 	}
 	return tmpStartIndex;
@@ -326,13 +327,13 @@ public class Bubble{
 					  , ArrayList<Bubble> bubbles, int bubbleOffset, boolean zero){
 	
 	AllelePath curPath = new AllelePath();
-	HLA.log.appendln("[mergePathsZeroSuperBubbles]: InterBubblePaths size: " + interBubblePaths.size());
+	this.ctx.log.appendln("[mergePathsZeroSuperBubbles]: InterBubblePaths size: " + interBubblePaths.size());
 	if(interBubblePaths.size() == 1 && interBubblePaths.get(0).numEdges() > 0){
-	    interBubblePaths.get(0).print();
-	    Path tmpP = interBubblePaths.get(0).toPath(g);
+	    interBubblePaths.get(0).print(this.ctx.log);
+	    Path tmpP = interBubblePaths.get(0).toPath(g, this.ctx);
 	    curPath.appendAllEdges(tmpP);
 	    curPath.setFractureEndIndexForNoSB();
-	    curPath.setSequenceString(g, -1, 0);
+	    curPath.setSequenceString(g, -1, 0, this.ctx.log);
 	    resultPaths.add(curPath);
 	}
 	return 1;
@@ -356,6 +357,7 @@ public class Bubble{
     public Bubble(HLAGraph hg, Node s, Node t, boolean fb, Node[] headerNodes, Node[] tailNodes){
 	this.firstBubble = fb;
 	this.g = hg;
+	this.ctx = hg.getContext();
 	this.sNodes = new ArrayList<Node>();
 	this.tNodes = new ArrayList<Node>();
 	if(s!=null && t!=null){
@@ -365,7 +367,7 @@ public class Bubble{
 	this.start = new ArrayList<Integer>();
 	this.end = new ArrayList<Integer>();
 	if(s == null){
-	    HLA.log.appendln("[BUBBLE] start node null");
+	    this.ctx.log.appendln("[BUBBLE] start node null");
 	}
 	if(s!=null && t!=null){
 	    this.start.add(new Integer(s.getColIndex()));
@@ -406,15 +408,15 @@ public class Bubble{
 	//if(curBubbleSize < 20)
 	if(HLA.DEBUG){
 	    if(headerNodes == null && tailNodes == null){
-		HLA.log.append("Bubble decomposing...[bubbleSize:" + (t.getColIndex() - s.getColIndex() + 1) +"]\t");
+		this.ctx.log.append("Bubble decomposing...[bubbleSize:" + (t.getColIndex() - s.getColIndex() + 1) +"]\t");
 	    }
 	    if(headerNodes != null){
 		for(Node n: headerNodes)
-		    HLA.log.appendln("HN:\t" + n.toString());
+		    this.ctx.log.appendln("HN:\t" + n.toString());
 	    }
 	    if(tailNodes != null){
 		for(Node n : tailNodes)
-		    HLA.log.appendln("TN:\t" + n.toString());
+		    this.ctx.log.appendln("TN:\t" + n.toString());
 	    }
 	}
 	
@@ -426,12 +428,12 @@ public class Bubble{
 	}else if(headerNodes == null && tailNodes !=null){
 	    curBubbleSize = tailNodes[0].getColIndex() - s.getColIndex() + 1;
 	    if(HLA.DEBUG){
-		HLA.log.append("[T]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
-		HLA.log.appendln(s.toString() + ":");
+		this.ctx.log.append("[T]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
+		this.ctx.log.appendln(s.toString() + ":");
 	    }
 	    for(Node tn : tailNodes){
 		if(HLA.DEBUG)
-		    HLA.log.appendln("\t" + tn.toString());
+		    this.ctx.log.appendln("\t" + tn.toString());
 		if(curBubbleSize < 10)
 		    this.paths.addAll(this.g.findAllSTPath(s, tn));
 		else
@@ -441,7 +443,7 @@ public class Bubble{
 	}else if(headerNodes !=null && tailNodes == null){
 	    curBubbleSize = t.getColIndex() - headerNodes[0].getColIndex() + 1;
 	    if(HLA.DEBUG)
-		HLA.log.append("[H]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
+		this.ctx.log.append("[H]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
 	    for(Node sn : headerNodes){
 		if(curBubbleSize < 10)
 		    this.paths.addAll(this.g.findAllSTPath(sn, t));
@@ -452,7 +454,7 @@ public class Bubble{
 	}else{
 	    curBubbleSize = tailNodes[0].getColIndex() - headerNodes[0].getColIndex() + 1;
 	    if(HLA.DEBUG)
-		HLA.log.append("[HT]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
+		this.ctx.log.append("[HT]Bubble decomposing...[bubbleSize:" + curBubbleSize +"]\t");
 	    for(Node sn : headerNodes){
 		for(Node tn : tailNodes){
 		    if(curBubbleSize < 10)
@@ -464,7 +466,7 @@ public class Bubble{
 	}
 	
 	if(HLA.DEBUG)
-	    HLA.log.append("Found (" + this.paths.size() + ") possible paths.\n");
+	    this.ctx.log.append("Found (" + this.paths.size() + ") possible paths.\n");
 	
 	//resets activePathCoutners in edges
 	this.initPathCounters();
@@ -504,7 +506,7 @@ public class Bubble{
     public void printPaths(){
 	int count = 0;
 	for(Path p : this.paths){
-	    HLA.log.append("\tP" + count + "\t");
+	    this.ctx.log.append("\tP" + count + "\t");
 	    p.printPath();
 	    count++;
 	}
@@ -512,7 +514,7 @@ public class Bubble{
     
     public int removeUnsupported(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, HLAGraph hg, Node s, Node t){
 	if(HLA.DEBUG)
-	    HLA.log.appendln("[Bubble] unsupported path removal...");
+	    this.ctx.log.appendln("[Bubble] unsupported path removal...");
 
 	IntArrayList removalList = new IntArrayList();
 	/* removal of possibly erroneous path */
@@ -529,8 +531,8 @@ public class Bubble{
 	    if(!p.isSupportedPath()){
 		readsetSizes[i]=0;
 		removalList.add(i);//new Integer(i));
-		if(HLA.DEBUG3){
-		    HLA.log.append("Removing\tPath" + i + "\t");
+		if(this.ctx.debug3){
+		    this.ctx.log.append("Removing\tPath" + i + "\t");
 		    p.printPath();
 		}
 	    }else{
@@ -549,7 +551,7 @@ public class Bubble{
 	    this.paths.remove(removalList.getInt(i));
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln("Removed (" + removalList.size() + ") paths and\t(" + this.paths.size() + ") left.");
+	    this.ctx.log.appendln("Removed (" + removalList.size() + ") paths and\t(" + this.paths.size() + ") left.");
 	/* end of phasing reads removal */
 	
 	removalList = new IntArrayList();
@@ -566,10 +568,10 @@ public class Bubble{
 	readsetSizes = readsetSizeTmp;
 	if(HLA.DEBUG){
 	    if(this.isFirstBubble()){
-		HLA.log.appendln(">>>>>FIRSTBUBBLE<<<<<<");
+		this.ctx.log.appendln(">>>>>FIRSTBUBBLE<<<<<<");
 	    }
 	}
-	if(HLA.READ_LENGTH < 200){
+	if(this.ctx.readLength < 200){
 	    /* First we use a simple heuristic based (parameters) removal */
 	    /* Focusing on removing small-weights */
 	    for(int i=0; i<readsetSizes.length; i++){
@@ -581,8 +583,8 @@ public class Bubble{
 			(readsetSizes[i] > 4 && ratio < 0.05) ){
 			//if(ratio < 0.2){
 			removalList.add(i);//new Integer(i));
-			if(HLA.DEBUG3){
-			    HLA.log.append("[Possibly errorneous path] Removing\tPath" + i + "(|RS|=" +readsetSizes[i] + ",ratio="+ ratio + ",sumReadsetSizes="+ sumOfReadSetSizeOfSupportedPath + ")\t");
+			if(this.ctx.debug3){
+			    this.ctx.log.append("[Possibly errorneous path] Removing\tPath" + i + "(|RS|=" +readsetSizes[i] + ",ratio="+ ratio + ",sumReadsetSizes="+ sumOfReadSetSizeOfSupportedPath + ")\t");
 			    this.paths.get(i).printPath();
 			}
 		    }
@@ -592,35 +594,33 @@ public class Bubble{
 	    if(this.isFirstBubble()){
 		for(int i=0; i<readsetSizes.length; i++){
 		    if(readsetSizes[i] > 0){
-			if(HLA.DEBUG3)
-			    HLA.log.appendln("===== CHECKING PATH[" + i + "]");
+			if(this.ctx.debug3)
+			    this.ctx.log.appendln("===== CHECKING PATH[" + i + "]");
 			double ratio = (1.0d * readsetSizes[i]) / ((double) sumOfReadSetSizeOfSupportedPath);
 			if(ratio < 0.2){
-			    if(HLA.DEBUG3)
-				HLA.log.appendln("===== ratio:\t" + ratio + " =======");
-			    CustomHashMap tMap = this.paths.get(i).getReadSet();
+			    if(this.ctx.debug3)
+				this.ctx.log.appendln("===== ratio:\t" + ratio + " =======");
+			    ReadSet tMap = this.paths.get(i).getReadSet();
 			    for(int j=0;j<readsetSizes.length;j++){
 				if(i!=j){
 				    double oratio = (1.0d * readsetSizes[j]) / ((double) sumOfReadSetSizeOfSupportedPath);
 				    if(oratio > 0.7){
-					if(HLA.DEBUG3)
-					    HLA.log.appendln("oRatio:" + oratio + "\t>\t0.7");
-					CustomHashMap oMap = this.paths.get(j).getReadSet();
-					IntIterator itr = tMap.keySet().iterator();
+					if(this.ctx.debug3)
+					    this.ctx.log.appendln("oRatio:" + oratio + "\t>\t0.7");
+					ReadSet oMap = this.paths.get(j).getReadSet();
 					int rmCount=0;
-					while(itr.hasNext()){
-					    int ci = itr.nextInt();
-					    if(oMap.containsKey(ci) || oMap.containsKey(0-ci)){
-						if(HLA.DEBUG3)
-						    HLA.log.appendln("(" + ci +") in dominant path[" + j+"]" );
+					for(int ci : tMap.toArray()){
+					    if(oMap.contains(ci) || oMap.contains(0-ci)){
+						if(this.ctx.debug3)
+						    this.ctx.log.appendln("(" + ci +") in dominant path[" + j+"]" );
 						rmCount++;
 					    }
 					}
 					if(rmCount > 0){
 					    double updatedRatio = ((readsetSizes[i]-rmCount)*1.0d / ((double) sumOfReadSetSizeOfSupportedPath));
 					    if( updatedRatio <= 0.1d ){
-						if(HLA.DEBUG3)
-						    HLA.log.appendln("Removing due to low updatedRatio:\t" + updatedRatio );
+						if(this.ctx.debug3)
+						    this.ctx.log.appendln("Removing due to low updatedRatio:\t" + updatedRatio );
 						removalList.add(i);
 					    }
 					}
@@ -635,8 +635,8 @@ public class Bubble{
 	
 	/* Liklihood calculation retain function  --> geared towards retaining the best */
 	if(this.paths.size() >= 1){
-	    if(HLA.DEBUG3)
-		HLA.log.appendln("RUNNING MaxLikelihoodCalcFor BubblePaths");
+	    if(this.ctx.debug3)
+		this.ctx.log.appendln("RUNNING MaxLikelihoodCalcFor BubblePaths");
 	    //double[] scoreAndIndices = this.takeMaximumLikeliPair(g);/* [Homo 0-2, Hetero 3-5] 0:homoScore 1:homoIndex1 2:homoIndex2 3:heteroScore 4:heteroIndex1 5: heteroIndex2*/
 	    scores = this.takeMaximumLikeliPair(g);
 	    double homoScore  = scores.getMaxHomoScore();//scoreAndIndices[0];
@@ -648,9 +648,9 @@ public class Bubble{
 	    int heteroIndex2 = scores.getMaxHeteroGenotypeIndex2();//(int) scoreAndIndices[5];
 	    int doubleCount1 = scores.getDoubleCountH1();//(int) scoreAndIndices[6];
 	    int doubleCount2 = scores.getDoubleCountH2();//(int) scoreAndIndices[7];
-	    if(HLA.DEBUG3){
-		HLA.log.appendln("2x|H1| = " + doubleCount1);
-		HLA.log.appendln("2x|H2| = " + doubleCount2);
+	    if(this.ctx.debug3){
+		this.ctx.log.appendln("2x|H1| = " + doubleCount1);
+		this.ctx.log.appendln("2x|H2| = " + doubleCount2);
 	    }
 	    boolean isAlleleWeak1 = false;
 	    boolean isAlleleWeak2 = false;
@@ -679,8 +679,8 @@ public class Bubble{
 		int[] obHeteroPair = this.getObviousHeteroPair();
 		if(obHeteroPair != null){
 		    if(obHeteroPair[0] != heteroIndex1 || obHeteroPair[1] != heteroIndex2){
-			if(HLA.DEBUG3){
-			    HLA.log.appendln("Swapping best heterozygous genotype from [" + heteroIndex1 + ":" + heteroIndex2 
+			if(this.ctx.debug3){
+			    this.ctx.log.appendln("Swapping best heterozygous genotype from [" + heteroIndex1 + ":" + heteroIndex2 
 					     + "] --> [" + obHeteroPair[0] + ":" + obHeteroPair[1] + "]" );
 			}
 			heteroIndex1 = obHeteroPair[0];
@@ -692,18 +692,18 @@ public class Bubble{
 		    }
 		}
 	    }
-	    if(HLA.DEBUG3){
-		HLA.log.appendln("Best homozygous genotype is :\t" + homoIndex1 + "/" + homoIndex2 + "\tscore:" + homoScore);
-		HLA.log.appendln("Best heterozygous genotype is :\t" + heteroIndex1 + "/" + heteroIndex2 + "\tscore:" + heteroScore);
+	    if(this.ctx.debug3){
+		this.ctx.log.appendln("Best homozygous genotype is :\t" + homoIndex1 + "/" + homoIndex2 + "\tscore:" + homoScore);
+		this.ctx.log.appendln("Best heterozygous genotype is :\t" + heteroIndex1 + "/" + heteroIndex2 + "\tscore:" + heteroScore);
 		if(isAlleleWeak1)
-		    HLA.log.appendln("H1 count is low : minCount/maxCount" + (minCount/2.0d) + "/" + ((minCount+maxCount)/2.0d));
+		    this.ctx.log.appendln("H1 count is low : minCount/maxCount" + (minCount/2.0d) + "/" + ((minCount+maxCount)/2.0d));
 		else if(isAlleleWeak2)
-		    HLA.log.appendln("H2 count is low : minCount/maxCount" + (minCount/2.0d) + "/" + ((minCount+maxCount)/2.0d));
+		    this.ctx.log.appendln("H2 count is low : minCount/maxCount" + (minCount/2.0d) + "/" + ((minCount+maxCount)/2.0d));
 	    }
 
 	    
 
-	    if(HLA.READ_LENGTH >= 200){
+	    if(this.ctx.readLength >= 200){
 		/*
 		if(isAlleleWeak1)
 		    removalList.add(heteroIndex1);
@@ -724,8 +724,8 @@ public class Bubble{
 		    for(int i = 0; i<readsetSizes.length;i++){
 			if( i != homoIndex1){
 			    removalList.add(i);
-			    if(HLA.DEBUG3){
-				HLA.log.appendln("[Homo>200][Possibly erroneous path] Removing\tPath" + i + "\t");
+			    if(this.ctx.debug3){
+				this.ctx.log.appendln("[Homo>200][Possibly erroneous path] Removing\tPath" + i + "\t");
 				this.paths.get(i).printPath();
 			    }
 			}
@@ -733,22 +733,22 @@ public class Bubble{
 		}else{
 		    if(isAlleleWeak1){
 			removalList.add(heteroIndex1);
-			if(HLA.DEBUG3){
-			    HLA.log.appendln("[Hetero>200Weak1][Possibly erroneous path] Removing\tPath" + heteroIndex1 + "\t");
+			if(this.ctx.debug3){
+			    this.ctx.log.appendln("[Hetero>200Weak1][Possibly erroneous path] Removing\tPath" + heteroIndex1 + "\t");
 			    this.paths.get(heteroIndex1).printPath();
 			}
 		    }else if(isAlleleWeak2){
 			removalList.add(heteroIndex2);
-			if(HLA.DEBUG3){
-			    HLA.log.appendln("[Hetero>200Weak2][Possibly erroneous path] Removing\tPath" + heteroIndex2 + "\t");
+			if(this.ctx.debug3){
+			    this.ctx.log.appendln("[Hetero>200Weak2][Possibly erroneous path] Removing\tPath" + heteroIndex2 + "\t");
 			    this.paths.get(heteroIndex2).printPath();
 			}
 		    }
 		    for(int i=0; i<readsetSizes.length;i++){
 			if( (i != heteroIndex1) && (i != heteroIndex2) ){
 			    removalList.add(i);
-			    if(HLA.DEBUG3){
-				HLA.log.appendln("[Hetero>200][Possibly erroneous path] Removing\tPath" + i + "\t");
+			    if(this.ctx.debug3){
+				this.ctx.log.appendln("[Hetero>200][Possibly erroneous path] Removing\tPath" + i + "\t");
 				this.paths.get(i).printPath();
 			    }
 			}
@@ -769,9 +769,9 @@ public class Bubble{
 			hetIndex1 = hetIndex2;
 			hetIndex2 = tmpI;
 		    }
-		    if(HLA.DEBUG3){
-			HLA.log.appendln("hetero1Fraction:" + hetero1Fraction +"\thetero2Fraction:" + hetero2Fraction);
-			HLA.log.appendln("hetIndex1:" + hetIndex1 + "\thetIndex2:" + hetIndex2);
+		    if(this.ctx.debug3){
+			this.ctx.log.appendln("hetero1Fraction:" + hetero1Fraction +"\thetero2Fraction:" + hetero2Fraction);
+			this.ctx.log.appendln("hetIndex1:" + hetIndex1 + "\thetIndex2:" + hetIndex2);
 		    }
 		    if( (hetero1Fraction + hetero2Fraction) >= 0.8
 			&& hetero2Fraction > 0.3){
@@ -779,8 +779,8 @@ public class Bubble{
 			    if(readsetSizes[i] > 0 && i != hetIndex1 && i != hetIndex2){
 				if( (readsetSizes[i] / ((double) sumOfReadSetSizeOfSupportedPath)) < 0.2){
 				    removalList.add(i);
-				    if(HLA.DEBUG3){
-					HLA.log.append("[Possibly errorneous path] Removing\tPath" + i);
+				    if(this.ctx.debug3){
+					this.ctx.log.append("[Possibly errorneous path] Removing\tPath" + i);
 					this.paths.get(i).printPath();
 				    }
 				}
@@ -788,14 +788,14 @@ public class Bubble{
 			}
 		    }
 		}
-		if(HLA.DEBUG3)
-		    HLA.log.appendln("diff=homoScore - heteroScore : " + diff);
+		if(this.ctx.debug3)
+		    this.ctx.log.appendln("diff=homoScore - heteroScore : " + diff);
 		if(diff > 0 && diff > 5.3d){ // homoScore > heteroScore
 		    for(int i=0; i<readsetSizes.length;i++){
 			if(i != homoIndex1){
 			    removalList.add(i);
-			    if(HLA.DEBUG3){
-				HLA.log.appendln("[Possibly erroneous path] Removing\tPath" + i + "\t");
+			    if(this.ctx.debug3){
+				this.ctx.log.appendln("[Possibly erroneous path] Removing\tPath" + i + "\t");
 				this.paths.get(i).printPath();
 			    }
 			}
@@ -805,16 +805,16 @@ public class Bubble{
 		    for(int i=0;i<removalList.size();i++){
 			if(removalList.getInt(i) == heteroIndex1 || removalList.getInt(i) == heteroIndex2){
 			    removalList.removeInt(i);
-			    if(HLA.DEBUG3)
-				HLA.log.appendln("[Retaing path due to liklihood calculation] Rescueing\tPath" + i + "\t");
+			    if(this.ctx.debug3)
+				this.ctx.log.appendln("[Retaing path due to liklihood calculation] Rescueing\tPath" + i + "\t");
 			}
 		    }
 		}
 	    }	    
 
 	}else{
-	    if(HLA.DEBUG3)
-		HLA.log.appendln("NOT Running likelihood calc because there are less than 2 paths remaining.");
+	    if(this.ctx.debug3)
+		this.ctx.log.appendln("NOT Running likelihood calc because there are less than 2 paths remaining.");
 	}
 
 
@@ -837,13 +837,12 @@ public class Bubble{
 	    this.paths.remove(removalList.getInt(i));
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln("Removed (" + removalList.size() + ") paths and\t(" + this.paths.size() + ") left.");
+	    this.ctx.log.appendln("Removed (" + removalList.size() + ") paths and\t(" + this.paths.size() + ") left.");
 	try{
 	    scores.applyRemoval(removalList);
 	}catch(Exception e){
 	    e.printStackTrace();
-	    HLA.log.outToFile();
-	    System.exit(-9);
+	    this.ctx.fail("Failed to remove paths from bubble scores: " + e, -9);
 	}
 	this.bubbleScores.add(scores);
 	return removalList.size();
@@ -851,11 +850,8 @@ public class Bubble{
 
    
     public PathBaseErrorProb[]  getDataMatrixForLikelihoodCalculation(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
-	PathBaseErrorProb[] pathWisePathBaseErrorProbMatrices = new PathBaseErrorProb[this.paths.size()];
-	for(int i=0; i<this.paths.size(); i++)
-	    pathWisePathBaseErrorProbMatrices[i] = this.paths.get(i).getBaseErrorProbMatrix(g);
-	
-	return pathWisePathBaseErrorProbMatrices;
+	//one phred matrix for all paths, read sets of shared edges are walked once
+	return PathBaseErrorProb.forPaths(this.paths, g);
     }
     
     public int[] getObviousHeteroPair(){
@@ -918,33 +914,39 @@ public class Bubble{
 	PathBaseErrorProb[] pathWiseErrorProbMatrices = this.getDataMatrixForLikelihoodCalculation(g);
 
 	for(int i=0; i< pathWiseErrorProbMatrices.length; i++){
-	    if(HLA.DEBUG3)
-		HLA.log.appendln("path[" + i + "]:\t");
+	    if(this.ctx.debug3)
+		this.ctx.log.appendln("path[" + i + "]:\t");
 	    char[] pathBases = pathWiseErrorProbMatrices[i].getBases();
 	    readSum += pathWiseErrorProbMatrices[i].numReads();
-	    if(HLA.DEBUG3){
+	    if(this.ctx.debug3){
 		for(char c : pathBases){
-		    HLA.log.append(c);
+		    this.ctx.log.append(c);
 		}
-		HLA.log.appendln();
+		this.ctx.log.appendln();
 	    }
 	}
 
-	BubblePathLikelihoodScores scores = new BubblePathLikelihoodScores(this.paths.size());
+	BubblePathLikelihoodScores scores = new BubblePathLikelihoodScores(this.paths.size(), this.ctx.log);
+
+	//reads of all paths in path order, each scored once against every path.
+	//logProbs[p][r] : log P(read r | path p). read r carries the bases of the path it came from.
+	double[][] logProbs = this.getReadLogProbs(pathWiseErrorProbMatrices, readSum);
+	
+	//pair scores do not depend on each other. large bubbles score blocks of pairs on the fork-join pool they are built on
+	//(see BubbleBuilder). pairs are then reduced into scores in (i, j) order, so results do not depend on thread timing.
+	PairScores ps = new PairScores(logProbs, readSum);
+	if(ForkJoinTask.inForkJoinPool() && ps.work(0, this.paths.size()) > PAIR_BLOCK_WORK)
+	    ps.new Block(0, this.paths.size()).invoke();
+	else
+	    ps.score(0, this.paths.size());
 	
 	//getting all possible pairs, including self
 	for(int i=0;i<this.paths.size();i++){
 	    for(int j=i;j<this.paths.size();j++){
-		//NEED TO CALL getScoreForSingleRead over All Reads and sumup the logScore.
-		char[] pathBases1 = pathWiseErrorProbMatrices[i].getBases();
-		char[] pathBases2 = pathWiseErrorProbMatrices[j].getBases();
-		
-		//iterate over all reads
 		readFractionScore = 0.0d;
-		curScore = 0.0d;
-		Val whichH = new Val();
-		int doubleCountH1 = 0;
-		int doubleCountH2 = 0;
+		curScore = ps.logScore[i][j-i];
+		int doubleCountH1 = ps.doubleCountH1[i][j-i];
+		int doubleCountH2 = ps.doubleCountH2[i][j-i];
 		
 		double tFraction = (pathWiseErrorProbMatrices[i].numReads() * 1.0d) / (readSum * 1.0d);
 		double oFraction = (pathWiseErrorProbMatrices[j].numReads() * 1.0d) / (readSum * 1.0d);
@@ -955,31 +957,65 @@ public class Bubble{
 		}else//heterozygous
 		    readFractionScore += Math.log(tFraction*oFraction/HLA.X_FACTOR);
 		
-		
-		for(int k=0; k<this.paths.size();k++){
-		    //if( (i== 1 && j == 8) || (i==0 && j == 1) )
-		    PathBaseErrorProb curPathErrorMatrix = pathWiseErrorProbMatrices[k];
-		    for(int l=0; l<curPathErrorMatrix.numReads(); l++){
-			
-			boolean debug = false;
-			
-			double readScore = this.getScoreForSingleRead( curPathErrorMatrix.getNthReadErrorProb(l)
-								       , curPathErrorMatrix.getBases()
-								       , pathBases1
-								       , pathBases2
-								       , whichH, debug);// ,i, j);
-			/*
-			double readScore = this.getScoreForSingleReadMax( curPathErrorMatrix.getNthReadErrorProb(l)
-								       , curPathErrorMatrix.getBases()
-								       , pathBases1
-								       , pathBases2
-								       , whichH );// ,i, j);
-			*/
+		//HLA.log.appendln("logP( D | Haplotype[ " + i + ":" + j + " ] ) =\t" + curScore);
+		if(this.ctx.debug3)
+		    this.ctx.log.appendln("logP( D | Haplotype[ " + i + ":" + j + " ] ) =\t" + curScore + "\t|H1|x2=" + doubleCountH1 + "\t|H2|x2=" + doubleCountH2);
+		scores.updateMax(i, j, curScore, readFractionScore, doubleCountH1, doubleCountH2);
+	    }
+	}
+	return scores;
+    }
+
+    //reads x pairs scored before a pair block is split in two
+    private static final long PAIR_BLOCK_WORK = 1L << 14;
+
+    /* log P(D | pair i:j) and double counts of all pairs i <= j, kept at [i][j-i]. Blocks only write their own rows and never log. */
+    private class PairScores{
+	private double[][] logProbs;
+	private int readSum;
+	private double[][] logScore;
+	private int[][] doubleCountH1;
+	private int[][] doubleCountH2;
+
+	private PairScores(double[][] logProbs, int readSum){
+	    int numPaths = logProbs.length;
+	    this.logProbs = logProbs;
+	    this.readSum = readSum;
+	    //upper triangle only: row i holds pairs i:i .. i:numPaths-1
+	    this.logScore = new double[numPaths][];
+	    this.doubleCountH1 = new int[numPaths][];
+	    this.doubleCountH2 = new int[numPaths][];
+	    for(int i=0; i<numPaths; i++){
+		this.logScore[i] = new double[numPaths - i];
+		this.doubleCountH1[i] = new int[numPaths - i];
+		this.doubleCountH2[i] = new int[numPaths - i];
+	    }
+	}
+
+	//reads x pairs with first path in [from, to)
+	private long work(int from, int to){
+	    long numPairs = 0;
+	    for(int i=from; i<to; i++)
+		numPairs += this.logProbs.length - i;
+	    return numPairs * this.readSum;
+	}
+
+	//pairs with first path in [from, to)
+	private void score(int from, int to){
+	    for(int i=from; i<to; i++){
+		for(int j=i; j<this.logProbs.length; j++){
+		    //sum up the logScore over All Reads.
+		    double[] logProbs1 = this.logProbs[i];
+		    double[] logProbs2 = this.logProbs[j];
+		    double curScore = 0.0d;
+		    Val whichH = new Val();
+		    int doubleCountH1 = 0;
+		    int doubleCountH2 = 0;
+		    //iterate over all reads
+		    for(int r=0; r<this.readSum; r++){
+			double readScore = Bubble.this.getScoreForSingleRead(logProbs1[r], logProbs2[r], whichH);
 			curScore += readScore;
-			//if( (i== 0 && j == 1) || (i==0 && j == 2) ){
-			
 			//HLA.log.appendln("\tP(Di|G) = " + readScore);
-			    //			}
 			if(whichH.getWhichH() == 0)
 			    doubleCountH1 += 2;
 			else if(whichH.getWhichH() == 1)
@@ -988,104 +1024,72 @@ public class Bubble{
 			    doubleCountH1++;
 			    doubleCountH2++;
 			}
-			
 		    }
+		    this.logScore[i][j-i] = curScore;
+		    this.doubleCountH1[i][j-i] = doubleCountH1;
+		    this.doubleCountH2[i][j-i] = doubleCountH2;
 		}
-		
-		//HLA.log.appendln("logP( D | Haplotype[ " + i + ":" + j + " ] ) =\t" + curScore);
-		if(HLA.DEBUG3)
-		    HLA.log.appendln("logP( D | Haplotype[ " + i + ":" + j + " ] ) =\t" + curScore + "\t|H1|x2=" + doubleCountH1 + "\t|H2|x2=" + doubleCountH2);
-		scores.updateMax(i, j, curScore, readFractionScore, doubleCountH1, doubleCountH2);
 	    }
 	}
-	return scores;
+
+	/* pairs with first path in [from, to). splits in two while there is enough work for both halves. */
+	private class Block extends RecursiveAction{
+	    private static final long serialVersionUID = 1L;
+
+	    private int from;
+	    private int to;
+
+	    private Block(int from, int to){
+		this.from = from;
+		this.to = to;
+	    }
+
+	    protected void compute(){
+		if(this.to - this.from > 1 && PairScores.this.work(this.from, this.to) > 2 * PAIR_BLOCK_WORK){
+		    int mid = (this.from + this.to) >>> 1;
+		    invokeAll(new Block(this.from, mid), new Block(mid, this.to));
+		}else
+		    PairScores.this.score(this.from, this.to);
+	    }
+	}
+    }
+
+    //P x R matrix of read log likelihoods. reads are ordered by path then by read index in the path.
+    private double[][] getReadLogProbs(PathBaseErrorProb[] pathWiseErrorProbMatrices, int readSum){
+	double[][] logProbs = new double[pathWiseErrorProbMatrices.length][readSum];
+	int r = 0;
+	for(int k=0; k<pathWiseErrorProbMatrices.length; k++){
+	    PathBaseErrorProb curPathErrorMatrix = pathWiseErrorProbMatrices[k];
+	    for(int l=0; l<curPathErrorMatrix.numReads(); l++){
+		for(int p=0; p<pathWiseErrorProbMatrices.length; p++)
+		    logProbs[p][r] = this.getLogProbForSingleRead( curPathErrorMatrix.getQuals()
+								   , curPathErrorMatrix.getNthReadOffset(l)
+								   , curPathErrorMatrix.getBases()
+								   , pathWiseErrorProbMatrices[p].getBases());
+		r++;
+	    }
+	}
+	return logProbs;
     }
     
-    
-    //readPhredScores --> contains ordered phredScore of readBases
+    //quals[offset..] --> phred score of each read base
     //readBases --> contains ordered readBases {A,C,G,T}
-    //pathBases1 --> contains ordered bases {A,C,G,T} of the first allele
-    //pathBases2 --> contains ordered bases {A,C,G,T} of the second allele
-    private double getScoreForSingleRead(double[] errorProbs, char[] readBases, char[] pathBases1, char[] pathBases2, Val whichH, boolean debug){//, int path_i, int path_j){
-	
-	//,  columnTransition){
-	if(debug){
-	    HLA.log.append("Testing:\t" );
-	    for(char c : readBases)
-		HLA.log.append(c);
-	    HLA.log.append("\nAgainst H1:\t");
-	    for(char c : pathBases1)
-		HLA.log.append(c);
-	    HLA.log.append("\tH2:\t");
-	    for(char c : pathBases2)
-		HLA.log.append(c);
-	    HLA.log.appendln();
-	}
-	double logProb1 = 0.0d;
-	double logProb2 = 0.0d;
-	double gapgapmatch = 0.99d;
-	double gappenalty = 0.01d;
-	
-	//for each position in read
+    //pathBases --> contains ordered bases {A,C,G,T} of the allele
+    private double getLogProbForSingleRead(byte[] quals, int offset, char[] readBases, char[] pathBases){
 	try{
-	    for(int i=0; i<readBases.length; i++){
-		double errorProb = errorProbs[i];//Math.Pow(0.1, readPhredScores[i]/10.0d);
-		double matchProb = 1.0d - errorProb;
-		//HLA.log.appendln("read(" + i + "):\terroProb:" + errorProb + "\tmatchProb:" + matchProb );
-		double mismatchProb = errorProb / 3.0d;
-		char readBase = readBases[i];
-		char pathBase1 = pathBases1[i];
-		char pathBase2 = pathBases2[i];
-		if(debug){
-		    HLA.log.appendln("RB:" + readBase  + "\tPB1:" + pathBases1[i] + "\tPB2:" + pathBases2[i]);
-		    HLA.log.appendln("MatchP:\t" + matchProb  +"\tMismatchP:\t" + mismatchProb);
-		}
-		if(readBase == 'N' || pathBase1 == 'N')
-		    logProb1 += Math.log(0.25d);//matchProb/4.0d);
-		else if(readBase == '-' || pathBase1 == '-'){
-		    if(readBase == pathBase1)
-			logProb1 += Math.log(gapgapmatch); 
-		    else
-			logProb1 += Math.log(gappenalty);
-		}else if(readBase == pathBase1){
-		    if(debug)
-			HLA.log.appendln("MatchPB1");
-		    logProb1 += Math.log(matchProb);
-		}else{
-		    if(debug)
-			HLA.log.appendln("MismatchPB1");
-		    logProb1 += Math.log(mismatchProb);
-		}
-		if(readBase == 'N' || pathBase2 == 'N')
-		    logProb2 += Math.log(0.25d);//matchProb/4.0d);
-		else if(readBase == '-' || pathBase2 == '-'){
-		    if(readBase == pathBase2)
-			logProb2 += Math.log(gapgapmatch); 
-		    else
-			logProb2 += Math.log(gappenalty);
-		}else if(readBase == pathBase2){
-		    if(debug)
-			HLA.log.appendln("MatchPB2");
-		    logProb2 += Math.log(matchProb);
-		}else{
-		    if(debug)
-			HLA.log.appendln("MismatchPB2");
-		    logProb2 += Math.log(mismatchProb);
-		}
-		//HLA.log.appendln("logProb1: " + logProb1 + "\tlogProb2: " + logProb2);
-		//logProb += Math.log(avgProb);
-		//logProb += columnTransition --> need to add transitionProb
-	    }
+	    return PhredLogProb.logProb(quals, offset, readBases, pathBases);
 	}catch(ArrayIndexOutOfBoundsException e){
-	    HLA.log.appendln("|eProbs| :" + errorProbs.length);
-	    HLA.log.appendln("|rBases| :" + readBases.length);
-	    HLA.log.appendln("|pBase1| :" + pathBases1.length);
-	    HLA.log.appendln("|pBase2| :" + pathBases2.length);
-	    HLA.log.outToFile();
+	    this.ctx.log.appendln("|quals| :" + (quals.length - offset));
+	    this.ctx.log.appendln("|rBases| :" + readBases.length);
 	    e.printStackTrace();
-	    System.exit(-1);
+	    this.ctx.fail("|pBase| :" + pathBases.length, -1);
 	}
+	return 0.0d;
+    }
 
+    //likelihood of a read given the pair of alleles, each allele equally likely to be the source.
+    //whichH is set to the allele that explains the read better (-1 if tie).
+    private double getScoreForSingleRead(double logProb1, double logProb2, Val whichH){
 	/* putting assignment count */
 	if(logProb1 > logProb2)
 	    whichH.set(0);
@@ -1095,94 +1099,14 @@ public class Bubble{
 	    whichH.set(1);
 	/* end of assignment count*/
 
-	double maxLog = (logProb1 > logProb2 ? logProb1 : logProb2);
-	/*
-	if( (path_i == 0 && path_j ==1) || (path_i ==1) && (path_j==8) )
-	HLA.log.append("logProb1: " + logProb1 + "\tlogProb2: " + logProb2 + "\tsum: " + (logProb1 + logProb2));
-	*/
-	//HLA.log.appendln("\tlogProb1: " + logProb1 + "\tlogProb2: " + logProb2);
-	return maxLog + Math.log(Math.exp(logProb1-maxLog) + Math.exp(logProb2-maxLog)) - Math.log(2);
-	
-	//return logProb;
-    }
-
-    //readPhredScores --> contains ordered phredScore of readBases
-    //readBases --> contains ordered readBases {A,C,G,T}
-    //pathBases1 --> contains ordered bases {A,C,G,T} of the first allele
-    //pathBases2 --> contains ordered bases {A,C,G,T} of the second allele
-    private double getScoreForSingleReadMax(double[] errorProbs, char[] readBases, char[] pathBases1, char[] pathBases2, Val whichH){
-	
-	//,  columnTransition){
-	double logProb1 = 0.0d;
-	double logProb2 = 0.0d;
-	double gapgapmatch = 0.99d;
-	double gappenalty = 0.01d;
-	//for each position in read
-	try{
-	    for(int i=0; i<readBases.length; i++){
-		double errorProb = errorProbs[i];//Math.Pow(0.1, readPhredScores[i]/10.0d);
-		double matchProb = 1.0d - errorProb;
-		double mismatchProb = errorProb / 3.0d;
-		char readBase = readBases[i];
-		char pathBase1 = pathBases1[i];
-		char pathBase2 = pathBases2[i];
-		//double avgProb = 0.0d;
-		
-		
-		if(readBase == 'N' || pathBase1 == 'N')
-		    logProb1 += Math.log(0.25d);//matchProb/4.0d);
-		else if(readBase == '-' || pathBase1 == '-'){
-		    if(readBase == pathBase1)
-			logProb1 += Math.log(gapgapmatch); 
-		    else
-			logProb1 += Math.log(gappenalty);
-		}else if(readBase == pathBase1)
-		    logProb1 += Math.log(matchProb);
-		else
-		    logProb1 += Math.log(mismatchProb);
-		
-		if(readBase == 'N' || pathBase2 == 'N')
-		    logProb2 += Math.log(0.25d);//matchProb/4.0d);
-		else if(readBase == '-' || pathBase2 == '-'){
-		    if(readBase == pathBase2)
-			logProb2 += Math.log(gapgapmatch); 
-		    else
-			logProb2 += Math.log(gappenalty);
-		}else if(readBase == pathBase2)
-		    logProb2 += Math.log(matchProb);
-		else
-		    logProb2 += Math.log(mismatchProb);
-		
-		//logProb += Math.log(avgProb);
-		//logProb += columnTransition --> need to add transitionProb
-	    }
-	}catch(ArrayIndexOutOfBoundsException e){
-	    HLA.log.appendln("|eProbs| :" + errorProbs.length);
-	    HLA.log.appendln("|rBases| :" + readBases.length);
-	    HLA.log.appendln("|pBase1| :" + pathBases1.length);
-	    HLA.log.appendln("|pBase2| :" + pathBases2.length);
-	    HLA.log.outToFile();
-	    e.printStackTrace();
-	    System.exit(-1);
-	}
-	HLA.log.appendln("\tlogProb1: " + logProb1 + "\tlogProb2: " + logProb2);
-	if(logProb1 > logProb2){
-	    whichH.set(0);
-	    return logProb1;
-	}else if(logProb1 == logProb2){
-	    whichH.set(-1);
-	    return logProb1;
-	}else{
-	    whichH.set(1);
-	    return logProb2;
-	}
+	return PhredLogProb.pairLogProb(logProb1, logProb2);
     }
 
     /* same as removeUnsupported except this only cares about unique edges */
     public int removeUnsupportedUniqueEdgeOnly(){
 	//HashSet<Integer> readHash;
 	//ArrayList<Integer> removalList = new ArrayList<Integer>();
-	CustomHashMap readHash;
+	ReadSet readHash;
 	IntArrayList removalList = new IntArrayList();
 	
 	for(int i=0; i<this.paths.size(); i++){//Path p: this.paths){
@@ -1192,12 +1116,12 @@ public class Bubble{
 	    readHash = null;
 	    int numUnique = 0;
 	    for(CustomWeightedEdge e : eList){
-		HLA.log.append("|" + e.getNumActivePath() + "|");
+		this.ctx.log.append("|" + e.getNumActivePath() + "|");
 		if(e.isUniqueEdge()){ //we only care about uniq edges
 		    
 		    numUnique++;
 		    if(!inited){
-			readHash = e.getReadHashSet().clone();//e.getReadHashSetDeepCopy();
+			readHash = e.getReadHashSet().copyReads();//e.getReadHashSetDeepCopy();
 			inited = true;
 		    }else{
 			//update with union after checking intersection
@@ -1209,7 +1133,7 @@ public class Bubble{
 		    }
 		}
 	    }
-	    HLA.log.append("[" + numUnique +  "]");
+	    this.ctx.log.append("[" + numUnique +  "]");
 	}
 	for(int i=removalList.size() - 1; i >= 0; i--){
 	    this.paths.get(removalList.getInt(i)).excludePath();
@@ -1253,7 +1177,7 @@ public class Bubble{
 	//boolean[] tpUsed = new boolean[this.paths.size()];
 	//boolean[] opUsed = new boolean[other.getPaths().size()];
 	if(HLA.DEBUG)
-	    HLA.log.appendln(">>>>>>>>>>>>> getting intersecti <<<<<<<<<<<<");
+	    this.ctx.log.appendln(">>>>>>>>>>>>> getting intersecti <<<<<<<<<<<<");
 	int[][] interBubbleIntersectionSizes = lastMergedBubble.getIntersectionCount(other);
 
 	int[][] interBubbleIntersectionCumulativeSizes = new int[this.paths.size()][other.getPaths().size()]; 
@@ -1266,7 +1190,7 @@ public class Bubble{
 	    /* print this paths (DEBUGGIN) */
 	    for(int i=0;i<this.paths.size();i++){
 		Path tp = this.paths.get(i);
-		HLA.log.append("TP(" + i + ")\t<readNum:" + tp.getReadSetSize() + ">\t");
+		this.ctx.log.append("TP(" + i + ")\t<readNum:" + tp.getReadSetSize() + ">\t");
 		tp.printInfo();
 		tp.printReadSet();
 	    }
@@ -1274,7 +1198,7 @@ public class Bubble{
 	    /* print other paths (DEBUGGIN) */
 	    for(int i=0;i<other.getPaths().size();i++){
 		Path op = other.getPaths().get(i);
-		HLA.log.append("OP(" + i + ")\t<readNum:" + op.getReadSetSize() + ">\t");
+		this.ctx.log.append("OP(" + i + ")\t<readNum:" + op.getReadSetSize() + ">\t");
 		op.printInfo();
 		op.printReadSet();
 	    }
@@ -1292,7 +1216,7 @@ public class Bubble{
 	    for(int j=0; j<other.getPaths().size(); j++){
 		Path op = other.getPaths().get(j);
 		if(HLA.DEBUG)
-		    HLA.log.append("TP(" + i + ")\tX\tOP("+j+"):\t");
+		    this.ctx.log.append("TP(" + i + ")\tX\tOP("+j+"):\t");
 		int intersectionSize = tp.isPhasedWith(op);
 		interBubbleIntersectionCumulativeSizes[i][j] = intersectionSize;
 		if(intersectionSize >= Path.MIN_SUPPORT_PHASING){
@@ -1339,43 +1263,43 @@ public class Bubble{
 		int pathSpecificLastSegregation = curColumnIndex - lastColumnIndex + 1;
 		//int pathLength = this.getEnd().get(this.getEnd().size()-1) - this.getStart().get(0);
 		if(HLA.DEBUG)
-		    HLA.log.appendln("LOSING TP(" + i + "):\tcurLen:"+pathLength + "\td2ls:" + distanceToLastSegregation + "\td2psls:"+ pathSpecificLastSegregation);
+		    this.ctx.log.appendln("LOSING TP(" + i + "):\tcurLen:"+pathLength + "\td2ls:" + distanceToLastSegregation + "\td2psls:"+ pathSpecificLastSegregation);
 		if(!otherSignificantSignal){
-		    if( (pathLength >= HLA.READ_LENGTH && distanceToLastSegregation >= (0.5 * HLA.READ_LENGTH)) ){
+		    if( (pathLength >= this.ctx.readLength && distanceToLastSegregation >= (0.5 * this.ctx.readLength)) ){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[FIRST CHECK]CANT PHASE FURTHER. SPLITTING...");
+			    this.ctx.log.appendln("[FIRST CHECK]CANT PHASE FURTHER. SPLITTING...");
 			//return ms;
-		    }else if(pathLength >= HLA.READ_LENGTH && pathSpecificLastSegregation >= (0.75 * HLA.READ_LENGTH)){
+		    }else if(pathLength >= this.ctx.readLength && pathSpecificLastSegregation >= (0.75 * this.ctx.readLength)){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[LONG SEGREGATION] CANT PHASE FURTHER. SPLITTING...");
-		    }else if( distanceToLastSegregation >= (1.5 * HLA.READ_LENGTH) ){
+			    this.ctx.log.appendln("[LONG SEGREGATION] CANT PHASE FURTHER. SPLITTING...");
+		    }else if( distanceToLastSegregation >= (1.5 * this.ctx.readLength) ){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[STRONG SIGNAL]CANT PHASE FURTHER. SPLITTING...");
+			    this.ctx.log.appendln("[STRONG SIGNAL]CANT PHASE FURTHER. SPLITTING...");
 		    }else if(isClassII && pathLength >=200){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[CLASS II LENGTH]CANT PHASE FURTHER. SPLITTING...");
-		    }else if( this.paths.size() == 2 && phasedList.size() == 1 && pathLength >= 0.5 * HLA.READ_LENGTH && distanceToLastSegregation >= (0.7 * HLA.READ_LENGTH) ){
+			    this.ctx.log.appendln("[CLASS II LENGTH]CANT PHASE FURTHER. SPLITTING...");
+		    }else if( this.paths.size() == 2 && phasedList.size() == 1 && pathLength >= 0.5 * this.ctx.readLength && distanceToLastSegregation >= (0.7 * this.ctx.readLength) ){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[NECESSARY] CANT PHASE FURTHER. SPLITTING...");
+			    this.ctx.log.appendln("[NECESSARY] CANT PHASE FURTHER. SPLITTING...");
 		    }
 		}else{
-		    if( distanceToLastSegregation >= (1.5 * HLA.READ_LENGTH) ){
+		    if( distanceToLastSegregation >= (1.5 * this.ctx.readLength) ){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[STRONG SIGNAL]CANT PHASE FURTHER. SPLITTING...");
+			    this.ctx.log.appendln("[STRONG SIGNAL]CANT PHASE FURTHER. SPLITTING...");
 		    }else if(isClassII && pathLength >=200){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[CLASS II LENGTH]CANT PHASE FURTHER. SPLITTING...");
-		    }else if(pathLength >= HLA.READ_LENGTH && pathSpecificLastSegregation >= (0.75 * HLA.READ_LENGTH)){
+			    this.ctx.log.appendln("[CLASS II LENGTH]CANT PHASE FURTHER. SPLITTING...");
+		    }else if(pathLength >= this.ctx.readLength && pathSpecificLastSegregation >= (0.75 * this.ctx.readLength)){
 			ms.setSplit(true);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("[LONG SEGREGATION] CANT PHASE FURTHER. SPLITTING...");
+			    this.ctx.log.appendln("[LONG SEGREGATION] CANT PHASE FURTHER. SPLITTING...");
 		    }
 		}
 	    }
@@ -1384,7 +1308,7 @@ public class Bubble{
 	if(ms.isSplit()){
 	    if(HLA.DEBUG){
 		for(int i=0; i< this.paths.size(); i++){
-		    HLA.log.append("TP(" + i + "):\t");
+		    this.ctx.log.append("TP(" + i + "):\t");
 		    this.paths.get(i).printReadSet();
 		}
 	    }
@@ -1394,7 +1318,7 @@ public class Bubble{
 	}
 	/* END OF check for no-phasing paths*/
 	if(HLA.DEBUG)
-	    HLA.log.appendln("TOTAL of " + phasedList.size() + "\tphased paths.");
+	    this.ctx.log.appendln("TOTAL of " + phasedList.size() + "\tphased paths.");
 	
 	int origSizeSum = intersectionSizesSum;
 
@@ -1456,7 +1380,7 @@ public class Bubble{
 	    int opUsedCtOrig = opUsedCopy[ijs[1]];
 	    int opUsedCt = opUsed[ijs[1]];
 	    if(HLA.DEBUG)
-		HLA.log.appendln("[tpUsedCtOrig]: " + tpUsedCtOrig + "\t[tpUsedCt]: " + tpUsedCt + "\n[opUsedCtOrig]: " + opUsedCtOrig + "\t[opUsedCt]: " + opUsedCt);
+		this.ctx.log.appendln("[tpUsedCtOrig]: " + tpUsedCtOrig + "\t[tpUsedCt]: " + tpUsedCt + "\n[opUsedCtOrig]: " + opUsedCtOrig + "\t[opUsedCt]: " + opUsedCt);
 	    //either TP or OP is being split.
 	    if((tpUsedCtOrig > 1 || opUsedCtOrig > 1)
 	       && (tpUsedCt > 0) 
@@ -1466,7 +1390,7 @@ public class Bubble{
 		double tpWiseRatio = (curSize*1.0d) / (intersectionSizesTPSum[ijs[0]] * 1.0d);
 		double opWiseRatio = (curSize*1.0d) / (intersectionSizesOPSum[ijs[1]] * 1.0d);
 		if(HLA.DEBUG)
-		    HLA.log.appendln("Checking branch:\td:" + d + "\ttpWiseRatio:" + tpWiseRatio 
+		    this.ctx.log.appendln("Checking branch:\td:" + d + "\ttpWiseRatio:" + tpWiseRatio 
 				     + "\topWiseRatio:" + opWiseRatio +  "\tcurSize:" + curSize 
 				     + "\tpathLength:" + pathLength + "\tTP(" + ijs[0] + ")\tx\tOP(" + ijs[1] + ")"); 
 		
@@ -1474,13 +1398,13 @@ public class Bubble{
 		     || (curSize >=2 && origPhasedPathNum == 2 && other.getPaths().size() == 1 && opWiseRatio < 0.1)
 		     || (curSize >=2 && d <0.15 && origPhasedPathNum > 2 && tpWiseRatio > 0.9 && opWiseRatio < 0.15)
 		     || (curSize >=2 && d <0.15 && this.paths.size() == 2 && origPhasedPathNum > 3 && tpWiseRatio < 0.25 && opWiseRatio >=0.65)) ){
-		    if( (tpWiseRatio > 0.8 && opWiseRatio > 0.05 && origPhasedPathNum == 2 && pathLength > (HLA.READ_LENGTH/2))
-			|| (tpWiseRatio == 1.0d && d >0.075 && pathLength > (HLA.READ_LENGTH*0.7))
+		    if( (tpWiseRatio > 0.8 && opWiseRatio > 0.05 && origPhasedPathNum == 2 && pathLength > (this.ctx.readLength/2))
+			|| (tpWiseRatio == 1.0d && d >0.075 && pathLength > (this.ctx.readLength*0.7))
 			|| (tpWiseRatio < 0.22 && isClassII && curSize > 5 && pathLength < 50) ){
 			;//dont prune.
 		    }else{
 			if(HLA.DEBUG)
-			    HLA.log.appendln("Pruning branch:\td:"+d+"\tTP(" + ijs[0] + ")\tx\tOP(" + ijs[1] + ")");
+			    this.ctx.log.appendln("Pruning branch:\td:"+d+"\tTP(" + ijs[0] + ")\tx\tOP(" + ijs[1] + ")");
 			phasedList.remove(i);
 			intersectionSizesSum -= curSize;
 			intersectionSizes.remove(i);
@@ -1492,30 +1416,30 @@ public class Bubble{
 			    int curColumnIndex = other.getStart().get(0);
 			    int pathSpecificLastSegregation = curColumnIndex - lastColumnIndex + 1;
 			    if(HLA.DEBUG)
-				HLA.log.appendln("lastUniqueColumn:" + lastColumnIndex  + "\tcurColumnIndex:" + curColumnIndex );
+				this.ctx.log.appendln("lastUniqueColumn:" + lastColumnIndex  + "\tcurColumnIndex:" + curColumnIndex );
 			    //int pathLength = this.getEnd().get(this.getEnd().size()-1) - this.getStart().get(0);
 			    if(HLA.DEBUG)
-				HLA.log.appendln("Pruning results in LOSING TP(" + ijs[0] + "):\tcurLen:"+pathLength + "\td2ls:" + distanceToLastSegregation + "\td2psls:"+ pathSpecificLastSegregation);
-			    if(pathLength >= HLA.READ_LENGTH && distanceToLastSegregation >= (0.5 * HLA.READ_LENGTH)){
+				this.ctx.log.appendln("Pruning results in LOSING TP(" + ijs[0] + "):\tcurLen:"+pathLength + "\td2ls:" + distanceToLastSegregation + "\td2psls:"+ pathSpecificLastSegregation);
+			    if(pathLength >= this.ctx.readLength && distanceToLastSegregation >= (0.5 * this.ctx.readLength)){
 				ms.setSplit(true);
 				if(HLA.DEBUG)
-				    HLA.log.appendln("CANT PHASE FURTHER. SPLITTING... (PRUNING-INDUCED)");
+				    this.ctx.log.appendln("CANT PHASE FURTHER. SPLITTING... (PRUNING-INDUCED)");
 				return ms;
-			    }else if(pathLength >= HLA.READ_LENGTH && pathSpecificLastSegregation >= (0.6 * HLA.READ_LENGTH)){
+			    }else if(pathLength >= this.ctx.readLength && pathSpecificLastSegregation >= (0.6 * this.ctx.readLength)){
 				ms.setSplit(true);
 				if(HLA.DEBUG)
-				    HLA.log.appendln("CANT PHASE FURTHER. SPLITTING... (PRUNING-INDUCED: LONG SEGREGATION)");
+				    this.ctx.log.appendln("CANT PHASE FURTHER. SPLITTING... (PRUNING-INDUCED: LONG SEGREGATION)");
 				return ms;
 			    }else if(isClassII && pathLength >=200){
 				ms.setSplit(true);
 				if(HLA.DEBUG)
-				    HLA.log.appendln("CANT PHASE FURTHER. SPLITTING... (CLASS II LENGTH)");
+				    this.ctx.log.appendln("CANT PHASE FURTHER. SPLITTING... (CLASS II LENGTH)");
 				return ms;
 			    }
 			}
 			if(HLA.DEBUG){
 			    if(tpUsed[ijs[0]] == 1)
-				HLA.log.appendln("PRUNING RESULTS IN MORE AGRESSIVE INTERSECTION FOR TP( " + ijs[0] + " )");
+				this.ctx.log.appendln("PRUNING RESULTS IN MORE AGRESSIVE INTERSECTION FOR TP( " + ijs[0] + " )");
 			}
 		    }
 		}
@@ -1540,13 +1464,13 @@ public class Bubble{
 	    Path op = other.getPaths().get(ijs[1]);
 	    if(tp.getNumUniqueEdges() > 0){
 		if(HLA.DEBUG)
-		    HLA.log.append("SETTING LAST KNOWN UNIQUE EDGE COLUMN NUMBER AS -->\t");
+		    this.ctx.log.append("SETTING LAST KNOWN UNIQUE EDGE COLUMN NUMBER AS -->\t");
 		tp.setLastKnownUniqueEdgeColumnNumber(tp.getLastUniqueEdgeColumnNumber(g, false));
 		if(HLA.DEBUG)
-		    HLA.log.appendln(tp.getLastKnownUniqueEdgeColumnNumber());
+		    this.ctx.log.appendln(tp.getLastKnownUniqueEdgeColumnNumber());
 	    }else{
 		if(HLA.DEBUG)
-		    HLA.log.appendln("CANT SET BUT LAST KNOWN UNIQUE COLUMN NUMBER IS -->\t" + tp.getLastKnownUniqueEdgeColumnNumber());
+		    this.ctx.log.appendln("CANT SET BUT LAST KNOWN UNIQUE COLUMN NUMBER IS -->\t" + tp.getLastKnownUniqueEdgeColumnNumber());
 	    }
 	    //if tp and op are used once, merged path between tp and op is the only PATH
 	    if(tpUsed[ijs[0]] == 1 && opUsed[ijs[1]] == 1){
@@ -1568,15 +1492,13 @@ public class Bubble{
 		Path tmpp = tp.mergePathManytoMany(op);
 		paths_new.add(tmpp);
 	    }else{
-		HLA.log.appendln("SOMETHING IS WRONG. [Bubble.java mergeBubble()]");
-		HLA.log.outToFile();
-		System.exit(-1);
+		this.ctx.fail("SOMETHING IS WRONG. [Bubble.java mergeBubble()]", -1);
 	    }
 	    paths_new.get(paths_new.size() - 1).updateIntersectionSum(intersectionSize, intersectionSizesSum, ijs, interBubbleIntersectionSizes, interBubbleIntersectionCumulativeSizes);
 	    
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln(paths_new.size() + "\tphased paths in paths_new");
+	    this.ctx.log.appendln(paths_new.size() + "\tphased paths in paths_new");
 	
 	/* edge usage update for TP */
 	for(int i=0; i<this.paths.size();i++){
@@ -1598,9 +1520,9 @@ public class Bubble{
 	    
 	    this.paths = paths_new;
 	    if(HLA.DEBUG){
-		HLA.log.appendln("NEW PATHS");
+		this.ctx.log.appendln("NEW PATHS");
 		for(Path p : this.paths)
-		    HLA.log.appendln("KnownEdgeCI:\t" + p.getLastKnownUniqueEdgeColumnNumber());
+		    this.ctx.log.appendln("KnownEdgeCI:\t" + p.getLastKnownUniqueEdgeColumnNumber());
 	    }
 	    this.start.addAll(other.getStart());
 	    this.end.addAll(other.getEnd());
@@ -1638,7 +1560,7 @@ public class Bubble{
 	    for(int j=0; j < sbo.getPaths().size(); j++){
 		Path sop = sbo.getPaths().get(j);
 		if(HLA.DEBUG)
-		    HLA.log.append("STP(" + i + ")\tX\tSOP("+j+"):\t");
+		    this.ctx.log.append("STP(" + i + ")\tX\tSOP("+j+"):\t");
 		int intersectionSize = stp.isPhasedWith(sop);
 		//modified so that all stp-sop pair are stored even if they were less the MIN_support_phasing
 		//if(intersectionSize >= Path.MIN_SUPPORT_PHASING){
@@ -0,0 +1,72 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Builds one Bubble of a gene: path enumeration, read sets, unsupported path removal and pair scoring.
+ * HLAGraph.findBubbles collects one builder per bubble while scanning columns and runs them with build().
+ * Bubbles of a gene do not share edges, so they are built concurrently on a fork-join pool.
+ * Large bubbles split their pair scoring into subtasks on the same pool (see Bubble.takeMaximumLikeliPair).
+ * Log lines of each bubble are kept in a per-task buffer and appended to the log in bubble order,
+ * each after the scan log that preceded it, so the log is the same as building bubbles one by one.
+ */
+public class BubbleBuilder extends RecursiveTask<Bubble>{
+
+    private static final long serialVersionUID = 1L;
+
+    private HLAGraph hg;
+    private Node s;
+    private Node t;
+    private boolean firstBubble;
+    private Node[] headerNodes;
+    private Node[] tailNodes;
+
+    private String scanLog; //logged by findBubbles since the previous bubble
+    private String log;
+
+    public BubbleBuilder(HLAGraph hg, Node s, Node t, boolean firstBubble, Node[] headerNodes, Node[] tailNodes, String scanLog){
+	this.hg = hg;
+	this.s = s;
+	this.t = t;
+	this.firstBubble = firstBubble;
+	this.headerNodes = headerNodes;
+	this.tailNodes = tailNodes;
+	this.scanLog = scanLog;
+	this.log = "";
+    }
+
+    protected Bubble compute(){
+	this.hg.getContext().log.startLocalBuffer();
+	try{
+	    return new Bubble(this.hg, this.s, this.t, this.firstBubble, this.headerNodes, this.tailNodes);
+	}finally{
+	    this.log = this.hg.getContext().log.endLocalBuffer();
+	}
+    }
+
+    //builds all bubbles (on ctx.numThreads threads) and appends logs in order. bubbles are returned in builder order.
+    public static ArrayList<Bubble> build(ArrayList<BubbleBuilder> builders, RunContext ctx){
+	ArrayList<Bubble> bubbles = new ArrayList<Bubble>();
+	if(ctx.numThreads > 1 && builders.size() > 0){
+	    ForkJoinPool pool = new ForkJoinPool(ctx.numThreads);
+	    for(BubbleBuilder bb : builders)
+		pool.execute(bb);
+	    for(BubbleBuilder bb : builders)
+		bubbles.add(bb.join());
+	    pool.shutdown();
+	}else{
+	    for(BubbleBuilder bb : builders)
+		bubbles.add(bb.invoke());
+	}
+	for(BubbleBuilder bb : builders){
+	    ctx.log.append(bb.scanLog);
+	    ctx.log.append(bb.log);
+	}
+	return bubbles;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.ArrayList;
+
+/*
+ * Enumerates s-t paths of a bubble on the ColumnDAG (HLAGraph.findAllSTPath and findAllSTPathPruning).
+ *
+ * A backward pass over the column range counts, for each node, the paths that reach t advancing one column per edge.
+ * Branches that cannot reach t are never entered, and the count tells up front whether a bubble explodes.
+ * Paths are then walked depth-first on one edge stack, so partial paths share their prefix instead of being copied
+ * at each branch. With pruning, the read set intersection of each prefix is computed once and extended edge by edge,
+ * and a branch is dropped as soon as its own intersection is too small.
+ * Paths come out in the same order as the breadth-first search they replace.
+ *
+ * At most HLA.MAX_BUBBLE_PATHS paths are kept per bubble. A bubble with more paths falls back to read-supported
+ * paths only, then to paths supported by more and more reads. Each fallback is logged.
+ * Path counts are kept per call, so bubbles of a gene can be enumerated by several threads at once.
+ */
+public class BubblePathEnumerator{
+
+    private ColumnDAG dag;
+    private RunContext ctx;
+    private int maxPaths;
+
+    public BubblePathEnumerator(ColumnDAG dag, RunContext ctx, int maxPaths){
+	this.dag = dag;
+	this.ctx = ctx;
+	this.maxPaths = maxPaths;
+    }
+
+    //all s-t paths. falls back to read-supported paths if there are more than maxPaths.
+    public ArrayList<Path> findAllSTPath(Node s, Node t){
+	int sid = this.dag.id(s);
+	int tid = this.dag.id(t);
+	long[] numPaths = this.countPaths(sid, tid);
+	if(numPaths[0] <= this.maxPaths)
+	    return this.enumerate(sid, tid, numPaths, false, 0);
+	this.ctx.log.appendln("[BUBBLE] more than " + this.maxPaths + " paths between columns " + s.getColIndex() + " and " + t.getColIndex()
+			      + ". Using read-supported paths only.");
+	return this.findAllSTPathPruning(s, t);
+    }
+
+    //s-t paths with at least Path.MIN_SUPPORT_BUBBLE reads (paired-end intersection) across all edges.
+    //if there are more than maxPaths, required support is doubled until they fit.
+    public ArrayList<Path> findAllSTPathPruning(Node s, Node t){
+	int sid = this.dag.id(s);
+	int tid = this.dag.id(t);
+	long[] numPaths = this.countPaths(sid, tid);
+	int minSupport = Path.MIN_SUPPORT_BUBBLE;
+	ArrayList<Path> paths = this.enumerate(sid, tid, numPaths, true, minSupport);
+	ArrayList<Path> truncated = null;
+	while(paths.size() > this.maxPaths){
+	    paths.remove(paths.size() - 1);
+	    truncated = paths;
+	    minSupport *= 2;
+	    this.ctx.log.appendln("[BUBBLE] more than " + this.maxPaths + " read-supported paths between columns " + s.getColIndex() + " and " + t.getColIndex()
+				  + ". Requiring " + minSupport + " supporting reads.");
+	    paths = this.enumerate(sid, tid, numPaths, true, minSupport);
+	}
+	if(paths.size() == 0 && truncated != null){
+	    this.ctx.log.appendln("[BUBBLE] no path left. Keeping first " + this.maxPaths + " paths.");
+	    return truncated;
+	}
+	return paths;
+    }
+
+    //edge e is on an s-t path: advances one column and its target reaches t
+    private boolean onPath(int e, int sid, int tid, long[] numPaths){
+	int w = this.dag.target(e);
+	return w <= tid
+	    && this.dag.col(w) == this.dag.col(this.dag.source(e)) + 1
+	    && numPaths[w - sid] > 0;
+    }
+
+    //node ids are in column order, so all nodes between s and t are in [sid, tid]
+    //returns node id - sid --> number of paths to t, saturates at maxPaths+1
+    private long[] countPaths(int sid, int tid){
+	long cap = (long) this.maxPaths + 1;
+	long[] numPaths = new long[tid - sid + 1];
+	numPaths[tid - sid] = 1;
+	for(int v=tid-1; v>=sid; v--){
+	    long n = 0;
+	    for(int e=this.dag.outStart(v); e<this.dag.outEnd(v); e++){
+		if(this.onPath(e, sid, tid, numPaths))
+		    n = Math.min(cap, n + numPaths[this.dag.target(e) - sid]);
+	    }
+	    numPaths[v - sid] = n;
+	}
+	return numPaths;
+    }
+
+    //depth-first over out edges in dag order. stops after maxPaths+1 paths.
+    private ArrayList<Path> enumerate(int sid, int tid, long[] numPaths, boolean pruning, int minSupport){
+	ArrayList<Path> results = new ArrayList<Path>();
+	int len = this.dag.col(tid) - this.dag.col(sid);
+	if(numPaths[0] == 0 || len <= 0)
+	    return results;
+	int[] edges = new int[len];        //current prefix
+	int[] next = new int[len];         //next out edge to try at each depth
+	ReadSet[] reads = new ReadSet[len]; //read set intersection of the prefix up to each depth
+	int depth = 0;
+	next[0] = this.dag.outStart(sid);
+	while(depth >= 0){
+	    int v = (depth == 0 ? sid : this.dag.target(edges[depth-1]));
+	    if(v == tid){
+		Path p = new Path(this.ctx);
+		for(int i=0; i<len; i++)
+		    p.appendEdge(this.dag.edge(edges[i]));
+		results.add(p);
+		if(results.size() > this.maxPaths)
+		    return results;
+		depth--;
+		continue;
+	    }
+	    int e = next[depth];
+	    ReadSet rs = null;
+	    for(; e<this.dag.outEnd(v); e++){
+		if(!this.onPath(e, sid, tid, numPaths))
+		    continue;
+		if(!pruning)
+		    break;
+		if(depth == 0)
+		    rs = this.dag.edge(e).getReadHashSet().copyReads();
+		else{
+		    rs = reads[depth-1].clone();
+		    rs.intersectionPE(this.dag.edge(e).getReadHashSet());
+		}
+		if(rs.size() >= minSupport)
+		    break;
+	    }
+	    if(e == this.dag.outEnd(v)){
+		depth--;
+		continue;
+	    }
+	    next[depth] = e + 1;
+	    edges[depth] = e;
+	    reads[depth] = rs;
+	    depth++;
+	    if(depth < len)
+		next[depth] = this.dag.outStart(this.dag.target(e));
+	}
+	return results;
+    }
+}
@@ -18,6 +18,8 @@ public class BubblePathLikelihoodScores{
     private int doubleCountH1; //2 x #reads assigned to H1
     private int doubleCountH2; //2 x #reads assigned to H2
 
+    private LogHandler log;
+
     // must be i<=j (upper triangle only)
     public double getLogScore(int i, int j){
 	return this.logScores[i][j];
@@ -71,7 +73,8 @@ public class BubblePathLikelihoodScores{
 	return this.doubleCountH2;
     }
 
-    public BubblePathLikelihoodScores(int numPaths){
+    public BubblePathLikelihoodScores(int numPaths, LogHandler log){
+	this.log = log;
 	this.logFractionScores = new double[numPaths][numPaths];
 	this.logScores = new double[numPaths][numPaths]; 
 	for(int i=0;i<this.logScores.length;i++){
@@ -92,18 +95,18 @@ public class BubblePathLikelihoodScores{
     // since we are using UPPER triangle only  j >= i
     public void updateMax(int i, int j, double logScore, double readFractionScore, int dcH1, int dcH2){
 	if(j<i){
-	    HLA.log.appendln("INVLAID [i][j] pairing. j is smaller than i\nSystem exiting.");
-	    HLA.log.outToFile();
+	    this.log.appendln("INVLAID [i][j] pairing. j is smaller than i\nSystem exiting.");
+	    this.log.outToFile();
 	    System.exit(-1);
 	}
 	if(HLA.DEBUG){
-	    HLA.log.appendln("Attempting to updateMax");
-	    HLA.log.appendln("curMaxHetero [" + this.maxHeteroGenotypeIndex1 + "][" + this.maxHeteroGenotypeIndex2 + "]:\t" + this.logScores[this.maxHeteroGenotypeIndex1][this.maxHeteroGenotypeIndex2]);
-	    HLA.log.appendln("curMaxHomo [" + this.maxHomoGenotypeIndex + "][" + this.maxHomoGenotypeIndex + "]:\t" + this.logScores[this.maxHomoGenotypeIndex][this.maxHomoGenotypeIndex]);
+	    this.log.appendln("Attempting to updateMax");
+	    this.log.appendln("curMaxHetero [" + this.maxHeteroGenotypeIndex1 + "][" + this.maxHeteroGenotypeIndex2 + "]:\t" + this.logScores[this.maxHeteroGenotypeIndex1][this.maxHeteroGenotypeIndex2]);
+	    this.log.appendln("curMaxHomo [" + this.maxHomoGenotypeIndex + "][" + this.maxHomoGenotypeIndex + "]:\t" + this.logScores[this.maxHomoGenotypeIndex][this.maxHomoGenotypeIndex]);
 	}
 	if(i != j){/* Heterozygous */
 	    if(HLA.DEBUG)
-		HLA.log.appendln("[HETERO]");
+		this.log.appendln("[HETERO]");
 
 	    if(logScore > this.logScores[this.maxHeteroGenotypeIndex1][this.maxHeteroGenotypeIndex2]){
 		this.maxHeteroGenotypeIndex1 = i;
@@ -112,13 +115,13 @@ public class BubblePathLikelihoodScores{
 		this.doubleCountH2 = dcH2;
 		
 		if(HLA.DEBUG){
-		    HLA.log.appendln("Updating Max Hetero Counts: curMax:" + this.logScores[this.maxHeteroGenotypeIndex1][this.maxHeteroGenotypeIndex2]);
-		    HLA.log.appendln("\t|H1|x2=" + doubleCountH1 + "\t|H2|x2=" + doubleCountH2);
+		    this.log.appendln("Updating Max Hetero Counts: curMax:" + this.logScores[this.maxHeteroGenotypeIndex1][this.maxHeteroGenotypeIndex2]);
+		    this.log.appendln("\t|H1|x2=" + doubleCountH1 + "\t|H2|x2=" + doubleCountH2);
 		}
 	    }
 	}else{/* Homozygous */
 	    if(HLA.DEBUG)
-		HLA.log.appendln("[HOMO]");
+		this.log.appendln("[HOMO]");
 	    if(logScore > this.logScores[this.maxHomoGenotypeIndex][this.maxHomoGenotypeIndex])
 		this.maxHomoGenotypeIndex = i;
 	    
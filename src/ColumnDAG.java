@@ -0,0 +1,117 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.jgrapht.graph.*;
+
+/*
+ * Read-only array snapshot of an HLAGraph after insertions are flattened.
+ * HLAGraph.removeUnused scans edge weights on it, and bubble path search (BubblePathEnumerator) runs on a snapshot
+ * taken after graph cleaning. Graph structure does not change during bubble processing, so it is built once per gene.
+ *
+ * Node ids follow column order. Outgoing edges of node v are edge indices outStart[v] .. outStart[v+1]-1,
+ * in the same order jgrapht returns them, so traversals visit edges in the same order as before.
+ * Node and edge objects are reachable from ids (node(), edge()) and node ids from Node objects (id()),
+ * so Bubble, Path and SuperAllelePath keep working on objects while hot loops move to ids.
+ * Active path counts stay on CustomWeightedEdge: paths are counted while bubbles are merged, after this snapshot is dropped.
+ */
+public class ColumnDAG{
+
+    private Node[] nodes;              //node id --> Node
+    private int[] col;                 //node id --> column index
+    private int[] outStart;            //node id --> first out edge index. last entry is the number of edges
+    private int[] source;              //edge index --> source node id
+    private int[] target;              //edge index --> target node id
+    private CustomWeightedEdge[] edges; //edge index --> edge
+    private double[] weight;           //edge index --> edge weight
+    private double[] errorProb;        //edge index --> group error probability
+
+    public ColumnDAG(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
+	Node[] nodes = g.vertexSet().toArray(new Node[0]);
+	//stable: nodes in a column keep vertexSet order
+	Arrays.sort(nodes, new Comparator<Node>(){
+		public int compare(Node a, Node b){
+		    return Integer.compare(a.getColIndex(), b.getColIndex());
+		}
+	    });
+	this.col = new int[nodes.length];
+	for(int i=0; i<nodes.length; i++){
+	    nodes[i].setDagId(i);
+	    this.col[i] = nodes[i].getColIndex();
+	}
+
+	int numEdges = g.edgeSet().size();
+	this.outStart = new int[nodes.length + 1];
+	this.source = new int[numEdges];
+	this.target = new int[numEdges];
+	this.edges = new CustomWeightedEdge[numEdges];
+	this.weight = new double[numEdges];
+	this.errorProb = new double[numEdges];
+	int k = 0;
+	for(int v=0; v<nodes.length; v++){
+	    this.outStart[v] = k;
+	    for(CustomWeightedEdge e : g.outgoingEdgesOf(nodes[v])){
+		this.edges[k] = e;
+		this.source[k] = v;
+		this.target[k] = g.getEdgeTarget(e).getDagId();
+		this.weight[k] = g.getEdgeWeight(e);
+		this.errorProb[k] = e.getGroupErrorProb();
+		k++;
+	    }
+	}
+	this.outStart[nodes.length] = k;
+	this.nodes = nodes;
+    }
+
+    public int numNodes(){
+	return this.nodes.length;
+    }
+
+    public int numEdges(){
+	return this.edges.length;
+    }
+
+    public Node node(int v){
+	return this.nodes[v];
+    }
+
+    public int id(Node n){
+	return n.getDagId();
+    }
+
+    public CustomWeightedEdge edge(int e){
+	return this.edges[e];
+    }
+
+    public int col(int v){
+	return this.col[v];
+    }
+
+    public int outStart(int v){
+	return this.outStart[v];
+    }
+
+    public int outEnd(int v){
+	return this.outStart[v+1];
+    }
+
+    public int source(int e){
+	return this.source[e];
+    }
+
+    public int target(int e){
+	return this.target[e];
+    }
+
+    public double weight(int e){
+	return this.weight[e];
+    }
+
+    public double errorProb(int e){
+	return this.errorProb[e];
+    }
+}
@@ -8,9 +8,7 @@ import htsjdk.samtools.util.QualityUtil;
 import org.jgrapht.*;
 import org.jgrapht.graph.*;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Collections;
 import java.util.HashSet;
 
 /*
@@ -19,25 +17,26 @@ import java.util.HashSet;
  *
  */
 public class CustomWeightedEdge extends DefaultWeightedEdge{
+
+    private static final long serialVersionUID = 1L;
     
-    //here you get list of quality scores --> forward and reverse
+    //here you get highest quality scores --> forward and reverse
     //no way to trace back to readIDs for this.
-    private ArrayList<Byte> fScore;
-    private ArrayList<Byte> rScore;
+    private TopScores fScore;
+    private TopScores rScore;
     private double groupErrorProb; //consensus score
     
     private int numActivePath;
 
     //private HashSet<Integer> rHash;
-    private CustomHashMap rHash;//key is readId and value is quality value
+    private ReadSet rHash;//key is readId and value is quality value
 
     private HashSet<Path> pathset;
 
     private int edgeID;
-    private static int nextID = 0;
 
     //public HashSet<Integer> getReadHashSet(){
-    public CustomHashMap getReadHashSet(){
+    public ReadSet getReadHashSet(){
 	return this.rHash;
     }
 
@@ -48,8 +47,13 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     public int getEdgeId(){
 	return this.edgeID;
     }
+
+    //ids come from the RunContext of the graph the edge is added to (see HLAGraph.EdgeIdFactory)
+    public void renumberEdgeId(int id){
+	this.edgeID = id;
+    }
     
-    public void subtractSet(CustomHashMap removalSet){//HashSet<Integer> removalSet){
+    public void subtractSet(ReadSet removalSet){//HashSet<Integer> removalSet){
 	this.rHash.removeAll(removalSet);
     }
     
@@ -70,7 +74,7 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
 	return tmp;
     }
 
-    //NO LONGER USED. SHOULD USE clone() in CustomHashMap class.
+    //NO LONGER USED. SHOULD USE clone() in ReadSet class.
     /*
     public HashSet<Integer> getReadHashSetDeepCopy(){
 	HashSet<Integer> tmp = new HashSet<Integer>();
@@ -82,7 +86,7 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     }
     */
 
-    public void addAllReadsFrom(CustomHashMap otherSet){//HashSet<Integer> otherSet){
+    public void addAllReadsFrom(ReadSet otherSet){//HashSet<Integer> otherSet){
 	this.rHash.addAll(otherSet);
     }
     
@@ -96,35 +100,39 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
 	}*/
 
     public void addRead(int readNum, int qual){
-	this.rHash.put(readNum, qual);
+	this.rHash.add(readNum, qual);
     }
     
     public void addPath(Path p){
 	this.pathset.add(p);
     }
 
-    public static int numMaxLowestProbEntries = 10;
+    public static final int numMaxLowestProbEntries = 10;
     
-    public CustomWeightedEdge(){
+    public CustomWeightedEdge(int id){
 	super();
-	this.edgeID = CustomWeightedEdge.nextID;
-	CustomWeightedEdge.nextID++;
-	this.fScore = new ArrayList<Byte>();
-	this.rScore = new ArrayList<Byte>();
+	this.edgeID = id;
+	this.fScore = new TopScores(CustomWeightedEdge.numMaxLowestProbEntries);
+	this.rScore = new TopScores(CustomWeightedEdge.numMaxLowestProbEntries);
 	this.groupErrorProb = 0.0d;
 	this.initNumActivePath();
-	this.rHash = new CustomHashMap();//new HashSet<Integer>();
+	this.rHash = new ReadSet(true);//new HashSet<Integer>();
 	this.pathset = new HashSet<Path>();
     }
 
 
+    //edge of a sample graph copied from reference graph (HLAGraph.forkSample). keeps the id, no reads.
+    public CustomWeightedEdge copyWithoutReads(){
+	return new CustomWeightedEdge(this.edgeID);
+    }
+
     //returns union of reads if intersection of reads is non-empty.
     //public HashSet<Integer> getUnionAfterCheckingIntersection(CustomWeightedEdge other){
-    public CustomHashMap getUnionAfterCheckingIntersection(CustomWeightedEdge other){
+    public ReadSet getUnionAfterCheckingIntersection(CustomWeightedEdge other){
 	//HashSet<Integer> ts = this.getReadHashSetDeepCopy();
 	//HashSet<Integer> os = other.getReadHashSetDeepCopy();
-	CustomHashMap ts = this.rHash.clone();
-	CustomHashMap os = other.getReadHashSet().clone();
+	ReadSet ts = this.rHash.clone();
+	ReadSet os = other.getReadHashSet().clone();
 	//ts.retainAll(os);
 	ts.intersectionPE(os);
 	//if(ts.retainAll(os)){
@@ -140,9 +148,9 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     //checks if there is intersection between this edge's readset and prevSet
     //if interesection is NOT empty, returns union (updates prevSet)
     //public HashSet<Integer> unionAfterCheckingIntersection(HashSet<Integer> prevSet){
-    public CustomHashMap unionAfterCheckingIntersection(CustomHashMap prevSet){//HashSet<Integer> prevSet){
+    public ReadSet unionAfterCheckingIntersection(ReadSet prevSet){//HashSet<Integer> prevSet){
 	//HashSet<Integer> ts = this.getReadHashSetDeepCopy();
-	CustomHashMap ts = this.rHash.clone();
+	ReadSet ts = this.rHash.clone();
 	//	ts.retainAll(prevSet);
 	ts.intersectionPE(prevSet);
 	if(ts.size() > 0){
@@ -158,9 +166,9 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     //return insertions of two sets. 
     //returns null if intersection is an empty
     //public HashSet<Integer> getIntersection(HashSet<Integer> prevSet){
-    public CustomHashMap getIntersection(CustomHashMap prevSet){
+    public ReadSet getIntersection(ReadSet prevSet){
 	//HashSet<Integer> ts = this.getReadHashSetDeepCopy();
-	CustomHashMap ts = this.rHash.clone();
+	ReadSet ts = this.rHash.clone();
 	ts.retainAll(prevSet);
 	if(ts.size() > 0)
 	    return ts;
@@ -169,9 +177,9 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     }
 
     
-    public CustomHashMap getIntersectionPE(CustomHashMap prevSet){
+    public ReadSet getIntersectionPE(ReadSet prevSet){
 	//HashSet<Integer> ts = this.getReadHashSetDeepCopy();
-	CustomHashMap ts = this.rHash.clone();
+	ReadSet ts = this.rHash.clone();
 	ts.intersectionPE(prevSet);
 	if(ts.size() > 0)
 	    return ts;
@@ -206,27 +214,27 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
 	this.numActivePath--;
     }
 
-    public ArrayList<Byte> getFScores(){
+    public TopScores getFScores(){
 	return this.fScore;
     }
 
-    public ArrayList<Byte> getRScores(){
+    public TopScores getRScores(){
 	return this.rScore;
     }
 
-    public void setFScores(ArrayList<Byte> fs){
+    public void setFScores(TopScores fs){
 	this.fScore = fs;
     }
     
-    public void setRScores(ArrayList<Byte> rs){
+    public void setRScores(TopScores rs){
 	this.rScore = rs;
     }
 
-    public void addAllFScores(ArrayList<Byte> fs){
+    public void addAllFScores(TopScores fs){
 	this.fScore.addAll(fs);
     }
     
-    public void addAllRScores(ArrayList<Byte> rs){
+    public void addAllRScores(TopScores rs){
 	this.rScore.addAll(rs);
     }
 
@@ -237,9 +245,9 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
     public void incrementWeight(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, boolean isRefStrand, byte score){
 	g.setEdgeWeight(this, g.getEdgeWeight(this)+1);
 	if(isRefStrand)
-	    this.fScore.add(new Byte(score));
+	    this.fScore.add(score);
 	else
-	    this.rScore.add(new Byte(score));
+	    this.rScore.add(score);
     }
     
     public double getGroupErrorProb(){
@@ -267,14 +275,12 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
 	return this.groupErrorProb;
     }
 
-    private double computeStrandedGroupErrorProb(ArrayList<Byte> scores){
-	//sort the phred score in a descending order
-	Collections.sort(scores, Collections.reverseOrder());
-	Iterator<Byte> itr = scores.iterator();
+    private double computeStrandedGroupErrorProb(TopScores scores){
+	//phred scores are kept in a descending order
 	int count = 0;
 	int sum = 0;
-	while(itr.hasNext() && count < CustomWeightedEdge.numMaxLowestProbEntries){
-	    byte tmp = itr.next().byteValue();
+	while(count < scores.size() && count < CustomWeightedEdge.numMaxLowestProbEntries){
+	    byte tmp = scores.get(count);
 	    if(tmp < 2){
 		tmp = 2;
 	    }
@@ -318,14 +324,14 @@ public class CustomWeightedEdge extends DefaultWeightedEdge{
 
     /* TESTING */
     public static void main(String[] args){
-	CustomWeightedEdge e = new CustomWeightedEdge();
-	e.fScore.add(new Byte((byte) 10));
-	e.fScore.add(new Byte((byte) 20));
-	e.fScore.add(new Byte((byte) 30));
+	CustomWeightedEdge e = new CustomWeightedEdge(0);
+	e.fScore.add((byte) 10);
+	e.fScore.add((byte) 20);
+	e.fScore.add((byte) 30);
 	
-	e.rScore.add(new Byte((byte) 10));
-	e.rScore.add(new Byte((byte) 20));
-	e.rScore.add(new Byte((byte) 30));
+	e.rScore.add((byte) 10);
+	e.rScore.add((byte) 20);
+	e.rScore.add((byte) 30);
 
 	e.computeGroupErrorProb();
     }
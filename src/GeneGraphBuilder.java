@@ -0,0 +1,86 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/*
+ * Builds the reference HLAGraph and typing sequences of a single HLA gene,
+ * either from graph cache or by merging nuc/gen MSAs.
+ * Runs on the graph construction pool. Log lines are kept in a per-task buffer
+ * and appended to the main log by the caller in gene order.
+ * Returns null if MSA merging fails.
+ */
+public class GeneGraphBuilder implements Callable<HLAGraph>{
+
+    private String hlaGeneName;
+    private String msaDir;
+    private NomG nomG;
+    private HLAGraphCache cache;
+    private RunContext ctx;
+
+    private String log;
+    private boolean fromCache;
+
+    public GeneGraphBuilder(String hgn, String msaDir, NomG nomG, HLAGraphCache cache, RunContext ctx){
+	this.hlaGeneName = hgn;
+	this.msaDir = msaDir;
+	this.nomG = nomG;
+	this.cache = cache;
+	this.ctx = ctx;
+	this.log = "";
+	this.fromCache = false;
+    }
+
+    public String getLog(){
+	return this.log;
+    }
+
+    public boolean isFromCache(){
+	return this.fromCache;
+    }
+
+    public String getHLAGeneName(){
+	return this.hlaGeneName;
+    }
+
+    public HLAGraph call(){
+	this.ctx.log.startLocalBuffer();
+	try{
+	    return this.build();
+	}finally{
+	    this.log = this.ctx.log.endLocalBuffer();
+	}
+    }
+
+    private HLAGraph build(){
+	this.ctx.log.appendln("processing HLA gene:\t" + this.hlaGeneName);
+	//merged MSA output needs the merging step, so cache is bypassed.
+	HLAGraph hg = HLA.OUTPUT_MERGED_MSA ? null : this.cache.load(this.hlaGeneName);
+	if(hg != null){
+	    this.ctx.log.appendln("Loaded cached graph:\t" + this.hlaGeneName);
+	    this.fromCache = true;
+	    hg.setContext(this.ctx);
+	    if(HLA.PRINT_G_GROUP_DB)
+		hg.writeTypingSequences();
+	    return hg;
+	}
+	MergeMSFs mm = new MergeMSFs(this.ctx.outPrefix, this.ctx.log);
+	if(!mm.merge(this.msaDir + File.separator + this.hlaGeneName + "_nuc.txt"
+		     , this.msaDir + File.separator + this.hlaGeneName + "_gen.txt"
+		     , HLA.OUTPUT_MERGED_MSA)){
+	    this.ctx.log.appendln("ERROR in MSA merging. CANNOT proceed further. Exiting..");
+	    return null;
+	}
+	hg = new HLAGraph(mm.getListOfSequences(), this.hlaGeneName, this.ctx);
+	ArrayList<Group> groups = this.nomG.getGroups(this.hlaGeneName);
+	if(groups != null)
+	    hg.setTypingSequences(mm.formDataBase(groups));
+	else
+	    hg.setTypingSequences(mm.formDataBaseAll());
+	return hg;
+    }
+}
@@ -4,11 +4,14 @@ Part of Kourami HLA typer/assembler
 See LICENSE for licensing.
 */
 import java.util.*;
+import java.io.Serializable;
 
 /*
  * G Group
  */
-public class Group{
+public class Group implements Serializable{
+
+    private static final long serialVersionUID = 1L;
 
     private String hlaGeneName; //A B C DQA1 DQB1 DRB1 etc
 
@@ -8,7 +8,10 @@ import htsjdk.samtools.Cigar;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.SamInputResource;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceRecord;
 
@@ -18,54 +21,81 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
 
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import org.apache.commons.cli.*;
 
 public class HLA{
 
     public static boolean PRINT_G_GROUP_DB = false;
-    /* graph mod stats */
-    public static int NEW_NODE_ADDED = 0;
-    public static int HOPPING = 0;
-    public static int INSERTION_NODE_ADDED = 0;
-    public static int INSERTION_WITH_NO_NEW_NODE = 0;
-    public static int INSERTION = 0;
-    /* end of graph mod stats */
-    public static int READ_LENGTH = 100; //automatically gets set.
     public static double X_FACTOR = 4.0d/3.0d; //xFactor == 1 (a=4b), 4/3 (a=3b), 2 (a=2b)
     public static int SCORING_SCHEME = 4;//4 for APCUM+ISB
 
-    public static LogHandler log;
     public static boolean DEBUG = false;
-    public static boolean DEBUG3 = false;
     //output merged database MSA
     public static boolean OUTPUT_MERGED_MSA = false;
 
-    //-o option
-    public static String OUTPREFIX; // used for outfile names
-
     //-a option
     public static boolean TYPEADDITIONAL;
 
     //-d option
     public static String MSAFILELOC;
     public static String VERSION = "0.9.6";
+
+    //-t option
+    public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    //-w option. 0: mates are tracked without a window
+    public static int MATE_WINDOW = 0;
+
+    //-b option
+    public static int MAX_BUBBLE_PATHS = 10000;
+
+    //-k option. 0: all pairs of candidate alleles are scored
+    public static int TOP_PAIRS = 10;
+
+    //-c option. only checked if there are at most CHECK_PAIRS_MAX_ALLELES candidate alleles
+    public static boolean CHECK_PAIRS = false;
+    public static int CHECK_PAIRS_MAX_ALLELES = 2000;
     
     public static double MIN_JRE_VERSION = 1.8;
 
-    public HLA(String[] hlaList, String nomGFile){
+    public HLA(String[] hlaList, String nomGFile, RunContext ctx){
+	this.ctx = ctx;
 	this.hlaName2Graph = new HashMap<String, HLAGraph>();
 	this.hlaName2typingSequences = new HashMap<String, ArrayList<HLASequence>>();
 	this.loadGraphs(hlaList, nomGFile);
     }
 
+    private HLA(String[] hlaList, HashMap<String, HLAGraph> graphs, RunContext ctx){
+	this.ctx = ctx;
+	this.hlaName2Graph = graphs;
+	this.hlaName2typingSequences = new HashMap<String, ArrayList<HLASequence>>();
+	for(String g : hlaList)
+	    this.hlaName2typingSequences.put(g, graphs.get(g).getTypingSequences());
+    }
+
+    //for typing one sample on its own copy of the graphs (see HLAGraph.forkSample). this HLA is not modified.
+    //ctx is the sample's own run context, so forks can be typed at the same time.
+    public HLA forkSample(String[] hlaList, RunContext ctx){
+	HashMap<String, HLAGraph> graphs = new HashMap<String, HLAGraph>();
+	for(String g : hlaList)
+	    graphs.put(g, this.hlaName2Graph.get(g).forkSample(ctx));
+	return new HLA(hlaList, graphs, ctx);
+    }
+
+    public RunContext getContext(){
+	return this.ctx;
+    }
+
     //loads HLAGraphs as well as nomG typing sequences
     private void loadGraphs(String[] hlaList, String nomGFile){
 
-	HLA.log.appendln("Merging HLA sequences and building HLA graphs");
+	this.ctx.log.appendln("Merging HLA sequences and building HLA graphs");
 
 	int i;
 	NomG nomG = new NomG();
@@ -74,28 +104,51 @@ public class HLA{
 	String tmpDir = null;
 
 	tmpDir = HLA.MSAFILELOC;
-	
+
+	HLAGraphCache cache = new HLAGraphCache(tmpDir, nomGFile, this.ctx.log);
+
+	//genes are built concurrently. Results and per-gene logs are collected in list order.
+	int numThreads = Math.max(1, Math.min(this.ctx.numThreads, hlaList.length));
+	this.ctx.log.appendln("Building graphs using\t" + numThreads + "\tthread(s).");
+	ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+	ArrayList<GeneGraphBuilder> builders = new ArrayList<GeneGraphBuilder>();
+	ArrayList<Future<HLAGraph>> futures = new ArrayList<Future<HLAGraph>>();
+	for(i=0; i<hlaList.length; i++){
+	    GeneGraphBuilder gb = new GeneGraphBuilder(hlaList[i], tmpDir, nomG, cache, this.ctx);
+	    builders.add(gb);
+	    futures.add(pool.submit(gb));
+	}
+	pool.shutdown();
+
+	HLAGraph[] graphs = new HLAGraph[hlaList.length];
 	for(i=0; i<hlaList.length; i++){
-	    HLA.log.appendln("processing HLA gene:\t" + hlaList[i]);
-	    //System.err.println("processing HLA gene:\t" + hlaList[i]);
-	    MergeMSFs mm = new MergeMSFs();
-	    if(!mm.merge(tmpDir + File.separator +  hlaList[i] + "_nuc.txt", tmpDir + File.separator + hlaList[i] + "_gen.txt", HLA.OUTPUT_MERGED_MSA)){
-		HLA.log.appendln("ERROR in MSA merging. CANNOT proceed further. Exiting..");
-		HLA.log.outToFile();
+	    try{
+		graphs[i] = futures.get(i).get();
+	    }catch(InterruptedException | ExecutionException e){
+		e.printStackTrace();
+		this.ctx.log.outToFile();
 		System.exit(-1);
 	    }
-	    
-	    this.hlaName2Graph.put(hlaList[i], new HLAGraph(mm.getListOfSequences(), hlaList[i]));
-	    ArrayList<Group> groups = nomG.getGroups(hlaList[i]);
-	    if(groups != null)
-		this.hlaName2typingSequences.put(hlaList[i], mm.formDataBase(nomG.getGroups(hlaList[i])));
-	    else
-		this.hlaName2typingSequences.put(hlaList[i], mm.formDataBaseAll());
-	    this.hlaName2Graph.get(hlaList[i]).setTypingSequences(this.hlaName2typingSequences.get(hlaList[i]));
+	}
+
+	this.ctx.resetEdgeIds();
+	for(i=0; i<hlaList.length; i++){
+	    GeneGraphBuilder gb = builders.get(i);
+	    this.ctx.log.append(gb.getLog());
+	    if(graphs[i] == null){
+		this.ctx.log.outToFile();
+		System.exit(-1);
+	    }
+	    for(CustomWeightedEdge e : graphs[i].getGraph().edgeSet())
+		e.renumberEdgeId(this.ctx.nextEdgeId());
+	    this.hlaName2Graph.put(hlaList[i], graphs[i]);
+	    this.hlaName2typingSequences.put(hlaList[i], graphs[i].getTypingSequences());
+	    if(!gb.isFromCache())
+		cache.store(hlaList[i], graphs[i]);
 	    if(HLA.OUTPUT_MERGED_MSA)
 		this.outputTypingSequences(hlaList[i]);
 	}
-	HLA.log.appendln("Done building\t" + i + "\tgraphs.");
+	this.ctx.log.appendln("Done building\t" + i + "\tgraphs.");
     }
     
 
@@ -120,21 +173,8 @@ public class HLA{
     //kourami bam checker added
     private boolean checkHeader(SAMFileHeader header){
 	List<SAMSequenceRecord> sequences = header.getSequenceDictionary().getSequences();
-	HashSet<String> map = new HashSet<String>();
-	
-	//load kourami panel sequence names
-	BufferedReader br;
-	try{
-	    br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(HLA.MSAFILELOC + File.separator + "All_FINAL_with_Decoy.fa.gz"))));
-	    String curline = "";
-	    while((curline = br.readLine())!=null){
-		if(curline.charAt(0) == ('>'))
-		    map.add(curline.substring(1));
-	    }
-	    br.close();
-	}catch(IOException ioe){
-	    ioe.printStackTrace();
-	}
+	//kourami panel sequence names, loaded once and shared by all bams
+	HashSet<String> map = PanelContigIndex.getNames();
 	
 	//check if input bam has sequences to kourami panel
 	for(SAMSequenceRecord ssr : sequences){
@@ -145,36 +185,95 @@ public class HLA{
     }
 
 
+    //Kourami bam checker: fails the run (ctx.fail) if bam is not aligned to Kourami panel
+    public void verifyHeader(File bam, SAMFileHeader header){
+	if(!checkHeader(header)){
+	    String msg = "Unexpected BAM :\t"+ bam.getName() 
+		+"\nThe input BAM MUST be aligned to the set of IMGT/HLA alleles in " + HLA.MSAFILELOC + "\n" 
+		+ "Please use the recommended preprocessing steps explained on the github page:\n"
+		+ "https://github.com/Kingsford-Group/kourami";
+	    System.err.println(msg);
+	    this.ctx.fail(msg, 1);
+	}
+    }
+
+    //BAM, SAM or CRAM. CRAM is decoded against Kourami panel. "-" reads from stdin.
+    public static SamReader openReader(File bam, LogHandler log) throws IOException{
+	SamReaderFactory factory = SamReaderFactory.makeDefault().referenceSource(PanelReferenceSequenceFile.getReferenceSource(log));
+	if(StdinBuffer.isStdin(bam.getPath()))
+	    return factory.open(SamInputResource.of(StdinBuffer.start().getInputStream()));
+	return factory.open(bam);
+    }
+
+    //panel contigs of the genes being typed, in header order (sorted, non-overlapping)
+    public QueryInterval[] getPanelIntervals(SAMFileHeader header){
+	ArrayList<QueryInterval> intervals = new ArrayList<QueryInterval>();
+	for(SAMSequenceRecord ssr : header.getSequenceDictionary().getSequences()){
+	    String name = ssr.getSequenceName();
+	    if(name.indexOf("*") > -1 && this.hlaName2Graph.containsKey(HLA.extractHLAGeneName(name)))
+		intervals.add(new QueryInterval(ssr.getSequenceIndex(), 1, -1));
+	}
+	return intervals.toArray(new QueryInterval[0]);
+    }
+
+    //indexed bam: only panel contigs of the genes being typed are decoded (decoys and unmapped reads are skipped).
+    //otherwise the whole file is read.
+    //records come out in file order either way, so read ids are assigned the same.
+    public SAMRecordIterator iterateRecords(SamReader reader){
+	if(reader.hasIndex())
+	    return reader.query(this.getPanelIntervals(reader.getFileHeader()), false);
+	return reader.iterator();
+    }
+
+    public void logRecordSource(SAMFileHeader header, boolean indexed){
+	if(indexed)
+	    this.ctx.log.appendln("Index found. Reading\t" + this.getPanelIntervals(header).length + "\tpanel contigs.");
+    }
+
+    //window is only used for coordinate-sorted input
+    public MateTracker newMateTracker(File bam, SAMFileHeader header){
+	if(HLA.MATE_WINDOW > 0){
+	    if(header.getSortOrder() == SAMFileHeader.SortOrder.coordinate)
+		return new MateTracker(HLA.MATE_WINDOW);
+	    this.ctx.log.appendln("Input is not coordinate-sorted. Mate window is NOT used for:\t" + bam.getName());
+	}
+	return new MateTracker(0);
+    }
+
+    public void logMates(MateTracker mates){
+	if(mates.getNumDropped() > 0)
+	    this.ctx.log.appendln("Mates dropped from window before their pair was seen:\t" + mates.getNumDropped());
+    }
+
     public void loadReads(File[] bams) throws IOException{
 	
 	int count = 0;
 	int numOp = 0;
+
+	//decoding, filtering and graph updates run on separate threads
+	if(this.ctx.numThreads > 1){
+	    ReadLoadingPipeline pipeline = new ReadLoadingPipeline(this, this.hlaName2Graph);
+	    pipeline.load(bams);
+	    this.ctx.log.appendln("Loaded a total of " + pipeline.getCount() + " mapped reads.");
+	    this.ctx.log.appendln("A total of " + pipeline.getNumOp() + " bases");
+	    return;
+	}
 	
 	for(File bam : bams){
-	    HLA.log.appendln("Loading reads from:\t" + bam.getName());
-	    Object2IntOpenHashMap<String> readLoadingSet = new Object2IntOpenHashMap<String>();
-	    readLoadingSet.defaultReturnValue(0);
+	    this.ctx.log.appendln("Loading reads from:\t" + bam.getName());
 	    
-	    final SamReader reader = SamReaderFactory.makeDefault().open(bam);
+	    final SamReader reader = HLA.openReader(bam, this.ctx.log);
 	    
-	    //Kourami bam checker added
-	    if(!checkHeader(reader.getFileHeader())){
-		HLA.log.appendln("Unexpected BAM :\t"+ bam.getName() 
-				+"\nThe input BAM MUST be aligned to the set of IMGT/HLA alleles in " + HLA.MSAFILELOC + "\n" 
-				+ "Please use the recommended preprocessing steps explained on the github page:\n"
-				+ "https://github.com/Kingsford-Group/kourami");
-		System.err.println("Unexpected BAM :\t"+ bam.getName() 
-				   +"\nThe input BAM MUST be aligned to the set of IMGT/HLA alleles in " + HLA.MSAFILELOC + "\n" 
-				   + "Please use the recommended preprocessing steps explained on the github page:\n"
-				   + "https://github.com/Kingsford-Group/kourami");
-		HLA.log.outToFile();
-		System.exit(1);
-	    }
+	    this.verifyHeader(bam, reader.getFileHeader());
+	    this.logRecordSource(reader.getFileHeader(), reader.hasIndex());
+	    MateTracker mates = this.newMateTracker(bam, reader.getFileHeader());
 
-	    for(final SAMRecord samRecord : reader){
+	    final SAMRecordIterator itr = this.iterateRecords(reader);
+	    while(itr.hasNext()){
+		final SAMRecord samRecord = itr.next();
 		if(count == 0){
-		    HLA.READ_LENGTH = samRecord.getReadLength();
-		    HLA.log.appendln("Setting HLA.READ_LEGNTH = " + HLA.READ_LENGTH);
+		    this.ctx.readLength = samRecord.getReadLength();
+		    this.ctx.log.appendln("Setting HLA.READ_LEGNTH = " + this.ctx.readLength);
 		}
 		//added checking to process reads matching to HLA-type sequences
 		//discarding decoy hits (DQB2, DQA2)
@@ -185,31 +284,33 @@ public class HLA{
 		    && !this.startWIns(samRecord)){
 		    count++;
 		    if(samRecord.getReadPairedFlag())
-			numOp += processRecord(samRecord, readLoadingSet);
+			numOp += processRecord(samRecord, mates);
 		    else
 			numOp += processRecordUnpaired(samRecord);
 		}
 		
 		if(HLA.DEBUG && count%10000 == 0)
-		    HLA.log.appendln("Processed 10000 reads...");
+		    this.ctx.log.appendln("Processed 10000 reads...");
 	    }
+	    itr.close();
 	    reader.close();
+	    this.logMates(mates);
 	}
-	HLA.log.appendln("Loaded a total of " + count + " mapped reads.");
-	HLA.log.appendln("A total of " + numOp + " bases");
+	this.ctx.log.appendln("Loaded a total of " + count + " mapped reads.");
+	this.ctx.log.appendln("A total of " + numOp + " bases");
     }
     
     public void updateErrorProb(){
-	HLA.log.appendln("------------ UPDATING error probabilities of each edge ---------");
+	this.ctx.log.appendln("------------ UPDATING error probabilities of each edge ---------");
 	Iterator itr = this.hlaName2Graph.keySet().iterator();
 	while(itr.hasNext()){
 	    this.hlaName2Graph.get(itr.next()).updateEdgeWeightProb();
 	}
-	HLA.log.appendln("------------     DONE UPDATING error probabilities     ---------");
+	this.ctx.log.appendln("------------     DONE UPDATING error probabilities     ---------");
     }
     
     //assume interleaved SAMRecord
-    public int processRecord(SAMRecord sr, Object2IntOpenHashMap<String> readLoadingSet){
+    public int processRecord(SAMRecord sr, MateTracker mates){
 	int totalOp = 0;
 	String hlagene = HLA.extractHLAGeneName(sr.getReferenceName());
 	HLAGraph hg = this.hlaName2Graph.get(hlagene);
@@ -220,16 +321,7 @@ public class HLA{
 		if(!qc)
 		    return 0;
 	    }
-	    int readnum = readLoadingSet.getInt(sr.getReadName());
-	    //no such read has been read. return value of 0 means the hashSet doesn't have the read
-	    if(readnum == 0){
-		readnum = sr.getFirstOfPairFlag() ? HLA.readNum : 0-HLA.readNum;
-		
-		readLoadingSet.put(sr.getReadName(), HLA.readNum);
-		HLA.readNum++;
-	    }else
-		readnum = sr.getFirstOfPairFlag() ? readnum : 0-readnum;
-
+	    int readnum = this.getPairedReadNum(sr, mates);
 	    totalOp += hg.addWeight(sr, readnum);//HLA.readNum);
 	    //HLA.readNum++;
 	}else{
@@ -238,6 +330,20 @@ public class HLA{
 	return totalOp;
     }
     
+    //both mates share a read id: positive for first of pair, negative for second.
+    public int getPairedReadNum(SAMRecord sr, MateTracker mates){
+	int readnum = mates.take(sr);
+	//mate has not been read. return value of 0 means the tracker doesn't have the read
+	if(readnum == 0){
+	    int id = this.ctx.nextReadNum();
+	    readnum = sr.getFirstOfPairFlag() ? id : 0-id;
+	    
+	    mates.put(sr, id);
+	}else
+	    readnum = sr.getFirstOfPairFlag() ? readnum : 0-readnum;
+	return readnum;
+    }
+
     public boolean startWIns(SAMRecord sr){
 	Cigar cigar = sr.getCigar();
 	if(cigar == null){
@@ -246,7 +352,7 @@ public class HLA{
 	    CigarOperator op = cigar.getCigarElements().get(0).getOperator();
 	    if(op == CigarOperator.I){
 		if(HLA.DEBUG)
-		    HLA.log.appendln("SKIPPING(Start with Insertion):\t" + sr.getReadName());
+		    this.ctx.log.appendln("SKIPPING(Start with Insertion):\t" + sr.getReadName());
 		return true;
 		
 	    }
@@ -254,53 +360,37 @@ public class HLA{
 	return false;
     }
 
+    //passes if NM < 16. effective length (M+I) is only computed for debugging output.
     public boolean qcCheck(SAMRecord sr){
 	Cigar cigar = sr.getCigar();
-	int rLen = sr.getReadLength();
-	int effectiveLen = 0;
 	if(cigar==null) 
 	    return false;
-	else{
+	boolean readdebug = false;
+	if(readdebug){
+	    int effectiveLen = 0;
 	    for(final CigarElement ce : cigar.getCigarElements()){
 		CigarOperator op = ce.getOperator();
-		int cigarLen = ce.getLength();
-		switch(op)
-		    {
-		    case M:
-			{
-			    effectiveLen += cigarLen;
-			    break;
-			}
-		    case I:
-			{
-			    effectiveLen += cigarLen;
-			    break;
-			}
-		    default: 
-			break;
-		    }
+		if(op == CigarOperator.M || op == CigarOperator.I)
+		    effectiveLen += ce.getLength();
 	    }
-	}
-	boolean readdebug = false;
-	if(readdebug){
-	    HLA.log.appendln(sr.getSAMString());
-	    HLA.log.appendln("EffectiveLen:\t" + effectiveLen);
-	    HLA.log.appendln("ReadLen:\t" + rLen);
+	    this.ctx.log.appendln(sr.getSAMString());
+	    this.ctx.log.appendln("EffectiveLen:\t" + effectiveLen);
+	    this.ctx.log.appendln("ReadLen:\t" + sr.getReadLength());
 	}
 	Integer i = sr.getIntegerAttribute("NM");
 	int nm = 0;
 	if(i!=null)
 	    nm = i.intValue();
 	if(readdebug)
-	    HLA.log.appendln("NM=\t" + nm);
+	    this.ctx.log.appendln("NM=\t" + nm);
 	if(nm < 16){
 	    if(readdebug)
-		HLA.log.appendln("PASSWED QC");
+		this.ctx.log.appendln("PASSWED QC");
 	    return true;
 	}
 	if(readdebug){
-	    HLA.log.appendln("FAILED QC");
-	    HLA.log.appendln(sr.getSAMString());
+	    this.ctx.log.appendln("FAILED QC");
+	    this.ctx.log.appendln(sr.getSAMString());
 	}
 	return false;
     }
@@ -316,8 +406,7 @@ public class HLA{
 		if(!qc)
 		    return 0;
 	    }
-	    totalOp += hg.addWeight(sr, HLA.readNum);
-	    HLA.readNum++;
+	    totalOp += hg.addWeight(sr, this.ctx.nextReadNum());
 	}
 	return totalOp;
     }
@@ -329,7 +418,7 @@ public class HLA{
     
     public void printBoundaries(String[] list){
 	for(String g:list)
-	    this.hlaName2Graph.get(g).getRefAllele().printBoundaries();
+	    this.hlaName2Graph.get(g).getRefAllele().printBoundaries(this.ctx.log);
     }
 
     public void removeUnused(String[] list){
@@ -397,9 +486,9 @@ public class HLA{
 	
 	Option outfile = Option.builder("o")
 	    .longOpt("outfilePrefix")
-	    .required(true)
+	    .required(false)
 	    .hasArg()
-	    .desc("use given outfile prefix for all output files (required)")
+	    .desc("use given outfile prefix for all output files (required unless -m is given)")
 	    .argName("outfile")
 	    .build();
 	
@@ -410,10 +499,63 @@ public class HLA{
 	    .desc("type additional loci (optional)")
 	    .build();
 
+	Option threads = Option.builder("t")
+	    .longOpt("threads")
+	    .required(false)
+	    .hasArg()
+	    .argName("num")
+	    .desc("number of threads to use (optional, default: number of available processors)")
+	    .build();
+
+	Option mateWindow = Option.builder("w")
+	    .longOpt("mateWindow")
+	    .required(false)
+	    .hasArg()
+	    .argName("num")
+	    .desc("coordinate-sorted input: keep at most <num> reads waiting for their mate (optional, default: no limit)")
+	    .build();
+
+	Option maxBubblePaths = Option.builder("b")
+	    .longOpt("maxBubblePaths")
+	    .required(false)
+	    .hasArg()
+	    .argName("num")
+	    .desc("keep at most <num> paths per bubble. Bubbles with more paths keep only the best supported ones (optional, default: 10000)")
+	    .build();
+
+	Option topPairs = Option.builder("k")
+	    .longOpt("topPairs")
+	    .required(false)
+	    .hasArg()
+	    .argName("num")
+	    .desc("score only the <num> best pairs of candidate alleles, found by best-first search. 0 scores all pairs, as does debug mode (optional, default: 10)")
+	    .build();
+
+	Option checkPairs = Option.builder("c")
+	    .longOpt("checkPairs")
+	    .required(false)
+	    .hasArg(false)
+	    .desc("also score all pairs of candidate alleles for genes with at most " + HLA.CHECK_PAIRS_MAX_ALLELES + " candidates and log whether the best pairs agree (optional)")
+	    .build();
+
+	Option manifest = Option.builder("m")
+	    .longOpt("manifest")
+	    .required(false)
+	    .hasArg()
+	    .argName("file")
+	    .desc("type all samples listed in <file>, one per line: <outfilePrefix> <bam-1> ... <bam-n>. Reference graphs are built once and up to -t samples are typed at the same time (optional)")
+	    .build();
+
 	//options.addOption(help);
 	options.addOption(buildFromMSA);
 	options.addOption(outfile);
 	options.addOption(additionalLoci);
+	options.addOption(threads);
+	options.addOption(mateWindow);
+	options.addOption(maxBubblePaths);
+	options.addOption(topPairs);
+	options.addOption(checkPairs);
+	options.addOption(manifest);
 	
 	return options;
     }
@@ -426,7 +568,8 @@ public class HLA{
 	    + "Program: Kourami - Graph-guided assembly of HLA typing exons\n"
 	    + "Version: " + HLA.VERSION + "\n"
 	    + "Contact: Heewook Lee <heewookl@cs.cmu.edu>\n\n"
-	    + "Usage: java -jar <PATH_TO>/Kourami.jar [options] <bam-1> ... <bam-n>\n\n"
+	    + "Usage: java -jar <PATH_TO>/Kourami.jar [options] <bam-1> ... <bam-n>  (BAM, SAM or CRAM. - for stdin)\n"
+	    + "       java -jar <PATH_TO>/Kourami.jar [options] -m <manifest>  (batch mode)\n\n"
 	    + "   -h,--help                      print this message\n";
 	
 	String footer = "\n";
@@ -460,6 +603,8 @@ public class HLA{
 	Options options = HLA.createOption();
 	Options helponlyOpts = HLA.createHelpOption();
 	String[] bams = null;
+	SampleBatch batch = null;
+	String outPrefix = null;
 	CommandLine line = null;
 	boolean exitRun = false;
 	try{
@@ -474,7 +619,58 @@ public class HLA{
 		    if(line.hasOption("a"))
 			HLA.TYPEADDITIONAL = true;
 
-		    HLA.OUTPREFIX = line.getOptionValue("o");//outfilePrefix");
+		    if(line.hasOption("t")){
+			try{
+			    HLA.NUM_THREADS = Integer.parseInt(line.getOptionValue("t"));
+			}catch(NumberFormatException nfe){
+			    HLA.NUM_THREADS = 0;
+			}
+			if(HLA.NUM_THREADS < 1){
+			    System.err.println("Number of threads must be a positive integer: " + line.getOptionValue("t"));
+			    exitRun = true;
+			}
+		    }
+
+		    if(line.hasOption("w")){
+			try{
+			    HLA.MATE_WINDOW = Integer.parseInt(line.getOptionValue("w"));
+			}catch(NumberFormatException nfe){
+			    HLA.MATE_WINDOW = 0;
+			}
+			if(HLA.MATE_WINDOW < 1){
+			    System.err.println("Mate window size must be a positive integer: " + line.getOptionValue("w"));
+			    exitRun = true;
+			}
+		    }
+
+		    if(line.hasOption("b")){
+			try{
+			    HLA.MAX_BUBBLE_PATHS = Integer.parseInt(line.getOptionValue("b"));
+			}catch(NumberFormatException nfe){
+			    HLA.MAX_BUBBLE_PATHS = 0;
+			}
+			if(HLA.MAX_BUBBLE_PATHS < 1){
+			    System.err.println("Maximum number of bubble paths must be a positive integer: " + line.getOptionValue("b"));
+			    exitRun = true;
+			}
+		    }
+
+		    if(line.hasOption("k")){
+			try{
+			    HLA.TOP_PAIRS = Integer.parseInt(line.getOptionValue("k"));
+			}catch(NumberFormatException nfe){
+			    HLA.TOP_PAIRS = -1;
+			}
+			if(HLA.TOP_PAIRS < 0){
+			    System.err.println("Number of top pairs must be a non-negative integer: " + line.getOptionValue("k"));
+			    exitRun = true;
+			}
+		    }
+
+		    if(line.hasOption("c"))
+			HLA.CHECK_PAIRS = true;
+
+		    outPrefix = line.getOptionValue("o");//outfilePrefix");
 		    String tmploc = line.getOptionValue("d");//msaDirectory");
 		    HLA.MSAFILELOC = tmploc;
 		    if(tmploc.endsWith(File.separator))
@@ -487,10 +683,26 @@ public class HLA{
 			System.err.println("Please download hla_nom_g.txt from the same IMGT Release as msa files.");
 			exitRun = true;
 		    }
+
+		    if(line.hasOption("m")){
+			batch = SampleBatch.read(line.getOptionValue("m"));
+			if(batch == null)
+			    exitRun = true;
+		    }else if(!line.hasOption("o")){
+			System.err.println("Missing required option: o");
+			exitRun = true;
+		    }
 		}
 		bams = line.getArgs();
 		
-		if(bams.length <1 || (bams.length == 1 && bams[bams.length - 1].equals("DEBUG1228")))
+		if(line.hasOption("m")){
+		    if(bams.length == 1 && bams[0].equals("DEBUG1228"))
+			HLA.DEBUG = true;
+		    else if(bams.length > 0){
+			System.err.println("Input bams are given in the manifest file in batch mode (-m).");
+			exitRun = true;
+		    }
+		}else if(bams.length <1 || (bams.length == 1 && bams[bams.length - 1].equals("DEBUG1228")))
 		    throw new ParseException("At least 1 bam file is required. See Usage:");
 		else{
 		    if(bams.length > 1 && bams[bams.length - 1].equals("DEBUG1228")){
@@ -501,11 +713,18 @@ public class HLA{
 			HLA.DEBUG = true;
 		    }
 		    
+		    int numStdin = 0;
 		    for(String b : bams)
-			if(! new File(b).exists()){
+			if(StdinBuffer.isStdin(b))
+			    numStdin++;
+			else if(! new File(b).exists()){
 			    System.err.println("Input bam : " + b + " DOES NOT exist. Please check the bam exists.");
 			    exitRun = true;
 			}
+		    if(numStdin > 1){
+			System.err.println("stdin (" + StdinBuffer.STDIN + ") can only be given once as input.");
+			exitRun = true;
+		    }
 		}
 		    
 	    }
@@ -527,80 +746,98 @@ public class HLA{
 	if(HLA.TYPEADDITIONAL)
 	    list = extList;
 
+	if(batch != null){
+	    batch.run(list, args);
+	    return;
+	}
+
 	File[] bamfiles = new File[bams.length];
 
 	for(int i=0;i<bams.length; i++)
 	    bamfiles[i] = new File(bams[i]);
 	
-	//check if <HLA.OUTPREFIX>.result is writable
+	//check if <outPrefix>.result is writable
 	//if not exit.
 	BufferedWriter resultWriter = null;
 	try{
-	    resultWriter = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + ".result"));
+	    resultWriter = new BufferedWriter(new FileWriter(outPrefix + ".result"));
 	}catch(IOException ioe){
 	    ioe.printStackTrace();
-	    System.err.println("\n\n>>> CANNOT open output file: " + HLA.OUTPREFIX + ".result <<<\n\n");
+	    System.err.println("\n\n>>> CANNOT open output file: " + outPrefix + ".result <<<\n\n");
 	    HLA.help(options);
 	}
 
 	
-	HLA.log = new LogHandler();
+	//start draining stdin now so the aligner writing into it keeps running while graphs are built.
+	for(File b : bamfiles)
+	    if(StdinBuffer.isStdin(b.getPath()))
+		StdinBuffer.start();
+
+	RunContext ctx = new RunContext(outPrefix);
 	for(int i =0; i<args.length;i++)
-	    HLA.log.append(" " + args[i]);
-	HLA.log.appendln();
+	    ctx.log.append(" " + args[i]);
+	ctx.log.appendln();
 
 	try{
 	    System.err.println("----------------REF GRAPH CONSTRUCTION--------------");
 	    
-	    HLA.log.appendln("----------------REF GRAPH CONSTRUCTION--------------");
-	    HLA hla = new HLA(list, HLA.MSAFILELOC + File.separator + "hla_nom_g.txt");
+	    ctx.log.appendln("----------------REF GRAPH CONSTRUCTION--------------");
+	    HLA hla = new HLA(list, HLA.MSAFILELOC + File.separator + "hla_nom_g.txt", ctx);
 
 	    //1. bubble counting before loading reads.
 	    //System.err.println("----------------BUBBLE COUNTING: REF GRAPH--------------");
 	    //HLA.log.appendln("----------------BUBBLE COUNTING: REF GRAPH--------------");
 	    //hla.countStems();
 	    
-	    System.err.println("----------------     READ LOADING     --------------");
-	    
-	    HLA.log.appendln("----------------     READ LOADING     --------------");
-	    
-	    hla.loadReads(bamfiles); 
-	    
-	    System.err.println("----------------    GRAPH CLEANING    --------------");
-	    HLA.log.appendln("----------------    GRAPH CLEANING    --------------");
-	    	    	    
-	    hla.flattenInsertionNodes(list);
-	    hla.removeUnused(list);
-	    hla.removeStems(list);
-	    
-	    /*updating error prob*/
-	    hla.updateErrorProb();
-	    
-	    hla.log.flush();
-	    
-	    StringBuffer resultBuffer = new StringBuffer();
-	    
-	    HLA.DEBUG3 = HLA.DEBUG;
-
-	    hla.countBubblesAndMerge(list, resultBuffer);
-	    
-	    hla.writeResults(resultBuffer, resultWriter);
+	    hla.typeSample(list, bamfiles, resultWriter);
 	}catch(Exception e){
 	    e.printStackTrace();
-	    HLA.log.outToFile();
+	    ctx.log.outToFile();
 	    System.exit(-1);
 	}
 	/*printingWeights*/
 	//hla.printWeights();
-	HLA.log.outToFile();
-    	HLA.log.appendln("NEW_NODE_ADDED:\t" + HLA.NEW_NODE_ADDED);
-	HLA.log.appendln("HOPPPING:\t" + HLA.HOPPING);
-	HLA.log.appendln("INSERTION_NODE_ADDED:\t" + HLA.INSERTION_NODE_ADDED);
-	HLA.log.appendln("INSERTION_WITH_NO_NEW_NODE:\t" + HLA.INSERTION_WITH_NO_NEW_NODE);
-	HLA.log.appendln("INSERTION_COUNTS:\t" + HLA.INSERTION);
+	ctx.log.outToFile();
+    	ctx.log.appendln("NEW_NODE_ADDED:\t" + ctx.newNodeAdded);
+	ctx.log.appendln("HOPPPING:\t" + ctx.hopping);
+	ctx.log.appendln("INSERTION_NODE_ADDED:\t" + ctx.insertionNodeAdded);
+	ctx.log.appendln("INSERTION_WITH_NO_NEW_NODE:\t" + ctx.insertionWithNoNewNode);
+	ctx.log.appendln("INSERTION_COUNTS:\t" + ctx.insertion);
+    }
+
+    //read loading through typing results for one sample. graphs of this HLA are modified.
+    public void typeSample(String[] list, File[] bamfiles, BufferedWriter resultWriter) throws IOException{
+	System.err.println("----------------     READ LOADING     --------------");
+	
+	this.ctx.log.appendln("----------------     READ LOADING     --------------");
+	for(File b : bamfiles)
+	    if(StdinBuffer.isStdin(b.getPath()))
+		this.ctx.log.appendln("Read ahead from stdin during graph construction:\t" + StdinBuffer.start().getBufferedBytes() + "\tbytes");
+	
+	this.loadReads(bamfiles); 
+	
+	System.err.println("----------------    GRAPH CLEANING    --------------");
+	this.ctx.log.appendln("----------------    GRAPH CLEANING    --------------");
+	
+	this.flattenInsertionNodes(list);
+	this.removeUnused(list);
+	this.removeStems(list);
+	
+	/*updating error prob*/
+	this.updateErrorProb();
+	
+	this.ctx.log.flush();
+	
+	StringBuffer resultBuffer = new StringBuffer();
+	
+	this.ctx.debug3 = HLA.DEBUG;
+	
+	this.countBubblesAndMerge(list, resultBuffer);
+	
+	this.writeResults(resultBuffer, resultWriter);
     }
 
-    private static String extractHLAGeneName(String g){
+    public static String extractHLAGeneName(String g){
 	//if(g.indexOf("*") < 0)
 	//return null;
 	return g.substring(0,g.indexOf("*"));
@@ -616,7 +853,7 @@ public class HLA{
 	}
     }
     
-    public static int readNum = 1;
+    private RunContext ctx;
     private HashMap<String, HLAGraph> hlaName2Graph;
     private HashMap<String, ArrayList<HLASequence>> hlaName2typingSequences;
 }
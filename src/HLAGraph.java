@@ -11,37 +11,50 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Queue;
-import java.util.LinkedList;
 import java.util.Collection;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Serializable;
 
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.Cigar;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
 import org.jgrapht.*;
 import org.jgrapht.graph.*;
 
-public class HLAGraph{
+
+public class HLAGraph implements Serializable{
+
+    private static final long serialVersionUID = 1L;
 
     //A B C ... //HLA-DPA1, HLA-DPB1, HLA-DQA1, HLA-DQB1, HLA-DRA, and HLA-DRB1
     private String HLAGeneName; 
-    private ArrayList<Sequence> alleles; //
+    private ArrayList<Sequence> alleles; //shared by sample graphs (forkSample). not modified after the graph is built
     private HashMap<String, Sequence> alleleHash;
+    private Sequence refAllele; //alleles.get(0) or its copy in a sample graph. only allele shifted when insertions are flattened
     
     private SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g;
 
+    private transient RunContext ctx; //run this graph is built or typed in. set again when loaded from graph cache
+
+    private transient BubblePathEnumerator pathEnumerator; //bubble path search on ColumnDAG of g while bubbles are decomposed (countBubbles). graph is not modified while set
+
     //private ArrayList<StringBuffer> interBubbleSequences;
 
     private ArrayList<TmpPath> interBubblePaths2;
 
-    private ArrayList<HashMap<Integer, Node>> nodeHashList;// list index = columnIndex - 1;
+    public static final int NUM_IBASES = 6;
+    private static final int GAP = 4; //iBase of gap node
+
+    private ArrayList<Node[]> columnNodes;// list index = columnIndex - 1; array index = iBase (A C G T gap N)
 
     private ArrayList<HLASequence> typingSequences;
 
@@ -63,7 +76,7 @@ public class HLAGraph{
     /* Outer list index = columnIndex -1 --> insertion point */
     /* Inner list index insertion length */ 
     //private ArrayList<ArrayList<HashMap<Character, Node>>> insertionNodeHashList;
-    private ArrayList<ArrayList<HashMap<Integer, Node>>> insertionNodeHashList;
+    private ArrayList<ArrayList<Node[]>> insertionColumnNodes;
 
     public void setTypingSequences(ArrayList<HLASequence> seqs){
 	this.typingSequences = seqs;
@@ -71,15 +84,19 @@ public class HLAGraph{
 	if(HLA.PRINT_G_GROUP_DB)
 	    this.writeTypingSequences();
     }
+
+    public ArrayList<HLASequence> getTypingSequences(){
+	return this.typingSequences;
+    }
     
     /* 
      * writes out sequence DB for just the typing regions (G-group)
      * multifasta file containing G-group alleles.
      */
-    private void writeTypingSequences(){
+    public void writeTypingSequences(){
 	BufferedWriter bw = null;
 	try{
-	    bw = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + "_" + this.HLAGeneName + "_typingSequences_G_group.fa"));
+	    bw = new BufferedWriter(new FileWriter(this.ctx.outPrefix + "_" + this.HLAGeneName + "_typingSequences_G_group.fa"));
 	    for(HLASequence hs : this.typingSequences)
 		bw.write(hs.toString());
 	    bw.close();
@@ -96,20 +113,72 @@ public class HLAGraph{
     public void addVertex(Node n){
 	int ci = n.getColIndex();
 	this.g.addVertex(n);
-	this.nodeHashList.get(n.getColIndex()-1).put(new Integer(n.getIBase()), n);
+	this.columnNodes.get(n.getColIndex()-1)[n.getIBase()] = n;
     }
     
     /* DO NOT use this to add sNode and tNode */
     public void removeVertex(Node n){
 	//this.nodeHashList.get(n.getColIndex()-1).remove(new Integer(n.getIBase()));
-	this.removeVertexFromNodeHashList(n);
+	this.removeVertexFromColumnNodes(n);
+	for(CustomWeightedEdge e : this.g.incomingEdgesOf(n))
+	    this.g.getEdgeSource(e).uncacheOutEdge(n);
+	n.clearOutEdgeCache();
 	this.g.removeVertex(n);
     }
 
-    //removes node from nodeHashList. We dont touch insertionNodeHashList
-    //because any node added on insertionNodeHashList must have weights.
-    private void removeVertexFromNodeHashList(Node n){
-	this.nodeHashList.get(n.getColIndex()-1).remove(new Integer(n.getIBase()));
+    /* all edge removals go through here so out-edge caches of nodes (see getEdge) never hold removed edges */
+    void removeEdge(CustomWeightedEdge e){
+	this.g.getEdgeSource(e).uncacheOutEdge(this.g.getEdgeTarget(e));
+	this.g.removeEdge(e);
+    }
+
+    private void removeEdges(Collection<CustomWeightedEdge> edges){
+	for(CustomWeightedEdge e : edges)
+	    this.g.getEdgeSource(e).uncacheOutEdge(this.g.getEdgeTarget(e));
+	this.g.removeAllEdges(edges);
+    }
+
+    //removes node from columnNodes. We dont touch insertionColumnNodes
+    //because any node added on insertionColumnNodes must have weights.
+    private void removeVertexFromColumnNodes(Node n){
+	this.columnNodes.get(n.getColIndex()-1)[n.getIBase()] = null;
+    }
+
+    //creates an empty column. Column holds at most one node per iBase.
+    private static Node[] newColumn(){
+	return new Node[HLAGraph.NUM_IBASES];
+    }
+
+    //returns nodes present in a column in iBase order
+    private static Node[] nodesInColumn(Node[] column){
+	int n = 0;
+	for(int i=0; i<column.length; i++){
+	    if(column[i] != null)
+		n++;
+	}
+	Node[] nodes = new Node[n];
+	n = 0;
+	for(int i=0; i<column.length; i++){
+	    if(column[i] != null)
+		nodes[n++] = column[i];
+	}
+	return nodes;
+    }
+
+    //returns iBases present in a column in ascending order
+    private static int[] ibasesInColumn(Node[] column){
+	int n = 0;
+	for(int i=0; i<column.length; i++){
+	    if(column[i] != null)
+		n++;
+	}
+	int[] ibases = new int[n];
+	n = 0;
+	for(int i=0; i<column.length; i++){
+	    if(column[i] != null)
+		ibases[n++] = i;
+	}
+	return ibases;
     }
     
     private void setHLAGeneName(String gn){
@@ -117,10 +186,11 @@ public class HLAGraph{
     }
     
     public Sequence getRefAllele(){
-	return this.alleles.get(0);
+	return this.refAllele;
     }
 
-    public HLAGraph(ArrayList<Sequence> seqs, String gn){
+    public HLAGraph(ArrayList<Sequence> seqs, String gn, RunContext ctx){
+	this.ctx = ctx;
 	//int numTypingExons = 1;
 	//if(this.isClassI())
 	//  numTypingExons = 2;
@@ -130,123 +200,119 @@ public class HLAGraph{
 	this.headerExcessNodes = new Node[2][];
 	this.tailExcessNodes = new Node[2][];
 	this.alleles = seqs; 
+	this.refAllele = seqs.get(0);
 	this.alleleHash = new HashMap<String, Sequence>();
 	for(int i=0;i<this.alleles.size();i++){
 	    this.alleleHash.put(this.alleles.get(i).getAlleleName(), this.alleles.get(i));
 	}
 	//this.g = new SimpleDirectedWeightedGraph<Node, DefaultWeightedEdge>(DefaultWeightedEdge.class);
-	this.g = new SimpleDirectedWeightedGraph<Node, CustomWeightedEdge>(CustomWeightedEdge.class);
+	this.g = new SimpleDirectedWeightedGraph<Node, CustomWeightedEdge>(new EdgeIdFactory(this));
 	this.sNode = new Node('s', 0);
 	this.tNode = new Node('t', this.alleles.get(0).getColLength() + 1);
 	this.g.addVertex(sNode);
 	this.g.addVertex(tNode);
 	
-	//this.nodeHashList = new ArrayList<HashMap<Character, Node>>();
-	this.nodeHashList = new ArrayList<HashMap<Integer, Node>>();
-	//this.insertionNodeHashList = new ArrayList<ArrayList<HashMap<Character, Node>>>();
-	this.insertionNodeHashList = new ArrayList<ArrayList<HashMap<Integer, Node>>>();
+	this.columnNodes = new ArrayList<Node[]>();
+	this.insertionColumnNodes = new ArrayList<ArrayList<Node[]>>();
 	this.buildGraph();
 	this.traverse();
     }
 
     /*
-     * finds all s-t paths in this graph based on BFS technique.
-     * Should only be used for each bubble.
-     *
+     * Graph for typing one sample, made from a reference graph before any read is loaded.
+     * Alleles and typing sequences are shared with the reference graph and are not modified by typing.
+     * Only nodes and edges (without reads) are copied, keeping edge ids,
+     * so reads, novel nodes and graph cleaning never touch the reference graph.
      */
-    public ArrayList<Path> findAllSTPath(Node s, Node t){
-	int bubbleSize = t.getColIndex() - s.getColIndex() + 1;
-	int endColumnIndex = t.getColIndex();
-	ArrayList<Path> results = new ArrayList<Path>();
-	Queue<Path> pathsQ = new LinkedList<Path>();
-	//Set<CustomeWeightedEdge> edges = this.g.outgoingEdgesOf(s);
-	Iterator<CustomWeightedEdge> itr = this.g.outgoingEdgesOf(s).iterator();
-	//first load all outing edges as paths in paths queue.
-	while(itr.hasNext()){
-	    pathsQ.add(new Path(itr.next()));
-	}
-	Path firstPath = null;
-	//while we have paths to explore further in the queue
-	while((firstPath = pathsQ.poll())!=null){
-	    //obtain the vertex at the end for this path
-	    Node lastVertex = firstPath.getLastVertex(this.g);
-	    //if the last vertex is t, then we add this path in the result
-	    if(lastVertex.equals(t)){
-		if(firstPath.getOrderedEdgeList().size() == (bubbleSize -1))
-		    results.add(firstPath);
-		else{
-		    if(HLA.DEBUG){
-			HLA.log.appendln("IGNORING PATH (WRONG LENGTH)");
-			firstPath.printInfo();
-		    }
-		}
-	    }else{//otherwise, we need to explor the paths further ONLY IF current columnIndex is less than destination col INDEX
-		if(lastVertex.getColIndex() < endColumnIndex){
-		    itr = this.g.outgoingEdgesOf(lastVertex).iterator();
-		    while(itr.hasNext()){
-			Path tmpP = firstPath.deepCopy();
-			tmpP.appendEdge(itr.next());
-			pathsQ.add(tmpP);
-		    }
-		}
-	    }
+    public HLAGraph forkSample(RunContext ctx){
+	return new HLAGraph(this, ctx);
+    }
+
+    private HLAGraph(HLAGraph ref, RunContext ctx){
+	this.ctx = ctx;
+	this.HLAGeneName = ref.HLAGeneName;
+	this.headerExcessLengthBeyondTypingBoundary = new int[2];
+	this.tailExcessLengthBeyondTypingBoundary = new int[2];
+	this.headerExcessNodes = new Node[2][];
+	this.tailExcessNodes = new Node[2][];
+	this.alleles = ref.alleles;
+	this.alleleHash = ref.alleleHash;
+	this.refAllele = ref.refAllele.copy();
+	this.typingSequences = ref.typingSequences;
+	this.columnLen = ref.columnLen;
+
+	//vertices and edges are added in reference order so iteration order is the same as in the reference graph
+	IdentityHashMap<Node, Node> copies = new IdentityHashMap<Node, Node>();
+	this.g = new SimpleDirectedWeightedGraph<Node, CustomWeightedEdge>(new EdgeIdFactory(this));
+	for(Node n : ref.g.vertexSet()){
+	    Node c = new Node(n);
+	    copies.put(n, c);
+	    this.g.addVertex(c);
 	}
-	return results;
+	for(CustomWeightedEdge e : ref.g.edgeSet()){
+	    CustomWeightedEdge c = e.copyWithoutReads();
+	    this.g.addEdge(copies.get(ref.g.getEdgeSource(e)), copies.get(ref.g.getEdgeTarget(e)), c);
+	    this.g.setEdgeWeight(c, ref.g.getEdgeWeight(e));
+	}
+	this.sNode = copies.get(ref.sNode);
+	this.tNode = copies.get(ref.tNode);
+
+	this.columnNodes = HLAGraph.copyColumns(ref.columnNodes, copies);
+	this.insertionColumnNodes = new ArrayList<ArrayList<Node[]>>(ref.insertionColumnNodes.size());
+	for(ArrayList<Node[]> insColumns : ref.insertionColumnNodes)
+	    this.insertionColumnNodes.add(HLAGraph.copyColumns(insColumns, copies));
     }
 
-    public ArrayList<Path> findAllSTPathPruning(Node s, Node t){
-	int bubbleSize = t.getColIndex() - s.getColIndex() + 1;
-	
-	int endColumnIndex = t.getColIndex();
-	ArrayList<Path> results = new ArrayList<Path>();
-	Queue<Path> pathsQ = new LinkedList<Path>();
-	Queue<CustomHashMap> readsetQ = new LinkedList<CustomHashMap>(); //we need to keep track of readset to prune branches based on the size
-	Iterator<CustomWeightedEdge> itr = this.g.outgoingEdgesOf(s).iterator();
-	//first load all outing edges as paths in paths queue.
-	while(itr.hasNext()){
-	    //Path curP = new Path(itr.next());
-	    CustomWeightedEdge curE = itr.next();
-	    pathsQ.add(new Path(curE));
-	    readsetQ.add(curE.getReadHashSet().clone());
-	}
-	Path firstPath = null;
-	CustomHashMap firstReadSet = null;
-	//while we have paths to explore further in the queue
-	while((firstPath = pathsQ.poll())!=null){
-	    firstReadSet = readsetQ.poll();
-	    
-	    //obtain the vertex at the end for this path
-	    Node lastVertex = firstPath.getLastVertex(this.g);
-	    //if the last vertex is t, then we add this path in the result
-	    if(lastVertex.equals(t)){
-		if(firstPath.getOrderedEdgeList().size() == (bubbleSize -1))
-		    results.add(firstPath);
-		else{
-		    if(HLA.DEBUG){
-			HLA.log.appendln("IGNORING PATH (WRONG LENGTH)");
-			firstPath.printInfo();
-		    }
-		}
-	    }else{//otherwise, we need to explor the paths further
-		if(lastVertex.getColIndex() < endColumnIndex){
-		    itr = this.g.outgoingEdgesOf(lastVertex).iterator();
-		    while(itr.hasNext()){
-			Path tmpP = firstPath.deepCopy();
-			CustomHashMap tmpReadSet = firstReadSet.clone();
-			CustomWeightedEdge nextE = itr.next();
-			tmpReadSet.intersectionPE(nextE.getReadHashSet());
-			if(firstReadSet.size() > 0){ // we only add if intersection size is > 0. This greatly prunes paths that are needed to be explored.
-			    tmpP.appendEdge(nextE);//itr.next());
-			    pathsQ.add(tmpP);
-			    readsetQ.add(tmpReadSet);
-			}
-		    }
-		}
+    public RunContext getContext(){
+	return this.ctx;
+    }
+
+    //graph restored from graph cache
+    public void setContext(RunContext ctx){
+	this.ctx = ctx;
+    }
+
+    /* edges added to g (g.addEdge(s, t)) get their ids from the RunContext of the graph */
+    private static class EdgeIdFactory implements EdgeFactory<Node, CustomWeightedEdge>, Serializable{
+	private static final long serialVersionUID = 1L;
+
+	private HLAGraph hg;
+
+	EdgeIdFactory(HLAGraph hg){
+	    this.hg = hg;
+	}
+
+	public CustomWeightedEdge createEdge(Node s, Node t){
+	    return new CustomWeightedEdge(this.hg.ctx.nextEdgeId());
+	}
+    }
+
+    private static ArrayList<Node[]> copyColumns(ArrayList<Node[]> columns, IdentityHashMap<Node, Node> copies){
+	ArrayList<Node[]> copied = new ArrayList<Node[]>(columns.size());
+	for(Node[] column : columns){
+	    Node[] c = HLAGraph.newColumn();
+	    for(int i=0; i<column.length; i++){
+		if(column[i] != null)
+		    c[i] = copies.get(column[i]);
 	    }
+	    copied.add(c);
 	}
-	return results;
+	return copied;
     }
 
+    /*
+     * finds all s-t paths in this graph.
+     * Should only be used for each bubble (see BubblePathEnumerator).
+     *
+     */
+    public ArrayList<Path> findAllSTPath(Node s, Node t){
+	return this.pathEnumerator.findAllSTPath(s, t);
+    }
+
+    //only paths with supporting reads across all edges
+    public ArrayList<Path> findAllSTPathPruning(Node s, Node t){
+	return this.pathEnumerator.findAllSTPathPruning(s, t);
+    }
 
     
     //modified so that if pre node is null, create curnode but dont' attempt to connect w/ an edge
@@ -255,7 +321,7 @@ public class HLAGraph{
 	
 	this.g.addVertex(cur);
 	//this.nodeHashList.get(colPos - 1).put(new Character(b), cur);
-	this.nodeHashList.get(colPos - 1).put(new Integer(Base.char2ibase(b)), cur);
+	this.columnNodes.get(colPos - 1)[Base.char2ibase(b)] = cur;
 	if(pre != null){
 	    //DefaultWeightedEdge e = this.g.addEdge(pre, cur);
 	    this.addAndIncrement(pre, cur, isRefStrand, qual, readNum);
@@ -279,21 +345,36 @@ public class HLAGraph{
 		System.err.println(">>>>>>>>>>> source NULL <<<<<<<<<<<");
 	    if(target == null)
 		System.err.println(">>>>>>>>>>> target NULL <<<<<<<<<<<");
-	    HLA.log.outToFile();
+	    this.ctx.log.outToFile();
 	    //System.exit(-9);
 	    return false;
 	}
+	source.cacheOutEdge(target, e);
 	e.addRead(readNum, qual);
 	this.g.setEdgeWeight(e, 0.0d);
 	e.incrementWeight(this.g, isRefStrand, qual);
 	return true;
     }
 
+    /* same as g.getEdge(source, target) without jgrapht's per-call iterator. 
+       edges found are remembered on source; removeVertex and removeEdge(s) forget removed edges. */
+    CustomWeightedEdge getEdge(Node source, Node target){
+	if(source == null)
+	    return null;
+	CustomWeightedEdge e = source.getCachedOutEdge(target);
+	if(e != null)
+	    return e;
+	e = this.g.getEdge(source, target);
+	if(e != null)
+	    source.cacheOutEdge(target, e);
+	return e;
+    }
+
     //private void incrementWeight(Node source, Node target){
     private void incrementWeight(Node source, Node target, boolean isRefStrand, byte qual, int readNum){
 	//DefaultWeightedEdge e = g.getEdge(source, target);
 	//target.addRead(readNum);
-	CustomWeightedEdge e = g.getEdge(source, target);
+	CustomWeightedEdge e = this.getEdge(source, target);
 	if(e == null)
 	    this.addAndIncrement(source,target, isRefStrand, qual, readNum);
 	else{
@@ -303,16 +384,18 @@ public class HLAGraph{
 	}
     }
     
+    //base quality used for edges. qualities below 2 count as 2.
+    private static byte qualAt(byte[] quals, int i){
+	byte q = quals[i];
+	return q < 2 ? (byte) 2 : q;
+    }
+
     //readNum is a readIdentifier [int]
     public int addWeight(SAMRecord sr, int readNum){
 	int numOp = 0;
 	Cigar cigar = sr.getCigar();
 	byte[] bases = sr.getReadBases(); //ASCII bytes ACGTN=.
-	byte[] quals = sr.getBaseQualities();
-	for(int i=0; i<quals.length; i++){
-	    if(quals[i] < 2)
-		quals[i] = 2;
-	}
+	byte[] quals = sr.getBaseQualities(); //record's own array. not modified, use HLAGraph.qualAt
 	int baseIndex = 0;
 	int refBasePos = sr.getAlignmentStart();
 	Node prevnode = null;
@@ -344,7 +427,8 @@ public class HLAGraph{
 	
 	
 	if(cigar==null) return 0;
-	for(final CigarElement ce : cigar.getCigarElements()){
+	for(int k=0; k<cigar.numCigarElements(); k++){
+	    final CigarElement ce = cigar.getCigarElement(k);
 	    //HLA.log.appendln(ce.toString() + "\t" + ce.getLength());
 	    CigarOperator op = ce.getOperator();
 	    int cigarLen = ce.getLength();
@@ -367,26 +451,26 @@ public class HLAGraph{
 			    int tmpColPos = curAllele.getNextColPosForBase(colPos - 1) + 1;
 			    if(tmpColPos > colPos){
 				for(int j=colPos;j<tmpColPos;j++){
-				    HLA.HOPPING++;
-				    curnode = this.nodeHashList.get(j-1).get(new Integer(Base.char2ibase('.')));
-				    this.incrementWeight(prevnode,curnode,isRefStrand, quals[baseIndex-1], readNum);
+				    this.ctx.hopping.increment();
+				    curnode = this.columnNodes.get(j-1)[GAP];
+				    this.incrementWeight(prevnode,curnode,isRefStrand, HLAGraph.qualAt(quals, baseIndex-1), readNum);
 				    prevnode=curnode;
 				}
 				colPos = tmpColPos;
 			    }
 
-			    curnode = this.nodeHashList.get(colPos -1).get(new Integer(Base.char2ibase((char)bases[baseIndex])));
+			    curnode = this.columnNodes.get(colPos -1)[Base.byte2ibase(bases[baseIndex])];
 			    
 			    /* if NO such node is found, we add new node and add edge from prevnode.
 			       mismatch that is not covered by reference sequence */
 			    if(curnode == null){
-				HLA.NEW_NODE_ADDED++;
-				curnode = this.addMissingNode((char)bases[baseIndex], colPos, curnode, prevnode, isRefStrand, quals[baseIndex], readNum);
+				this.ctx.newNodeAdded.increment();
+				curnode = this.addMissingNode((char)bases[baseIndex], colPos, curnode, prevnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum);
 				if(curnode == null)
-				    HLA.log.appendln("IMPOSSIBLE: curnode NULL again after adding missing node!");
+				    this.ctx.log.appendln("IMPOSSIBLE: curnode NULL again after adding missing node!");
 			    }
 			    else if(prevnode != null)/* if prevnode is not set. firstBase*/
-				this.incrementWeight(prevnode, curnode, isRefStrand, quals[baseIndex], readNum);
+				this.incrementWeight(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum);
 			    
 			    prevnode=curnode;
 			    baseIndex++;
@@ -405,22 +489,22 @@ public class HLAGraph{
 			    int tmpColPos = curAllele.getNextColPosForBase(colPos - 1) + 1;
 			    if(tmpColPos > colPos){
 				for(int j=colPos;j<tmpColPos;j++){
-				    HLA.HOPPING++;
-				    curnode = this.nodeHashList.get(j-1).get(new Integer(Base.char2ibase('.')));
-				    this.incrementWeight(prevnode, curnode, isRefStrand, quals[baseIndex-1], readNum);
+				    this.ctx.hopping.increment();
+				    curnode = this.columnNodes.get(j-1)[GAP];
+				    this.incrementWeight(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex-1), readNum);
 				    prevnode=curnode;
 				}
 				colPos = tmpColPos;
 			    }
 			    /* need to grab gap node at current column */
-			    curnode = this.nodeHashList.get(colPos - 1).get(new Integer(Base.char2ibase('.')));
+			    curnode = this.columnNodes.get(colPos - 1)[GAP];
 			    
 			    /* if NO such node is found, we add new node and add edge from prevnode */
 			    if(curnode == null){
-				HLA.NEW_NODE_ADDED++;
-				curnode = this.addMissingNode('.', colPos, curnode, prevnode, isRefStrand, quals[baseIndex-1], readNum);
+				this.ctx.newNodeAdded.increment();
+				curnode = this.addMissingNode('.', colPos, curnode, prevnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex-1), readNum);
 			    }else
-				this.incrementWeight(prevnode, curnode, isRefStrand, quals[baseIndex-1], readNum);
+				this.incrementWeight(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex-1), readNum);
 			    
 			    prevnode=curnode;
 			    //refBasePos++;
@@ -437,58 +521,49 @@ public class HLAGraph{
 			    //
 			    int insertionIndex = -1;
 			    for(int i=0; i<cigarLen; i++){
-				HLA.INSERTION++;
+				this.ctx.insertion.increment();
 				numOp++;
 				int tmpColPos = curAllele.getNextColPosForBase(colPos - 1) + 1;
-				if(tmpColPos == colPos){//then we must insert into insertionNodeHashList
+				if(tmpColPos == colPos){//then we must insert into insertionColumnNodes
 				    insertionIndex++;
-				    if(this.insertionNodeHashList.get(colPos - 1).size() > insertionIndex){
-					//curnode = this.insertionNodeHashList.get(colPos - 1).get(i).get(new Character((char)bases[baseIndex]));
-					curnode = this.insertionNodeHashList.get(colPos - 1).get(insertionIndex).get(new Integer(Base.char2ibase((char)bases[baseIndex])));
+				    if(this.insertionColumnNodes.get(colPos - 1).size() > insertionIndex){
+					curnode = this.insertionColumnNodes.get(colPos - 1).get(insertionIndex)[Base.byte2ibase(bases[baseIndex])];
 				    }else{//we need to add extra position (insertion length)
-					//this.insertionNodeHashList.get(colPos - 1).add(new HashMap<Character, Node>());
-					
-					this.insertionNodeHashList.get(colPos - 1).add(new HashMap<Integer, Node>());
+					this.insertionColumnNodes.get(colPos - 1).add(HLAGraph.newColumn());
 					curnode = null;
 				    }
 				    if(curnode == null){
 					curnode = new Node((char)bases[baseIndex], colPos);
-					HLA.INSERTION_NODE_ADDED++;
+					this.ctx.insertionNodeAdded.increment();
 					this.g.addVertex(curnode);
-					this.insertionNodeHashList.get(colPos - 1).get(insertionIndex).put(new Integer(Base.char2ibase((char)bases[baseIndex])), curnode);
-					if(!this.addAndIncrement(prevnode, curnode, isRefStrand, quals[baseIndex], readNum)){
-					    HLA.log.appendln("ERROR PROCESSING a SAMRECORD:\n" + sr.getSAMString());
-					    HLA.log.outToFile();
-					    System.exit(-9);
+					this.insertionColumnNodes.get(colPos - 1).get(insertionIndex)[Base.byte2ibase(bases[baseIndex])] = curnode;
+					if(!this.addAndIncrement(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum)){
+					    this.ctx.fail("ERROR PROCESSING a SAMRECORD:\n" + sr.getSAMString(), -9);
 					}
 					//DefaultWeightedEdge e = this.g.addEdge(prevnode, curnode);
 					//this.g.setEdgeWeight(e, 0.0d);
-					//this.incrementWeight(prevnode, curnode, isRefStrand,quals[baseIndex]);
+					//this.incrementWeight(prevnode, curnode, isRefStrand,HLAGraph.qualAt(quals, baseIndex));
 				    }else{
 					//this.incrementWeight(prevnode, curnode);
-					this.incrementWeight(prevnode, curnode, isRefStrand, quals[baseIndex], readNum);
+					this.incrementWeight(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum);
 				    }
 				    prevnode = curnode;
 				    baseIndex++;
 				}else if(tmpColPos > colPos){//then we must insert here.
-				    curnode = this.nodeHashList.get(colPos - 1).get(new Integer(Base.char2ibase((char)bases[baseIndex])));
+				    curnode = this.columnNodes.get(colPos - 1)[Base.byte2ibase(bases[baseIndex])];
 				    if(curnode == null){
-					HLA.NEW_NODE_ADDED++;
+					this.ctx.newNodeAdded.increment();
 					//curnode = this.addMissingNode((char)bases[baseIndex], colPos, curnode, prevnode);
-					curnode = this.addMissingNode((char)bases[baseIndex], colPos, curnode, prevnode, isRefStrand, quals[baseIndex], readNum);
+					curnode = this.addMissingNode((char)bases[baseIndex], colPos, curnode, prevnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum);
 					if(curnode == null){
-					    HLA.log.appendln("IMPOSSIBLE: curnode NULL again after adding missing node! (1)[addWeight]");
-					    HLA.log.outToFile();
-					    System.exit(9);
+					    this.ctx.fail("IMPOSSIBLE: curnode NULL again after adding missing node! (1)[addWeight]", 9);
 					}
 				    }else if(prevnode !=null){
-					HLA.INSERTION_WITH_NO_NEW_NODE++;
+					this.ctx.insertionWithNoNewNode.increment();
 					//this.incrementWeight(prevnode, curnode);
-					this.incrementWeight(prevnode, curnode, isRefStrand, quals[baseIndex], readNum);
+					this.incrementWeight(prevnode, curnode, isRefStrand, HLAGraph.qualAt(quals, baseIndex), readNum);
 				    }else if(prevnode == null){
-					HLA.log.appendln("SHOULD NOT HAPPEND (2)[addWeight]");//can't start with insertion
-					HLA.log.outToFile();
-					System.exit(9);
+					this.ctx.fail("SHOULD NOT HAPPEND (2)[addWeight]", 9);//can't start with insertion
 				    }
 				    
 				    prevnode = curnode;
@@ -496,16 +571,14 @@ public class HLAGraph{
 				    colPos++;
 				    insertionIndex = -1;
 				}else{//should not happen.
-				    HLA.log.appendln("SHOULD NOT HAPPEND (3)[addWeight]");
-				    HLA.log.outToFile();
-				    System.exit(9);
+				    this.ctx.fail("SHOULD NOT HAPPEND (3)[addWeight]", 9);
 				}
 				
 			    }
 			}
 			break;
 		    }
-		default: HLA.log.appendln("UNKNOWN CIGAROP:\t" + ce.toString());
+		default: this.ctx.log.appendln("UNKNOWN CIGAROP:\t" + ce.toString());
 		    break;
 		}
 	    
@@ -532,25 +605,18 @@ public class HLAGraph{
 	    for(int j=0; j<curSeq.getColLength(); j++){
 		//HLA.log.append("[" + j + "]");
 		if(i==0){
-		    //this.nodeHashList.add(new HashMap<Character, Node>());
-		    this.nodeHashList.add(new HashMap<Integer, Node>());
-		    
-		    //this.insertionNodeHashList.add(new ArrayList<HashMap<Character, Node>>());
-		    this.insertionNodeHashList.add(new ArrayList<HashMap<Integer, Node>>());
+		    this.columnNodes.add(HLAGraph.newColumn());
+		    this.insertionColumnNodes.add(new ArrayList<Node[]>());
 		}
-		//HashMap<Character, Node> curHash = nodeHashList.get(j);
-		HashMap<Integer, Node> curHash = nodeHashList.get(j);
+		Node[] curColumn = this.columnNodes.get(j);
 		
-		//Character curChar = new Character(curSeq.baseAt(j).getBase());
-		Integer curInt = new Integer(curSeq.baseAt(j).getIBase());
+		int curInt = curSeq.baseAt(j).getIBase();
 		
-		//Node tmpNode = curHash.get(curChar); //retrieve node
-		Node tmpNode = curHash.get(curInt); //retrieve node
+		Node tmpNode = curColumn[curInt]; //retrieve node
 		if(tmpNode == null){		//if we have not added this node
 		    tmpNode= new Node(curSeq.baseAt(j));
 		    this.g.addVertex(tmpNode);
-		    //curHash.put(curChar,tmpNode);
-		    curHash.put(curInt,tmpNode);
+		    curColumn[curInt] = tmpNode;
 		}
 		
 		//add an edge
@@ -576,16 +642,16 @@ public class HLAGraph{
     }
 
     public void printStartEndNodeInfo(){
-	HLA.log.appendln(this.sNode.toString() + "|ind("+this.g.inDegreeOf(this.sNode) + ":outd(" + this.g.outDegreeOf(this.sNode ) + ")");
-	HLA.log.appendln(this.tNode.toString() + "|ind("+this.g.inDegreeOf(this.tNode) + ":outd(" + this.g.outDegreeOf(this.tNode ) + ")");
+	this.ctx.log.appendln(this.sNode.toString() + "|ind("+this.g.inDegreeOf(this.sNode) + ":outd(" + this.g.outDegreeOf(this.sNode ) + ")");
+	this.ctx.log.appendln(this.tNode.toString() + "|ind("+this.g.inDegreeOf(this.tNode) + ":outd(" + this.g.outDegreeOf(this.tNode ) + ")");
     }
 
 
-    public double getTotalWeightForColumn(HashMap<Integer, Node> m, Node preNode){
+    public double getTotalWeightForColumn(Node[] m, Node preNode){
 	double totalWeight = 0;
 	Node curNode = null;
 	for(int i=0;i<6;i++){
-	    curNode = m.get(new Integer(i));
+	    curNode = m[i];
 	    CustomWeightedEdge e = this.g.getEdge(preNode,curNode);
 	    if(e!=null)
 		totalWeight += this.g.getEdgeWeight(e);
@@ -594,7 +660,7 @@ public class HLAGraph{
     }
     
     public ArrayList<int[]> obtainTypingIntervals(){
-	Sequence ref = this.alleles.get(0);
+	Sequence ref = this.refAllele;
 	ArrayList<int[]> typingIntervals = new ArrayList<int[]>();
 	if(this.isClassI()){
 	    /* typing exon 2 + intron + exon 3 */
@@ -630,9 +696,9 @@ public class HLAGraph{
     }
     
     public boolean traverseAndWeights(){
-	HLA.log.appendln("=========================");
-	HLA.log.appendln("=  " + this.HLAGeneName);
-	HLA.log.appendln("=========================");
+	this.ctx.log.appendln("=========================");
+	this.ctx.log.appendln("=  " + this.HLAGeneName);
+	this.ctx.log.appendln("=========================");
 
 	ArrayList<int[]> typingIntervals = this.obtainTypingIntervals();
 	
@@ -661,8 +727,7 @@ public class HLAGraph{
 		//k should be 0-based. start and end are 1-based (inclusive, exclusive) index.
 		for(int k=start-2; k<end-1; k++){
 		    char uchar = Character.toUpperCase(curseq.baseAt(k).getBase());
-		    HashMap<Integer, Node> curHash = this.nodeHashList.get(k);
-		    curNode = this.nodeHashList.get(k).get(new Integer(Base.char2ibase(uchar)));
+		    curNode = this.columnNodes.get(k)[Base.char2ibase(uchar)];
 		    if(curNode == null){
 			preNode = curNode;
 			intact = false;
@@ -677,7 +742,7 @@ public class HLAGraph{
 			    //break;
 			}else{
 			    double tmpw = this.g.getEdgeWeight(e);
-			    double total = this.getTotalWeightForColumn(this.nodeHashList.get(j), preNode);
+			    double total = this.getTotalWeightForColumn(this.columnNodes.get(j), preNode);
 			    if(tmpw > 0.0d){
 				exonSum+=tmpw;
 				if(tmpw/total < 0.25d){
@@ -701,7 +766,7 @@ public class HLAGraph{
 	    if(intact){
 		out.append(("\n" + curseq.getAlleleName() + "\tNO_EDGE:\t" + noEdge  +"\tE_SUM:\t" + exonSum + "\tE_ZERO:\t" + exonNumZero + "\tE_SUM_P\t" + exonSump + "\tMAXFLOW\t" + exonFlow + "\n"));
 	    //out.append(("\n" + curseq.getAlleleName() + "\tSUM:\t" + sum + "\t#ZERO:\t" + numZero + "\tE_SUM:\t" + exonSum + "\tE_ZERO:\t" + exonNumZero + "\tSUM_P:\t" + sump + "\tE_SUM_P\t" + exonSump + "\tMAXFLOW\t" + exonFlow + "\n"));
-		HLA.log.appendln(out.toString());
+		this.ctx.log.appendln(out.toString());
 	    }
 	}
 	return true;
@@ -733,8 +798,7 @@ public class HLAGraph{
 	    boolean intact = true;
 	    for(int j=0; j<curseq.getColLength(); j++){
 		char uchar = Character.toUpperCase(curseq.baseAt(j).getBase());
-		HashMap<Integer, Node> curHash = this.nodeHashList.get(j);
-		curNode = this.nodeHashList.get(j).get(new Integer(Base.char2ibase(uchar)));
+		curNode = this.columnNodes.get(j)[Base.char2ibase(uchar)];
 		if(!preNode.equals(this.sNode)){
 		    //HLA.log.append(uchar + "[" + this.g.getEdgeWeight(this.g.getEdge(preNode, curNode)) + "]->");
 		    CustomWeightedEdge e = this.g.getEdge(preNode, curNode);
@@ -743,7 +807,7 @@ public class HLAGraph{
 			break;
 		    }
 		    double tmpw = this.g.getEdgeWeight(this.g.getEdge(preNode, curNode));
-		    double total = this.getTotalWeightForColumn(this.nodeHashList.get(j), preNode);
+		    double total = this.getTotalWeightForColumn(this.columnNodes.get(j), preNode);
 		    if(tmpw > 0){
 			if(tmpw/total < 0.3d){
 			    ;//HLA.log.appendln("(I)LOWPROB ->\t" + this.g.getEdge(preNode,curNode).getGroupErrorProb()+ "\t" + (tmpw/total));
@@ -791,11 +855,11 @@ public class HLAGraph{
     */    
     
     public void traverse(){
-	HLA.log.appendln("Traversing (" + this.alleles.size() + ")");
+	this.ctx.log.appendln("Traversing (" + this.alleles.size() + ")");
 	Node preNode;// = this.sNode;
 	Node curNode;
 	for(int i=0; i<this.alleles.size(); i++){
-	    this.alleles.get(i).verify();
+	    this.alleles.get(i).verify(this.ctx.log);
 	    preNode = this.sNode;
 	    Sequence curseq = this.alleles.get(i);
 	    for(int j=0; j<curseq.getColLength(); j++){
@@ -803,14 +867,11 @@ public class HLAGraph{
 		char uchar = Character.toUpperCase(curseq.baseAt(j).getBase());
 		char lchar = Character.toUpperCase(curseq.baseAt(j).getBase());
 		
-		//HashMap<Character, Node> curHash = this.nodeHashList.get(j);
-		HashMap<Integer, Node> curHash = this.nodeHashList.get(j);
+		Node[] curColumn = this.columnNodes.get(j);
 		
-		//if(curHash.get(new Character(uchar)) != null){
-		if(curHash.get(new Integer(Base.char2ibase(uchar))) != null){
+		if(curColumn[Base.char2ibase(uchar)] != null){
 		    //HLA.log.appendln("NODE FOUND IN HASH[UPPER}");
-		    //curNode = curHash.get(new Character(uchar));
-		    curNode = curHash.get(new Integer(Base.char2ibase(uchar)));
+		    curNode = curColumn[Base.char2ibase(uchar)];
 		    /*
 		    if(this.g.getEdge(preNode, curNode) == null)
 			HLA.log.appendln("\tWRONG, THIS SHOULD ALREADY BE IN THE GRAPH.\n" + "prevNode\t:" + preNode.toString() + "\tcurNode\t:" + curNode.toString());
@@ -820,10 +881,9 @@ public class HLAGraph{
 		    preNode = curNode;
 			
 		    //}else if(curHash.get(new Character(lchar)) != null){
-		}else if(curHash.get(new Integer(Base.char2ibase(lchar))) != null){
+		}else if(curColumn[Base.char2ibase(lchar)] != null){
 		    //HLA.log.appendln("NODE FOUND IN LOWER}");
-		    //curNode = curHash.get(new Character(lchar));
-		    curNode = curHash.get(new Integer(Base.char2ibase(lchar)));
+		    curNode = curColumn[Base.char2ibase(lchar)];
 		    /*
 		    if(this.g.getEdge(preNode, curNode) == null)
 			HLA.log.appendln("\tWRONG, THIS SHOULD ALREADY BE IN THE GRAPH.");
@@ -836,7 +896,7 @@ public class HLAGraph{
 		}
 	    }
 	}
-	HLA.log.appendln("DONE Traversing");
+	this.ctx.log.appendln("DONE Traversing");
     }
     
     public void updateEdgeWeightProb(){
@@ -899,7 +959,7 @@ public class HLAGraph{
 	this.resultBuffer = rb;
 	this.processBubbles(this.countBubbles());
 	
-	HLA.log.flush();
+	this.ctx.log.flush();
     }
 
     /*
@@ -940,18 +1000,18 @@ public class HLAGraph{
     */
     public void processBubbles(ArrayList<Bubble> bubbles){
 	if(bubbles == null){
-	    HLA.log.appendln("CANNOT PROCEED for HLA gene:\t" +HLAGeneName);
+	    this.ctx.log.appendln("CANNOT PROCEED for HLA gene:\t" +HLAGeneName);
 	    return;
 	}else{
 	    /* to load actual bubble sequence in each paths found in each bubble */
 	    if(HLA.DEBUG){
-		HLA.log.appendln("**************************");
-		HLA.log.appendln("Checking numBubbles: " + bubbles.size());
+		this.ctx.log.appendln("**************************");
+		this.ctx.log.appendln("Checking numBubbles: " + bubbles.size());
 	    }
 	    for(int i=0; i<bubbles.size(); i++){
 		if(HLA.DEBUG){
 		    if(bubbles.get(i).isFirstBubble()){
-			HLA.log.appendln("Bubble (" + i + "):\t[FB]" );
+			this.ctx.log.appendln("Bubble (" + i + "):\t[FB]" );
 		    }
 		}
 		bubbles.get(i).initBubbleSequences();
@@ -966,19 +1026,19 @@ public class HLAGraph{
 	    Bubble lastMergedBubble = curSuperBubble;
 	    int lastSegregationColumnIndex = curSuperBubble.getStart().get(0);
 	    if(HLA.DEBUG)
-		HLA.log.appendln("(iteration 0):\t" + curSuperBubble.getNumPaths());
+		this.ctx.log.appendln("(iteration 0):\t" + curSuperBubble.getNumPaths());
 	    
 	    for(int i=1; i<bubbles.size(); i++){
 		if(HLA.DEBUG){
-		    HLA.log.appendln("\t(attempting merging)\t" + bubbles.get(i).getNumPaths());
+		    this.ctx.log.appendln("\t(attempting merging)\t" + bubbles.get(i).getNumPaths());
 		    bubbles.get(i).printBubbleSequence();
 		}
 		if(HLA.DEBUG){
-		    HLA.log.append("(SB)\t");
+		    this.ctx.log.append("(SB)\t");
 		    curSuperBubble.printBubbleSequenceSizes(); 
 		}
 		if(HLA.DEBUG){
-		    HLA.log.append("(OB)\t");
+		    this.ctx.log.append("(OB)\t");
 		    bubbles.get(i).printBubbleSequenceSizes();
 		}
 		//boolean phased = curSuperBubble.mergeBubble(bubbles.get(i));
@@ -991,9 +1051,9 @@ public class HLAGraph{
 		if(bubbles.get(i).isFirstBubble() || ms.isSplit()){
 		    if(HLA.DEBUG){
 			if(bubbles.get(i).isFirstBubble())
-			    HLA.log.appendln("NOT PHASING OVER DIFFERENT EXONS --> setting OB as curSuperBubble");
+			    this.ctx.log.appendln("NOT PHASING OVER DIFFERENT EXONS --> setting OB as curSuperBubble");
 			else
-			    HLA.log.appendln("CANT PHASE --> setting OB as curSuperBubble.");
+			    this.ctx.log.appendln("CANT PHASE --> setting OB as curSuperBubble.");
 		    }
 		    superBubbles.add(curSuperBubble);
 		    curSuperBubble = bubbles.get(i);
@@ -1007,9 +1067,9 @@ public class HLAGraph{
 		    if(ms.isSegregating())
 			lastSegregationColumnIndex = ms.getLastSegregationColumnIndex();
 		    if(HLA.DEBUG){
-			HLA.log.appendln("**********************************");
+			this.ctx.log.appendln("**********************************");
 			curSuperBubble.printBubbleSequenceSizes();
-			HLA.log.appendln("**********************************");
+			this.ctx.log.appendln("**********************************");
 			curSuperBubble.printBubbleSequence();
 		    }
 		}
@@ -1025,12 +1085,12 @@ public class HLAGraph{
 		  curSuperBubble.printBubbleSequence();
 		  }*/
 		if(HLA.DEBUG)
-		    HLA.log.appendln("(iteration " + i + "):\t" + curSuperBubble.getNumPaths());
+		    this.ctx.log.appendln("(iteration " + i + "):\t" + curSuperBubble.getNumPaths());
 	    }
 	    superBubbles.add(curSuperBubble);
 	}
 	
-	HLA.log.appendln("\n\n<---------------------------------->\nCHECKING INTER-SUPERBUBBLE PHASING:\n<---------------------------------->\n");
+	this.ctx.log.appendln("\n\n<---------------------------------->\nCHECKING INTER-SUPERBUBBLE PHASING:\n<---------------------------------->\n");
 	Hashtable<Path, Hashtable<Path, int[]>> hashOfHashOfLinkage = this.checkSuperBubbleLinkages(superBubbles);
 	
 	//this.printBubbleResults(superBubbles, bubbles);
@@ -1039,16 +1099,29 @@ public class HLAGraph{
 	ArrayList<ArrayList<AllelePath>> fracturedPaths = this.getFracturedPaths(superBubbles, bubbles);
 	
 	this.allelePathPrintTest(fracturedPaths);//print test of fractured candidate. print super bubble sequences
-	if(HLA.DEBUG3)
+	if(this.ctx.debug3)
 	    this.allelePathToFastaFile(fracturedPaths);//writes superbubble sequences as fasta file
 	
-	ArrayList<SuperAllelePath> superpaths = this.generateSuperAllelePaths(fracturedPaths); 
+	SuperAllelePath[][] bestPairSuperPaths;
+	//with DEBUG, all pairs are scored so that the per-scheme RANK lines of printScoreForPairs rank every pair
+	if(HLA.TOP_PAIRS > 0 && !HLA.DEBUG && superBubbles.size() > 0){
+	    //only the top pairs are scored and logged. the Cartesian product of fractured paths is only built for -c
+	    SuperAllelePairSearch search = new SuperAllelePairSearch(this.HLAGeneName, fracturedPaths, superBubbles, hashOfHashOfLinkage
+								     , HLA.SCORING_SCHEME + HLAGraph.NUM_BASIC_SCORES, this.ctx.log);
+	    ArrayList<SuperAllelePair> topPairs = search.getTopPairs(HLA.TOP_PAIRS);
+	    this.ctx.log.appendln("Scoring " + topPairs.size() + " best pairs of " + search.numSuperAllelePaths() + " candidate alleles");
+	    if(HLA.CHECK_PAIRS && search.numSuperAllelePaths() <= HLA.CHECK_PAIRS_MAX_ALLELES)
+		search.checkAgainstAllPairs(this.generateSuperAllelePaths(fracturedPaths), topPairs, HLA.TOP_PAIRS);
+	    bestPairSuperPaths = this.printScoreForPairs(topPairs, superBubbles, hashOfHashOfLinkage);
+	}else{
+	    ArrayList<SuperAllelePath> superpaths = this.generateSuperAllelePaths(fracturedPaths); 
 	
-	//this.superAllelePathToFastaFile(superpaths); //writes full length candidate allele concatenating super bubbles as fasta file
+	    //this.superAllelePathToFastaFile(superpaths); //writes full length candidate allele concatenating super bubbles as fasta file
 	
-	SuperAllelePath[][] bestPairSuperPaths = this.printScoreForMaxLikeliPair(superpaths, superBubbles, hashOfHashOfLinkage);
+	    bestPairSuperPaths = this.printScoreForMaxLikeliPair(superpaths, superBubbles, hashOfHashOfLinkage);
+	}
 	
-	HLA.log.flush();
+	this.ctx.log.flush();
 	//this.pathAlign(superpaths); // aligns to DB for typing.
 	this.pathAlign(bestPairSuperPaths);
 	
@@ -1064,12 +1137,26 @@ public class HLAGraph{
 	    return bestPairAlleles;
 	}
 
+	//all pairs, including self
+	ArrayList<SuperAllelePair> pairs = new ArrayList<SuperAllelePair>();
+	for(int i = 0; i<superpaths.size(); i++){
+	    for(int j=i; j<superpaths.size(); j++)
+		pairs.add(new SuperAllelePair(superpaths.get(i), superpaths.get(j), i, j));
+	}
+	return this.printScoreForPairs(pairs, superBubbles, hhl);
+    }
+
+    private static final int NUM_BASIC_SCORES = 6; //scores before the sorting scores in SuperAllelePath.getJointProbability
+
+    //pairs are in (i, j) order
+    public SuperAllelePath[][] printScoreForPairs(ArrayList<SuperAllelePair> pairs, ArrayList<Bubble> superBubbles, Hashtable<Path, Hashtable<Path, int[]>> hhl){
+
 	//0: jLogProb(combinedFraction (a+b)/N)
 	//1: allProductProb2( ab/2 if hetero, a^2/4 if homo ) + BubblePathLogProb
 	//2: jLogProb + BubblePathLogPro
 	//3: MAXFLOW
 	//allProduct, jointProduct, allProduct2, MAXFLOW
-	int numBasicScores = 6;
+	int numBasicScores = HLAGraph.NUM_BASIC_SCORES;
 	int numSortingScores = 8;
 	int scoringScheme = HLA.SCORING_SCHEME + numBasicScores;
 	
@@ -1087,75 +1174,75 @@ public class HLAGraph{
 	//int numPairs = (int)((superpaths.size()+1)*(superpaths.size())/2.0d);
 	ScoreRecord sr = new ScoreRecord();
 	
-	int[][] bestIndicies = new int[numSortingScores+1][2];
-	int[][] secondBestIndicies = new int[numSortingScores+1][2];
+	long[][] bestIndicies = new long[numSortingScores+1][2];
+	long[][] secondBestIndicies = new long[numSortingScores+1][2];
 	//for each pair of alleles(superpaths)
-	for(int i = 0; i<superpaths.size(); i++){
-	    for(int j=i; j<superpaths.size(); j++){
-		double interSBlogP = superpaths.get(i).getJointInterSuperBubbleLinkProb(superpaths.get(j), hhl);
-		double[] scores = superpaths.get(i).getJointProbability(superpaths.get(j), superBubbles);
-		for(int k=numBasicScores;k<(numBasicScores+numSortingScores); k++){
-		    scores[k] += interSBlogP;
-		}
-		sr.addScore(scores, i, j);
-		double[] jointWeightFlow = superpaths.get(i).jointTraverse(superpaths.get(j), this.g);
-		if(HLA.DEBUG){
-		    HLA.log.appendln("AllelePair [" + i + ":" + j + "]\t{" +  
-				     + scores[0] + "\t" 
-				     + scores[1] + "\t" 
-				     + scores[2] + "\t" 
-				     + scores[3] + "\t" 
-				     + scores[4] + "\t" 
-				     + scores[5] + "\t" 
-				     + scores[6] + "\t" 
-				     + scores[7] + "\t"
-				     + scores[8] + "\t"
-				     + scores[9] + "\t" 
-				     + scores[10] + "\t" 
-				     + scores[11] + "\t"
-				     + scores[12] + "\t"
-				     + scores[13]				   
-				     + "\tE_SUM:" + jointWeightFlow[0] 
-				     + "\tMAXFLOW:" + jointWeightFlow[1]
-				     + "\tinterSBlogP:" + interSBlogP
-				     + "}");
-		}else{
-		    HLA.log.appendln("AllelePair [" + i + ":" + j + "]\t{PAIRSCORE:" + scores[scoringScheme]
-				     + "\tE_SUM:" + jointWeightFlow[0] 
-				     + "\tMAXFLOW:" + jointWeightFlow[1]
-				     + "}");
-		}
-		//higher the better
-		
-		for(int k=0; k<numSortingScores; k++){
-		    if(curBest[k] < scores[k + numBasicScores]){
-			curSecondBest[k] = curBest[k];
-			curBest[k] = scores[k + numBasicScores];
-			secondBestIndicies[k][0] = bestIndicies[k][0];
-			secondBestIndicies[k][1] = bestIndicies[k][1];
-			bestIndicies[k][0] = i;
-			bestIndicies[k][1] = j;
-		    }else if(curSecondBest[k] < scores[k+numBasicScores]){
-			curSecondBest[k] = scores[k + numBasicScores];
-			secondBestIndicies[k][0] = i;
-			secondBestIndicies[k][1] = j;
-		    }
-		}
-		if(curBest[numSortingScores] < jointWeightFlow[1]){
-		    curSecondBest[numSortingScores] = curBest[numSortingScores];
-		    curBest[numSortingScores] = jointWeightFlow[1];
-		    secondBestIndicies[numSortingScores][0] = bestIndicies[numSortingScores][0];
-		    secondBestIndicies[numSortingScores][1] = bestIndicies[numSortingScores][1];
-		    bestIndicies[numSortingScores][0] = i;
-		    bestIndicies[numSortingScores][1] = j;
-		}else if(curSecondBest[numSortingScores] < jointWeightFlow[1]){
-		    curSecondBest[numSortingScores] = jointWeightFlow[1];
-		    secondBestIndicies[numSortingScores][0] = i;
-		    secondBestIndicies[numSortingScores][1] = j;
+	for(SuperAllelePair pair : pairs){
+	    long i = pair.getI();
+	    long j = pair.getJ();
+	    double interSBlogP = pair.getFirst().getJointInterSuperBubbleLinkProb(pair.getSecond(), hhl, this.ctx.log);
+	    double[] scores = pair.getFirst().getJointProbability(pair.getSecond(), superBubbles, this.ctx.log);
+	    for(int k=numBasicScores;k<(numBasicScores+numSortingScores); k++){
+		scores[k] += interSBlogP;
+	    }
+	    sr.addScore(scores, i, j);
+	    double[] jointWeightFlow = pair.getFirst().jointTraverse(pair.getSecond(), this.g);
+	    if(HLA.DEBUG){
+		this.ctx.log.appendln("AllelePair [" + i + ":" + j + "]\t{" +  
+				 + scores[0] + "\t" 
+				 + scores[1] + "\t" 
+				 + scores[2] + "\t" 
+				 + scores[3] + "\t" 
+				 + scores[4] + "\t" 
+				 + scores[5] + "\t" 
+				 + scores[6] + "\t" 
+				 + scores[7] + "\t"
+				 + scores[8] + "\t"
+				 + scores[9] + "\t" 
+				 + scores[10] + "\t" 
+				 + scores[11] + "\t"
+				 + scores[12] + "\t"
+				 + scores[13]				   
+				 + "\tE_SUM:" + jointWeightFlow[0] 
+				 + "\tMAXFLOW:" + jointWeightFlow[1]
+				 + "\tinterSBlogP:" + interSBlogP
+				 + "}");
+	    }else{
+		this.ctx.log.appendln("AllelePair [" + i + ":" + j + "]\t{PAIRSCORE:" + scores[scoringScheme]
+				 + "\tE_SUM:" + jointWeightFlow[0] 
+				 + "\tMAXFLOW:" + jointWeightFlow[1]
+				 + "}");
+	    }
+	    //higher the better
+	    
+	    for(int k=0; k<numSortingScores; k++){
+		if(curBest[k] < scores[k + numBasicScores]){
+		    curSecondBest[k] = curBest[k];
+		    curBest[k] = scores[k + numBasicScores];
+		    secondBestIndicies[k][0] = bestIndicies[k][0];
+		    secondBestIndicies[k][1] = bestIndicies[k][1];
+		    bestIndicies[k][0] = i;
+		    bestIndicies[k][1] = j;
+		}else if(curSecondBest[k] < scores[k+numBasicScores]){
+		    curSecondBest[k] = scores[k + numBasicScores];
+		    secondBestIndicies[k][0] = i;
+		    secondBestIndicies[k][1] = j;
 		}
-		
-		
 	    }
+	    if(curBest[numSortingScores] < jointWeightFlow[1]){
+		curSecondBest[numSortingScores] = curBest[numSortingScores];
+		curBest[numSortingScores] = jointWeightFlow[1];
+		secondBestIndicies[numSortingScores][0] = bestIndicies[numSortingScores][0];
+		secondBestIndicies[numSortingScores][1] = bestIndicies[numSortingScores][1];
+		bestIndicies[numSortingScores][0] = i;
+		bestIndicies[numSortingScores][1] = j;
+	    }else if(curSecondBest[numSortingScores] < jointWeightFlow[1]){
+		curSecondBest[numSortingScores] = jointWeightFlow[1];
+		secondBestIndicies[numSortingScores][0] = i;
+		secondBestIndicies[numSortingScores][1] = j;
+	    }
+	    
+	    
 	}
 	
 	/*boolean[] scoringScheme = {false,false
@@ -1166,69 +1253,74 @@ public class HLAGraph{
 	
 	if(HLA.DEBUG){
 	    
-	    HLA.log.appendln("-------- AP + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- AP + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 0);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 0);
 	    
-	    HLA.log.appendln("-------- AP2 + InterSBLink--------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- AP2 + InterSBLink--------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 1);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 1);
 	    
-	    HLA.log.appendln("-------- AP2 w/ BubblePathLogProb + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- AP2 w/ BubblePathLogProb + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 2);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 2);
 	    
-	    HLA.log.appendln("-------- AP2 w/ BubblePathLogFraction + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- AP2 w/ BubblePathLogFraction + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 3);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 3);
 	    
-	    HLA.log.appendln("-------- APCUM + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- APCUM + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 4);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 4);
 	    
-	    HLA.log.appendln("-------- APCUM2 + InterSBLink--------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- APCUM2 + InterSBLink--------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 5);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 5);
 	    
-	    HLA.log.appendln("-------- APCUM2 w/ BubblePathLogProb + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- APCUM2 w/ BubblePathLogProb + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 6);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 6);
 	    
-	    HLA.log.appendln("-------- APCUM2 w/ BubblePathLogFraction + InterSBLink --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- APCUM2 w/ BubblePathLogFraction + InterSBLink --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 7);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 7);
 	    
-	    HLA.log.appendln("-------- JointMaxFlowMetric --------");
-	    HLA.log.append("RANK 1:\t");
+	    this.ctx.log.appendln("-------- JointMaxFlowMetric --------");
+	    this.ctx.log.append("RANK 1:\t");
 	    this.printBest(bestIndicies, curBest, 8);
-	    HLA.log.append("RANK 2:\t");
+	    this.ctx.log.append("RANK 2:\t");
 	    this.printBest(secondBestIndicies, curSecondBest, 8);
 	}
 	//int scoringScheme = 4 + numBasicScores;
 	//sr.printBest(scoringScheme);
 
-	ArrayList<int[]> bestPairs = sr.getBestPairs(scoringScheme);
+	ArrayList<long[]> bestPairs = sr.getBestPairs(scoringScheme, this.ctx.log);
 	SuperAllelePath[][] bestPairAlleles = new SuperAllelePath[bestPairs.size()][2];
 	for(int i=0; i<bestPairs.size(); i++){
-	    int[] bpi = bestPairs.get(i);
-	    bestPairAlleles[i][0] = superpaths.get(bpi[0]);
-	    bestPairAlleles[i][1] = superpaths.get(bpi[1]);
+	    long[] bpi = bestPairs.get(i);
+	    for(SuperAllelePair pair : pairs){
+		if(pair.getI() == bpi[0] && pair.getJ() == bpi[1]){
+		    bestPairAlleles[i][0] = pair.getFirst();
+		    bestPairAlleles[i][1] = pair.getSecond();
+		    break;
+		}
+	    }
 	}
 	return bestPairAlleles;
 	/* superAllelePath-wise best score printing */
@@ -1241,8 +1333,8 @@ public class HLAGraph{
 	    }*/
     }
 
-    private void printBest(int[][] indicies, double[] curBest, int typeIndex){
-	HLA.log.appendln("AllelePari[" + indicies[typeIndex][0] + ":" + indicies[typeIndex][1] + "]\t{AP+ISB:"
+    private void printBest(long[][] indicies, double[] curBest, int typeIndex){
+	this.ctx.log.appendln("AllelePari[" + indicies[typeIndex][0] + ":" + indicies[typeIndex][1] + "]\t{AP+ISB:"
 			   + curBest[0] + "\tAP2+ISB:" + curBest[1] + "\tAP2+BP+ISB:" + curBest[2] + "\tAP2+BPF+ISB:" 
 			   + curBest[3] + "\tAPCUM+ISB:" + curBest[4] + "\tAPCUM2+ISB:" + curBest[5]
 			   + "\tAPCUM2+BP+ISB:" + curBest[6] + "\tAPCUM2+BPF+ISB:" + curBest[7]
@@ -1312,11 +1404,11 @@ public class HLAGraph{
 	    for(int j=1; j<maxR.size(); j++)
 		groupNames.append(";" + maxR.get(j).getGGroupName());
 	    
-	    HLA.log.appendln("["+ sapname+  "]BEST MATCH:\t" + groupNames.toString() + "\t" + maxR.get(0).getIdenticalLen() + "\t" + maxR.get(0).getIdentity() + "\t[MaxFlow:" + weightMaxFlowDepth1Depth2[1] + "]\t[MinDepth1:" + weightMaxFlowDepth1Depth2[2] + "]\t[MinDepth2:" + weightMaxFlowDepth1Depth2[3] + "]" );
+	    this.ctx.log.appendln("["+ sapname+  "]BEST MATCH:\t" + groupNames.toString() + "\t" + maxR.get(0).getIdenticalLen() + "\t" + maxR.get(0).getIdentity() + "\t[MaxFlow:" + weightMaxFlowDepth1Depth2[1] + "]\t[MinDepth1:" + weightMaxFlowDepth1Depth2[2] + "]\t[MinDepth2:" + weightMaxFlowDepth1Depth2[3] + "]" );
 	    this.resultBuffer.append(groupNames.toString() + "\t" + maxR.get(0).getIdenticalLen() + "\t" 
 				     + maxR.get(0).getIdentity() + "\t" + maxR.get(0).getS1Len() + "\t" + maxR.get(0).getS2Len() + "\t" + weightMaxFlowDepth1Depth2[1] + "\t" + weightMaxFlowDepth1Depth2[2] + "\t" + weightMaxFlowDepth1Depth2[3] + "\n");
 	    //+ "\t" + sapname + "\n");
-	    HLA.log.flush();
+	    this.ctx.log.flush();
 	}
 
     }
@@ -1417,7 +1509,7 @@ public class HLAGraph{
 	    Bubble sb_i = superBubbles.get(i);
 	    for(int j=i+1;j<superBubbles.size(); j++){
 		Bubble sb_j = superBubbles.get(j);
-		HLA.log.appendln("Looking for Phasing Evidence between SB(" + i + ") : SB(" + j + ")" );
+		this.ctx.log.appendln("Looking for Phasing Evidence between SB(" + i + ") : SB(" + j + ")" );
 		//int[0]: path index for first bubble
 		//int[1]: path index for second bubble
 		//int[2]: number of reads supporting this phasing path
@@ -1470,11 +1562,11 @@ public class HLAGraph{
 		pLists[count] = phasedList;
 		count++;
 		if(phasedList.size() > 0){
-		    HLA.log.appendln("Phasing evidence FOUND between SB(" + i + ") : SB(" + j + ")" );
+		    this.ctx.log.appendln("Phasing evidence FOUND between SB(" + i + ") : SB(" + j + ")" );
 		    for(int[] index : phasedList)
-			HLA.log.appendln("SB(" + i + ")-" + index[0] + " : SB(" + j + ")-" + index[1]);
+			this.ctx.log.appendln("SB(" + i + ")-" + index[0] + " : SB(" + j + ")-" + index[1]);
 		}else
-		    HLA.log.appendln("NO phasing evidence between SB(" + i + ") : SB(" + j + ")" );
+		    this.ctx.log.appendln("NO phasing evidence between SB(" + i + ") : SB(" + j + ")" );
 		
 	    }
 	}
@@ -1539,7 +1631,7 @@ public class HLAGraph{
 
 	BufferedWriter bw = null;
 	try{
-	    bw = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + "_" + this.HLAGeneName + ".typed.fa.candidates"));
+	    bw = new BufferedWriter(new FileWriter(this.ctx.outPrefix + "_" + this.HLAGeneName + ".typed.fa.candidates"));
 	    for(DNAString seq : sequences)
 		bw.write(seq.toFasta().toString());
 	    bw.close();
@@ -1614,7 +1706,7 @@ public class HLAGraph{
 	int startIndex = 0;
 	int count = 0;
 
-	HLA.log.appendln("Printing\t" + superBubbles.size() + "\tfractured super bubbles.");
+	this.ctx.log.appendln("Printing\t" + superBubbles.size() + "\tfractured super bubbles.");
 	//inner list holds paths found for one superBubble
 	//outer list holds multiple superBubbles
 	ArrayList<ArrayList<AllelePath>> fracturedPaths = new ArrayList<ArrayList<AllelePath>>();
@@ -1674,10 +1766,10 @@ public class HLAGraph{
     public void allelePathPrintTest(ArrayList<ArrayList<AllelePath>> fracturedAllelePaths){
 	for(int i=0; i<fracturedAllelePaths.size(); i++){
 	    ArrayList<AllelePath> paths = fracturedAllelePaths.get(i);
-	    HLA.log.appendln("SUPER BUBBLE [" + i + "]");
+	    this.ctx.log.appendln("SUPER BUBBLE [" + i + "]");
 	    for(int j=0; j<paths.size(); j++){
 		AllelePath ap = paths.get(j);
-		ap.printPath(this.g, i, j);
+		ap.printPath(this.g, i, j, this.ctx.log);
 	    }
 	}
     }
@@ -1685,7 +1777,7 @@ public class HLAGraph{
     public void allelePathToFastaFile(ArrayList<ArrayList<AllelePath>> fracturedAllelePaths){
 	BufferedWriter bw = null;
 	try{
-	    bw = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + "_" + this.HLAGeneName + ".typed.fractured.candidates.fa"));
+	    bw = new BufferedWriter(new FileWriter(this.ctx.outPrefix + "_" + this.HLAGeneName + ".typed.fractured.candidates.fa"));
 	    for(ArrayList<AllelePath> faps : fracturedAllelePaths){
 		for(AllelePath ap : faps){
 		    bw.write(ap.toFasta().toString());
@@ -1701,7 +1793,7 @@ public class HLAGraph{
     public void superAllelePathToFastaFile(ArrayList<SuperAllelePath> superAllelePaths){
 	BufferedWriter bw = null;
 	try{
-	    bw = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + "_" + this.HLAGeneName + ".typed.fa"));
+	    bw = new BufferedWriter(new FileWriter(this.ctx.outPrefix + "_" + this.HLAGeneName + ".typed.fa"));
 	    for(SuperAllelePath sap : superAllelePaths)
 		bw.write(sap.toFasta().toString());
 	    bw.close();
@@ -1872,12 +1964,29 @@ public class HLAGraph{
 	return score;
     }
     */
+    //bubbles are decomposed into paths on ColumnDAG of the cleaned graph
     public ArrayList<Bubble> countBubbles(){
-	HLA.log.appendln("=========================");
-	HLA.log.appendln("=  " + this.HLAGeneName);
-	HLA.log.appendln("=========================");
+	this.pathEnumerator = new BubblePathEnumerator(new ColumnDAG(this.g), this.ctx, HLA.MAX_BUBBLE_PATHS);
+	ArrayList<Bubble> bubbles = this.findBubbles();
+	this.pathEnumerator = null;
+	return bubbles;
+    }
 
-	ArrayList<Bubble> bubbles = new ArrayList<Bubble>();
+    //bubble from s to t, built later by BubbleBuilder.build. scan log up to here goes before its log.
+    private BubbleBuilder newBubbleBuilder(Node s, Node t, boolean firstBubble, Node[] headerNodes, Node[] tailNodes){
+	String scanLog = this.ctx.log.endLocalBuffer();
+	this.ctx.log.startLocalBuffer();
+	return new BubbleBuilder(this, s, t, firstBubble, headerNodes, tailNodes, scanLog);
+    }
+
+    private ArrayList<Bubble> findBubbles(){
+	this.ctx.log.appendln("=========================");
+	this.ctx.log.appendln("=  " + this.HLAGeneName);
+	this.ctx.log.appendln("=========================");
+
+	//bubbles are built after the scan (BubbleBuilder.build). scan log is kept locally and cut at each bubble.
+	ArrayList<BubbleBuilder> builders = new ArrayList<BubbleBuilder>();
+	this.ctx.log.startLocalBuffer();
 
 	ArrayList<int[]> typingIntervals = this.obtainTypingIntervals();
 
@@ -1912,16 +2021,14 @@ public class HLAGraph{
 	    //Node preNode = null;
 
 	    int k;
-	    HashMap<Integer, Node> columnHash = null;
-	    Integer[] keys = null;
+	    Node[] colNodes = null;
 	    /* FOR EACH POSITION in a TYPING INTERVAL*/
 	    for(k=start-1;k<end-1;k++){
-		columnHash = this.nodeHashList.get(k);
-		keys = columnHash.keySet().toArray(new Integer[0]);
+		colNodes = HLAGraph.nodesInColumn(this.columnNodes.get(k));
 		
 		/*it's a collapsing node if curBubbleLength > 2
 		  else it's a possible start of bubble.*/
-		if(keys.length == 1){
+		if(colNodes.length == 1){
 		    //headerBubble = false;
 		    /* then it must be a collapsing node; */
 		    if(curBubbleLength > 1){
@@ -1937,12 +2044,12 @@ public class HLAGraph{
 			if(firstBubble){
 			    //if(i>0)//if it's not first interval, we need to update last bubble
 				//	bubbles.get(bubbles.size()-1).trimPaths(0,this.tailExcessLengthBeyondTypingBoundary[i-1]);
-			    bubbles.add(new Bubble(this, curSNode, columnHash.get(keys[0]), firstBubble, this.headerExcessLengthBeyondTypingBoundary[i], 0, this.headerExcessNodes[i], null));
+			    builders.add(this.newBubbleBuilder(curSNode, colNodes[0], firstBubble, this.headerExcessNodes[i], null));
 			    //bubbles.get(bubbles.size()-1).trimPath(this.headerExcessLengthBeyongTypingBoundary[i], 0);
 			    firstBubble = false;
 			}else
-			    bubbles.add(new Bubble(this, curSNode, columnHash.get(keys[0])));
-			curSNode = columnHash.get(keys[0]);
+			    builders.add(this.newBubbleBuilder(curSNode, colNodes[0], false, null, null));
+			curSNode = colNodes[0];
 			//preNode = curSNode;
 			lastStartOfBubble = k;
 			curBubbleLength = 1;
@@ -1954,7 +2061,7 @@ public class HLAGraph{
 		    }
 		    /* Possible Start of a Bubble or straight path */
 		    else{
-			curSNode = columnHash.get(keys[0]);
+			curSNode = colNodes[0];
 			curbf.append(curSNode.getBase());
 			tp.appendNode(curSNode); 
 			/*if(prNode == null)
@@ -1966,29 +2073,26 @@ public class HLAGraph{
 			lastStartOfBubble = k;
 			curBubbleLength = 1;
 		    }
-		}else if(keys.length > 1){//middle of bubble
+		}else if(colNodes.length > 1){//middle of bubble
 		    
 		    /* NEED TO FIX THIS TO ALLOW BUBBLE TO BE USED at the boundaries*/
 		    if(k==(start-1)){// || headerBubble){
 			
-			Node[] ns = new Node[columnHash.size()];
-			for(int intg=0; intg<keys.length; intg++)
-			    ns[intg] = columnHash.get(keys[intg]);
+			Node[] ns = colNodes;
 			
 			    
-			HLA.log.appendln("[k] = " + k);
+			this.ctx.log.appendln("[k] = " + k);
 			int tmpBubbleLength = 1;
 			for(int l=start-2;;l--){
-			    HLA.log.appendln("trying new k: [k] = " + l);
+			    this.ctx.log.appendln("trying new k: [k] = " + l);
 			    tmpBubbleLength++;
-			    HashMap<Integer, Node> tmpHash = this.nodeHashList.get(l);
-			    Integer[] tmpKeys = tmpHash.keySet().toArray(new Integer[0]);
-			    for(Integer itg: tmpKeys){
-				HLA.log.appendln("BASE:\t" + tmpHash.get(itg).toString());
+			    Node[] tmpNodes = HLAGraph.nodesInColumn(this.columnNodes.get(l));
+			    for(Node tn: tmpNodes){
+				this.ctx.log.appendln("BASE:\t" + tn.toString());
 			    }
-			    if(tmpKeys.length == 1){
-				HLA.log.appendln("Found the new start!");
-				curSNode = tmpHash.get(tmpKeys[0]);
+			    if(tmpNodes.length == 1){
+				this.ctx.log.appendln("Found the new start!");
+				curSNode = tmpNodes[0];
 				curbf.append(curSNode.getBase());// this is actually unecessary
 				//curbf=new StringBuffer("");
 				tp.appendNode(curSNode);
@@ -1996,13 +2100,13 @@ public class HLAGraph{
 				curBubbleLength = tmpBubbleLength;
 				this.headerExcessLengthBeyondTypingBoundary[i] = curBubbleLength - 1;
 				this.headerExcessNodes[i] = ns;
-				HLA.log.appendln("Setting Trimming length(header):\t" + this.headerExcessLengthBeyondTypingBoundary[i]);
+				this.ctx.log.appendln("Setting Trimming length(header):\t" + this.headerExcessLengthBeyondTypingBoundary[i]);
 				break;
 			    }
 			}
 			//this.interBubbleSequences.add(new StringBuffer(""));
 			//headerBubble = true;
-			/*curSNode = columnHash.get(keys[0]);
+			/*curSNode = colNodes[0];
 			curbf.append(curSNode.getBase());
 			tp.appendNode(curSNode);
 			lastStartOfBubble = k;
@@ -2013,42 +2117,42 @@ public class HLAGraph{
 			//preNode = null;
 		    }
 		}else{//disconnected graph.
-		    HLA.log.appendln("Disconnected Graph. Probably due to not enough coverage to fully assemble or check for any biases in sequencing libraries used.");
+		    this.ctx.log.appendln("Disconnected Graph. Probably due to not enough coverage to fully assemble or check for any biases in sequencing libraries used.");
+		    String scanLog = this.ctx.log.endLocalBuffer();
+		    BubbleBuilder.build(builders, this.ctx);
+		    this.ctx.log.append(scanLog);
 		    return null;//skipping this gene
 		}
 	    }
 	    //need to update here to handle "End-Bubble" (bubble sitting at the end and not concluded)
 	    if(curBubbleLength > 1){
-		Node[] ns = new Node[columnHash.size()];
-		for(int intg=0; intg<keys.length; intg++)
-		    ns[intg] = columnHash.get(keys[intg]);
+		Node[] ns = colNodes;
 		if(HLA.DEBUG)
-		    HLA.log.appendln(">>>>>>>Bubble at the end:\t[curBubbleLength]:"+ curBubbleLength);
+		    this.ctx.log.appendln(">>>>>>>Bubble at the end:\t[curBubbleLength]:"+ curBubbleLength);
 		int preLength = curBubbleLength;
 		
 		for(;;k++){
-		    columnHash = this.nodeHashList.get(k);
-		    keys = columnHash.keySet().toArray(new Integer[0]);
+		    colNodes = HLAGraph.nodesInColumn(this.columnNodes.get(k));
 		    curBubbleLength++;
-		    if(keys.length == 1){
+		    if(colNodes.length == 1){
 			//this.interBubbleSequences.add(curbf);
 			//this.interBubblePaths.add(tp.toPath(this.g));
 			this.interBubblePaths2.add(tp);
 			if(HLA.DEBUG)
-			    HLA.log.appendln("Found the new end!");
+			    this.ctx.log.appendln("Found the new end!");
 			numBubbles++;
 			bubbleLengths.add(new Integer(curBubbleLength-2));
 			coordinates.add(new Integer(lastStartOfBubble));
 			//if(firstBubble){
-			//   bubbles.add(new Bubble(this, curSNode, columnHash.get(keys[0]), firstBubble));
+			//   bubbles.add(new Bubble(this, curSNode, colNodes[0], firstBubble));
 			//    firstBubble = false;
 			//}else
 			this.tailExcessLengthBeyondTypingBoundary[i] = curBubbleLength - preLength;
 			this.tailExcessNodes[i] = ns;
 			if(HLA.DEBUG)
-			    HLA.log.appendln("Setting Trimming length(tail):\t" + this.tailExcessLengthBeyondTypingBoundary[i]);
-			bubbles.add(new Bubble(this, curSNode, columnHash.get(keys[0]), false, 0, this.tailExcessLengthBeyondTypingBoundary[i], null, this.tailExcessNodes[i]));
-			curSNode = columnHash.get(keys[0]);
+			    this.ctx.log.appendln("Setting Trimming length(tail):\t" + this.tailExcessLengthBeyondTypingBoundary[i]);
+			builders.add(this.newBubbleBuilder(curSNode, colNodes[0], false, null, this.tailExcessNodes[i]));
+			curSNode = colNodes[0];
 			lastStartOfBubble = k;
 			curBubbleLength = 1;
 			curbf = new StringBuffer("");
@@ -2069,7 +2173,7 @@ public class HLAGraph{
 	//
 	    /*
 	    this.interBubbleSequences.add(curbf);
-	    this.interBubblePaths.add(tp.toPath(this.g));
+	    this.interBubblePaths.add(tp.toPath(this.g, this.ctx));
 	    curbf = new StringBuffer("");
 	    tp = new TmpPath();
 	    if(curBubbleLength > 1){
@@ -2077,18 +2181,21 @@ public class HLAGraph{
 	    }
 	    */
 	}
-	HLA.log.appendln("NumBubbles:\t" + numBubbles + "\tfound");
+	String scanLog = this.ctx.log.endLocalBuffer();
+	ArrayList<Bubble> bubbles = BubbleBuilder.build(builders, this.ctx);
+	this.ctx.log.append(scanLog);
+	this.ctx.log.appendln("NumBubbles:\t" + numBubbles + "\tfound");
 	if(HLA.DEBUG){
-	    HLA.log.appendln("BubbleLegnths:");
+	    this.ctx.log.appendln("BubbleLegnths:");
 	    for(int i=0; i<bubbleLengths.size(); i++)
-		HLA.log.append(bubbleLengths.get(i).intValue() + "\t");
+		this.ctx.log.append(bubbleLengths.get(i).intValue() + "\t");
 	
-	    HLA.log.appendln();
-	    HLA.log.appendln("BubbleCoordinates:");
+	    this.ctx.log.appendln();
+	    this.ctx.log.appendln("BubbleCoordinates:");
 	    for(int i=0; i<bubbleLengths.size(); i++)
-		HLA.log.append(coordinates.get(i).intValue() + "\t");
+		this.ctx.log.append(coordinates.get(i).intValue() + "\t");
 	    
-	    HLA.log.appendln();
+	    this.ctx.log.appendln();
 	}
 	return bubbles;
     }
@@ -2137,8 +2244,8 @@ public class HLAGraph{
 	int startIndex, endIndex;
 		
 	if(typingExonOnly){
-	    int[] boundaries = this.alleles.get(0).getBoundaries();
-	    if(this.alleles.get(0).isClassI()){//if class I : type exon 2 and 3
+	    int[] boundaries = this.refAllele.getBoundaries();
+	    if(this.refAllele.isClassI()){//if class I : type exon 2 and 3
 		startIndex = boundaries[3];
 		endIndex = boundaries[6];
 	    }else{// if class II : type exon 2
@@ -2147,7 +2254,7 @@ public class HLAGraph{
 	    }
 	}else{
 	    startIndex = 0;
-	    endIndex = this.nodeHashList.size();
+	    endIndex = this.columnNodes.size();
 	}
 	
 	int numBubbles = 0;
@@ -2163,16 +2270,14 @@ public class HLAGraph{
 	
 	for(int i = startIndex; i <= endIndex; i++){
 	    
-	    HashMap<Integer, Node> curHash = this.nodeHashList.get(i);
-	    //Set<Integer> keyset = curHash.keySet();
-	    Integer[] keys = curHash.keySet().toArray(new Integer[0]);      
+	    Node[] curNodes = HLAGraph.nodesInColumn(this.columnNodes.get(i));
 	    
-	    if(keys.length == 1){//only one option --> it's collaping node or part of just a straight path
+	    if(curNodes.length == 1){//only one option --> it's collaping node or part of just a straight path
 		if(bubbleSize > 1){//if bublleSize > 1, then it's the end end of bubble
 		    numBubbles++;     
-		    HLA.log.appendln("Bubble[" + numBubbles + "]:Size(" + bubbleSize + "):numPath(" + numPath + ")" );
+		    this.ctx.log.appendln("Bubble[" + numBubbles + "]:Size(" + bubbleSize + "):numPath(" + numPath + ")" );
 		    preNodes = new ArrayList<Node>();
-		    preNodes.add(curHash.get(keys[0]));
+		    preNodes.add(curNodes[0]);
 		    preStart = false;
 		    bubbleSize = 1;
 		    numPath = 1;
@@ -2180,13 +2285,13 @@ public class HLAGraph{
 		    preNodes = new ArrayList<Node>();
 		    preStart = false;
 		}
-	    }else if(keys.length > 1){
+	    }else if(curNodes.length > 1){
 		//checking previous column nodes to this column node
 		for(int p=0; p < preNodes.size(); p++){
 		    Node pNode = preNodes.get(p);
 		    int branching=0;
-		    for(int q=0; q<keys.length; q++){
-			Node qNode = curHash.get(keys[q]);
+		    for(int q=0; q<curNodes.length; q++){
+			Node qNode = curNodes[q];
 			CustomWeightedEdge e = this.g.getEdge(pNode, qNode);
 			if(e != null && this.g.getEdgeWeight(e) > 0)
 			    branching++;
@@ -2208,75 +2313,77 @@ public class HLAGraph{
 
     //insertionNodes are indexed at same position as endColumns
     //meaning: insertionNodes should be inserted in between startColumns and endColumns.
+    //Edges are re-routed site by site (right to left) as before, but columns are inserted,
+    //renumbered and blanks added to the reference allele once after all sites are visited.
     public void flattenInsertionNodes(){
 	
 	ArrayList<int[]> typingIntervals = this.obtainTypingIntervals();
 
 	int fCount = 0;	
+	//flattened sites in visiting order (descending column)
+	ArrayList<Integer> sites = new ArrayList<Integer>();
+	ArrayList<Integer> sizes = new ArrayList<Integer>();
 	
 	for(int i=typingIntervals.size()-1; i>-1; i--){
 	    int start = typingIntervals.get(i)[0];
 	    int end   = typingIntervals.get(i)[1];
 	    
 	    for(int j=end-1; j >= start; j--){
-		int insSize = this.insertionNodeHashList.get(j).size();
+		int insSize = this.insertionColumnNodes.get(j).size();
 		//there is insertion, we need to flatten.
 		if(insSize > 0 && this.isThereConnectionToInsertionNodes(insSize, j)){
 		    fCount++;
-		    this.shiftColumnsByInsertionSize(insSize, j);
+		    this.rerouteThroughInsertionColumns(insSize, j);
+		    sites.add(j);
+		    sizes.add(insSize);
 		}
 	    }
 	}
 	
-	HLA.log.appendln(this.HLAGeneName + "\t>>>>> FLATTENED InsertionBubble:\t" + fCount );
+	if(fCount > 0)
+	    this.insertFlattenedColumns(sites, sizes);
+
+	this.ctx.log.appendln(this.HLAGeneName + "\t>>>>> FLATTENED InsertionBubble:\t" + fCount );
     }
 
     
     //fromColumnIndex is 0-based columnIndex
     private boolean isThereConnectionToInsertionNodes(int insSize, int fromColumnIndex){
 	if(HLA.DEBUG)
-	    HLA.log.appendln("[isThereConnection] Checking at fromColumnIndex : " + fromColumnIndex + "\tInsSize: " + insSize);
+	    this.ctx.log.appendln("[isThereConnection] Checking at fromColumnIndex : " + fromColumnIndex + "\tInsSize: " + insSize);
 
-	HashMap<Integer, Node> startNodes = nodeHashList.get(fromColumnIndex-1);
+	Node[] startNodes = this.columnNodes.get(fromColumnIndex-1);
 	boolean sConnection = false;
 	boolean eConnection = false;
-	HashMap<Integer, Node> sInsHash = this.insertionNodeHashList.get(fromColumnIndex).get(0);
-	HashMap<Integer, Node> eInsHash = this.insertionNodeHashList.get(fromColumnIndex).get(insSize - 1);
-	HashMap<Integer, Node> endNodes = nodeHashList.get(fromColumnIndex);
+	Node[] sInsHash = this.insertionColumnNodes.get(fromColumnIndex).get(0);
+	Node[] eInsHash = this.insertionColumnNodes.get(fromColumnIndex).get(insSize - 1);
+	Node[] endNodes = this.columnNodes.get(fromColumnIndex);
 	if(HLA.DEBUG)
-	    HLA.log.appendln("[isThereConnectionToInsertionNodes] HashIndex: " + (fromColumnIndex - 1) );
+	    this.ctx.log.appendln("[isThereConnectionToInsertionNodes] HashIndex: " + (fromColumnIndex - 1) );
 	sConnection = this.isThereConnection(startNodes, sInsHash);
 	eConnection = this.isThereConnection(eInsHash, endNodes);
 	if(HLA.DEBUG){
 	    if(sConnection || eConnection){
 		if(sConnection)
-		    HLA.log.appendln("[isThereConnection] connection between startNodes and sInsHash found!");
+		    this.ctx.log.appendln("[isThereConnection] connection between startNodes and sInsHash found!");
 		else
-		    HLA.log.appendln("[isThereConnection] NO connection between startNodes and sInsHash found!");
+		    this.ctx.log.appendln("[isThereConnection] NO connection between startNodes and sInsHash found!");
 		if(eConnection)
-		    HLA.log.appendln("[isThereConnection] connection between eInsHash and endNodes found!");
+		    this.ctx.log.appendln("[isThereConnection] connection between eInsHash and endNodes found!");
 		else
-		    HLA.log.appendln("[isThereConnection] NO connection between eInsHash and endNodes found!");
+		    this.ctx.log.appendln("[isThereConnection] NO connection between eInsHash and endNodes found!");
 	    }
 	}
 	return sConnection && eConnection;
     }
     
     //just to check if there edges between s and t
-    private boolean isThereConnection(HashMap<Integer, Node> s, HashMap<Integer, Node> t){
-	Integer[] sKeys = new Integer[0];
-	sKeys = s.keySet().toArray(sKeys);
-	Integer[] eKeys = new Integer[0];
-	eKeys = t.keySet().toArray(eKeys);
-	
-	for(int i=0;i<sKeys.length; i++){
-	    if(sKeys[i].intValue() != 4){
-		for(int j=0; j<eKeys.length; j++){
-		    //HLA.log.append("eKyes[j] intval\t");
-		    //HLA.log.appendln(eKeys[j].intValue());
-		    if(eKeys[j].intValue() != 4){
-			//HLA.log.appendln("Actual index value in node: " + s.get(sKeys[i]).getColIndex());
-			CustomWeightedEdge e = this.g.getEdge(s.get(sKeys[i]), t.get(eKeys[j]));
+    private boolean isThereConnection(Node[] s, Node[] t){
+	for(int i=0;i<s.length; i++){
+	    if(i != 4 && s[i] != null){
+		for(int j=0; j<t.length; j++){
+		    if(j != 4 && t[j] != null){
+			CustomWeightedEdge e = this.g.getEdge(s[i], t[j]);
 			if(e != null)
 			    return true;
 		    }
@@ -2291,99 +2398,117 @@ public class HLAGraph{
     /* 1based(CI in Node and Base): 1 | 2 | 3 | 4 | 5 | 6 | 7 | 8 | 9 | 10 */
     /* from ColumnIndex at 5, insSize of 2*/
 
-    private void shiftColumnsByInsertionSize(int insSize, int fromColumnIndex){
+    /* adds gap nodes to insertion columns at fromColumnIndex and re-routes edges between startNodes and endNodes through them.
+     * columnNodes and column indices are not touched here (see insertFlattenedColumns). */
+    private void rerouteThroughInsertionColumns(int insSize, int fromColumnIndex){
 	
-	HashMap<Integer, Node> startNodes = nodeHashList.get(fromColumnIndex-1);
-	HashMap<Integer, Node> endNodes = nodeHashList.get(fromColumnIndex);
+	Node[] startNodes = this.columnNodes.get(fromColumnIndex-1);
+	Node[] endNodes = this.columnNodes.get(fromColumnIndex);
 	
-	Iterator<Integer> itr_s = startNodes.keySet().iterator();
 	if(HLA.DEBUG){
-	    HLA.log.appendln("\n**STARTNODES:");
-	    while(itr_s.hasNext())
-		HLA.log.appendln(startNodes.get(itr_s.next()).toString());
+	    this.ctx.log.appendln("\n**STARTNODES:");
+	    for(Node n : HLAGraph.nodesInColumn(startNodes))
+		this.ctx.log.appendln(n.toString());
 	}
 
-	Iterator<Integer> itr_e = endNodes.keySet().iterator();
 	if(HLA.DEBUG){
-	    HLA.log.appendln("\n**ENDNODES:");
-	    while(itr_e.hasNext())
-		HLA.log.appendln(endNodes.get(itr_e.next()).toString());
+	    this.ctx.log.appendln("\n**ENDNODES:");
+	    for(Node n : HLAGraph.nodesInColumn(endNodes))
+		this.ctx.log.appendln(n.toString());
 	}	
 
 	Node pre = null;
 	Node[] gapNodes = new Node[insSize];
 	
-	/* here we first shift endNodes and all nodes after that by insSize
-	 * to acquire insSize many column space for insertionNodeHashList.
-	 */
 	for(int i=0; i<insSize;i++){
-	    HashMap<Integer, Node> insHash_i = this.insertionNodeHashList.get(fromColumnIndex).get(i);
-	    this.adjustColumnIndex(insHash_i, fromColumnIndex + i + 1);//1-base column position 
-	    nodeHashList.add(fromColumnIndex+i, insHash_i); //insert insHash_i
-	    Node cur = new Node('.', fromColumnIndex + i + 1); // 1-base column position
-	    this.addVertex(cur);//add vertex and add it to nodeHashList;
+	    Node[] insHash_i = this.insertionColumnNodes.get(fromColumnIndex).get(i);
+	    Node cur = new Node('.', fromColumnIndex + i + 1); // 1-base column position, final index is set in insertFlattenedColumns
+	    this.g.addVertex(cur);
+	    insHash_i[cur.getIBase()] = cur; //insHash_i becomes a column in insertFlattenedColumns
 	    if(pre !=null)
 		this.g.addEdge(pre,cur);
 	    gapNodes[i] = cur;
 	    pre = cur;
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln("checking edges between gapNodes[]");
+	    this.ctx.log.appendln("checking edges between gapNodes[]");
 	for(int i=1;i<gapNodes.length;i++){
 	    CustomWeightedEdge e = this.g.getEdge(gapNodes[i-1], gapNodes[i]);
 	    if(e == null){
 		if(HLA.DEBUG)
-		    HLA.log.appendln("No edges found between between gapNodes["+(i-1) + "] and gapNodes[" + i + "]");
+		    this.ctx.log.appendln("No edges found between between gapNodes["+(i-1) + "] and gapNodes[" + i + "]");
 	    }
 	}
 
-	/* adding spaces to Alleles as well */
-	for(int i=0; i<this.alleles.size(); i++)
-	    this.alleles.get(i).insertBlanks(fromColumnIndex, insSize);
-	
-	
-	/* we shift all columns after insertion, so updating all columnIndex */
-	for(int i=fromColumnIndex+insSize; i<this.nodeHashList.size(); i++)
-	    this.adjustColumnIndex(this.nodeHashList.get(i), i+1);//need to updated with 1-base column position
-	
 	/* remove all edges between start node and end nodes and re-route them through gap nodes by adding new edges and assign weights and readset accordingly*/
 	double weightSum = this.getWeightSumsBetween2Columns(startNodes, endNodes, gapNodes);
 
 	/* DEBUGGING prints*/
-	itr_s = startNodes.keySet().iterator();
 	if(HLA.DEBUG){
-	    HLA.log.appendln("\n**STARTNODES:");
-	    while(itr_s.hasNext()){
-		HLA.log.appendln(startNodes.get(itr_s.next()).toString());
+	    this.ctx.log.appendln("\n**STARTNODES:");
+	    for(Node n : HLAGraph.nodesInColumn(startNodes)){
+		this.ctx.log.appendln(n.toString());
 	    }
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln("**CONNECTED NODES TO START-GAP:");
+	    this.ctx.log.appendln("**CONNECTED NODES TO START-GAP:");
 	CustomWeightedEdge[] inEdges = this.g.incomingEdgesOf(gapNodes[0]).toArray(new CustomWeightedEdge[1]);
 	if(HLA.DEBUG){
 	    for(CustomWeightedEdge e : inEdges)
-		HLA.log.appendln(this.g.getEdgeSource(e).toString());
+		this.ctx.log.appendln(this.g.getEdgeSource(e).toString());
 	}
 	
-	itr_e = endNodes.keySet().iterator();
 	if(HLA.DEBUG){
-	    HLA.log.appendln("\n**ENDNODES:");
-	    while(itr_e.hasNext())
-		HLA.log.appendln(endNodes.get(itr_e.next()).toString());
+	    this.ctx.log.appendln("\n**ENDNODES:");
+	    for(Node n : HLAGraph.nodesInColumn(endNodes))
+		this.ctx.log.appendln(n.toString());
 	
-	HLA.log.appendln("**CONNECTED NODES TO END-GAP:");
+	this.ctx.log.appendln("**CONNECTED NODES TO END-GAP:");
 	}
 	CustomWeightedEdge[] outEdges = this.g.outgoingEdgesOf(gapNodes[gapNodes.length -1]).toArray(new CustomWeightedEdge[1]);
 	if(HLA.DEBUG){
 	    for(CustomWeightedEdge e : outEdges)
-		HLA.log.appendln(this.g.getEdgeTarget(e).toString());
+		this.ctx.log.appendln(this.g.getEdgeTarget(e).toString());
+	}
+    }
+
+    /* inserts insertion columns of all flattened sites into columnNodes in a single pass,
+     * then sets column index of every shifted column once. Same result as shifting site by site (right to left),
+     * without re-numbering all downstream columns for every site.
+     * sites are 0-based column indices in descending order, sizes are matching insertion sizes. */
+    private void insertFlattenedColumns(ArrayList<Integer> sites, ArrayList<Integer> sizes){
+	int n = sites.size();
+	int[] pos = new int[n];
+	int[] len = new int[n];
+	int total = 0;
+	for(int k=0; k<n; k++){
+	    pos[k] = sites.get(k);
+	    len[k] = sizes.get(k);
+	    total += len[k];
+	}
+
+	ArrayList<Node[]> shifted = new ArrayList<Node[]>(this.columnNodes.size() + total);
+	int from = 0;
+	for(int k=n-1; k>=0; k--){
+	    shifted.addAll(this.columnNodes.subList(from, pos[k]));
+	    shifted.addAll(this.insertionColumnNodes.get(pos[k]));
+	    from = pos[k];
 	}
+	shifted.addAll(this.columnNodes.subList(from, this.columnNodes.size()));
+	this.columnNodes = shifted;
+
+	/* adding spaces to reference allele as well. other alleles are no longer used once reads are loaded */
+	this.refAllele.insertBlanks(pos, len);
+
+	/* columns left of the leftmost site keep their index */
+	for(int i=pos[n-1]; i<this.columnNodes.size(); i++)
+	    this.adjustColumnIndex(this.columnNodes.get(i), i+1);//1-base column position
     }
 
     private void shiftColumnsByInsertionSizeOLD(int insSize, int fromColumnIndex){
 	
-	HashMap<Integer, Node> startNodes = nodeHashList.get(fromColumnIndex-2);
-	HashMap<Integer, Node> endNodes = nodeHashList.get(fromColumnIndex-1);
+	Node[] startNodes = this.columnNodes.get(fromColumnIndex-2);
+	Node[] endNodes = this.columnNodes.get(fromColumnIndex-1);
 
 	//we need to insert <insSize>-many columns first
 	Node pre = null;
@@ -2391,14 +2516,14 @@ public class HLAGraph{
 	ArrayList<Base> insBases = new ArrayList<Base>();//new Base[insSize];
 
 
-	//insert insSize-many columns with gapNodes and transfer insertionNodes to nodeHashList.
+	//insert insSize-many columns with gapNodes and transfer insertionNodes to columnNodes.
 	for(int i=0; i<insSize; i++){
-	    //add a space first then add the vertex --> gets the space(HashMap) from insertionNodeHashList
-	    HashMap<Integer, Node> insHash_i = this.insertionNodeHashList.get(fromColumnIndex-1).get(i);
+	    //add a space first then add the vertex --> gets the space(column) from insertionColumnNodes
+	    Node[] insHash_i = this.insertionColumnNodes.get(fromColumnIndex-1).get(i);
 	    this.adjustColumnIndex(insHash_i, fromColumnIndex + i);//this.adjustColumnIndex(insHash_i, fromColumnIndex + i + 1);
-	    nodeHashList.add(fromColumnIndex + i, insHash_i);
+	    this.columnNodes.add(fromColumnIndex + i, insHash_i);
 	    Node cur = new Node('.', fromColumnIndex + i + 1);
-	    this.addVertex(cur);//add vertex and add to nodeHashList
+	    this.addVertex(cur);//add vertex and add to columnNodes
 	    if(pre != null)
 		this.g.addEdge(pre, cur);
 	    gapNodes[i] = cur;
@@ -2407,11 +2532,9 @@ public class HLAGraph{
 	}
 
 	
-	/* adding spaces to Alleles as well*/
-	for(int i=0; i<this.alleles.size(); i++){
-	    //this.alleles.get(i).insertBlanks(fromColumnIndex, insBases);
-	    this.alleles.get(i).insertBlanks(fromColumnIndex-1, insSize);
-	}
+	/* adding spaces to reference allele as well*/
+	//this.alleles.get(i).insertBlanks(fromColumnIndex, insBases);
+	this.refAllele.insertBlanks(fromColumnIndex-1, insSize);
 	/*
 	//insert insSize-many columns with gapNodes
 	for(int i=0; i<insSize; i++){
@@ -2426,8 +2549,8 @@ public class HLAGraph{
 	}
 	*/
 	//NEED TO SHIFT all columns after insertion, so updating all columnIndex (originalIndex+insSize.
-	for(int i=fromColumnIndex+insSize; i<this.nodeHashList.size(); i++)
-	    this.adjustColumnIndex(this.nodeHashList.get(i), i);//this.adjustColumnIndex(i);
+	for(int i=fromColumnIndex+insSize; i<this.columnNodes.size(); i++)
+	    this.adjustColumnIndex(this.columnNodes.get(i), i);//this.adjustColumnIndex(i);
 	
 	//remove all edges between start nodes and end nodes and add new edges connecting through gap nodes.
 	double weightSum = this.getWeightSumsBetween2Columns(startNodes, endNodes, gapNodes);
@@ -2436,7 +2559,7 @@ public class HLAGraph{
 	if(insSize > 1){
 	    for(int i=fromColumnIndex; i<fromColumnIndex+insSize-1; i++){
 		gapNodes = Arrays.copyOfRange(gapNodes, 1, gapNodes.length);
-		this.getWeightSumsBetween2Columns(this.nodeHashList.get(i), endNodes, gapNodes);
+		this.getWeightSumsBetween2Columns(this.columnNodes.get(i), endNodes, gapNodes);
 	    }
 	}
 	
@@ -2446,7 +2569,7 @@ public class HLAGraph{
     
     //removes all edges betweend start nodes and end nodes
     //connect edges to newly added gap nodes with correct weights
-    private double getWeightSumsBetween2Columns(HashMap<Integer, Node> start,  HashMap<Integer, Node> end, Node[] gapNodes){
+    private double getWeightSumsBetween2Columns(Node[] start,  Node[] end, Node[] gapNodes){
 	Node sGap = gapNodes[0];
 	Node eGap = gapNodes[gapNodes.length-1];
 	
@@ -2454,46 +2577,44 @@ public class HLAGraph{
 	//ArrayList<Byte>[] outFScore = new ArrayList<Byte>[5];
 	//ArrayList<Byte>[] outRScore = new ArrayList<Byte>[5];
 	
-	ArrayList<ArrayList<Byte>> outFScore = new ArrayList<ArrayList<Byte>>();
-	ArrayList<ArrayList<Byte>> outRScore = new ArrayList<ArrayList<Byte>>();
+	ArrayList<TopScores> outFScore = new ArrayList<TopScores>();
+	ArrayList<TopScores> outRScore = new ArrayList<TopScores>();
 	
 	
 	double[] inweight = new double[6];
 	//ArrayList<Byte>[] inFScore = new ArrayList<Byte>[5];
 	//ArrayList<Byte>[] inRScore = new ArrayList<Byte>[5];
 
-	ArrayList<ArrayList<Byte>> inFScore = new ArrayList<ArrayList<Byte>>();
-	ArrayList<ArrayList<Byte>> inRScore = new ArrayList<ArrayList<Byte>>();
+	ArrayList<TopScores> inFScore = new ArrayList<TopScores>();
+	ArrayList<TopScores> inRScore = new ArrayList<TopScores>();
 	
 	//ArrayList<HashSet<Integer>> outRHash = new ArrayList<HashSet<Integer>>();
 	//ArrayList<HashSet<Integer>> inRHash = new ArrayList<HashSet<Integer>>();
-	ArrayList<CustomHashMap> outRHash = new ArrayList<CustomHashMap>();
-	ArrayList<CustomHashMap> inRHash = new ArrayList<CustomHashMap>();
+	ArrayList<ReadSet> outRHash = new ArrayList<ReadSet>();
+	ArrayList<ReadSet> inRHash = new ArrayList<ReadSet>();
 	
 	
 	//for each nucleotide
 	for(int i=0; i<6; i++){
-	    outFScore.add(new ArrayList<Byte>());
-	    outRScore.add(new ArrayList<Byte>());
-	    inFScore.add(new ArrayList<Byte>());
-	    inRScore.add(new ArrayList<Byte>());
+	    outFScore.add(new TopScores(CustomWeightedEdge.numMaxLowestProbEntries));
+	    outRScore.add(new TopScores(CustomWeightedEdge.numMaxLowestProbEntries));
+	    inFScore.add(new TopScores(CustomWeightedEdge.numMaxLowestProbEntries));
+	    inRScore.add(new TopScores(CustomWeightedEdge.numMaxLowestProbEntries));
 	    //outRHash.add(new HashSet<Integer>());
 	    //inRHash.add(new HashSet<Integer>());
-	    outRHash.add(new CustomHashMap());
-	    inRHash.add(new CustomHashMap());
+	    outRHash.add(new ReadSet(true));
+	    inRHash.add(new ReadSet(true));
 	}
 	
 	double sum = 0.0d;
 	//HashSet<Integer> rHashForGapNodes = new HashSet<Integer>();
-	CustomHashMap rHashForGapNodes = new CustomHashMap();//new HashSet<Integer>();
+	ReadSet rHashForGapNodes = new ReadSet(true);//new HashSet<Integer>();
 	
-	Integer[] sKeys = new Integer[0];
-	Integer[] eKeys = new Integer[0];
-	sKeys = start.keySet().toArray(sKeys);
-	eKeys = end.keySet().toArray(eKeys);
+	int[] sKeys = HLAGraph.ibasesInColumn(start);
+	int[] eKeys = HLAGraph.ibasesInColumn(end);
   	/*
 	for(int i=0;i<eKeys.length; i++){
-	    rHashForGapNodes.addAll(end.get(eKeys[i].intValue()).getReadHashSet());
+	    rHashForGapNodes.addAll(end[eKeys[i]].getReadHashSet());
 	    }*/
 	
 	boolean[] sEdgePresent = new boolean[6];
@@ -2502,13 +2623,13 @@ public class HLAGraph{
 	
 	//check all edges between starNodes and endNodes and sum up baseWise.
 	for(int i=0; i < sKeys.length; i++){
-	    int sVal = sKeys[i].intValue();
+	    int sVal = sKeys[i];
 	    //if(sVal != 4){//edges between gap nodes are skipped, taken care of separately
-		Node stNode = start.get(sKeys[i]);
+		Node stNode = start[sKeys[i]];
 		for(int j=0; j < eKeys.length; j++){
-		    int eVal = eKeys[j].intValue();
+		    int eVal = eKeys[j];
 		    //if(eVal != 4){//edges between gap nodes are skipped, taken care of separately
-			Node eNode = end.get(eKeys[j]);
+			Node eNode = end[eKeys[j]];
 			CustomWeightedEdge e = this.g.getEdge(stNode, eNode);
 			if(e != null){
 			    sEdgePresent[sVal] = true;
@@ -2525,7 +2646,7 @@ public class HLAGraph{
 			    inRHash.get(eVal).addAll(e.getReadHashSet());
 			    rHashForGapNodes.addAll(e.getReadHashSet());
 			    sum += w;
-			    this.g.removeEdge(e);
+			    this.removeEdge(e);
 			}
 			//		    }
 		}
@@ -2537,33 +2658,33 @@ public class HLAGraph{
 	
 	    //setting outgoing edges from start nodes to newly added gapNode( sGap ).
 	    for(int i=0; i<sKeys.length; i++){
-		if(sEdgePresent[sKeys[i].intValue()]){
-		    Node stNode = start.get(sKeys[i]);
+		if(sEdgePresent[sKeys[i]]){
+		    Node stNode = start[sKeys[i]];
 		    CustomWeightedEdge e = this.g.getEdge(stNode, sGap);
 		    if(e == null){
 			e = this.g.addEdge(stNode, sGap);
 			this.g.setEdgeWeight(e, 0.0d);
 		    }
-		    this.g.setEdgeWeight(e, this.g.getEdgeWeight(e) + outweight[sKeys[i].intValue()]);//this.setEdgeWeight(e, outweight[sKeys[i].intValue()]);
-		    e.addAllReadsFrom(outRHash.get(sKeys[i].intValue()));
-		    e.addAllFScores(outFScore.get(sKeys[i].intValue()));
-		    e.addAllRScores(outRScore.get(sKeys[i].intValue()));
+		    this.g.setEdgeWeight(e, this.g.getEdgeWeight(e) + outweight[sKeys[i]]);//this.setEdgeWeight(e, outweight[sKeys[i]]);
+		    e.addAllReadsFrom(outRHash.get(sKeys[i]));
+		    e.addAllFScores(outFScore.get(sKeys[i]));
+		    e.addAllRScores(outRScore.get(sKeys[i]));
 		}
 	    }
 	    
 	    //setting incoming edges from newly added gapNode( eGap ) to end nodes.
 	    for(int i=0; i<eKeys.length; i++){
-		if(eEdgePresent[eKeys[i].intValue()]){
-		    Node eNode = end.get(eKeys[i]);
+		if(eEdgePresent[eKeys[i]]){
+		    Node eNode = end[eKeys[i]];
 		    CustomWeightedEdge e = this.g.getEdge(eGap, eNode);//this.g.addEdge(eGap, eNode);
 		    if(e == null){
 			e = this.g.addEdge(eGap, eNode);
 			this.g.setEdgeWeight(e, 0.0d);
 		    }
-		    this.g.setEdgeWeight(e, this.g.getEdgeWeight(e) + inweight[eKeys[i].intValue()]);
-		    e.addAllReadsFrom(inRHash.get(eKeys[i].intValue()));
-		    e.addAllFScores(inFScore.get(eKeys[i].intValue()));
-		    e.addAllRScores(inRScore.get(eKeys[i].intValue()));
+		    this.g.setEdgeWeight(e, this.g.getEdgeWeight(e) + inweight[eKeys[i]]);
+		    e.addAllReadsFrom(inRHash.get(eKeys[i]));
+		    e.addAllFScores(inFScore.get(eKeys[i]));
+		    e.addAllRScores(inRScore.get(eKeys[i]));
 		}
 	    }
 	    
@@ -2592,58 +2713,49 @@ public class HLAGraph{
     }
     */
     
-    private void adjustColumnIndex(HashMap<Integer, Node> hash, int newIndex){
-	Iterator<Integer> keys = hash.keySet().iterator();
-	while(keys.hasNext())
-	    hash.get(keys.next()).setColIndex(newIndex);
+    private void adjustColumnIndex(Node[] column, int newIndex){
+	for(int i=0; i<column.length; i++){
+	    if(column[i] != null)
+		column[i].setColIndex(newIndex);
+	}
     }
     
+    /* remove low frequency edges and the island vertices they leave behind.
+     * weights and degrees are read once from a ColumnDAG of the graph, so vertices are not checked against the graph again. */
     public void removeUnused(){
-	this.removeUnusedEdges();
-	this.removeUnusedVertices();
-    }
-
-    /* remove low frequency edges */
-    private void removeUnusedEdges(){
-	Iterator<CustomWeightedEdge> itr = this.g.edgeSet().iterator();
-	CustomWeightedEdge e = null;
+	ColumnDAG dag = new ColumnDAG(this.g);
+	int[] inDeg = new int[dag.numNodes()];
+	int[] outDeg = new int[dag.numNodes()];
 	ArrayList<CustomWeightedEdge> removalList = new ArrayList<CustomWeightedEdge>();
-	
-	while(itr.hasNext()){
-	    e = itr.next();
-	    if(this.g.getEdgeWeight(e) < 1.0d){
-		removalList.add(e);//this.g.removeEdge(e);
+	for(int e=0; e<dag.numEdges(); e++){
+	    if(dag.weight(e) < 1.0d)
+		removalList.add(dag.edge(e));
+	    else{
+		outDeg[dag.source(e)]++;
+		inDeg[dag.target(e)]++;
 	    }
 	}
-	HLA.log.appendln(this.HLAGeneName +"\t:removed\t" + removalList.size() + "\tEdges." );
-	for(int i=0; i<removalList.size(); i++){
-	    this.g.removeEdge(removalList.get(i));
+	this.ctx.log.appendln(this.HLAGeneName +"\t:removed\t" + removalList.size() + "\tEdges." );
+	this.removeEdges(removalList);
+
+	/* remove island vertices. we dont remove sNode and tNode */
+	ArrayList<Node> islands = new ArrayList<Node>();
+	for(int v=0; v<dag.numNodes(); v++){
+	    Node n = dag.node(v);
+	    if(inDeg[v] == 0 && outDeg[v] == 0 && n != this.sNode && n != this.tNode)
+		islands.add(n);
 	}
+	this.ctx.log.appendln(this.HLAGeneName +"\t:removed\t" + islands.size() + "\tVertices." );
+	for(Node n : islands)
+	    this.removeVertex(n);
     }
-    
-    /* remove island vertices */
-    private void removeUnusedVertices(){
-	Iterator<Node> itr = this.g.vertexSet().iterator();
-	Node n = null;
-	ArrayList<Node> removalList = new ArrayList<Node>();
-	while(itr.hasNext()){
-	    n = itr.next();
-	    //we dont remove sNode and tNode
-	    if(!n.equals(this.sNode) && !n.equals(this.tNode)){
-		if(this.g.inDegreeOf(n) ==0  && this.g.outDegreeOf(n) == 0){//this.g.degreeOf(n) < 1){
-		    removalList.add(n);
-		    //this.removeVertexFromNodeHashList(n);
-		    //this.g.removeVertex(n);
-		}
-	    }
-	}
-	HLA.log.appendln(this.HLAGeneName +"\t:removed\t" + removalList.size() + "\tVertices." );
-	for(int i=0; i<removalList.size(); i++){
-	    //HLA.log.appendln("\t" + removalList.get(i).toString());
-	    this.removeVertex(removalList.get(i));
-	    //this.removeVertexFromNodeHashList(removalList.get(i));
-	    //this.g.removeVertex(removalList.get(i));
-	}
+
+    //node --> its index in nodes
+    private static Reference2IntOpenHashMap<Node> indexVertices(Node[] nodes){
+	Reference2IntOpenHashMap<Node> index = new Reference2IntOpenHashMap<Node>(nodes.length);
+	for(int i=0; i<nodes.length; i++)
+	    index.put(nodes[i], i);
+	return index;
     }
 
     //removing stems. (unreachable stems and dead-end stems)
@@ -2713,81 +2825,95 @@ public class HLAGraph{
     }
     */
     
-    /* remove any stems */
+    /* remove any stems
+     * nodes are visited once in vertexSet order and a stem is followed node by node as before,
+     * but in/out degrees are kept in counters and nodes are only marked while stems are followed.
+     * marked nodes are removed from the graph at the end, so each node and edge is looked at a bounded number of times.
+     */
     public void removeStems(){
 	ArrayList<int[]> typingIntervals = this.obtainTypingIntervals();
 	
-	//Set<Node> vSet = this.g.vertexSet();
-	Node[] nodes = this.g.vertexSet().toArray(new Node[0]);//new Node[vSet.size()];
-	HashSet<Node> dNodes = new HashSet<Node>();
-	Node n = null;
+	Node[] nodes = this.g.vertexSet().toArray(new Node[0]);
+	Reference2IntOpenHashMap<Node> index = HLAGraph.indexVertices(nodes);
+	int[] inDeg = new int[nodes.length];
+	int[] outDeg = new int[nodes.length];
+	for(int i=0; i<nodes.length; i++){
+	    inDeg[i] = this.g.inDegreeOf(nodes[i]);
+	    outDeg[i] = this.g.outDegreeOf(nodes[i]);
+	}
+	boolean[] removed = new boolean[nodes.length];
+	ArrayList<Node> dNodes = new ArrayList<Node>();
 	int terminalStem = 0;
 	int unreachableStem = 0;
 	for(int i=0; i<nodes.length; i++){
-	    n = nodes[i];
-	    if(!n.equals(this.sNode) && !n.equals(this.tNode) && !dNodes.contains(n)){
+	    Node n = nodes[i];
+	    if(n != this.sNode && n != this.tNode && !removed[i]){
 		
 		//dead-end stem    ---->x--->x
-		if(this.g.outDegreeOf(n) == 0 && this.g.inDegreeOf(n) == 1){
+		if(outDeg[i] == 0 && inDeg[i] == 1){
 		    int stemSize = 0;
 		    terminalStem++;
-		    Node curNode = n;
+		    int cur = i;
 		    
 		    while(true){
-			if(!this.alleles.get(0).withinTypingRegion(curNode, typingIntervals))
-			    ;//HLA.log.appendln("NOT IN TYPING INTERVAL!!");
-			else{
-			    if(HLA.DEBUG)
-				HLA.log.appendln("YES! IN TYPING INTERVAL!!");
-			}
+			if(HLA.DEBUG && this.refAllele.withinTypingRegion(nodes[cur], typingIntervals))
+			    this.ctx.log.appendln("YES! IN TYPING INTERVAL!!");
 			stemSize++;
-			CustomWeightedEdge e = this.g.incomingEdgesOf(curNode).toArray(new CustomWeightedEdge[1])[0];
+			CustomWeightedEdge e = this.liveEdge(this.g.incomingEdgesOf(nodes[cur]), index, removed, true);
 			if(HLA.DEBUG)
-			    HLA.log.append("\t" + this.g.getEdgeWeight(e));
-			Node nextNode = this.g.getEdgeSource(e);
-			dNodes.add(curNode);
-			this.removeVertex(curNode);
-			if(this.g.outDegreeOf(nextNode) == 0 && this.g.inDegreeOf(nextNode) == 1)
-			    curNode = nextNode;
+			    this.ctx.log.append("\t" + this.g.getEdgeWeight(e));
+			int next = index.getInt(this.g.getEdgeSource(e));
+			removed[cur] = true;
+			dNodes.add(nodes[cur]);
+			outDeg[next]--;
+			if(outDeg[next] == 0 && inDeg[next] == 1)
+			    cur = next;
 			else
 			    break;
 		    }
 		    if(HLA.DEBUG)
-			HLA.log.appendln("[DE]stemSize:\t" + stemSize);
+			this.ctx.log.appendln("[DE]stemSize:\t" + stemSize);
 		}
 		//unreachable stem   x--->x--->
-		else if(this.g.outDegreeOf(n) == 1 && this.g.inDegreeOf(n) == 0){
+		else if(outDeg[i] == 1 && inDeg[i] == 0){
 		    int stemSize = 0;
 		    unreachableStem++;
-		    Node curNode = n;
+		    int cur = i;
 		    while(true){
-			if(!this.alleles.get(0).withinTypingRegion(curNode, typingIntervals))
-			    ;//HLA.log.appendln("NOT IN TYPING INTERVAL!!");
-			else{
-			    if(HLA.DEBUG)
-				HLA.log.appendln("YES! IN TYPING INTERVAL!!");
-			}
+			if(HLA.DEBUG && this.refAllele.withinTypingRegion(nodes[cur], typingIntervals))
+			    this.ctx.log.appendln("YES! IN TYPING INTERVAL!!");
 			stemSize++;
-			CustomWeightedEdge e = this.g.outgoingEdgesOf(curNode).toArray(new CustomWeightedEdge[1])[0];
+			CustomWeightedEdge e = this.liveEdge(this.g.outgoingEdgesOf(nodes[cur]), index, removed, false);
 			if(HLA.DEBUG)
-			    HLA.log.append("\t" + this.g.getEdgeWeight(e));
-			Node nextNode = this.g.getEdgeTarget(e);
-			dNodes.add(curNode);
-			this.removeVertex(curNode);
-			if(this.g.outDegreeOf(nextNode) == 1 && this.g.inDegreeOf(nextNode) == 0)
-			    curNode = nextNode;
+			    this.ctx.log.append("\t" + this.g.getEdgeWeight(e));
+			int next = index.getInt(this.g.getEdgeTarget(e));
+			removed[cur] = true;
+			dNodes.add(nodes[cur]);
+			inDeg[next]--;
+			if(outDeg[next] == 1 && inDeg[next] == 0)
+			    cur = next;
 			else
 			    break;
 		    }
 		    if(HLA.DEBUG)
-			HLA.log.appendln("[UN]stemSize:\t" + stemSize);
+			this.ctx.log.appendln("[UN]stemSize:\t" + stemSize);
 		}
 	    }
 	}
-	HLA.log.appendln(this.HLAGeneName + "\t:removed\t[DE]:" + terminalStem + "\t[UN]:" + unreachableStem + "\t[NumVertices]:" + dNodes.size());
+	this.ctx.log.appendln(this.HLAGeneName + "\t:removed\t[DE]:" + terminalStem + "\t[UN]:" + unreachableStem + "\t[NumVertices]:" + dNodes.size());
+	for(Node n : dNodes)
+	    this.removeVertex(n);
     }
 
-    
+    //first edge in edges whose other end (source if incoming, target otherwise) is not marked removed
+    private CustomWeightedEdge liveEdge(Set<CustomWeightedEdge> edges, Reference2IntOpenHashMap<Node> index, boolean[] removed, boolean incoming){
+	for(CustomWeightedEdge e : edges){
+	    Node other = incoming ? this.g.getEdgeSource(e) : this.g.getEdgeTarget(e);
+	    if(!removed[index.getInt(other)])
+		return e;
+	}
+	return null;
+    }
 
     public void countStems(){
     
@@ -2802,11 +2928,11 @@ public class HLAGraph{
 		    terminalType++;
 		}else if(this.g.inDegreeOf(n) == 0 && this.g.outDegreeOf(n) == 1){
 		    startType++;
-		    HLA.log.appendln("startType:\t" + n.toString());
+		    this.ctx.log.appendln("startType:\t" + n.toString());
 		}
 	    }
 	}
-	HLA.log.appendln("Stems\t" + terminalType + "\t" + startType);
+	this.ctx.log.appendln("Stems\t" + terminalType + "\t" + startType);
     }
     
     
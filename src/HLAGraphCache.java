@@ -0,0 +1,132 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.*;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/*
+ * On-disk cache of reference HLAGraphs (graph + alleles + typing DB) built before any reads are loaded.
+ * One file per gene under <msaDirectory>/graphcache. Each file starts with a key made of
+ * cache version, Kourami version, panel directory and checksums of <gene>_nuc.txt, <gene>_gen.txt and hla_nom_g.txt.
+ * Cache is rebuilt whenever the key does not match or the file cannot be read.
+ */
+public class HLAGraphCache{
+
+    //bump whenever a serialized field of a cached class (HLAGraph, Node, CustomWeightedEdge, ReadSet, Sequence, ...) changes
+    public static final int CACHE_VERSION = 7;
+
+    private static final String MAGIC = "KOURAMI_GRAPH_CACHE";
+
+    private File panelDir;
+    private File cacheDir;
+    private String nomGChecksum;
+
+    //gene --> key computed at lookup, reused when storing
+    private HashMap<String, String> gene2key;
+
+    private LogHandler log;
+
+    public HLAGraphCache(String msaDir, String nomGFile, LogHandler log){
+	this.panelDir = new File(msaDir);
+	this.cacheDir = new File(msaDir + File.separator + "graphcache");
+	this.nomGChecksum = HLAGraphCache.checksum(new File(nomGFile));
+	this.gene2key = new HashMap<String, String>();
+	this.log = log;
+    }
+
+    private synchronized String getKey(String hgn){
+	String key = this.gene2key.get(hgn);
+	if(key == null){
+	    String panelPath = null;
+	    try{
+		panelPath = this.panelDir.getCanonicalPath();
+	    }catch(IOException ioe){
+		panelPath = this.panelDir.getAbsolutePath();
+	    }
+	    key = MAGIC + "\t" + CACHE_VERSION + "\t" + HLA.VERSION + "\t" + panelPath
+		+ "\t" + HLAGraphCache.checksum(new File(this.panelDir, hgn + "_nuc.txt"))
+		+ "\t" + HLAGraphCache.checksum(new File(this.panelDir, hgn + "_gen.txt"))
+		+ "\t" + this.nomGChecksum;
+	    this.gene2key.put(hgn, key);
+	}
+	return key;
+    }
+
+    private File getCacheFile(String hgn){
+	return new File(this.cacheDir, hgn + ".graph");
+    }
+
+    //returns null if there is no valid cache for the gene
+    public HLAGraph load(String hgn){
+	File cf = this.getCacheFile(hgn);
+	if(!cf.exists())
+	    return null;
+	ObjectInputStream ois = null;
+	try{
+	    ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cf), 1 << 16));
+	    if(!this.getKey(hgn).equals(ois.readUTF())){
+		this.log.appendln("Graph cache for " + hgn + " is outdated. Rebuilding.");
+		ois.close();
+		return null;
+	    }
+	    HLAGraph hg = (HLAGraph) ois.readObject();
+	    ois.close();
+	    return hg;
+	}catch(Exception e){
+	    this.log.appendln("Failed to read graph cache for " + hgn + " (" + e.toString() + "). Rebuilding.");
+	    try{
+		if(ois != null)
+		    ois.close();
+	    }catch(IOException ioe){
+		;
+	    }
+	    return null;
+	}
+    }
+
+    //writes to a temporary file and renames so a partially written cache is never picked up.
+    //failure to write (ex: read-only panel directory) is not fatal.
+    public void store(String hgn, HLAGraph hg){
+	File cf = this.getCacheFile(hgn);
+	File tmp = new File(this.cacheDir, hgn + ".graph." + System.nanoTime() + ".tmp");
+	try{
+	    if(!this.cacheDir.exists() && !this.cacheDir.mkdirs() && !this.cacheDir.exists()){
+		this.log.appendln("Cannot create graph cache directory: " + this.cacheDir.getPath());
+		return;
+	    }
+	    ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+	    oos.writeUTF(this.getKey(hgn));
+	    oos.writeObject(hg);
+	    oos.close();
+	    if(!tmp.renameTo(cf)){
+		cf.delete();
+		if(!tmp.renameTo(cf)){
+		    tmp.delete();
+		    this.log.appendln("Cannot write graph cache: " + cf.getPath());
+		}
+	    }
+	}catch(IOException ioe){
+	    this.log.appendln("Cannot write graph cache: " + cf.getPath() + " (" + ioe.toString() + ")");
+	    tmp.delete();
+	}
+    }
+
+    //CRC32 and length of a file. "NA" if file cannot be read.
+    public static String checksum(File f){
+	CRC32 crc = new CRC32();
+	byte[] buf = new byte[1 << 16];
+	try{
+	    InputStream is = new FileInputStream(f);
+	    int n;
+	    while( (n = is.read(buf)) > 0 )
+		crc.update(buf, 0, n);
+	    is.close();
+	}catch(IOException ioe){
+	    return "NA";
+	}
+	return Long.toHexString(crc.getValue()) + ":" + f.length();
+    }
+}
@@ -3,11 +3,15 @@ Part of Kourami HLA typer/assembler
 (c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
 See LICENSE for licensing.
 */
+import java.io.Serializable;
+
 /*
  * Simple class storing allele name and its typing sequence
  * 
  */
-public class HLASequence{
+public class HLASequence implements Serializable{
+
+    private static final long serialVersionUID = 1L;
     
     private Group grp;
     private String sequence;
@@ -4,6 +4,7 @@ Part of Kourami HLA typer/assembler
 See LICENSE for licensing.
 */
 import java.io.*;
+import java.util.ArrayList;
 
 public class LogHandler{
 
@@ -13,15 +14,49 @@ public class LogHandler{
     
     public BufferedWriter bw;
 
-    public LogHandler(){
+    private String outPrefix; //log is written to <outPrefix>.log
+
+    //while set, log lines from the current thread go to the last buffer here instead of bf.
+    //lets worker threads keep their own log which the caller appends in a fixed order.
+    //buffers nest: a fork-join worker waiting for a subtask may run another task that keeps its own log.
+    private ThreadLocal<ArrayList<StringBuffer>> localBf;
+
+    public LogHandler(String outPrefix){
+	this.outPrefix = outPrefix;
 	this.bf = new StringBuffer();
 	this.bw = null;
+	this.localBf = new ThreadLocal<ArrayList<StringBuffer>>();
+    }
+
+    public void startLocalBuffer(){
+	ArrayList<StringBuffer> stack = this.localBf.get();
+	if(stack == null){
+	    stack = new ArrayList<StringBuffer>();
+	    this.localBf.set(stack);
+	}
+	stack.add(new StringBuffer());
+    }
+
+    //returns everything logged by the current thread since the matching startLocalBuffer()
+    public String endLocalBuffer(){
+	ArrayList<StringBuffer> stack = this.localBf.get();
+	if(stack == null)
+	    return "";
+	StringBuffer lbf = stack.remove(stack.size() - 1);
+	if(stack.isEmpty())
+	    this.localBf.remove();
+	return lbf.toString();
+    }
+
+    private StringBuffer buffer(){
+	ArrayList<StringBuffer> stack = this.localBf.get();
+	return stack == null ? this.bf : stack.get(stack.size() - 1);
     }
 
     public void flush(){
 	try{
 	    if(this.bw == null){
-		this.bw = new BufferedWriter(new FileWriter(HLA.OUTPREFIX + ".log"));
+		this.bw = new BufferedWriter(new FileWriter(this.outPrefix + ".log"));
 	    }
 	    this.bw.write(this.bf.toString());
 	    this.bw.flush();
@@ -32,31 +67,31 @@ public class LogHandler{
     }
 
     public void appendln(int i){
-	bf.append(i + "\n");
+	this.buffer().append(i + "\n");
     }
 
     public void appendln(String line){
-	bf.append(line + "\n");
+	this.buffer().append(line + "\n");
     }
 
     public void appendln(char c){
-	bf.append(c + "\n");
+	this.buffer().append(c + "\n");
     }
     
     public void appendln(){
-	bf.append("\n");
+	this.buffer().append("\n");
     }
     
     public void append(int i){
-	bf.append(i + "");
+	this.buffer().append(i + "");
     }
 
     public void append(String line){
-	bf.append(line);
+	this.buffer().append(line);
     }
 
     public void append(char c){
-	bf.append(c + "");
+	this.buffer().append(c + "");
     }
 
     
@@ -0,0 +1,145 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import htsjdk.samtools.SAMRecord;
+
+import java.util.TreeSet;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/*
+ * Read ids of mates waiting for their pair, so both mates of a pair get the same read id.
+ * An entry is removed as soon as the second mate is seen, so only incomplete pairs are kept.
+ * Read names are kept as a 64-bit hash with a 32-bit check value. A name whose hash collides
+ * with a different waiting name is kept as a string instead.
+ *
+ * Window mode (coordinate-sorted input only): a waiting mate is dropped once the input has moved
+ * past the position of its pair, since the pair can no longer show up. At most windowSize mates are
+ * kept; beyond that the ones whose pair is furthest ahead are dropped, as their pairs are the last to arrive.
+ * Waiting mates are kept ordered by pair position, so both ends are reached directly.
+ */
+public class MateTracker{
+
+    private Long2LongOpenHashMap hash2entry; // hash --> (check << 32) | readNum
+    private Object2IntOpenHashMap<String> collided;
+
+    private int windowSize; // <= 0 : no window
+    private TreeSet<WaitingMate> window; //by pair position, then by order of arrival
+    private long numWaiting;             //arrival order of the next waiting mate
+    private int numDropped;
+
+    public MateTracker(int windowSize){
+	this.hash2entry = new Long2LongOpenHashMap();
+	this.collided = new Object2IntOpenHashMap<String>();
+	this.collided.defaultReturnValue(0);
+	this.windowSize = windowSize;
+	this.window = windowSize > 0 ? new TreeSet<WaitingMate>() : null;
+	this.numWaiting = 0;
+	this.numDropped = 0;
+    }
+
+    //number of waiting mates dropped by the window before their pair was seen
+    public int getNumDropped(){
+	return this.numDropped;
+    }
+
+    public int size(){
+	return this.hash2entry.size() + this.collided.size();
+    }
+
+    //returns read id assigned to the mate of sr and forgets it. 0 if mate has not been seen.
+    public int take(SAMRecord sr){
+	if(this.window != null)
+	    this.advanceTo(MateTracker.coordinate(sr.getReferenceIndex(), sr.getAlignmentStart()));
+	String name = sr.getReadName();
+	if(this.collided.size() > 0 && this.collided.containsKey(name))
+	    return this.collided.removeInt(name);
+	long h = MateTracker.hash64(name);
+	if(this.hash2entry.containsKey(h)){
+	    long entry = this.hash2entry.get(h);
+	    if((int) (entry >>> 32) == name.hashCode()){
+		this.hash2entry.remove(h);
+		return (int) entry;
+	    }
+	}
+	return 0;
+    }
+
+    //readNum must be positive
+    public void put(SAMRecord sr, int readNum){
+	String name = sr.getReadName();
+	long h = MateTracker.hash64(name);
+	boolean isCollided = this.hash2entry.containsKey(h);
+	if(isCollided)
+	    this.collided.put(name, readNum);
+	else
+	    this.hash2entry.put(h, (((long) name.hashCode()) << 32) | (readNum & 0xffffffffL));
+	if(this.window != null){
+	    this.window.add(new WaitingMate(MateTracker.coordinate(sr.getMateReferenceIndex(), sr.getMateAlignmentStart())
+					    , this.numWaiting++, h, isCollided ? name : null, readNum));
+	    while(this.window.size() > this.windowSize)
+		this.drop(this.window.pollLast());
+	}
+    }
+
+    //drops waiting mates whose pair lies before the current position
+    private void advanceTo(long curCoordinate){
+	while(!this.window.isEmpty() && this.window.first().mateCoordinate < curCoordinate)
+	    this.drop(this.window.pollFirst());
+    }
+
+    //entry may have been completed already; only removed if it is still the same waiting mate
+    private void drop(WaitingMate wm){
+	if(wm.name != null){
+	    if(this.collided.getInt(wm.name) == wm.readNum){
+		this.collided.removeInt(wm.name);
+		this.numDropped++;
+	    }
+	}else if(this.hash2entry.containsKey(wm.hash) && (int) this.hash2entry.get(wm.hash) == wm.readNum){
+	    this.hash2entry.remove(wm.hash);
+	    this.numDropped++;
+	}
+    }
+
+    private static long coordinate(int refIndex, int pos){
+	return (((long) refIndex) << 32) | (pos & 0xffffffffL);
+    }
+
+    //64-bit FNV-1a with a final mix
+    private static long hash64(String s){
+	long h = 0xcbf29ce484222325L;
+	for(int i=0; i<s.length(); i++){
+	    h ^= s.charAt(i);
+	    h *= 0x100000001b3L;
+	}
+	h ^= (h >>> 33);
+	h *= 0xff51afd7ed558ccdL;
+	h ^= (h >>> 33);
+	return h;
+    }
+
+    private static class WaitingMate implements Comparable<WaitingMate>{
+	private long mateCoordinate;
+	private long seq;
+	private long hash;
+	private String name; // only set for collided names
+	private int readNum;
+
+	private WaitingMate(long mateCoordinate, long seq, long hash, String name, int readNum){
+	    this.mateCoordinate = mateCoordinate;
+	    this.seq = seq;
+	    this.hash = hash;
+	    this.name = name;
+	    this.readNum = readNum;
+	}
+
+	public int compareTo(WaitingMate other){
+	    if(this.mateCoordinate != other.mateCoordinate)
+		return Long.compare(this.mateCoordinate, other.mateCoordinate);
+	    return Long.compare(this.seq, other.seq);
+	}
+    }
+}
@@ -18,6 +18,9 @@ public class MergeMSFs{
     private boolean isDRBGene;
     private String drbGeneName;
 
+    private String outPrefix; //outToFasta() writes <outPrefix>_<gene>...
+    private LogHandler log;
+
     //
     // returns typing sequences for a HLAGene
     //
@@ -55,6 +58,12 @@ public class MergeMSFs{
 
     
     public MergeMSFs(){
+	this(null, new LogHandler(null));
+    }
+
+    public MergeMSFs(String outPrefix, LogHandler log){
+	this.outPrefix = outPrefix;
+	this.log = log;
 	this.header = new StringBuffer();
 	this.allele2Sequence = new Hashtable<String, Sequence>();
 	this.orderedAlleles = new ArrayList<String>();
@@ -81,7 +90,7 @@ public class MergeMSFs{
     }
 
     public void outToFasta(){
-	this.outToFasta(HLA.OUTPREFIX + "_");
+	this.outToFasta(this.outPrefix + "_");
     }
 
     public void outToFasta(String outprefix){
@@ -351,7 +360,7 @@ public class MergeMSFs{
 			    System.exit(1);
 			}else{
 			    //use nuc only constructor of Sequence to process nuc-only allele
-			    this.addAllele(allele, new Sequence(allele, msfsequence, refSequence));//this.allele2Sequence.get(nucname)));
+			    this.addAllele(allele, new Sequence(allele, msfsequence, refSequence, this.log));//this.allele2Sequence.get(nucname)));
 			}
 		    }
 		}
@@ -380,9 +389,9 @@ public class MergeMSFs{
 	    mergedSeq = this.mergeBlocks(nucblocks, genblocks);
 	Sequence curSeq = null;
 	if(refSequence == null)
-	    curSeq = new Sequence(alleleName, MergeMSFs.removeBlank(mergedSeq), false, refSequence);
+	    curSeq = new Sequence(alleleName, MergeMSFs.removeBlank(mergedSeq), false, refSequence, this.log);
 	else
-	    curSeq = new Sequence(alleleName, MergeMSFs.removeBlank(mergedSeq), true, refSequence);
+	    curSeq = new Sequence(alleleName, MergeMSFs.removeBlank(mergedSeq), true, refSequence, this.log);
 
 	this.addAllele(alleleName, curSeq);
 	return curSeq;
@@ -4,8 +4,12 @@ Part of Kourami HLA typer/assembler
 See LICENSE for licensing.
 */
 //import java.util.HashSet;
+import java.io.Serializable;
+import java.util.Arrays;
 
-public class Node{
+public class Node implements Serializable{
+
+    private static final long serialVersionUID = 1L;
         
     public Node(char b, int ci){
 	this.base = Character.toUpperCase(b);
@@ -15,6 +19,13 @@ public class Node{
 	//moved rHash to CustomWeightedEdge
     }
 
+    //same base and column. edges are not copied (see HLAGraph.forkSample)
+    public Node(Node other){
+	this.base = other.base;
+	this.iBase = other.iBase;
+	this.colIndex = other.colIndex;
+    }
+
     public Node(int ib, int ci){
 	
     }
@@ -79,6 +90,62 @@ public class Node{
     public String toString(){
 	return "[" + base + "," + colIndex + "]";
     }
+
+    public int getDagId(){
+	return this.dagId;
+    }
+
+    public void setDagId(int id){
+	this.dagId = id;
+    }
+
+    //outgoing edge to target previously handed to cacheOutEdge, null if none.
+    public CustomWeightedEdge getCachedOutEdge(Node target){
+	for(int i=0; i<this.numOutEdges; i++){
+	    if(this.outTargets[i] == target)
+		return this.outEdges[i];
+	}
+	return null;
+    }
+
+    public void cacheOutEdge(Node target, CustomWeightedEdge e){
+	for(int i=0; i<this.numOutEdges; i++){
+	    if(this.outTargets[i] == target){
+		this.outEdges[i] = e;
+		return;
+	    }
+	}
+	if(this.outTargets == null){
+	    this.outTargets = new Node[4];
+	    this.outEdges = new CustomWeightedEdge[4];
+	}else if(this.numOutEdges == this.outTargets.length){
+	    this.outTargets = Arrays.copyOf(this.outTargets, this.numOutEdges * 2);
+	    this.outEdges = Arrays.copyOf(this.outEdges, this.numOutEdges * 2);
+	}
+	this.outTargets[this.numOutEdges] = target;
+	this.outEdges[this.numOutEdges] = e;
+	this.numOutEdges++;
+    }
+
+    //forgets the edge to target. called when the edge leaves the graph.
+    public void uncacheOutEdge(Node target){
+	for(int i=0; i<this.numOutEdges; i++){
+	    if(this.outTargets[i] == target){
+		this.numOutEdges--;
+		this.outTargets[i] = this.outTargets[this.numOutEdges];
+		this.outEdges[i] = this.outEdges[this.numOutEdges];
+		this.outTargets[this.numOutEdges] = null;
+		this.outEdges[this.numOutEdges] = null;
+		return;
+	    }
+	}
+    }
+
+    public void clearOutEdgeCache(){
+	this.outTargets = null;
+	this.outEdges = null;
+	this.numOutEdges = 0;
+    }
     
     /*
     public void incrementNumPathInBubbleFwd(int inc){
@@ -117,6 +184,14 @@ public class Node{
     private int numPathInBubbleFwd;
     private int numPathInBubbleRev;
 
+    /* outgoing edges looked up while loading reads (see HLAGraph.getEdge). not part of the graph cache. */
+    private transient Node[] outTargets;
+    private transient CustomWeightedEdge[] outEdges;
+    private transient int numOutEdges;
+
+    /* id in the last ColumnDAG built from the graph (removeUnused, bubble processing) */
+    private transient int dagId;
+
     //moved rHash to CustomWeightedEdge
     /*
     public void addRead(int readNum){
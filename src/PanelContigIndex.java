@@ -0,0 +1,127 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.*;
+import java.util.HashSet;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Set of contig names in Kourami panel (All_FINAL_with_Decoy.fa.gz) used to validate input BAM headers.
+ * Loaded once per process on first use. A panel that cannot be read gives an empty set and is read again on the next use.
+ * Names are kept in a small index file next to the panel (<panel>.contigs) so the gzipped FASTA
+ * is only read again when it changes (size or modification time in the index header differs).
+ * A .fai next to the panel is used as well when it is newer than the panel.
+ */
+public class PanelContigIndex{
+
+    public static final String PANEL_FASTA = "All_FINAL_with_Decoy.fa.gz";
+
+    private static final String HEADER_PREFIX = "#kourami_contig_index";
+
+    private static HashSet<String> names = null;
+
+    public static synchronized HashSet<String> getNames(){
+	if(PanelContigIndex.names == null){
+	    HashSet<String> set = PanelContigIndex.load(new File(HLA.MSAFILELOC + File.separator + PANEL_FASTA));
+	    if(set == null)
+		return new HashSet<String>();
+	    PanelContigIndex.names = set;
+	}
+	return PanelContigIndex.names;
+    }
+
+    private static String stamp(File fasta){
+	return HEADER_PREFIX + "\t" + fasta.length() + "\t" + fasta.lastModified();
+    }
+
+    //returns null if the panel cannot be read. index is only written after a complete read.
+    private static HashSet<String> load(File fasta){
+	File idx = new File(fasta.getPath() + ".contigs");
+	File fai = new File(fasta.getPath() + ".fai");
+	HashSet<String> set = null;
+	if(fai.exists() && fasta.exists() && fai.lastModified() >= fasta.lastModified())
+	    set = PanelContigIndex.readFai(fai);
+	if(set == null && idx.exists())
+	    set = PanelContigIndex.readIndex(idx, fasta);
+	if(set == null){
+	    set = PanelContigIndex.readFasta(fasta);
+	    if(set != null)
+		PanelContigIndex.writeIndex(idx, fasta, set);
+	}
+	return set;
+    }
+
+    //returns null if index is missing or stale
+    private static HashSet<String> readIndex(File idx, File fasta){
+	HashSet<String> set = new HashSet<String>();
+	try{
+	    BufferedReader br = new BufferedReader(new FileReader(idx));
+	    String curline = br.readLine();
+	    if(curline == null || !curline.equals(PanelContigIndex.stamp(fasta))){
+		br.close();
+		return null;
+	    }
+	    while((curline = br.readLine())!=null)
+		set.add(curline);
+	    br.close();
+	}catch(IOException ioe){
+	    return null;
+	}
+	return set;
+    }
+
+    private static HashSet<String> readFai(File fai){
+	HashSet<String> set = new HashSet<String>();
+	try{
+	    BufferedReader br = new BufferedReader(new FileReader(fai));
+	    String curline = "";
+	    while((curline = br.readLine())!=null){
+		int tab = curline.indexOf('\t');
+		if(tab > 0)
+		    set.add(curline.substring(0, tab));
+	    }
+	    br.close();
+	}catch(IOException ioe){
+	    return null;
+	}
+	return set;
+    }
+
+    //returns null on read error
+    private static HashSet<String> readFasta(File fasta){
+	HashSet<String> set = new HashSet<String>();
+	try{
+	    BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(fasta))));
+	    String curline = "";
+	    while((curline = br.readLine())!=null){
+		if(curline.length() > 0 && curline.charAt(0) == ('>'))
+		    set.add(curline.substring(1));
+	    }
+	    br.close();
+	}catch(IOException ioe){
+	    ioe.printStackTrace();
+	    return null;
+	}
+	return set;
+    }
+
+    //failure to write (ex: read-only panel directory) is not fatal.
+    private static void writeIndex(File idx, File fasta, HashSet<String> set){
+	if(!fasta.exists())
+	    return;
+	File tmp = new File(idx.getPath() + "." + System.nanoTime() + ".tmp");
+	try{
+	    BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+	    bw.write(PanelContigIndex.stamp(fasta) + "\n");
+	    for(String n : set)
+		bw.write(n + "\n");
+	    bw.close();
+	    if(!tmp.renameTo(idx))
+		tmp.delete();
+	}catch(IOException ioe){
+	    tmp.delete();
+	}
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Kourami panel (All_FINAL_with_Decoy.fa.gz) used as the reference for decoding CRAM input.
+ * Gzipped FASTA cannot be randomly accessed, so the panel is read into memory once per process,
+ * on the first reference lookup, and shared by all runs. BAM/SAM input never triggers the load.
+ * Each run (log) gets its own ReferenceSource and logs the panel on its own first lookup,
+ * so batch samples log it as they would alone.
+ */
+public class PanelReferenceSequenceFile implements ReferenceSequenceFile{
+
+    private static WeakHashMap<LogHandler, ReferenceSource> log2source = new WeakHashMap<LogHandler, ReferenceSource>();
+
+    /* panel loaded once per process, shared by all instances */
+    private static ArrayList<String> names = null;
+    private static HashMap<String, byte[]> name2bases = null;
+    private static SAMSequenceDictionary dict = null;
+
+    //one source per run so the panel lookups of a run are logged to its own log
+    public static synchronized ReferenceSource getReferenceSource(LogHandler log){
+	ReferenceSource source = PanelReferenceSequenceFile.log2source.get(log);
+	if(source == null){
+	    source = new ReferenceSource(new PanelReferenceSequenceFile(new File(HLA.MSAFILELOC + File.separator + PanelContigIndex.PANEL_FASTA), log));
+	    PanelReferenceSequenceFile.log2source.put(log, source);
+	}
+	return source;
+    }
+
+    private File fasta;
+    private int nextIndex;
+    private LogHandler log;
+    private boolean logged; //panel logged to this run's log
+
+    public PanelReferenceSequenceFile(File fasta, LogHandler log){
+	this.fasta = fasta;
+	this.log = log;
+	this.nextIndex = 0;
+	this.logged = false;
+    }
+
+    private synchronized void load(){
+	PanelReferenceSequenceFile.loadPanel(this.fasta);
+	if(!this.logged){
+	    this.log.appendln("Loaded CRAM reference:\t" + this.fasta.getName() + "\t" + PanelReferenceSequenceFile.names.size() + "\tsequences");
+	    this.logged = true;
+	}
+    }
+
+    private static synchronized void loadPanel(File fasta){
+	if(PanelReferenceSequenceFile.names != null)
+	    return;
+	ArrayList<String> tmpNames = new ArrayList<String>();
+	HashMap<String, byte[]> tmpBases = new HashMap<String, byte[]>();
+	try{
+	    BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(fasta))));
+	    String curline = "";
+	    String curName = null;
+	    ByteArrayOutputStream bases = new ByteArrayOutputStream();
+	    while((curline = br.readLine())!=null){
+		if(curline.length() > 0 && curline.charAt(0) == ('>')){
+		    if(curName != null)
+			tmpBases.put(curName, bases.toByteArray());
+		    curName = curline.substring(1).trim();
+		    tmpNames.add(curName);
+		    bases.reset();
+		}else{
+		    for(int i=0; i<curline.length(); i++)
+			bases.write((byte) curline.charAt(i));
+		}
+	    }
+	    if(curName != null)
+		tmpBases.put(curName, bases.toByteArray());
+	    br.close();
+	}catch(IOException ioe){
+	    throw new RuntimeException("Failed to load CRAM reference: " + fasta.getPath(), ioe);
+	}
+	SAMSequenceDictionary tmpDict = new SAMSequenceDictionary();
+	for(String n : tmpNames)
+	    tmpDict.addSequence(new SAMSequenceRecord(n, tmpBases.get(n).length));
+	PanelReferenceSequenceFile.name2bases = tmpBases;
+	PanelReferenceSequenceFile.dict = tmpDict;
+	PanelReferenceSequenceFile.names = tmpNames;
+    }
+
+    public SAMSequenceDictionary getSequenceDictionary(){
+	this.load();
+	return PanelReferenceSequenceFile.dict;
+    }
+
+    public synchronized ReferenceSequence nextSequence(){
+	this.load();
+	if(this.nextIndex >= PanelReferenceSequenceFile.names.size())
+	    return null;
+	ReferenceSequence rs = this.getSequence(PanelReferenceSequenceFile.names.get(this.nextIndex));
+	this.nextIndex++;
+	return rs;
+    }
+
+    public synchronized void reset(){
+	this.nextIndex = 0;
+    }
+
+    public boolean isIndexed(){
+	return true;
+    }
+
+    //returns null if the panel has no such sequence
+    public ReferenceSequence getSequence(String contig){
+	this.load();
+	byte[] bases = PanelReferenceSequenceFile.name2bases.get(contig);
+	if(bases == null)
+	    return null;
+	return new ReferenceSequence(contig, PanelReferenceSequenceFile.dict.getSequenceIndex(contig), bases.clone());
+    }
+
+    //start and stop are 1-based inclusive. stop past the contig end is clamped to the end, as for an indexed FASTA.
+    public ReferenceSequence getSubsequenceAt(String contig, long start, long stop){
+	this.load();
+	byte[] bases = PanelReferenceSequenceFile.name2bases.get(contig);
+	if(bases == null)
+	    return null;
+	if(start < 1 || start > stop + 1)
+	    throw new IllegalArgumentException("Malformed query: " + contig + ":" + start + "-" + stop);
+	stop = Math.min(stop, bases.length);
+	byte[] sub = new byte[(int) Math.max(0, stop - start + 1)];
+	System.arraycopy(bases, (int) (start - 1), sub, 0, sub.length);
+	return new ReferenceSequence(contig, PanelReferenceSequenceFile.dict.getSequenceIndex(contig), sub);
+    }
+
+    public String toString(){
+	return this.fasta.getPath();
+    }
+
+    public void close(){
+	;
+    }
+}
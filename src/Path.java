@@ -3,9 +3,6 @@ Part of Kourami HLA typer/assembler
 (c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
 See LICENSE for licensing.
 */
-import it.unimi.dsi.fastutil.ints.IntIterator; 
-
-import htsjdk.samtools.util.QualityUtil;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -28,7 +25,9 @@ public class Path{
     //private HashSet<Integer> readset;
     /* Key:readID, Value: phredScore --> phredScore on path should not be used. ONLY from rHash in CustomWeightedEdge class */
     // should access phred score from edges in orederedEdgeList.
-    private CustomHashMap readset;
+    private ReadSet readset;
+
+    private RunContext ctx; //log and read length of the run this path belongs to
     
     public static final int MIN_SUPPORT_BUBBLE = 1;
     
@@ -157,7 +156,7 @@ public class Path{
 		    homo = true;
 		else{
 		    if(!homo)
-			HLA.log.appendln("FromHeteroToHomo!!!!!!");
+			this.ctx.log.appendln("FromHeteroToHomo!!!!!!");
 		}
 		//HLA.log.appendln("<<<<HOMOZYGOUS>>>>");
 		apCumulativePr2 += Math.log(tCumFraction*oCumFraction);///4.0d);
@@ -301,7 +300,7 @@ public class Path{
     //should only be called when path generation via findAllSTPath
     public void trimPath(int headerExcess, int tailExcess){
 	if(orderedEdgeList.size() <= (headerExcess + tailExcess)){
-	    HLA.log.appendln("SERIOUSLY WRONG!!! in trimming header or tail bubble");
+	    this.ctx.log.appendln("SERIOUSLY WRONG!!! in trimming header or tail bubble");
 	}else{
 	    for(int i=0;i<tailExcess;i++)
 		this.orderedEdgeList.remove(this.orderedEdgeList.size()-1);
@@ -325,10 +324,8 @@ public class Path{
 		try{
 		    singleBubbleEdgeList.add(this.orderedEdgeList.get(k));
 		}catch(IndexOutOfBoundsException e){
-		    HLA.log.appendln("curlen=" + curlen + "\tlimit(k+curlen)=" + limit);
-		    HLA.log.outToFile();
 		    e.printStackTrace();
-		    System.exit(-1);
+		    this.ctx.fail("curlen=" + curlen + "\tlimit(k+curlen)=" + limit, -1);
 		}
 	    }
 	    bubbleWiseOrderedEdgeList.add(singleBubbleEdgeList);
@@ -379,58 +376,16 @@ public class Path{
 	mergedNums++;
     }
 
+    //paths of a bubble share one matrix, see Bubble.getDataMatrixForLikelihoodCalculation
     public PathBaseErrorProb getBaseErrorProbMatrix(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
-	//updated with +1 to include the start base of the bubble.
-	PathBaseErrorProb eProbMatrix = new PathBaseErrorProb(this.readset.size(), this.getPathLength() + 1);
-	//for each position (edge)
-	for(int j=-1; j<this.orderedEdgeList.size(); j++){
-	    CustomWeightedEdge cur;
-	    CustomHashMap curEdgeReadSet;
-	    char curChar;
-	    if(j<0){
-		cur = this.orderedEdgeList.get(0);
-		curEdgeReadSet = new CustomHashMap();//empty
-		curChar = g.getEdgeSource(cur).getBase();
-		eProbMatrix.addPathBases(curChar, j+1);
-	    }else{
-		cur = this.orderedEdgeList.get(j);
-		curEdgeReadSet = cur.getReadHashSet();
-		curChar = g.getEdgeTarget(cur).getBase();
-		eProbMatrix.addPathBases(curChar,j+1);
-	    }
-	    /*
-	    CustomWeightedEdge cur = this.orderedEdgeList.get(j);
-	    CustomHashMap curEdgeReadSet = cur.getReadHashSet();
-	    char curChar = g.getEdgeTarget(cur).getBase();
-	    eProbMatrix.addPathBases(curChar, j);
-	    */
-	    /* for each read */
-	    int i = 0;
-	    IntIterator itr = this.readset.keySet().iterator();
-	    while(itr.hasNext()){
-		int curReadID = itr.nextInt();
-		int qual = 15;//set it as 15 for unknown 
-		//if(this.readset.containsKey(curReadID))
-		if(curEdgeReadSet.containsKey(curReadID))
-		    qual = curEdgeReadSet.get(curReadID);
-		//else{
-		//HLA.log.appendln("NO READ COVERAGE");
-		//}
-		//int qual = this.readset.get(curReadID);
-		//if(qual == -1)
-		//  qual = 15;
-		double errorProb = QualityUtil.getErrorProbabilityFromPhredScore(qual);
-		eProbMatrix.add(errorProb, i, j+1);
-		i++;
-	    }
-	}
-	
-	return eProbMatrix;
+	ArrayList<Path> single = new ArrayList<Path>();
+	single.add(this);
+	return PathBaseErrorProb.forPaths(single, g)[0];
     }
 
     public void printPath(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int n){//, int headerExcessLen, int tailExcessLen){
 	String sequence = this.toString(g, n);//, headerExcessLen, tailExcessLen);
-	HLA.log.appendln(">candidate_" + n + "\n"+ sequence);
+	this.ctx.log.appendln(">candidate_" + n + "\n"+ sequence);
     }
 
     public String toString(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, int n){//, int headerExcessLen, int tailExcessLen){
@@ -459,7 +414,7 @@ public class Path{
 	int endIndex = bf.length() - tailExcessLen;
 	String finalStr = bf.substring(startIndex,endIndex);
 	*/
-	HLA.log.appendln(">candidate_" + n + "(" + disconnectCount + ")\n"+ finalStr);//+ bf.toString());
+	this.ctx.log.appendln(">candidate_" + n + "(" + disconnectCount + ")\n"+ finalStr);//+ bf.toString());
 	return finalStr;//bf.toString();
     }
 
@@ -502,12 +457,12 @@ public class Path{
 	this.mergedNums = n;
     }
     
-    public CustomHashMap getReadSet(){
+    public ReadSet getReadSet(){
 	return this.readset;
     }
 
     public void printReadSet(){
-	this.readset.printReads();
+	this.readset.printReads(this.ctx.log);
     }
 
     public int getReadSetSize(){
@@ -524,11 +479,11 @@ public class Path{
     }
     */
 
-    public void setReadSet(CustomHashMap rs){//HashSet<Integer> rs){
+    public void setReadSet(ReadSet rs){//HashSet<Integer> rs){
 	this.readset = rs;
     }
 
-    public void subtractReadSet(CustomHashMap ors){//HashSet<Integer> ors){
+    public void subtractReadSet(ReadSet ors){//HashSet<Integer> ors){
 	this.readset.removeAll(ors);
     }
 
@@ -540,7 +495,7 @@ public class Path{
 	    bf.append(g.getEdgeTarget(e).getBase() + "(" + g.getEdgeWeight(e)+":"+g.getEdgeWeight(e2)+")");
 	}
 	if(HLA.DEBUG)
-	    HLA.log.appendln("bubble:\t" + bf.toString());
+	    this.ctx.log.appendln("bubble:\t" + bf.toString());
     }
 
     public void initBubbleSequence(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
@@ -551,12 +506,10 @@ public class Path{
 		bf.append(g.getEdgeTarget(e).getBase());
 	    }
 	    if(HLA.DEBUG)
-		HLA.log.appendln("bubble:\t" + bf.toString());
+		this.ctx.log.appendln("bubble:\t" + bf.toString());
 	    bubbleSequences.add(bf);
 	}else{
-	    HLA.log.appendln("Shouldn't be called here.");
-	    HLA.log.outToFile();
-	    System.exit(-1);
+	    this.ctx.fail("Shouldn't be called here.", -1);
 	}
     }
     
@@ -565,7 +518,7 @@ public class Path{
     }
 
     public Path deepCopy(){
-	Path p = new Path();
+	Path p = new Path(this.ctx);
 	for(CustomWeightedEdge e : this.orderedEdgeList){
 	    p.appendEdge(e);
 	}
@@ -595,13 +548,13 @@ public class Path{
 
     public void computeReadSet(HLAGraph g){
 	if(HLA.DEBUG){
-	    HLA.log.appendln("Verifying:");
+	    this.ctx.log.appendln("Verifying:");
 	    this.printPath(g);
 	}
 	//HashSet<Integer> tmpset = new HashSet<Integer>();
 	//HashSet<Integer> unionUniqueSet = new HashSet<Integer>();
-	CustomHashMap tmpset = new CustomHashMap();
-	CustomHashMap unionUniqueSet = new CustomHashMap();
+	ReadSet tmpset = new ReadSet();
+	ReadSet unionUniqueSet = new ReadSet();
 	
 	//first check if size of intersection is nonzero.
  	for(int i=0; i<this.orderedEdgeList.size(); i++){
@@ -623,7 +576,7 @@ public class Path{
 	//intersection is nonzero, we will add supplemnentary evidences(uniqEdgeReads union)
 	if(tmpset.size() >= Path.MIN_SUPPORT_BUBBLE ){
 	    if(HLA.DEBUG)
-		HLA.log.append("InersectionSize\t" + tmpset.size()+ "\tUnionUniqSetSize\t" + unionUniqueSet.size());
+		this.ctx.log.append("InersectionSize\t" + tmpset.size()+ "\tUnionUniqSetSize\t" + unionUniqueSet.size());
 	    /*
 	    ArrayList<CustomWeightedEdge> nonUniqueEdges = new ArrayList<CustomWeightedEdge>();
 	    for(CustomWeightedEdge e : this.orderedEdgeList){
@@ -636,17 +589,17 @@ public class Path{
 		}*/
 	    tmpset.addAll(unionUniqueSet);
 	    if(HLA.DEBUG)
-		HLA.log.appendln("\tTotalSetSize\t" + tmpset.size());
+		this.ctx.log.appendln("\tTotalSetSize\t" + tmpset.size());
 	    for(CustomWeightedEdge e : this.orderedEdgeList){
 		e.subtractSet(tmpset);
 	    }
 	    //this.printReadSet();
 	}else{
 	    if(HLA.DEBUG)
-		HLA.log.append("InersectionSize\t" + tmpset.size()+ "\tUnionUniqSetSize\t" + unionUniqueSet.size());
-	    tmpset = new CustomHashMap();//new HashSet<Integer>();
+		this.ctx.log.append("InersectionSize\t" + tmpset.size()+ "\tUnionUniqSetSize\t" + unionUniqueSet.size());
+	    tmpset = new ReadSet();//new HashSet<Integer>();
 	    if(HLA.DEBUG)
-		HLA.log.appendln("TotalSetSize\t" + tmpset.size() + "\t----> REMOVED");
+		this.ctx.log.appendln("TotalSetSize\t" + tmpset.size() + "\t----> REMOVED");
 	}
 	this.readset = tmpset;
 	if(HLA.DEBUG)
@@ -683,9 +636,10 @@ public class Path{
 	return this.orderedEdgeList;
     }
 
-    public Path(){
+    public Path(RunContext ctx){
+	this.ctx = ctx;
 	this.orderedEdgeList = new ArrayList<CustomWeightedEdge>();
-	this.readset = new CustomHashMap();//new HashSet<Integer>();
+	this.readset = new ReadSet();//new HashSet<Integer>();
 	this.bubbleSequences = new ArrayList<StringBuffer>();
 	this.weightedIntersectionSum = 0.0d;
 	this.mergedNums = 0;
@@ -695,8 +649,8 @@ public class Path{
 	this.interBubbleIntersectionCumulativeCounts = new ArrayList<int[][]>();
     }
 
-    public Path(double p, double wis, int mn){
-	this();
+    public Path(RunContext ctx, double p, double wis, int mn){
+	this(ctx);
 	this.weightedIntersectionSum = wis;
 	this.mergedNums = mn;
 	this.probability = p;
@@ -719,7 +673,7 @@ public class Path{
     public Path combinePaths(Path other){
 	Path np = this.deepCopy();
 	np.appendAllEdges(other);
-	np.setReadSet(new CustomHashMap());//new HashSet<Integer>());
+	np.setReadSet(new ReadSet());//new HashSet<Integer>());
 	np.initBubbleSequences();
 	np.setWeightedIntersectionSum(np.getWeightedIntersectionSum() + other.getWeightedIntersectionSum());
 	np.setMergedNums(np.getMergedNums() + other.getMergedNums());
@@ -727,8 +681,8 @@ public class Path{
 	return np;
     }
 
-    public Path(CustomWeightedEdge e){
-	this();
+    public Path(RunContext ctx, CustomWeightedEdge e){
+	this(ctx);
 	this.appendEdge(e);
     }
 
@@ -764,7 +718,7 @@ public class Path{
     //tp is used multiple times but op is used once.
     public Path mergePathManyto1(Path other){
 	Path np = this.mergePaths(other);
-	CustomHashMap tmp = other.getReadSet().clone();
+	ReadSet tmp = other.getReadSet().clone();
 	tmp.addPEReads(this.readset);
 	np.setReadSet(tmp);
        
@@ -802,18 +756,18 @@ public class Path{
     public boolean isPhasedWithOLD(Path other){
 	//this set
 	//HashSet<Integer> ts = this.getUnionOfUniqueEdgesReadSet();
-	CustomHashMap ts = this.getUnionOfUniqueEdgesReadSet();
+	ReadSet ts = this.getUnionOfUniqueEdgesReadSet();
 	//other set
 	//HashSet<Integer> os = other.getUnionOfUniqueEdgesReadSet();
-	CustomHashMap os = other.getUnionOfUniqueEdgesReadSet();
-	HLA.log.appendln("TS:\t");
-	ts.printKeys();//Path.printHashSet(ts);
-	HLA.log.appendln("OS:\t");
-	os.printKeys();//Path.printHashSet(os);
+	ReadSet os = other.getUnionOfUniqueEdgesReadSet();
+	this.ctx.log.appendln("TS:\t");
+	ts.printKeys(this.ctx.log);//Path.printHashSet(ts);
+	this.ctx.log.appendln("OS:\t");
+	os.printKeys(this.ctx.log);//Path.printHashSet(os);
 	
 	ts.intersectionPE(os);
-	HLA.log.append("\t");
-	ts.printKeys();//Path.printHashSet(ts);
+	this.ctx.log.append("\t");
+	ts.printKeys(this.ctx.log);//Path.printHashSet(ts);
 	
 	if(ts.size() >= Path.MIN_SUPPORT_PHASING)
 	    return true;
@@ -828,7 +782,7 @@ public class Path{
 	this.readset.intersectionPE(other.getReadSet());
     }
 
-    //NO LONGER USED. SHOULD USE clone() in CustomHashMap class.
+    //NO LONGER USED. SHOULD USE clone() in ReadSet class.
     /*
     private HashSet<Integer> getReadSetDeepCopy(){
     	HashSet<Integer> tmp = new HashSet<Integer>();
@@ -843,16 +797,16 @@ public class Path{
     /* phasing based on read set */
     public int isPhasedWith(Path other){
 	//HashSet<Integer> copyset = this.getReadSetDeepCopy();
-	CustomHashMap copyset = this.readset.clone();
+	ReadSet copyset = this.readset.clone();
 	//copyset.retainAll(other.getReadSet());
 	copyset.intersectionPE(other.getReadSet());// special intersection for paired-end 
 	if(copyset.size() >= Path.MIN_SUPPORT_PHASING){
 	    if(HLA.DEBUG)
-		HLA.log.appendln("PHASED[intersectionSize:" + copyset.size() + "]");
+		this.ctx.log.appendln("PHASED[intersectionSize:" + copyset.size() + "]");
 	    //return true;
 	}else{
 	    if(HLA.DEBUG)
-		HLA.log.appendln("NOT PHASED[intersectionSize:" + copyset.size() + "]");
+		this.ctx.log.appendln("NOT PHASED[intersectionSize:" + copyset.size() + "]");
 	    if(copyset.size() > 0){
 		this.subtractReadSet(copyset);
 		other.subtractReadSet(copyset);
@@ -924,8 +878,8 @@ public class Path{
     }
     
     public void printInfo(){
-	HLA.log.append("NumEdges:" + this.orderedEdgeList.size());
-	HLA.log.append("\tNumUniqueEdges:" + this.getUniqueEdgesStr() + "\n");
+	this.ctx.log.append("NumEdges:" + this.orderedEdgeList.size());
+	this.ctx.log.append("\tNumUniqueEdges:" + this.getUniqueEdgesStr() + "\n");
     }
 
     public String toSimplePathString(HLAGraph g){
@@ -936,21 +890,21 @@ public class Path{
     }
 
     public void printPath(){
-	HLA.log.append("NumEdges:" + this.orderedEdgeList.size() + "\t");
+	this.ctx.log.append("NumEdges:" + this.orderedEdgeList.size() + "\t");
 	for(CustomWeightedEdge e : this.orderedEdgeList){
 	    
-	    HLA.log.append("{"+e.getEdgeId()+"}");
+	    this.ctx.log.append("{"+e.getEdgeId()+"}");
 	}
-	HLA.log.appendln();
+	this.ctx.log.appendln();
     }
 
     public void printPath(HLAGraph g){
-	HLA.log.append("NumEdges:" + this.orderedEdgeList.size() + "\t");
+	this.ctx.log.append("NumEdges:" + this.orderedEdgeList.size() + "\t");
 
 	for(CustomWeightedEdge e : this.orderedEdgeList){
-	    HLA.log.append("{"+e.getEdgeId()+"}" + g.getGraph().getEdgeTarget(e).getBase());
+	    this.ctx.log.append("{"+e.getEdgeId()+"}" + g.getGraph().getEdgeTarget(e).getBase());
 	}
-	HLA.log.appendln();
+	this.ctx.log.appendln();
     }
 
     
@@ -958,18 +912,18 @@ public class Path{
     //else it returns union HashSet<Integer> of reads over all unique edges.
     //size 0 if there is reads covering unique edge
     //    public HashSet<Integer> getUnionOfUniqueEdgesReadSet(){
-    public CustomHashMap getUnionOfUniqueEdgesReadSet(){
-	HLA.log.appendln("UnionOfUniqueEdges");
-	CustomHashMap s = new CustomHashMap();
+    public ReadSet getUnionOfUniqueEdgesReadSet(){
+	this.ctx.log.appendln("UnionOfUniqueEdges");
+	ReadSet s = new ReadSet();
 	boolean atLeast1UniqueEdge = false;
 	for(CustomWeightedEdge e : this.orderedEdgeList){
-	    HLA.log.append("|" + e.getNumActivePath() + "|");
+	    this.ctx.log.append("|" + e.getNumActivePath() + "|");
 	    if(e.isUniqueEdge()){
-		HLA.log.appendln("U:"+ e.getEdgeId());
+		this.ctx.log.appendln("U:"+ e.getEdgeId());
 		atLeast1UniqueEdge  = true;
 		s.addAll(e.getReadHashSet());
 	    }else
-		HLA.log.appendln("R:"+ e.getEdgeId());
+		this.ctx.log.appendln("R:"+ e.getEdgeId());
 	}
 	if(!atLeast1UniqueEdge)
 	    return null;
@@ -1003,8 +957,8 @@ public class Path{
 
     public void printNumActivePaths(){
 	for(CustomWeightedEdge e : this.orderedEdgeList){
-	    HLA.log.append(e.getEdgeId() + "\t" + e.getNumActivePath() + "\t|\t");
+	    this.ctx.log.append(e.getEdgeId() + "\t" + e.getNumActivePath() + "\t|\t");
 	}
-	HLA.log.appendln();
+	this.ctx.log.appendln();
     }
 }
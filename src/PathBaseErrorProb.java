@@ -3,43 +3,120 @@ Part of Kourami HLA typer/assembler
 (c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
 See LICENSE for licensing.
 */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import org.jgrapht.graph.*;
+
+/*
+ * Bases of a bubble path and phred scores of the path's reads at each base.
+ *
+ * Phred scores of all paths in a bubble are kept in one byte[] (see forPaths).
+ * Read n of a path is the row quals[offset + n*len .. offset + (n+1)*len - 1].
+ */
 public class PathBaseErrorProb{
 
-    private char[] pathBases;    
-    //public char[][] readBases;
-    private double[][] errorProb;
-    
+    public static final byte UNKNOWN_QUAL = 15; //phred of a read base that is not on the path edge
 
-    public int numReads(){
-	return this.errorProb.length;
+    private char[] pathBases;
+    private byte[] quals;  //shared by all paths of the bubble
+    private int offset;    //first row of this path in quals
+    private int numReads;
+
+    public PathBaseErrorProb(char[] pathBases, byte[] quals, int offset, int numReads){
+	this.pathBases = pathBases;
+	this.quals = quals;
+	this.offset = offset;
+	this.numReads = numReads;
     }
 
-    public double[] getNthReadErrorProb(int n){
-	return this.errorProb[n];
+    public int numReads(){
+	return this.numReads;
     }
 
     public char[] getBases(){
 	return this.pathBases;
     }
-    
-    public double[][] getErrorProb(){
-	return this.errorProb;
+
+    public byte[] getQuals(){
+	return this.quals;
     }
 
-    public PathBaseErrorProb(int numReads, int len){
-	this.pathBases = new char[len];
-	//this.readBases = new char[numReads][len];
-	this.errorProb = new double[numReads][len];
+    //start of read n in getQuals()
+    public int getNthReadOffset(int n){
+	return this.offset + n * this.pathBases.length;
     }
-    
-    public void addPathBases(char b, int pos){
-	this.pathBases[pos] = b;
+
+    /*
+     * Matrices of all paths of a bubble in one byte[]. Rows are the reads of each path's read set, in path order.
+     * Each distinct edge's read set is walked once for reads that have a row, and each path writes the scores
+     * of its own rows from them. All other cells keep UNKNOWN_QUAL.
+     * First column is the bubble start base, which has no edge: all reads get UNKNOWN_QUAL.
+     */
+    public static PathBaseErrorProb[] forPaths(ArrayList<Path> paths, SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
+	int[] firstRow = new int[paths.size() + 1]; //path --> first row of the path. rows are numbered across paths
+	for(int k=0; k<paths.size(); k++)
+	    firstRow[k+1] = firstRow[k] + paths.get(k).getReadSetSize();
+	//read id --> last row of the read. a read can be in more than one path.
+	Int2IntOpenHashMap rowOf = new Int2IntOpenHashMap(firstRow[paths.size()]);
+	rowOf.defaultReturnValue(-1);
+	int[] prevRow = new int[firstRow[paths.size()]]; //row --> previous row of the same read, -1 if none
+	int size = 0;
+	for(int k=0; k<paths.size(); k++){
+	    int[] ids = paths.get(k).getReadSet().toArray();
+	    for(int r=0; r<ids.length; r++)
+		prevRow[firstRow[k] + r] = rowOf.put(ids[r], firstRow[k] + r);
+	    size += ids.length * (paths.get(k).getOrderedEdgeList().size() + 1);
+	}
+	byte[] quals = new byte[size];
+	Arrays.fill(quals, UNKNOWN_QUAL);
+
+	HashMap<CustomWeightedEdge, int[]> edgeQuals = new HashMap<CustomWeightedEdge, int[]>(); //edge --> {row, phred} of reads on the edge
+	PathBaseErrorProb[] matrices = new PathBaseErrorProb[paths.size()];
+	int offset = 0;
+	for(int k=0; k<paths.size(); k++){
+	    ArrayList<CustomWeightedEdge> edges = paths.get(k).getOrderedEdgeList();
+	    int len = edges.size() + 1;
+	    char[] pathBases = new char[len];
+	    pathBases[0] = g.getEdgeSource(edges.get(0)).getBase();
+	    for(int j=0; j<edges.size(); j++){
+		CustomWeightedEdge e = edges.get(j);
+		pathBases[j+1] = g.getEdgeTarget(e).getBase();
+		int[] onEdge = edgeQuals.get(e);
+		if(onEdge == null){
+		    onEdge = PathBaseErrorProb.rowsOnEdge(e.getReadHashSet(), rowOf);
+		    edgeQuals.put(e, onEdge);
+		}
+		for(int h=0; h<onEdge.length; h+=2){
+		    int row = onEdge[h];
+		    while(row >= firstRow[k+1])
+			row = prevRow[row];
+		    if(row >= firstRow[k])
+			quals[offset + (row - firstRow[k])*len + j+1] = (byte) onEdge[h+1];
+		}
+	    }
+	    matrices[k] = new PathBaseErrorProb(pathBases, quals, offset, firstRow[k+1] - firstRow[k]);
+	    offset += (firstRow[k+1] - firstRow[k]) * len;
+	}
+	return matrices;
     }
 
-    public void add(double e, int readIndex, int pos){
-	//this.pathBases[readIndex][pos] = b;
-	//this.readBases[readIndex][pos] = b;
-	this.errorProb[readIndex][pos] = e;
+    //{last row, phred} of each read in reads that has a row
+    private static int[] rowsOnEdge(ReadSet reads, Int2IntOpenHashMap rowOf){
+	int[] ids = reads.toArray();
+	byte[] readQuals = reads.toQualArray();
+	int[] onEdge = new int[2 * ids.length];
+	int n = 0;
+	for(int i=0; i<ids.length; i++){
+	    int row = rowOf.get(ids[i]);
+	    if(row >= 0){
+		onEdge[n++] = row;
+		onEdge[n++] = readQuals[i];
+	    }
+	}
+	return Arrays.copyOf(onEdge, n);
     }
-    
 }
@@ -0,0 +1,62 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import htsjdk.samtools.util.QualityUtil;
+
+/*
+ * Scoring kernel for read likelihoods in bubbles (Bubble.takeMaximumLikeliPair).
+ * log P(read base | path base) only depends on the phred score of the read base, so match and mismatch terms
+ * are tabulated by phred once and gap and N terms are constants. Scoring a read is then a lookup and an addition per base.
+ * Tables hold the same Math.log values the per-base code computed, so scores are unchanged.
+ */
+public class PhredLogProb{
+
+    public static final int MAX_PHRED = 100; //QualityUtil covers phred 0 .. 100
+
+    public static final double[] LOG_MATCH = new double[MAX_PHRED + 1];    //phred --> log(1-e)
+    public static final double[] LOG_MISMATCH = new double[MAX_PHRED + 1]; //phred --> log(e/3)
+
+    public static final double LOG_N = Math.log(0.25d);       //N in read or path
+    public static final double LOG_GAPGAP = Math.log(0.99d);  //gap in both read and path
+    public static final double LOG_GAP = Math.log(0.01d);     //gap in only one of them
+    public static final double LOG_2 = Math.log(2);
+
+    static{
+	for(int q=0; q<=MAX_PHRED; q++){
+	    double errorProb = QualityUtil.getErrorProbabilityFromPhredScore(q);
+	    LOG_MATCH[q] = Math.log(1.0d - errorProb);
+	    LOG_MISMATCH[q] = Math.log(errorProb / 3.0d);
+	}
+    }
+
+    //quals[offset..] --> phred score of each read base
+    //readBases --> contains ordered readBases {A,C,G,T}
+    //pathBases --> contains ordered bases {A,C,G,T} of the allele
+    public static double logProb(byte[] quals, int offset, char[] readBases, char[] pathBases){
+	double logProb = 0.0d;
+	for(int i=0; i<readBases.length; i++){
+	    char readBase = readBases[i];
+	    char pathBase = pathBases[i];
+	    if(readBase == 'N' || pathBase == 'N')
+		logProb += LOG_N;
+	    else if(readBase == '-' || pathBase == '-'){
+		if(readBase == pathBase)
+		    logProb += LOG_GAPGAP;
+		else
+		    logProb += LOG_GAP;
+	    }else if(readBase == pathBase)
+		logProb += LOG_MATCH[quals[offset+i]];
+	    else
+		logProb += LOG_MISMATCH[quals[offset+i]];
+	}
+	return logProb;
+    }
+
+    //log( (P(read|H1) + P(read|H2)) / 2 ) from log P(read|H1) and log P(read|H2)
+    public static double pairLogProb(double logProb1, double logProb2){
+	double maxLog = (logProb1 > logProb2 ? logProb1 : logProb2);
+	return maxLog + Math.log(Math.exp(logProb1-maxLog) + Math.exp(logProb2-maxLog)) - LOG_2;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SAMFileHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pipelined read loading used when more than one thread is available.
+ * 1. reader thread   : BGZF decompression and record decoding (index query if available). Records are handed over in batches.
+ * 2. calling thread  : filtering, QC and read id assignment in input order, exactly as HLA.loadReads/processRecord.
+ * 3. gene consumers  : one per HLAGraph. Only the consumer of a gene calls addWeight on its graph.
+ * Queues are bounded so memory use does not depend on input size.
+ * If dispatching fails, the reader thread is interrupted and waited for (it closes its bam) before the error is rethrown.
+ */
+public class ReadLoadingPipeline{
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private HLA hla;
+    private HashMap<String, HLAGraph> hlaName2Graph;
+
+    private int count;
+    private int numOp;
+
+    public ReadLoadingPipeline(HLA hla, HashMap<String, HLAGraph> hlaName2Graph){
+	this.hla = hla;
+	this.hlaName2Graph = hlaName2Graph;
+	this.count = 0;
+	this.numOp = 0;
+    }
+
+    //number of mapped reads passing the filter
+    public int getCount(){
+	return this.count;
+    }
+
+    public int getNumOp(){
+	return this.numOp;
+    }
+
+    public void load(File[] bams) throws IOException{
+	ArrayBlockingQueue<RecordBatch> decoded = new ArrayBlockingQueue<RecordBatch>(QUEUE_CAPACITY);
+	ExecutorService readerPool = Executors.newSingleThreadExecutor();
+	Future<Void> readerFuture = readerPool.submit(new RecordReader(this.hla, bams, decoded));
+	readerPool.shutdown();
+	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, this.hlaName2Graph.size()));
+
+	HashMap<String, GeneConsumer> consumers = new HashMap<String, GeneConsumer>();
+	ArrayList<Future<Integer>> consumerFutures = new ArrayList<Future<Integer>>();
+	for(String hgn : this.hlaName2Graph.keySet()){
+	    GeneConsumer gc = new GeneConsumer(this.hlaName2Graph.get(hgn));
+	    consumers.put(hgn, gc);
+	    consumerFutures.add(pool.submit(gc));
+	}
+	pool.shutdown();
+
+	try{
+	    this.dispatch(decoded, consumers);
+	}catch(IOException | RuntimeException e){
+	    this.stopReader(readerPool, decoded);
+	    throw e;
+	}finally{
+	    //consumers always get their end marker so the pool can finish.
+	    for(GeneConsumer gc : consumers.values())
+		gc.finish();
+	}
+
+	try{
+	    readerFuture.get();
+	    for(Future<Integer> f : consumerFutures)
+		this.numOp += f.get().intValue();
+	}catch(InterruptedException ie){
+	    throw new IOException(ie);
+	}catch(ExecutionException ee){
+	    if(ee.getCause() instanceof RuntimeException)
+		throw (RuntimeException) ee.getCause();
+	    throw new IOException(ee.getCause());
+	}
+    }
+
+    //interrupts the reader and waits for it to close its bam. queue is emptied so the reader is never left blocked on a full queue.
+    private void stopReader(ExecutorService readerPool, ArrayBlockingQueue<RecordBatch> decoded){
+	readerPool.shutdownNow();
+	try{
+	    do{
+		decoded.clear();
+	    }while(!readerPool.awaitTermination(100, TimeUnit.MILLISECONDS));
+	}catch(InterruptedException ie){
+	    Thread.currentThread().interrupt();
+	}
+	decoded.clear();
+    }
+
+    //filter, QC and read id assignment. Runs on the calling thread so ids are assigned in input order.
+    private void dispatch(ArrayBlockingQueue<RecordBatch> decoded, HashMap<String, GeneConsumer> consumers) throws IOException{
+	MateTracker mates = null;
+	RunContext ctx = this.hla.getContext();
+	for(;;){
+	    RecordBatch b = this.take(decoded);
+	    if(b.error != null){
+		if(b.error instanceof RuntimeException)
+		    throw (RuntimeException) b.error;
+		throw (IOException) b.error;
+	    }
+	    if(b.last || b.bam != null){
+		if(mates != null)
+		    this.hla.logMates(mates);
+		if(b.last)
+		    return;
+		ctx.log.appendln("Loading reads from:\t" + b.bam.getName());
+		this.hla.verifyHeader(b.bam, b.header);
+		this.hla.logRecordSource(b.header, b.indexed);
+		mates = this.hla.newMateTracker(b.bam, b.header);
+		continue;
+	    }
+	    for(SAMRecord samRecord : b.records){
+		if(this.count == 0){
+		    ctx.readLength = samRecord.getReadLength();
+		    ctx.log.appendln("Setting HLA.READ_LEGNTH = " + ctx.readLength);
+		}
+		//added checking to process reads matching to HLA-type sequences
+		//discarding decoy hits (DQB2, DQA2)
+		if( (samRecord.getReferenceName().indexOf("*") > -1)
+		    && !samRecord.getReadUnmappedFlag()
+		    && !samRecord.isSecondaryOrSupplementary()
+		    && !this.hla.startWIns(samRecord)){
+		    this.count++;
+		    String hlagene = HLA.extractHLAGeneName(samRecord.getReferenceName());
+		    HLAGraph hg = this.hlaName2Graph.get(hlagene);
+		    if(hg != null && (!hg.isClassI() || this.hla.qcCheck(samRecord))){
+			int readnum;
+			if(samRecord.getReadPairedFlag())
+			    readnum = this.hla.getPairedReadNum(samRecord, mates);
+			else
+			    readnum = ctx.nextReadNum();
+			consumers.get(hlagene).add(samRecord, readnum);
+		    }
+		}
+
+		if(HLA.DEBUG && this.count%10000 == 0)
+		    ctx.log.appendln("Processed 10000 reads...");
+	    }
+	}
+    }
+
+    private RecordBatch take(ArrayBlockingQueue<RecordBatch> q) throws IOException{
+	try{
+	    return q.take();
+	}catch(InterruptedException ie){
+	    throw new IOException(ie);
+	}
+    }
+
+    /* decoded records. first batch of each bam only carries the bam, its header and whether it is read through index */
+    private static class RecordBatch{
+	private File bam;
+	private SAMFileHeader header;
+	private boolean indexed;
+	private ArrayList<SAMRecord> records;
+	private Exception error;
+	private boolean last;
+
+	private RecordBatch(File bam, SAMFileHeader header, boolean indexed, ArrayList<SAMRecord> records, Exception error, boolean last){
+	    this.bam = bam;
+	    this.header = header;
+	    this.indexed = indexed;
+	    this.records = records;
+	    this.error = error;
+	    this.last = last;
+	}
+    }
+
+    private static class RecordReader implements Callable<Void>{
+	private HLA hla;
+	private File[] bams;
+	private ArrayBlockingQueue<RecordBatch> out;
+
+	private RecordReader(HLA hla, File[] bams, ArrayBlockingQueue<RecordBatch> out){
+	    this.hla = hla;
+	    this.bams = bams;
+	    this.out = out;
+	}
+
+	public Void call() throws InterruptedException{
+	    SamReader reader = null;
+	    SAMRecordIterator itr = null;
+	    try{
+		for(File bam : this.bams){
+		    reader = HLA.openReader(bam, this.hla.getContext().log);
+		    this.out.put(new RecordBatch(bam, reader.getFileHeader(), reader.hasIndex(), null, null, false));
+		    ArrayList<SAMRecord> records = new ArrayList<SAMRecord>(BATCH_SIZE);
+		    itr = this.hla.iterateRecords(reader);
+		    while(itr.hasNext()){
+			records.add(itr.next());
+			if(records.size() == BATCH_SIZE){
+			    this.out.put(new RecordBatch(null, null, false, records, null, false));
+			    records = new ArrayList<SAMRecord>(BATCH_SIZE);
+			}
+		    }
+		    if(records.size() > 0)
+			this.out.put(new RecordBatch(null, null, false, records, null, false));
+		    itr.close();
+		    itr = null;
+		    reader.close();
+		    reader = null;
+		}
+	    }catch(IOException | RuntimeException e){
+		this.out.put(new RecordBatch(null, null, false, null, e, false));
+		return null;
+	    }finally{
+		//bam left open when stopped early (read error or interrupted by stopReader)
+		RecordReader.close(itr, reader);
+	    }
+	    this.out.put(new RecordBatch(null, null, false, null, null, true));
+	    return null;
+	}
+
+	private static void close(SAMRecordIterator itr, SamReader reader){
+	    try{
+		if(itr != null)
+		    itr.close();
+		if(reader != null)
+		    reader.close();
+	    }catch(IOException | RuntimeException e){
+		;
+	    }
+	}
+    }
+
+    /* records routed to one gene along with their read ids */
+    private static class WeightBatch{
+	private SAMRecord[] records;
+	private int[] readNums;
+	private int size;
+
+	private WeightBatch(int capacity){
+	    this.records = new SAMRecord[capacity];
+	    this.readNums = new int[capacity];
+	    this.size = 0;
+	}
+    }
+
+    /* single writer of a HLAGraph */
+    private static class GeneConsumer implements Callable<Integer>{
+	private static final WeightBatch LAST = new WeightBatch(0);
+
+	private HLAGraph hg;
+	private ArrayBlockingQueue<WeightBatch> in;
+	private WeightBatch cur;
+
+	private GeneConsumer(HLAGraph hg){
+	    this.hg = hg;
+	    this.in = new ArrayBlockingQueue<WeightBatch>(QUEUE_CAPACITY);
+	    this.cur = new WeightBatch(BATCH_SIZE);
+	}
+
+	//called from dispatching thread
+	private void add(SAMRecord sr, int readNum) throws IOException{
+	    this.cur.records[this.cur.size] = sr;
+	    this.cur.readNums[this.cur.size] = readNum;
+	    this.cur.size++;
+	    if(this.cur.size == BATCH_SIZE){
+		this.put(this.cur);
+		this.cur = new WeightBatch(BATCH_SIZE);
+	    }
+	}
+
+	//called from dispatching thread
+	private void finish() throws IOException{
+	    if(this.cur.size > 0)
+		this.put(this.cur);
+	    this.cur = new WeightBatch(BATCH_SIZE);
+	    this.put(LAST);
+	}
+
+	private void put(WeightBatch b) throws IOException{
+	    try{
+		this.in.put(b);
+	    }catch(InterruptedException ie){
+		throw new IOException(ie);
+	    }
+	}
+
+	//keeps draining after a failure so the dispatching thread never blocks on a full queue.
+	public Integer call() throws InterruptedException{
+	    int numOp = 0;
+	    RuntimeException failure = null;
+	    for(;;){
+		WeightBatch b = this.in.take();
+		if(b == LAST)
+		    break;
+		if(failure != null)
+		    continue;
+		try{
+		    for(int i=0; i<b.size; i++)
+			numOp += this.hg.addWeight(b.records[i], b.readNums[i]);
+		}catch(RuntimeException e){
+		    failure = e;
+		}
+	    }
+	    if(failure != null)
+		throw failure;
+	    return Integer.valueOf(numOp);
+	}
+    }
+}
@@ -0,0 +1,616 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+ * Set of read ids on an edge or a path. Mates share a read id: +id for first of pair, -id for second.
+ *
+ * Roaring-style compressed bitmap. Positive and negative ids are kept in two bitmaps over |id|.
+ * Each bitmap splits an id into high 16 bits (container key) and low 16 bits. A container keeps up to
+ * ARRAY_MAX low parts as a sorted char[] and becomes a 65536-bit bitmap beyond that, so set algebra
+ * between dense containers is done 64 reads at a time.
+ *
+ * Sets made withQuals (edges) also keep the phred score of each read, stored by rank next to the ids.
+ * Reads are iterated in ascending order: positive ids first, then negative ids by |id|.
+ */
+public class ReadSet implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int ARRAY_MAX = 4096;
+    private static final byte MISSING = -1; //phred of a read added from a set without qualities
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int ANDNOT = 2;
+
+    private boolean withQuals;
+    private IdBitmap pos; //ids > 0
+    private IdBitmap neg; //|id| of ids < 0
+
+    public ReadSet(){
+	this(false);
+    }
+
+    public ReadSet(boolean withQuals){
+	this(withQuals, new IdBitmap(0), new IdBitmap(0));
+    }
+
+    private ReadSet(boolean withQuals, IdBitmap pos, IdBitmap neg){
+	this.withQuals = withQuals;
+	this.pos = pos;
+	this.neg = neg;
+    }
+
+    public int size(){
+	return this.pos.size + this.neg.size;
+    }
+
+    public boolean contains(int readId){
+	if(readId > 0)
+	    return this.pos.contains(readId);
+	return this.neg.contains(0-readId);
+    }
+
+    //phred score of the read, -1 if the read is not in the set.
+    public int getQual(int readId){
+	if(readId > 0)
+	    return this.pos.getQual(readId);
+	return this.neg.getQual(0-readId);
+    }
+
+    //adds the read. score is replaced if the read is already present.
+    public void add(int readId, int qual){
+	if(readId > 0)
+	    this.pos.add(readId, (byte) qual, this.withQuals);
+	else
+	    this.neg.add(0-readId, (byte) qual, this.withQuals);
+    }
+
+    public boolean remove(int readId){
+	if(readId > 0)
+	    return this.pos.remove(readId);
+	return this.neg.remove(0-readId);
+    }
+
+    /* union. reads already in this set keep their score */
+    public boolean union(ReadSet other){
+	int before = this.size();
+	this.pos = IdBitmap.merge(this.pos, other.pos, OR, this.withQuals);
+	this.neg = IdBitmap.merge(this.neg, other.neg, OR, this.withQuals);
+	return this.size() != before;
+    }
+
+    public boolean intersection(ReadSet other){
+	int before = this.size();
+	this.pos = IdBitmap.merge(this.pos, other.pos, AND, this.withQuals);
+	this.neg = IdBitmap.merge(this.neg, other.neg, AND, this.withQuals);
+	return this.size() != before;
+    }
+
+    /*
+     * Performs a special operation for paired-end
+     * Keys of pairing reads are additive inverse to each other.
+     * Elements are kepts as long as one additive inverse is in each set.
+     * Mates (in other) of kept reads are added.
+     */
+    public boolean intersectionPE(ReadSet other){
+	IdBitmap eitherMate = IdBitmap.merge(other.pos, other.neg, OR, false);
+	IdBitmap p = IdBitmap.merge(this.pos, eitherMate, AND, this.withQuals);
+	IdBitmap n = IdBitmap.merge(this.neg, eitherMate, AND, this.withQuals);
+	boolean modified = (p.size != this.pos.size || n.size != this.neg.size);
+	this.pos = p;
+	this.neg = n;
+	return this.addPEReads(other) || modified;
+    }
+
+    //union of this and (intersectionPE of this and other)
+    //this just add PE reads of other that is missing in this readset
+    public boolean addPEReads(ReadSet other){
+	int before = this.size();
+	IdBitmap p = IdBitmap.merge(this.pos, IdBitmap.merge(other.pos, this.neg, AND, this.withQuals), OR, this.withQuals);
+	IdBitmap n = IdBitmap.merge(this.neg, IdBitmap.merge(other.neg, this.pos, AND, this.withQuals), OR, this.withQuals);
+	this.pos = p;
+	this.neg = n;
+	return this.size() != before;
+    }
+
+    public boolean removeAll(ReadSet other){
+	int before = this.size();
+	this.pos = IdBitmap.merge(this.pos, other.pos, ANDNOT, this.withQuals);
+	this.neg = IdBitmap.merge(this.neg, other.neg, ANDNOT, this.withQuals);
+	return this.size() != before;
+    }
+
+    public boolean addAll(ReadSet other){
+	return this.union(other);
+    }
+
+    public boolean retainAll(ReadSet other){
+	return this.intersection(other);
+    }
+
+    public ReadSet clone(){
+	return new ReadSet(this.withQuals, this.pos.copy(this.withQuals), this.neg.copy(this.withQuals));
+    }
+
+    //copy without phred scores. for sets only used for set algebra.
+    public ReadSet copyReads(){
+	return new ReadSet(false, this.pos.copy(false), this.neg.copy(false));
+    }
+
+    //read ids in iteration order
+    public int[] toArray(){
+	int[] ids = new int[this.size()];
+	int n = this.pos.fill(ids, 0, 1);
+	this.neg.fill(ids, n, -1);
+	return ids;
+    }
+
+    //phred of each read in iteration order (as in toArray). -1 for reads without a score.
+    public byte[] toQualArray(){
+	byte[] quals = new byte[this.size()];
+	int n = this.pos.fillQuals(quals, 0);
+	this.neg.fillQuals(quals, n);
+	return quals;
+    }
+
+    //out[i] = phred of i-th read of reads (iteration order) in this set, missing if this set doesn't have it.
+    public void getQuals(ReadSet reads, int missing, int[] out){
+	int n = this.pos.quals(reads.pos, missing, out, 0);
+	this.neg.quals(reads.neg, missing, out, n);
+    }
+
+    public void printReads(LogHandler log){
+	log.append("{");
+	for(int id : this.toArray())
+	    log.append(" (" + id + ") ");
+	log.appendln("}");
+    }
+
+    public void printKeys(LogHandler log){
+	int[] ids = this.toArray();
+	log.append("{");
+	if(ids.length > 0)
+	    log.append(ids[0]);
+	for(int i=1; i<ids.length; i++)
+	    log.append("," + ids[i]);
+	log.appendln("}");
+    }
+
+    /* bitmap over positive ints: containers sorted by key (high 16 bits) */
+    private static final class IdBitmap implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	private int[] keys;
+	private Container[] containers;
+	private int numContainers;
+	private int size;
+
+	private IdBitmap(int capacity){
+	    this.keys = new int[capacity];
+	    this.containers = new Container[capacity];
+	    this.numContainers = 0;
+	    this.size = 0;
+	}
+
+	private int find(int key){
+	    return Arrays.binarySearch(this.keys, 0, this.numContainers, key);
+	}
+
+	private boolean contains(int x){
+	    int i = this.find(x >>> 16);
+	    return i >= 0 && this.containers[i].contains((char) x);
+	}
+
+	private int getQual(int x){
+	    int i = this.find(x >>> 16);
+	    if(i < 0)
+		return MISSING;
+	    return this.containers[i].getQual((char) x);
+	}
+
+	private void add(int x, byte qual, boolean withQuals){
+	    int key = x >>> 16;
+	    int i = this.find(key);
+	    if(i < 0){
+		i = -i - 1;
+		if(this.numContainers == this.keys.length){
+		    int newCapacity = Math.max(4, this.keys.length * 2);
+		    this.keys = Arrays.copyOf(this.keys, newCapacity);
+		    this.containers = Arrays.copyOf(this.containers, newCapacity);
+		}
+		System.arraycopy(this.keys, i, this.keys, i + 1, this.numContainers - i);
+		System.arraycopy(this.containers, i, this.containers, i + 1, this.numContainers - i);
+		this.keys[i] = key;
+		this.containers[i] = new Container(withQuals);
+		this.numContainers++;
+	    }
+	    if(this.containers[i].add((char) x, qual))
+		this.size++;
+	}
+
+	private boolean remove(int x){
+	    int i = this.find(x >>> 16);
+	    if(i < 0 || !this.containers[i].remove((char) x))
+		return false;
+	    this.size--;
+	    if(this.containers[i].card == 0){
+		System.arraycopy(this.keys, i + 1, this.keys, i, this.numContainers - i - 1);
+		System.arraycopy(this.containers, i + 1, this.containers, i, this.numContainers - i - 1);
+		this.numContainers--;
+		this.containers[this.numContainers] = null;
+	    }
+	    return true;
+	}
+
+	//appends a container with a larger key. empty (null) containers are skipped.
+	private void append(int key, Container c){
+	    if(c == null)
+		return;
+	    this.keys[this.numContainers] = key;
+	    this.containers[this.numContainers] = c;
+	    this.numContainers++;
+	    this.size += c.card;
+	}
+
+	private IdBitmap copy(boolean withQuals){
+	    IdBitmap b = new IdBitmap(this.numContainers);
+	    for(int i=0; i<this.numContainers; i++)
+		b.append(this.keys[i], this.containers[i].copy(withQuals));
+	    return b;
+	}
+
+	private static IdBitmap merge(IdBitmap a, IdBitmap b, int op, boolean withQuals){
+	    IdBitmap out = new IdBitmap(op == OR ? a.numContainers + b.numContainers : a.numContainers);
+	    int i = 0;
+	    int j = 0;
+	    while(i < a.numContainers && j < b.numContainers){
+		if(a.keys[i] < b.keys[j]){
+		    if(op != AND)
+			out.append(a.keys[i], a.containers[i].copy(withQuals));
+		    i++;
+		}else if(a.keys[i] > b.keys[j]){
+		    if(op == OR)
+			out.append(b.keys[j], b.containers[j].copy(withQuals));
+		    j++;
+		}else{
+		    out.append(a.keys[i], Container.merge(a.containers[i], b.containers[j], op, withQuals));
+		    i++;
+		    j++;
+		}
+	    }
+	    if(op != AND){
+		for(; i<a.numContainers; i++)
+		    out.append(a.keys[i], a.containers[i].copy(withQuals));
+	    }
+	    if(op == OR){
+		for(; j<b.numContainers; j++)
+		    out.append(b.keys[j], b.containers[j].copy(withQuals));
+	    }
+	    return out;
+	}
+
+	//writes sign * id in ascending order starting at out[offset]. returns next offset.
+	private int fill(int[] out, int offset, int sign){
+	    for(int i=0; i<this.numContainers; i++){
+		int high = this.keys[i] << 16;
+		for(Cursor c = new Cursor(this.containers[i]); c.low >= 0; c.next())
+		    out[offset++] = sign * (high | c.low);
+	    }
+	    return offset;
+	}
+
+	//writes phred of each id in ascending order starting at out[offset]. returns next offset.
+	private int fillQuals(byte[] out, int offset){
+	    for(int i=0; i<this.numContainers; i++){
+		Container c = this.containers[i];
+		if(c.quals != null)
+		    System.arraycopy(c.quals, 0, out, offset, c.card);
+		else
+		    Arrays.fill(out, offset, offset + c.card, MISSING);
+		offset += c.card;
+	    }
+	    return offset;
+	}
+
+	//see ReadSet.getQuals
+	private int quals(IdBitmap reads, int missing, int[] out, int offset){
+	    int j = 0;
+	    for(int i=0; i<reads.numContainers; i++){
+		while(j < this.numContainers && this.keys[j] < reads.keys[i])
+		    j++;
+		Cursor r = new Cursor(reads.containers[i]);
+		if(j < this.numContainers && this.keys[j] == reads.keys[i]){
+		    Cursor c = new Cursor(this.containers[j]);
+		    for(; r.low >= 0; r.next()){
+			while(c.low >= 0 && c.low < r.low)
+			    c.next();
+			out[offset++] = (c.low == r.low) ? c.qual() : missing;
+		    }
+		}else{
+		    for(; r.low >= 0; r.next())
+			out[offset++] = missing;
+		}
+	    }
+	    return offset;
+	}
+    }
+
+    /* low 16 bits of ids sharing a key. quals[k] is the score of the k-th smallest id in either representation. */
+    private static final class Container implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	private char[] array; //sorted. null for bitmap container
+	private long[] bits;  //1024 words. null for array container
+	private byte[] quals; //null if set has no qualities
+	private int card;
+
+	private Container(boolean withQuals){
+	    this.array = new char[4];
+	    this.bits = null;
+	    this.quals = withQuals ? new byte[4] : null;
+	    this.card = 0;
+	}
+
+	private Container(char[] array, long[] bits, byte[] quals, int card){
+	    this.array = array;
+	    this.bits = bits;
+	    this.quals = quals;
+	    this.card = card;
+	}
+
+	private boolean contains(char low){
+	    if(this.array != null)
+		return Arrays.binarySearch(this.array, 0, this.card, low) >= 0;
+	    return (this.bits[low >>> 6] & (1L << low)) != 0;
+	}
+
+	//number of elements smaller than low
+	private int rank(char low){
+	    if(this.array != null){
+		int i = Arrays.binarySearch(this.array, 0, this.card, low);
+		return i < 0 ? -i - 1 : i;
+	    }
+	    int w = low >>> 6;
+	    int r = Long.bitCount(this.bits[w] & ((1L << low) - 1));
+	    for(int i=0; i<w; i++)
+		r += Long.bitCount(this.bits[i]);
+	    return r;
+	}
+
+	private int getQual(char low){
+	    if(!this.contains(low) || this.quals == null)
+		return MISSING;
+	    return this.quals[this.rank(low)];
+	}
+
+	//returns true if low was not present
+	private boolean add(char low, byte qual){
+	    boolean present = this.contains(low);
+	    int r = this.rank(low);
+	    if(present){
+		if(this.quals != null)
+		    this.quals[r] = qual;
+		return false;
+	    }
+	    if(this.array != null && this.card == ARRAY_MAX)
+		this.toBitmap();
+	    if(this.array != null){
+		if(this.card == this.array.length)
+		    this.array = Arrays.copyOf(this.array, Math.min(ARRAY_MAX, this.card * 2));
+		System.arraycopy(this.array, r, this.array, r + 1, this.card - r);
+		this.array[r] = low;
+	    }else
+		this.bits[low >>> 6] |= (1L << low);
+	    if(this.quals != null){
+		if(this.card == this.quals.length)
+		    this.quals = Arrays.copyOf(this.quals, this.card * 2);
+		System.arraycopy(this.quals, r, this.quals, r + 1, this.card - r);
+		this.quals[r] = qual;
+	    }
+	    this.card++;
+	    return true;
+	}
+
+	private boolean remove(char low){
+	    if(!this.contains(low))
+		return false;
+	    int r = this.rank(low);
+	    if(this.array != null)
+		System.arraycopy(this.array, r + 1, this.array, r, this.card - r - 1);
+	    else
+		this.bits[low >>> 6] &= ~(1L << low);
+	    if(this.quals != null)
+		System.arraycopy(this.quals, r + 1, this.quals, r, this.card - r - 1);
+	    this.card--;
+	    if(this.bits != null && this.card <= ARRAY_MAX)
+		this.toArray();
+	    return true;
+	}
+
+	//ranks do not change, so quals stay as they are
+	private void toBitmap(){
+	    long[] b = new long[1024];
+	    for(int i=0; i<this.card; i++)
+		b[this.array[i] >>> 6] |= (1L << this.array[i]);
+	    this.bits = b;
+	    this.array = null;
+	}
+
+	private void toArray(){
+	    char[] a = new char[Math.max(4, this.card)];
+	    int n = 0;
+	    for(Cursor c = new Cursor(this); c.low >= 0; c.next())
+		a[n++] = (char) c.low;
+	    this.array = a;
+	    this.bits = null;
+	}
+
+	private Container copy(boolean withQuals){
+	    byte[] q = null;
+	    if(withQuals){
+		if(this.quals != null)
+		    q = Arrays.copyOf(this.quals, this.card);
+		else{
+		    q = new byte[this.card];
+		    Arrays.fill(q, MISSING);
+		}
+	    }
+	    if(this.array != null)
+		return new Container(Arrays.copyOf(this.array, this.card), null, q, this.card);
+	    return new Container(null, this.bits.clone(), q, this.card);
+	}
+
+	//null if result is empty. scores come from a, and from b for ids only in b.
+	private static Container merge(Container a, Container b, int op, boolean withQuals){
+	    if(!withQuals && a.bits != null && b.bits != null)
+		return Container.mergeBitmaps(a, b, op);
+	    if(a.array != null && b.bits != null && op != OR){
+		Builder out = new Builder(a.card, withQuals);
+		for(int i=0; i<a.card; i++){
+		    if(b.contains(a.array[i]) == (op == AND))
+			out.append(a.array[i], a.quals == null ? MISSING : a.quals[i]);
+		}
+		return out.build();
+	    }
+	    if(!withQuals && a.bits != null && b.array != null && op == AND){
+		Builder out = new Builder(b.card, false);
+		for(int i=0; i<b.card; i++){
+		    if(a.contains(b.array[i]))
+			out.append(b.array[i], MISSING);
+		}
+		return out.build();
+	    }
+	    Builder out = new Builder(op == OR ? a.card + b.card : (op == AND ? Math.min(a.card, b.card) : a.card), withQuals);
+	    Cursor ca = new Cursor(a);
+	    Cursor cb = new Cursor(b);
+	    while(ca.low >= 0 && cb.low >= 0){
+		if(ca.low < cb.low){
+		    if(op != AND)
+			out.append(ca.low, ca.qual());
+		    ca.next();
+		}else if(ca.low > cb.low){
+		    if(op == OR)
+			out.append(cb.low, cb.qual());
+		    cb.next();
+		}else{
+		    if(op != ANDNOT)
+			out.append(ca.low, ca.qual());
+		    ca.next();
+		    cb.next();
+		}
+	    }
+	    if(op != AND){
+		for(; ca.low >= 0; ca.next())
+		    out.append(ca.low, ca.qual());
+	    }
+	    if(op == OR){
+		for(; cb.low >= 0; cb.next())
+		    out.append(cb.low, cb.qual());
+	    }
+	    return out.build();
+	}
+
+	//word-parallel set algebra of two bitmap containers without scores
+	private static Container mergeBitmaps(Container a, Container b, int op){
+	    long[] r = new long[1024];
+	    int card = 0;
+	    for(int i=0; i<1024; i++){
+		if(op == AND)
+		    r[i] = a.bits[i] & b.bits[i];
+		else if(op == OR)
+		    r[i] = a.bits[i] | b.bits[i];
+		else
+		    r[i] = a.bits[i] & ~b.bits[i];
+		card += Long.bitCount(r[i]);
+	    }
+	    if(card == 0)
+		return null;
+	    Container c = new Container(null, r, null, card);
+	    if(card <= ARRAY_MAX)
+		c.toArray();
+	    return c;
+	}
+    }
+
+    /* ascending walk over a container. rank is the index of the current element, low is -1 when done. */
+    private static final class Cursor{
+	private Container c;
+	private int rank;
+	private int low;
+	private int word;
+	private long w;
+
+	private Cursor(Container c){
+	    this.c = c;
+	    this.rank = -1;
+	    this.word = -1;
+	    this.w = 0L;
+	    this.next();
+	}
+
+	private void next(){
+	    this.rank++;
+	    if(this.rank >= this.c.card){
+		this.low = -1;
+		return;
+	    }
+	    if(this.c.array != null){
+		this.low = this.c.array[this.rank];
+		return;
+	    }
+	    while(this.w == 0L)
+		this.w = this.c.bits[++this.word];
+	    this.low = (this.word << 6) + Long.numberOfTrailingZeros(this.w);
+	    this.w &= this.w - 1;
+	}
+
+	private byte qual(){
+	    return this.c.quals == null ? MISSING : this.c.quals[this.rank];
+	}
+    }
+
+    /* builds a container from ascending elements */
+    private static final class Builder{
+	private char[] array;
+	private long[] bits;
+	private byte[] quals;
+	private int card;
+
+	private Builder(int maxCard, boolean withQuals){
+	    if(maxCard > ARRAY_MAX)
+		this.bits = new long[1024];
+	    else
+		this.array = new char[maxCard];
+	    this.quals = withQuals ? new byte[Math.min(maxCard, 65536)] : null;
+	    this.card = 0;
+	}
+
+	private void append(int low, byte qual){
+	    if(this.array != null)
+		this.array[this.card] = (char) low;
+	    else
+		this.bits[low >>> 6] |= (1L << low);
+	    if(this.quals != null)
+		this.quals[this.card] = qual;
+	    this.card++;
+	}
+
+	private Container build(){
+	    if(this.card == 0)
+		return null;
+	    byte[] q = (this.quals == null || this.quals.length == this.card) ? this.quals : Arrays.copyOf(this.quals, this.card);
+	    if(this.array != null)
+		return new Container(this.array.length == this.card ? this.array : Arrays.copyOf(this.array, this.card), null, q, this.card);
+	    Container c = new Container(null, this.bits, q, this.card);
+	    if(this.card <= ARRAY_MAX)
+		c.toArray();
+	    return c;
+	}
+    }
+}
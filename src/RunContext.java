@@ -0,0 +1,93 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * State of one run: the reference graph build or the typing of one sample.
+ * Holds output prefix, log, read id and edge id allocators, read length and graph modification counters.
+ * Passed to HLA, HLAGraph, Bubble and Path instead of keeping these as statics in HLA,
+ * so several samples can be typed in one JVM at the same time.
+ * Options from the command line (HLA.DEBUG, HLA.NUM_THREADS, ...) are set once and stay in HLA.
+ * Only the number of threads a run uses is kept here, as batch mode splits -t across the samples typed at the same time.
+ */
+public class RunContext{
+
+    public final String outPrefix; // used for outfile names
+    public final LogHandler log;
+
+    public final int numThreads; //threads for graph building, read loading and bubble building of this run
+
+    public boolean debug3; //bubble debugging output. turned on with HLA.DEBUG once graphs are cleaned.
+
+    public boolean exitOnError; //false in batch mode: fatal errors of a sample throw instead of ending the JVM (see fail)
+
+    public int readLength; //automatically gets set by the first read loaded.
+
+    /* graph mod stats. reads are loaded into several graphs at once, so each is a per-thread accumulator */
+    public final LongAdder newNodeAdded;
+    public final LongAdder hopping;
+    public final LongAdder insertionNodeAdded;
+    public final LongAdder insertionWithNoNewNode;
+    public final LongAdder insertion;
+
+    private int readNum; //next read id. read ids are only assigned by the thread reading input
+    private AtomicInteger edgeId; //next edge id. edges can be added by several graphs at once
+
+    public RunContext(String outPrefix){
+	this(outPrefix, 0);
+    }
+
+    //edge ids start from firstEdgeId. batch mode: sample graphs continue from the reference graphs.
+    public RunContext(String outPrefix, int firstEdgeId){
+	this(outPrefix, firstEdgeId, HLA.NUM_THREADS);
+    }
+
+    public RunContext(String outPrefix, int firstEdgeId, int numThreads){
+	this.outPrefix = outPrefix;
+	this.numThreads = numThreads;
+	this.log = new LogHandler(outPrefix);
+	this.debug3 = false;
+	this.exitOnError = true;
+	this.readLength = 100;
+	this.newNodeAdded = new LongAdder();
+	this.hopping = new LongAdder();
+	this.insertionNodeAdded = new LongAdder();
+	this.insertionWithNoNewNode = new LongAdder();
+	this.insertion = new LongAdder();
+	this.readNum = 1;
+	this.edgeId = new AtomicInteger(firstEdgeId);
+    }
+
+    //fatal error of this run. logs message, then writes the log and exits with status,
+    //or throws IllegalStateException if !exitOnError so only this sample fails and the caller writes its log.
+    public void fail(String message, int status){
+	this.log.appendln(message);
+	if(!this.exitOnError)
+	    throw new IllegalStateException(message);
+	this.log.outToFile();
+	System.exit(status);
+    }
+
+    public int nextReadNum(){
+	return this.readNum++;
+    }
+
+    public int nextEdgeId(){
+	return this.edgeId.getAndIncrement();
+    }
+
+    //id the next edge will get
+    public int peekEdgeId(){
+	return this.edgeId.get();
+    }
+
+    //graphs built concurrently or restored from graph cache get their edge ids reassigned in gene order,
+    //so ids are the same as a sequential build.
+    public void resetEdgeIds(){
+	this.edgeId.set(0);
+    }
+}
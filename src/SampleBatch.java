@@ -0,0 +1,185 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Batch mode (-m): types every sample listed in a manifest file within one run.
+ * Manifest: one sample per line, <outfilePrefix> <bam-1> ... <bam-n> separated by tabs or spaces.
+ * Empty lines and lines starting with # are skipped.
+ *
+ * Reference graphs are built (or loaded from graph cache) once. Each sample is typed on its own
+ * copy (HLA.forkSample), so <outfilePrefix>.result, .typed.fa and .log are the same as running the sample alone.
+ * Up to -t samples are typed at the same time on a fixed pool, and the -t threads are split evenly across them
+ * (at least one each). Each sample writes its own .log and .result as soon as it is typed.
+ * All per-sample state (log, read ids, edge ids, counters, thread count) is in the sample's RunContext.
+ * Fatal errors while typing a sample (ex: bam not aligned to the panel) throw instead of exiting (RunContext.fail),
+ * so only that sample fails and the others are still typed and written.
+ */
+public class SampleBatch{
+
+    private String manifest;
+    private ArrayList<String> prefixes;
+    private ArrayList<File[]> bams;
+
+    private SampleBatch(String manifest){
+	this.manifest = manifest;
+	this.prefixes = new ArrayList<String>();
+	this.bams = new ArrayList<File[]>();
+    }
+
+    public int size(){
+	return this.prefixes.size();
+    }
+
+    //returns null and prints the reason if the manifest is not usable
+    public static SampleBatch read(String manifest){
+	SampleBatch batch = new SampleBatch(manifest);
+	HashSet<String> seen = new HashSet<String>();
+	boolean ok = true;
+	BufferedReader br = null;
+	try{
+	    br = new BufferedReader(new FileReader(manifest));
+	    String curline = null;
+	    int lineNum = 0;
+	    while( (curline = br.readLine()) != null ){
+		lineNum++;
+		curline = curline.trim();
+		if(curline.length() == 0 || curline.startsWith("#"))
+		    continue;
+		String[] tokens = curline.split("\\s+");
+		if(tokens.length < 2){
+		    System.err.println("Manifest line " + lineNum + ": expected <outfilePrefix> <bam-1> ... <bam-n>");
+		    ok = false;
+		    continue;
+		}
+		if(!seen.add(tokens[0])){
+		    System.err.println("Manifest line " + lineNum + ": outfilePrefix " + tokens[0] + " is used more than once.");
+		    ok = false;
+		}
+		File[] files = new File[tokens.length - 1];
+		for(int i=1; i<tokens.length; i++){
+		    if(StdinBuffer.isStdin(tokens[i])){
+			System.err.println("Manifest line " + lineNum + ": stdin (" + StdinBuffer.STDIN + ") cannot be used in batch mode.");
+			ok = false;
+		    }else if(! new File(tokens[i]).exists()){
+			System.err.println("Input bam : " + tokens[i] + " DOES NOT exist. Please check the bam exists.");
+			ok = false;
+		    }
+		    files[i-1] = new File(tokens[i]);
+		}
+		batch.prefixes.add(tokens[0]);
+		batch.bams.add(files);
+	    }
+	    br.close();
+	}catch(IOException ioe){
+	    System.err.println("Cannot read manifest file: " + manifest);
+	    return null;
+	}
+	if(ok && batch.size() == 0){
+	    System.err.println("No sample found in manifest file: " + manifest);
+	    ok = false;
+	}
+	return ok ? batch : null;
+    }
+
+    //args are written at the top of each sample log as in a single sample run
+    public void run(String[] list, String[] args){
+	//graph construction failures are logged for the first sample
+	RunContext refCtx = new RunContext(this.prefixes.get(0));
+	System.err.println("Batch mode:\t" + this.size() + "\tsample(s) from " + this.manifest);
+	System.err.println("----------------REF GRAPH CONSTRUCTION--------------");
+	refCtx.log.appendln("----------------REF GRAPH CONSTRUCTION--------------");
+	HLA ref = new HLA(list, HLA.MSAFILELOC + File.separator + "hla_nom_g.txt", refCtx);
+	int nextEdgeId = refCtx.peekEdgeId();
+	String refLog = refCtx.log.bf.toString();
+
+	int numSamples = Math.min(this.size(), HLA.NUM_THREADS);
+	int numThreads = Math.max(1, HLA.NUM_THREADS / numSamples);
+	System.err.println("Typing " + numSamples + " sample(s) at a time with " + numThreads + " thread(s) each");
+	ExecutorService pool = Executors.newFixedThreadPool(numSamples);
+	ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+	for(int i=0; i<this.size(); i++)
+	    futures.add(pool.submit(new SampleTyper(ref, list, args, i, nextEdgeId, numThreads, refLog)));
+	pool.shutdown();
+
+	int failed = 0;
+	for(int i=0; i<this.size(); i++){
+	    try{
+		if(!futures.get(i).get().booleanValue())
+		    failed++;
+	    }catch(InterruptedException | ExecutionException e){
+		e.printStackTrace();
+		System.err.println("Failed to type sample: " + this.prefixes.get(i));
+		failed++;
+	    }
+	}
+	if(failed > 0){
+	    System.err.println(failed + " of " + this.size() + " sample(s) failed.");
+	    System.exit(-1);
+	}
+    }
+
+    /* types sample i on its own fork of the reference graphs and writes its result and log. false if the sample failed. */
+    private class SampleTyper implements Callable<Boolean>{
+	private HLA ref;
+	private String[] list;
+	private String[] args;
+	private int i;
+	private int firstEdgeId;
+	private int numThreads;
+	private String refLog;
+
+	private SampleTyper(HLA ref, String[] list, String[] args, int i, int firstEdgeId, int numThreads, String refLog){
+	    this.ref = ref;
+	    this.list = list;
+	    this.args = args;
+	    this.i = i;
+	    this.firstEdgeId = firstEdgeId;
+	    this.numThreads = numThreads;
+	    this.refLog = refLog;
+	}
+
+	public Boolean call(){
+	    String prefix = prefixes.get(this.i);
+	    System.err.println("----------------SAMPLE " + (this.i+1) + "/" + size() + ":\t" + prefix);
+	    BufferedWriter resultWriter = null;
+	    try{
+		resultWriter = new BufferedWriter(new FileWriter(prefix + ".result"));
+	    }catch(IOException ioe){
+		ioe.printStackTrace();
+		System.err.println("\n\n>>> CANNOT open output file: " + prefix + ".result <<<\n\n");
+		return Boolean.FALSE;
+	    }
+
+	    //each sample starts from the state a single sample run has after graph construction
+	    RunContext ctx = new RunContext(prefix, this.firstEdgeId, this.numThreads);
+	    ctx.exitOnError = false; //a failing sample must not end the other samples in flight
+	    for(int j=0; j<this.args.length; j++)
+		ctx.log.append(" " + this.args[j]);
+	    ctx.log.appendln();
+	    ctx.log.append(this.refLog);
+	    boolean ok = true;
+	    try{
+		HLA hla = this.ref.forkSample(this.list, ctx);
+		hla.typeSample(this.list, bams.get(this.i), resultWriter);
+	    }catch(Exception e){
+		e.printStackTrace();
+		System.err.println("Failed to type sample: " + prefix);
+		ok = false;
+	    }
+	    ctx.log.outToFile();
+	    System.err.println("----------------SAMPLE " + (this.i+1) + "/" + size() + " DONE:\t" + prefix);
+	    return Boolean.valueOf(ok);
+	}
+    }
+}
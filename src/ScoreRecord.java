@@ -19,37 +19,36 @@ public class ScoreRecord{
     }
     
     public void sort(int sIndex){
-	Score.sortIndex = sIndex;
-	Collections.sort(listOfScores);
+	Collections.sort(listOfScores, Score.descending(sIndex));
     }
     
-    public void addScore(double[] s, int i, int j){
+    public void addScore(double[] s, long i, long j){
 	this.listOfScores.add(new Score(s, i, j));
     }
     
-    public void printBest(int sortIndex){
+    public void printBest(int sortIndex, LogHandler log){
 	this.sort(sortIndex);
 	double best = Double.NEGATIVE_INFINITY;
 	for(Score s : this.listOfScores){
 	    if(s.getNthScore(sortIndex) >= best){
 		best = s.getNthScore(sortIndex);
-		int[] bestIJ = s.getIndicies();
-		HLA.log.appendln(">>>>>>>>> BEST PAIR[" + bestIJ[0] + ":" + bestIJ[1] + "]:\t" + s.getNthScore(sortIndex));
+		long[] bestIJ = s.getIndicies();
+		log.appendln(">>>>>>>>> BEST PAIR[" + bestIJ[0] + ":" + bestIJ[1] + "]:\t" + s.getNthScore(sortIndex));
 	    }else
 		break;
 	}
     }
 
-    public ArrayList<int[]> getBestPairs(int sortIndex){
-	ArrayList<int[]> bestPairs = new ArrayList<int[]>();
+    public ArrayList<long[]> getBestPairs(int sortIndex, LogHandler log){
+	ArrayList<long[]> bestPairs = new ArrayList<long[]>();
 	this.sort(sortIndex);
 	double best = Double.NEGATIVE_INFINITY;
 	for(Score s : this.listOfScores){
 	    if(s.getNthScore(sortIndex) >= best){
 		best = s.getNthScore(sortIndex);
-		int[] bestIJ = s.getIndicies();
+		long[] bestIJ = s.getIndicies();
 		bestPairs.add(bestIJ);
-		HLA.log.appendln(">>>>>>>>> BEST PAIR[" + bestIJ[0] + ":" + bestIJ[1] + "]:\t" + s.getNthScore(sortIndex));
+		log.appendln(">>>>>>>>> BEST PAIR[" + bestIJ[0] + ":" + bestIJ[1] + "]:\t" + s.getNthScore(sortIndex));
 	    }else
 		break;
 	}
@@ -4,8 +4,11 @@ Part of Kourami HLA typer/assembler
 See LICENSE for licensing.
 */
 import java.util.*;
+import java.io.Serializable;
 
-public class Sequence{
+public class Sequence implements Serializable{
+
+    private static final long serialVersionUID = 1L;
 
     private ArrayList<Base> seq;
     private String alleleName; //allele name: ex) A:01:01:01:01
@@ -16,18 +19,49 @@ public class Sequence{
 
     private int[] cumulativeOffsets;
 
+    /* coordinate lookup tables. built lazily from seq and dropped whenever columns are inserted */
+    private transient volatile int[] basePos2colPos; //index: 1-based basePos, value: colPos (-1 if none)
+    private transient volatile int[] nextBaseIndex;  //index: 0-based column index, value: 0-based index of next base (seq.size() if none)
+
+    private synchronized void buildCoordinateIndex(){
+	if(this.nextBaseIndex != null)
+	    return;
+	int n = this.seq.size();
+	int limit = Math.min(n, this.columnSequence.length());
+	int[] b2c = new int[n+1];
+	Arrays.fill(b2c, -1);
+	for(int i=0; i<limit; i++){
+	    Base b = this.seq.get(i);
+	    int bp = b.getBasePos();
+	    //same as scanning from index basePos-1: take first base with matching basePos at or after it
+	    if(bp > 0 && bp <= limit && i >= bp - 1 && b2c[bp] < 0)
+		b2c[bp] = b.getColPos();
+	}
+	int[] nbi = new int[n];
+	int next = n;
+	for(int i=n-1; i>=0; i--){
+	    if(this.seq.get(i).isBase())
+		next = i;
+	    nbi[i] = next;
+	}
+	this.basePos2colPos = b2c;
+	this.nextBaseIndex = nbi;
+    }
+
+    private void clearCoordinateIndex(){
+	this.nextBaseIndex = null;
+	this.basePos2colPos = null;
+    }
+
     /*this is used to get the next colPosition for base. skipping over all gaps*/
     public int getNextColPosForBase(int colpos){
 	try{
-	    
-	    if(seq.get(colpos).isBase())
-		return colpos;
-	    int i = colpos;
-	    for( ; i < seq.size();i++){
-		if(seq.get(i).isBase())
-		    return i;
+	    int[] nbi = this.nextBaseIndex;
+	    if(nbi == null){
+		this.buildCoordinateIndex();
+		nbi = this.nextBaseIndex;
 	    }
-	    return i;
+	    return nbi[colpos];
 	}catch(Exception e){
 	    e.printStackTrace();
 	    System.err.println(this.alleleName);
@@ -47,11 +81,39 @@ public class Sequence{
 	    blanks.append(".");
 	}
 	columnSequence.insert(pos, blanks);
-	this.insertBases(pos, len);
+	this.seq.addAll(pos, this.blankBases(pos, len));
+	this.clearCoordinateIndex();
+    }
+
+    //same as calling insertBlanks(pos[i], len[i]) for each i, but seq and columnSequence are rebuilt once.
+    //pos must be in descending order (0-based index)
+    public void insertBlanks(int[] pos, int[] len){
+	ArrayList<ArrayList<Base>> blanks = new ArrayList<ArrayList<Base>>(pos.length);
+	int total = 0;
+	for(int k=0; k<pos.length; k++){
+	    blanks.add(this.blankBases(pos[k], len[k]));
+	    total += len[k];
+	}
+	ArrayList<Base> nseq = new ArrayList<Base>(this.seq.size() + total);
+	StringBuffer ncs = new StringBuffer(this.columnSequence.length() + total);
+	int from = 0;
+	for(int k=pos.length-1; k>=0; k--){
+	    nseq.addAll(this.seq.subList(from, pos[k]));
+	    nseq.addAll(blanks.get(k));
+	    ncs.append(this.columnSequence, from, pos[k]);
+	    for(int i=0; i<len[k]; i++)
+		ncs.append('.');
+	    from = pos[k];
+	}
+	nseq.addAll(this.seq.subList(from, this.seq.size()));
+	ncs.append(this.columnSequence, from, this.columnSequence.length());
+	this.seq = nseq;
+	this.columnSequence = ncs;
+	this.clearCoordinateIndex();
     }
     
-    //pos is 0-based index where insertion should happen
-    private void insertBases(int pos, int len){
+    //blank bases to insert at pos (0-based index). updates boundaries and offsets. seq is not changed.
+    private ArrayList<Base> blankBases(int pos, int len){
 	Base preBase = this.seq.get(pos - 1);
 	int preBaseBP = preBase.getBasePos();
 	int preBaseCP = preBase.getColPos();
@@ -64,7 +126,6 @@ public class Sequence{
 	    preBaseCP++;
 	    preBaseB2CO++;
 	}
-	this.seq.addAll(pos, bases);
 	
 	int boundaryIndex = this.getBoundaryIndexFromIntronExonNumber(preBaseExonFlag, preBaseIEN)+1;
 	this.segmentOffsets[boundaryIndex - 1] += len; // update current block(intron or exon)'s offset
@@ -76,7 +137,7 @@ public class Sequence{
 	for(int i=boundaryIndex-1;i<this.cumulativeOffsets.length;i++){
 	    this.cumulativeOffsets[boundaryIndex] += len;
 	}
-
+	return bases;
     }
 
     //    IENum   boundariesIndex
@@ -94,7 +155,7 @@ public class Sequence{
     }
 
 
-    public void verify(){
+    public void verify(LogHandler log){
 	boolean flag = true;
 	int pbp = 0;
 	int pcp = 0;
@@ -121,9 +182,9 @@ public class Sequence{
 	}
 	//HLA.log.appendln(this.columnSequence);
 	if(flag != true){
-	    HLA.log.appendln(bf.toString());
-	    HLA.log.appendln(this.columnSequence.toString() + ":(CS)");
-	    HLA.log.appendln(this.fullSequence.toString() + ":(BS)");
+	    log.appendln(bf.toString());
+	    log.appendln(this.columnSequence.toString() + ":(CS)");
+	    log.appendln(this.fullSequence.toString() + ":(BS)");
 	}//else{
 	// HLA.log.appendln(this.alleleName + "\tVERIFIED.");
 	//}
@@ -154,22 +215,22 @@ public class Sequence{
 	return bf.toString();
     }
 
-    public void printPositions(){
+    public void printPositions(LogHandler log){
 	for(int i=0; i<this.seq.size(); i++){
 	    Base b = this.seq.get(i);
-	    HLA.log.append(b.getBase() + "["+b.getBasePos()+","+b.getColPos() + "]\t");
+	    log.append(b.getBase() + "["+b.getBasePos()+","+b.getColPos() + "]\t");
 	}
-	HLA.log.appendln();
+	log.appendln();
     }
     
-    public void printPositions(int colPosIndex, int l){
+    public void printPositions(int colPosIndex, int l, LogHandler log){
 	for(int i=colPosIndex; i<colPosIndex+l && i<this.seq.size(); i++){
 	    Base b = this.seq.get(i);
 	    if(i==colPosIndex)
-		HLA.log.append("["+b.getBasePos()+","+b.getColPos() + "," + colPosIndex + "]\t");
-	    HLA.log.append(b.getBase());
+		log.append("["+b.getBasePos()+","+b.getColPos() + "," + colPosIndex + "]\t");
+	    log.append(b.getBase());
 	}
-	HLA.log.appendln();
+	log.appendln();
     }
 
 
@@ -188,19 +249,14 @@ public class Sequence{
 	    System.err.println("colmSequence: " + this.getColumnSequence());
 	}
 	*/
-	Base b = null;
-	for(int p = basePos; p<=columnSequence.length(); p++){
-	    b = this.seq.get(p-1);
-	    //if(this.alleleName.equals("DRB3*01:12"))
-	    //System.err.println((p-1) + "\t" + b.getBasePos() + "\t" + basePos + "\t" + b.getColPos());
-	    //HLA.log.appendln((p-1) + "\t" + b.getBasePos() + "\t" + basePos);
-	    if(b.getBasePos() == basePos){
-		//HLA.log.appendln();
-		return b.getColPos();
-	    }
+	int[] b2c = this.basePos2colPos;
+	if(b2c == null){
+	    this.buildCoordinateIndex();
+	    b2c = this.basePos2colPos;
 	}
-	//HLA.log.appendln("BAD");
-	return -1;
+	if(basePos < 1 || basePos >= b2c.length)
+	    return -1;
+	return b2c[basePos];
     }
     
     public int getBasePosFromColPos(int colPos){
@@ -217,19 +273,32 @@ public class Sequence{
 	this.cumulativeOffsets = null;
     }
 
-    public void printNthBoundary(int n){
-	HLA.log.append(this.alleleName + "\t");
+    //copy whose columns can be shifted (insertBlanks) without touching this one. Base objects are shared (never modified).
+    public Sequence copy(){
+	Sequence c = new Sequence();
+	c.seq = new ArrayList<Base>(this.seq);
+	c.alleleName = this.alleleName;
+	c.columnSequence = new StringBuffer(this.columnSequence);
+	c.fullSequence = new StringBuffer(this.fullSequence);
+	c.boundaries = this.boundaries == null ? null : this.boundaries.clone();
+	c.segmentOffsets = this.segmentOffsets == null ? null : this.segmentOffsets.clone();
+	c.cumulativeOffsets = this.cumulativeOffsets == null ? null : this.cumulativeOffsets.clone();
+	return c;
+    }
+
+    public void printNthBoundary(int n, LogHandler log){
+	log.append(this.alleleName + "\t");
 	if(n < this.boundaries.length-1)
-	    HLA.log.appendln(this.columnSequence.substring(this.boundaries[n]-1 + this.boundaries[n+1]-1));
+	    log.appendln(this.columnSequence.substring(this.boundaries[n]-1 + this.boundaries[n+1]-1));
 	else
-	    HLA.log.appendln(this.columnSequence.substring(this.boundaries[n]-1));
+	    log.appendln(this.columnSequence.substring(this.boundaries[n]-1));
     }
 
-    public void printBoundaries(){
+    public void printBoundaries(LogHandler log){
 	for(int i=0;i<this.boundaries.length; i++){
-	    HLA.log.appendln("boundaries("+i+"):" + boundaries[i] + "," + (i==(this.boundaries.length-1) ? "END" : boundaries[i+1]));
-	    HLA.log.appendln("segmentOff("+i+"):" + segmentOffsets[i] );
-	    HLA.log.appendln("cumulatOff("+i+"):" + cumulativeOffsets[i] );
+	    log.appendln("boundaries("+i+"):" + boundaries[i] + "," + (i==(this.boundaries.length-1) ? "END" : boundaries[i+1]));
+	    log.appendln("segmentOff("+i+"):" + segmentOffsets[i] );
+	    log.appendln("cumulatOff("+i+"):" + cumulativeOffsets[i] );
 	}
     }
 
@@ -355,7 +424,7 @@ public class Sequence{
     }
 
     /* this processes nuc only allele --> only containing EXONS*/
-    public Sequence(String allele, String msfSequence, Sequence ref){
+    public Sequence(String allele, String msfSequence, Sequence ref, LogHandler log){
 	this();
 	//HLA.log.appendln(">>>>>> PROCESSING\t" + allele + "\t<<<<<<");
 	this.alleleName = allele;
@@ -408,7 +477,7 @@ public class Sequence{
 	      HLA.log.appendln(modseq);
 	    */
 	    //cumulative offset
-	    int updatedOffset = processBlock(modseq, isExon, exonNum, offset);
+	    int updatedOffset = processBlock(modseq, isExon, exonNum, offset, log);
 	    /*
 	      HLA.log.appendln("AFTER COPYING");
 	      HLA.log.appendln(this.columnSequence + " (CS)");
@@ -446,7 +515,7 @@ public class Sequence{
 									 , ref.getBoundaries()[2*(i+1)+1]-1-ref.getCumulativeOffsets()[2*(i+1)]));
 		curStartColPos = ref.getBoundaries()[2*(i+1)+1]; //need to fetch next 
 		if((curStartColPos-1) != this.seq.size())
-		    HLA.log.appendln("[IF]SOMETHING WRONG:\t SIZES DONT MATCH!!");
+		    log.appendln("[IF]SOMETHING WRONG:\t SIZES DONT MATCH!!");
 	    }else{//if it's last exon
 		//HLA.log.appendln("intron ("+(2*(i+1))+")\tCI(" + (ref.getBoundaries()[2*(i+1)]-1) + ",END" );
 		//HLA.log.appendln(ref.getColumnSequence().substring(ref.getBoundaries()[2*(i+1)]-1));
@@ -468,10 +537,10 @@ public class Sequence{
     // <INTRON1>|<EXON1>|<INTRON2>|<EXON2>|...
     // allele --> allelename
     // msfSequence --> msf sequence string without blanks
-    public Sequence(String allele, String msfSequence){
-	this(allele, msfSequence, false, null);
+    public Sequence(String allele, String msfSequence, LogHandler log){
+	this(allele, msfSequence, false, null, log);
     }
-    public Sequence(String allele, String msfSequence, boolean replaceAbbrv, Sequence ref){
+    public Sequence(String allele, String msfSequence, boolean replaceAbbrv, Sequence ref, LogHandler log){
 	this();
 	this.alleleName = allele;
 	String[] tokens = msfSequence.split("\\|");
@@ -495,14 +564,14 @@ public class Sequence{
 	    if(i%2 == 0){//intron 0, 2, 4, 6
 		isExon = false;
 		intronNum++;
-		int updatedOffset = processBlock(blockSeq, isExon, intronNum, offset);
+		int updatedOffset = processBlock(blockSeq, isExon, intronNum, offset, log);
 		this.segmentOffsets[i] = updatedOffset - offset;
 		this.cumulativeOffsets[i] = updatedOffset;
 		offset = updatedOffset;
 	    }else{//exon 1, 3, 5, 7
 		isExon = true;
 		exonNum++;
-		int updatedOffset = processBlock(blockSeq, isExon, exonNum, offset);
+		int updatedOffset = processBlock(blockSeq, isExon, exonNum, offset, log);
 		this.segmentOffsets[i] = updatedOffset - offset;
 		this.cumulativeOffsets[i] = updatedOffset;
 		offset = updatedOffset;
@@ -525,7 +594,7 @@ public class Sequence{
     
     //given msf formatted(no blanks) sequence and add bases 
     //returns the base2coloffset.
-    public int processBlock(String blkSeq, boolean isExon, int intronExonNum, int offset){
+    public int processBlock(String blkSeq, boolean isExon, int intronExonNum, int offset, LogHandler log){
 	String blockSeq = Sequence.replaceUnknownAsGap(blkSeq);
 	int colPos = this.seq.size(); //1-based column Position --> this is the last position of previous block
 	int base2colOffset = offset; 
@@ -551,7 +620,7 @@ public class Sequence{
 	    }else if(Base.isGap(curBase))
 		base2colOffset++;
 	    else{
-		HLA.log.appendln("WHAT ELSE????\nBlockSeq:" + blockSeq + "\n@"  + (i+1) + ":" + curBase);
+		log.appendln("WHAT ELSE????\nBlockSeq:" + blockSeq + "\n@"  + (i+1) + ":" + curBase);
 		try{
 		    throw new Exception("ERRR");
 		}catch(Exception e){
@@ -0,0 +1,159 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Input "-" : SAM/BAM/CRAM streamed from stdin (ex: aligner | java -jar Kourami.jar ... -).
+ * stdin is drained by a background thread from the start of the run, so the aligner is not blocked
+ * on a full pipe while reference graphs are built. Data read ahead is kept in memory until reads are loaded,
+ * up to READ_AHEAD_CHUNKS chunks. Once the input stream is handed out, at most STREAM_CHUNKS chunks are queued
+ * and the drainer waits for the reader, so the pipe applies backpressure to the aligner while reads are loaded.
+ */
+public class StdinBuffer{
+
+    public static final String STDIN = "-";
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int READ_AHEAD_CHUNKS = 1 << 14; //1GB queued at most before reads are loaded
+    private static final int STREAM_CHUNKS = 64;          //4MB queued at most while reads are loaded
+    private static final byte[] END = new byte[0];
+
+    private static StdinBuffer instance = null;
+
+    //starts draining stdin. subsequent calls return the same buffer.
+    public static synchronized StdinBuffer start(){
+	if(StdinBuffer.instance == null){
+	    StdinBuffer.instance = new StdinBuffer(System.in);
+	    Thread t = new Thread(StdinBuffer.instance.new Drainer(), "stdin-reader");
+	    t.setDaemon(true);
+	    t.start();
+	}
+	return StdinBuffer.instance;
+    }
+
+    public static boolean isStdin(String path){
+	return STDIN.equals(path);
+    }
+
+    private InputStream in;
+    private LinkedBlockingQueue<byte[]> chunks;
+    private AtomicLong bufferedBytes; //read from stdin, not yet handed to the reader
+    private volatile IOException error;
+    private boolean opened;
+
+    private StdinBuffer(InputStream in){
+	this.in = in;
+	this.chunks = new LinkedBlockingQueue<byte[]>(READ_AHEAD_CHUNKS + 1); //+1 for END
+	this.bufferedBytes = new AtomicLong(0);
+	this.error = null;
+	this.opened = false;
+    }
+
+    public long getBufferedBytes(){
+	return this.bufferedBytes.get();
+    }
+
+    //stdin can only be read once
+    public synchronized InputStream getInputStream() throws IOException{
+	if(this.opened)
+	    throw new IOException("stdin (" + STDIN + ") can only be given once as input.");
+	this.opened = true;
+	return new ChunkInputStream();
+    }
+
+    //blocks the drainer while the queue is at its limit
+    private synchronized void waitForSpace() throws InterruptedException{
+	while(this.chunks.size() >= (this.opened ? STREAM_CHUNKS : READ_AHEAD_CHUNKS))
+	    this.wait();
+    }
+
+    private synchronized void chunkTaken(){
+	this.notifyAll();
+    }
+
+    private class Drainer implements Runnable{
+	public void run(){
+	    try{
+		for(;;){
+		    byte[] buf = new byte[CHUNK_SIZE];
+		    int n = 0;
+		    int r;
+		    //fill the chunk unless stdin is slow, so small writes don't become small chunks
+		    while(n < CHUNK_SIZE && (r = in.read(buf, n, CHUNK_SIZE - n)) > 0){
+			n += r;
+			if(in.available() == 0)
+			    break;
+		    }
+		    if(n == 0)
+			break;
+		    if(n < CHUNK_SIZE){
+			byte[] tmp = new byte[n];
+			System.arraycopy(buf, 0, tmp, 0, n);
+			buf = tmp;
+		    }
+		    waitForSpace();
+		    bufferedBytes.addAndGet(n);
+		    chunks.put(buf);
+		}
+	    }catch(IOException ioe){
+		error = ioe;
+	    }catch(InterruptedException ie){
+		error = new IOException(ie);
+	    }
+	    chunks.add(END);
+	}
+    }
+
+    private class ChunkInputStream extends InputStream{
+	private byte[] cur = null;
+	private int pos = 0;
+	private boolean done = false;
+
+	//false at the end of stdin
+	private boolean fill() throws IOException{
+	    while(!this.done && (this.cur == null || this.pos == this.cur.length)){
+		try{
+		    this.cur = chunks.take();
+		    chunkTaken();
+		}catch(InterruptedException ie){
+		    throw new IOException(ie);
+		}
+		this.pos = 0;
+		if(this.cur == END){
+		    this.done = true;
+		    if(error != null)
+			throw new IOException("Failed to read from stdin", error);
+		}else
+		    bufferedBytes.addAndGet(0 - this.cur.length);
+	    }
+	    return !this.done;
+	}
+
+	public int read() throws IOException{
+	    if(!this.fill())
+		return -1;
+	    return this.cur[this.pos++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException{
+	    if(len == 0)
+		return 0;
+	    if(!this.fill())
+		return -1;
+	    int n = Math.min(len, this.cur.length - this.pos);
+	    System.arraycopy(this.cur, this.pos, b, off, n);
+	    this.pos += n;
+	    return n;
+	}
+
+	public int available(){
+	    return (this.cur == null || this.done) ? 0 : this.cur.length - this.pos;
+	}
+    }
+}
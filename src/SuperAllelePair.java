@@ -0,0 +1,40 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+
+/*
+ * A candidate pair of super-allele paths scored by HLAGraph.printScoreForPairs.
+ * i <= j are the indices of the two paths in the Cartesian product of fractured AllelePaths (HLAGraph.generateSuperAllelePaths).
+ */
+public class SuperAllelePair{
+
+    private SuperAllelePath sap1;
+    private SuperAllelePath sap2;
+    private long i;
+    private long j;
+
+    public SuperAllelePair(SuperAllelePath sap1, SuperAllelePath sap2, long i, long j){
+	this.sap1 = sap1;
+	this.sap2 = sap2;
+	this.i = i;
+	this.j = j;
+    }
+
+    public SuperAllelePath getFirst(){
+	return this.sap1;
+    }
+
+    public SuperAllelePath getSecond(){
+	return this.sap2;
+    }
+
+    public long getI(){
+	return this.i;
+    }
+
+    public long getJ(){
+	return this.j;
+    }
+}
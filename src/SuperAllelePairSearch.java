@@ -0,0 +1,338 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.PriorityQueue;
+
+/*
+ * Top-K pairs of super-allele paths under HLA.SCORING_SCHEME, found without building the Cartesian product of
+ * fractured AllelePaths (HLAGraph.generateSuperAllelePaths) or scoring all of its pairs.
+ *
+ * The score of a pair is a sum of one term per super bubble (AllelePath.getJointProbability of the two AllelePaths)
+ * and one link term per two super bubbles (SuperAllelePath.getInterSuperBubbleLinkLogProb).
+ * Pairs are built best-first, one super bubble at a time. A partial pair is ranked by its score so far plus,
+ * for the super bubbles still open, the best terms any choice could add. This never underestimates a completion,
+ * so complete pairs leave the queue in descending score order and the search stops after K of them
+ * (and the pairs tied with the K-th).
+ * Complete pairs are scored with the SuperAllelePath methods, so scores are the same as with all pairs scored.
+ * If the queue grows past MAX_QUEUE partial pairs, only the better half is kept (beam search) and this is logged,
+ * as pairs found afterwards may not be the exact top K.
+ */
+public class SuperAllelePairSearch{
+
+    private static final double SLACK = 1.0e-6; //added to bounds: partial sums are added up in a different order than scores
+    private static final int MAX_QUEUE = 1 << 19; //partial pairs kept in the queue
+
+    private String hlaGeneName;
+    private ArrayList<ArrayList<AllelePath>> fracturedPaths;
+    private ArrayList<Bubble> superBubbles;
+    private Hashtable<Path, Hashtable<Path, int[]>> hhl;
+    private int scoringScheme; //index into SuperAllelePath.getJointProbability scores
+    private LogHandler log;
+
+    private int numSB;
+    private int[] numPaths;          //super bubble --> number of AllelePaths
+    private long[] stride;           //super bubble --> index weight of its AllelePath in a super-allele path
+    private long numSuperAllelePaths;
+    private double[][] sbScore;      //super bubble d --> score of AllelePath pair a:b at [a*numPaths[d]+b]
+    private double[] restSBScore;    //d --> best possible super bubble terms of d .. numSB-1
+    private double[][][] linkBound;  //d < e --> best link term of d:e given AllelePath pair a:b at d [a*numPaths[d]+b]
+    private double[][] maxLink;      //d < e --> best link term of d:e
+    private double[] restMaxLink;    //d --> sum of maxLink of d <= d' < e
+    private boolean trimmed;         //queue was cut to MAX_QUEUE/2 at least once
+
+    public SuperAllelePairSearch(String hlaGeneName, ArrayList<ArrayList<AllelePath>> fracturedPaths, ArrayList<Bubble> superBubbles
+				 , Hashtable<Path, Hashtable<Path, int[]>> hhl, int scoringScheme, LogHandler log){
+	this.hlaGeneName = hlaGeneName;
+	this.fracturedPaths = fracturedPaths;
+	this.superBubbles = superBubbles;
+	this.hhl = hhl;
+	this.scoringScheme = scoringScheme;
+	this.log = log;
+	this.numSB = fracturedPaths.size();
+	this.numPaths = new int[this.numSB];
+	this.stride = new long[this.numSB];
+	try{
+	    for(int d=this.numSB-1; d>=0; d--){
+		this.numPaths[d] = fracturedPaths.get(d).size();
+		this.stride[d] = (d == this.numSB-1 ? 1 : Math.multiplyExact(this.stride[d+1], (long) this.numPaths[d+1]));
+	    }
+	    this.numSuperAllelePaths = (this.numSB == 0 ? 0 : Math.multiplyExact(this.stride[0], (long) this.numPaths[0]));
+	}catch(ArithmeticException e){
+	    this.log.appendln("[PAIRS] too many candidate alleles for " + hlaGeneName + ": more than " + Long.MAX_VALUE
+			      + " super-allele paths over " + this.numSB + " super bubbles.\nSystem exiting.");
+	    this.log.outToFile();
+	    e.printStackTrace();
+	    System.exit(-1);
+	}
+    }
+
+    //number of super-allele paths
+    public long numSuperAllelePaths(){
+	return this.numSuperAllelePaths;
+    }
+
+    //same index as in generateSuperAllelePaths
+    public SuperAllelePath getSuperAllelePath(long index){
+	SuperAllelePath sap = new SuperAllelePath(this.hlaGeneName);
+	for(int d=0; d<this.numSB; d++){
+	    int a = (int) ((index / this.stride[d]) % this.numPaths[d]);
+	    sap.addAllelePath(this.fracturedPaths.get(d).get(a), a);
+	}
+	return sap;
+    }
+
+    //index of super-allele path taking AllelePath choice[d] at each super bubble d
+    private long index(int[] choice){
+	long index = 0;
+	for(int d=0; d<this.numSB; d++)
+	    index += choice[d] * this.stride[d];
+	return index;
+    }
+
+    //score of pair under the scoring scheme, as HLAGraph.printScoreForPairs computes it
+    public double getPairScore(SuperAllelePath sap1, SuperAllelePath sap2){
+	double interSBlogP = sap1.getJointInterSuperBubbleLinkProb(sap2, this.hhl, this.log);
+	double[] scores = sap1.getJointProbability(sap2, this.superBubbles, this.log);
+	return scores[this.scoringScheme] + interSBlogP;
+    }
+
+    /*
+     * Top k pairs and all pairs tied with the k-th, in (i, j) order.
+     * Nothing is logged: scoring lines of the chosen pairs are logged when HLAGraph.printScoreForPairs rescores them.
+     */
+    public ArrayList<SuperAllelePair> getTopPairs(int k){
+	this.log.startLocalBuffer();
+	ArrayList<Partial> top = new ArrayList<Partial>();
+	try{
+	    this.computeBounds();
+	    PriorityQueue<Partial> queue = new PriorityQueue<Partial>(11, Partial.BY_BOUND);
+	    Partial root = new Partial(this.numSB);
+	    root.bound = this.bound(root);
+	    queue.add(root);
+	    Partial p;
+	    while((p = queue.poll()) != null){
+		if(top.size() >= k && p.bound < top.get(k-1).score)
+		    break; //nothing left can reach the k-th score
+		if(p.scored)
+		    top.add(p);
+		else if(p.depth == this.numSB){
+		    p.score = this.getPairScore(this.getSuperAllelePath(this.index(p.a)), this.getSuperAllelePath(this.index(p.b)));
+		    p.bound = p.score;
+		    p.scored = true;
+		    queue.add(p);
+		}else
+		    this.expand(p, queue);
+		if(queue.size() > MAX_QUEUE)
+		    this.trim(queue);
+	    }
+	}finally{
+	    this.log.endLocalBuffer();
+	}
+	if(this.trimmed)
+	    this.log.appendln("[PAIRS] more than " + MAX_QUEUE + " partial pairs in search. Kept the best " + (MAX_QUEUE/2)
+			      + " each time: pairs may not be the exact top " + k + ".");
+	ArrayList<SuperAllelePair> pairs = new ArrayList<SuperAllelePair>();
+	for(Partial p : top){
+	    long i = this.index(p.a);
+	    long j = this.index(p.b);
+	    pairs.add(new SuperAllelePair(this.getSuperAllelePath(i), this.getSuperAllelePath(j), i, j));
+	}
+	Collections.sort(pairs, new Comparator<SuperAllelePair>(){
+		public int compare(SuperAllelePair x, SuperAllelePair y){
+		    if(x.getI() != y.getI())
+			return Long.compare(x.getI(), y.getI());
+		    return Long.compare(x.getJ(), y.getJ());
+		}
+	    });
+	return pairs;
+    }
+
+    /*
+     * Scores all pairs of superpaths (generateSuperAllelePaths) and checks that the top k scores are the same as
+     * those of pairs (getTopPairs(k)) and that both give the same best pairs. Mismatches are logged.
+     */
+    public boolean checkAgainstAllPairs(ArrayList<SuperAllelePath> superpaths, ArrayList<SuperAllelePair> pairs, int k){
+	ArrayList<Double> allScores = new ArrayList<Double>();
+	ArrayList<long[]> allBest = new ArrayList<long[]>();
+	double allBestScore = Double.NEGATIVE_INFINITY;
+	this.log.startLocalBuffer();
+	try{
+	    for(int i=0; i<superpaths.size(); i++){
+		for(int j=i; j<superpaths.size(); j++){
+		    double score = this.getPairScore(superpaths.get(i), superpaths.get(j));
+		    allScores.add(score);
+		    if(allBest.size() == 0 || score > allBestScore){
+			allBest.clear();
+			allBestScore = score;
+		    }
+		    if(score == allBestScore)
+			allBest.add(new long[]{i, j});
+		}
+	    }
+	}finally{
+	    this.log.endLocalBuffer();
+	}
+	ArrayList<Double> topScores = new ArrayList<Double>();
+	ArrayList<long[]> topBest = new ArrayList<long[]>();
+	double topBestScore = Double.NEGATIVE_INFINITY;
+	this.log.startLocalBuffer();
+	try{
+	    for(SuperAllelePair sp : pairs){
+		double score = this.getPairScore(sp.getFirst(), sp.getSecond());
+		topScores.add(score);
+		if(topBest.size() == 0 || score > topBestScore){
+		    topBest.clear();
+		    topBestScore = score;
+		}
+		if(score == topBestScore)
+		    topBest.add(new long[]{sp.getI(), sp.getJ()});
+	    }
+	}finally{
+	    this.log.endLocalBuffer();
+	}
+	Collections.sort(allScores, Collections.reverseOrder());
+	Collections.sort(topScores, Collections.reverseOrder());
+	boolean same = topScores.size() >= Math.min(k, allScores.size()) && allBest.size() == topBest.size();
+	for(int n=0; same && n<Math.min(k, allScores.size()); n++)
+	    same = allScores.get(n).equals(topScores.get(n));
+	for(int n=0; same && n<allBest.size(); n++)
+	    same = allBest.get(n)[0] == topBest.get(n)[0] && allBest.get(n)[1] == topBest.get(n)[1];
+	if(same)
+	    this.log.appendln("[PAIRS] top " + k + " pairs match scoring all " + allScores.size() + " pairs.");
+	else
+	    this.log.appendln("[PAIRS] WARNING: top " + k + " pairs do not match scoring all " + allScores.size() + " pairs. Best: "
+			      + allBestScore + " (all pairs)\t" + topBestScore + " (top pairs)");
+	return same;
+    }
+
+    private void computeBounds(){
+	this.sbScore = new double[this.numSB][];
+	this.restSBScore = new double[this.numSB + 1];
+	for(int d=this.numSB-1; d>=0; d--){
+	    int n = this.numPaths[d];
+	    ArrayList<AllelePath> aps = this.fracturedPaths.get(d);
+	    this.sbScore[d] = new double[n * n];
+	    double best = Double.NEGATIVE_INFINITY;
+	    for(int a=0; a<n; a++){
+		for(int b=0; b<n; b++){
+		    this.sbScore[d][a*n+b] = aps.get(a).getJointProbability(aps.get(b), this.superBubbles.get(d))[this.scoringScheme];
+		    best = Math.max(best, this.sbScore[d][a*n+b]);
+		}
+	    }
+	    this.restSBScore[d] = this.restSBScore[d+1] + best;
+	}
+
+	this.linkBound = new double[this.numSB][this.numSB][];
+	this.maxLink = new double[this.numSB][this.numSB];
+	this.restMaxLink = new double[this.numSB + 1];
+	for(int d=this.numSB-1; d>=0; d--){
+	    this.restMaxLink[d] = this.restMaxLink[d+1];
+	    for(int e=d+1; e<this.numSB; e++){
+		int n = this.numPaths[d];
+		this.linkBound[d][e] = new double[n * n];
+		this.maxLink[d][e] = Double.NEGATIVE_INFINITY;
+		for(int a=0; a<n; a++){
+		    for(int b=0; b<n; b++){
+			double best = Double.NEGATIVE_INFINITY;
+			for(int c=0; c<this.numPaths[e]; c++){
+			    for(int f=0; f<this.numPaths[e]; f++)
+				best = Math.max(best, this.link(d, a, b, e, c, f));
+			}
+			this.linkBound[d][e][a*n+b] = best;
+			this.maxLink[d][e] = Math.max(this.maxLink[d][e], best);
+		    }
+		}
+		this.restMaxLink[d] += this.maxLink[d][e];
+	    }
+	}
+    }
+
+    //link term of super bubbles d < e for AllelePath pair a:b at d and c:f at e
+    private double link(int d, int a, int b, int e, int c, int f){
+	return SuperAllelePath.getInterSuperBubbleLinkLogProb(this.fracturedPaths.get(d).get(a).getBubblePath()
+							       , this.fracturedPaths.get(d).get(b).getBubblePath()
+							       , this.fracturedPaths.get(e).get(c).getBubblePath()
+							       , this.fracturedPaths.get(e).get(f).getBubblePath()
+							       , this.hhl, this.log);
+    }
+
+    //score so far plus the best terms of open super bubbles
+    private double bound(Partial p){
+	double bound = p.score + this.restSBScore[p.depth] + this.restMaxLink[p.depth] + SLACK;
+	for(int d=0; d<p.depth; d++){
+	    for(int e=p.depth; e<this.numSB; e++)
+		bound += this.linkBound[d][e][p.a[d]*this.numPaths[d]+p.b[d]];
+	}
+	return bound;
+    }
+
+    //pairs choosing each AllelePath pair at the next super bubble. first path stays <= second so each pair is made once.
+    private void expand(Partial p, PriorityQueue<Partial> queue){
+	int e = p.depth;
+	int n = this.numPaths[e];
+	for(int c=0; c<n; c++){
+	    for(int f=(p.tied ? c : 0); f<n; f++){
+		Partial child = new Partial(p, c, f);
+		child.score += this.sbScore[e][c*n+f];
+		for(int d=0; d<e; d++)
+		    child.score += this.link(d, p.a[d], p.b[d], e, c, f);
+		child.bound = this.bound(child);
+		queue.add(child);
+	    }
+	}
+    }
+
+    //keeps the better half of the queue
+    private void trim(PriorityQueue<Partial> queue){
+	Partial[] partials = queue.toArray(new Partial[0]);
+	Arrays.sort(partials, Partial.BY_BOUND);
+	queue.clear();
+	for(int i=0; i<MAX_QUEUE/2; i++)
+	    queue.add(partials[i]);
+	this.trimmed = true;
+    }
+
+    /* AllelePath pairs chosen for super bubbles 0 .. depth-1 */
+    private static class Partial{
+	private int depth;
+	private int[] a;       //AllelePath of first super-allele path at each super bubble
+	private int[] b;       //AllelePath of second super-allele path
+	private boolean tied;  //a and b are the same so far
+	private double score;
+	private double bound;
+	private boolean scored; //complete and score is the pair score
+
+	private static final Comparator<Partial> BY_BOUND = new Comparator<Partial>(){
+		public int compare(Partial x, Partial y){
+		    if(x.bound != y.bound)
+			return Double.compare(y.bound, x.bound);
+		    return Integer.compare(y.depth, x.depth); //deeper first on equal bounds
+		}
+	    };
+
+	private Partial(int numSB){
+	    this.depth = 0;
+	    this.a = new int[numSB];
+	    this.b = new int[numSB];
+	    this.tied = true;
+	    this.score = 0.0d;
+	}
+
+	private Partial(Partial parent, int c, int f){
+	    this.depth = parent.depth + 1;
+	    this.a = parent.a.clone();
+	    this.b = parent.b.clone();
+	    this.a[parent.depth] = c;
+	    this.b[parent.depth] = f;
+	    this.tied = parent.tied && c == f;
+	    this.score = parent.score;
+	}
+    }
+}
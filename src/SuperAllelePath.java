@@ -64,11 +64,11 @@ public class SuperAllelePath{
     }
     
     //return 3 scores (TP/OP and intersection score) + 4 scores (allProduct, jointProduct, allProduct2, maxFlow)
-    public double[] getJointProbability(SuperAllelePath other, ArrayList<Bubble> superBubbles){
+    public double[] getJointProbability(SuperAllelePath other, ArrayList<Bubble> superBubbles, LogHandler log){
 	
 	double[] jp = new double[14];
 	if(this.numAllelePaths() != other.numAllelePaths() && this.numAllelePaths() != superBubbles.size()){
-	    HLA.log.appendln("Incompatible SuperAllelePath. The number of fractured allelePath in superPath does not match");
+	    log.appendln("Incompatible SuperAllelePath. The number of fractured allelePath in superPath does not match");
 	    return null;
 	}
 	
@@ -89,7 +89,7 @@ public class SuperAllelePath{
     }
 
 
-    public double getJointInterSuperBubbleLinkProb(SuperAllelePath other, Hashtable<Path, Hashtable<Path, int[]>> hhl){
+    public double getJointInterSuperBubbleLinkProb(SuperAllelePath other, Hashtable<Path, Hashtable<Path, int[]>> hhl, LogHandler log){
 	double logP = 0.0d;
 	for(int i=0; i<this.orderedAllelePaths.size(); i++){
 	    Path tp_i = this.orderedAllelePaths.get(i).getBubblePath();
@@ -97,33 +97,36 @@ public class SuperAllelePath{
 	    for(int j=i+1; j<this.getOrderedAllelePaths().size(); j++){
 		Path tp_j = this.orderedAllelePaths.get(j).getBubblePath();
 		Path op_j = other.getOrderedAllelePaths().get(j).getBubblePath();
-		int[] tVals = hhl.get(tp_i).get(tp_j); // vals[0]:#linker , vals[1]:SUM
-		int[] oVals = hhl.get(op_i).get(op_j);
-		if(tVals[1] == oVals[1]){
-		    double tFraction = (tVals[0]*1.0d)/(tVals[1]*1.0d);
-		    double oFraction = (oVals[0]*1.0d)/(tVals[1]*1.0d);
-		    //double fraction = ((tVals[0] + oVals[0])*1.0d) / (tVals[1]*1.0d);
-		    //double allProductFraction = Math.log( (tVals[0]*1.d)/(tVals[1]*1.0d) ) 
-		    //+ Math.log( (oVals[0]*1.d)/(oVals[1]*1.0d) );
-		    if(tp_i.equals(op_i) && tp_j.equals(op_j)){
-			tFraction = tFraction / 2.0d;
-			oFraction = oFraction / 2.0d;
-			logP += Math.log(tFraction*oFraction);
-		    }else{
-			logP += Math.log(tFraction*oFraction);
-		    }
-		    
-		    //logP += Math.log(fraction);
-		    //logP += allProductFraction;
-		}else{
-		    HLA.log.appendln("STRANGE!!!!!!!!!! THEY SHOULD BE SAME");
-		    HLA.log.outToFile();
-		    System.exit(0);
-		}
+		logP += SuperAllelePath.getInterSuperBubbleLinkLogProb(tp_i, op_i, tp_j, op_j, hhl, log);
 	    }
 	}
 	return logP;
     }
+
+    //link term between super bubbles i < j for a pair taking tp_i, tp_j (this) and op_i, op_j (other)
+    public static double getInterSuperBubbleLinkLogProb(Path tp_i, Path op_i, Path tp_j, Path op_j, Hashtable<Path, Hashtable<Path, int[]>> hhl, LogHandler log){
+	int[] tVals = hhl.get(tp_i).get(tp_j); // vals[0]:#linker , vals[1]:SUM
+	int[] oVals = hhl.get(op_i).get(op_j);
+	if(tVals[1] == oVals[1]){
+	    double tFraction = (tVals[0]*1.0d)/(tVals[1]*1.0d);
+	    double oFraction = (oVals[0]*1.0d)/(tVals[1]*1.0d);
+	    //double fraction = ((tVals[0] + oVals[0])*1.0d) / (tVals[1]*1.0d);
+	    //double allProductFraction = Math.log( (tVals[0]*1.d)/(tVals[1]*1.0d) ) 
+	    //+ Math.log( (oVals[0]*1.d)/(oVals[1]*1.0d) );
+	    if(tp_i.equals(op_i) && tp_j.equals(op_j)){
+		tFraction = tFraction / 2.0d;
+		oFraction = oFraction / 2.0d;
+	    }
+	    return Math.log(tFraction*oFraction);
+	    //return Math.log(fraction);
+	    //return allProductFraction;
+	}else{
+	    log.appendln("STRANGE!!!!!!!!!! THEY SHOULD BE SAME");
+	    log.outToFile();
+	    System.exit(0);
+	}
+	return 0.0d;
+    }
     
     
     public ArrayList<AllelePath> getOrderedAllelePaths(){
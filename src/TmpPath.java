@@ -40,18 +40,18 @@ public class TmpPath{
 	return this.orderedNodeList;
     }
 
-    public Path toPath(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g){
-	Path p = new Path();
+    public Path toPath(SimpleDirectedWeightedGraph<Node, CustomWeightedEdge> g, RunContext ctx){
+	Path p = new Path(ctx);
 	Node cur = null;
 	Node pre = this.orderedNodeList.get(0);
 	for(int i=1;i<this.orderedNodeList.size(); i++){
 	    cur = this.orderedNodeList.get(i);
 	    if(pre == null || cur == null)
-		HLA.log.appendln("TmpPath.toPath():\t PRE"+ (pre != null ? pre.toString() : null)+ "\tCUR" + (cur != null ? cur.toString() : null ));
+		ctx.log.appendln("TmpPath.toPath():\t PRE"+ (pre != null ? pre.toString() : null)+ "\tCUR" + (cur != null ? cur.toString() : null ));
 	    CustomWeightedEdge e = g.getEdge(pre, cur);
 	    if(e == null){
-		HLA.log.appendln("TmpPath.toPath():\t no EDGE found between\tSIZE:["+this.orderedNodeList.size()+"]");
-		this.print();
+		ctx.log.appendln("TmpPath.toPath():\t no EDGE found between\tSIZE:["+this.orderedNodeList.size()+"]");
+		this.print(ctx.log);
 	    }else
 		p.appendEdge(e);
 	    pre = cur;
@@ -63,13 +63,13 @@ public class TmpPath{
 	this.orderedNodeList.add(n);
     }
 
-    public void print(){
+    public void print(LogHandler log){
 	if(this.orderedNodeList.size() > 0)
-	    HLA.log.append("NOT CONTIGUOUS --> ( " + this.orderedNodeList.get(0).toString());
+	    log.append("NOT CONTIGUOUS --> ( " + this.orderedNodeList.get(0).toString());
 	for(int i=1; i<this.orderedNodeList.size(); i++){
-	    HLA.log.append("," + this.orderedNodeList.get(i).toString());
+	    log.append("," + this.orderedNodeList.get(i).toString());
 	}
-	HLA.log.appendln(")");
+	log.appendln(")");
     }
     
     //returns number of orderedNodeList in the path
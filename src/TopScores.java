@@ -0,0 +1,59 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.io.Serializable;
+
+/*
+ * Highest phred scores added so far, in descending order.
+ * Only the top capacity scores are ever read (CustomWeightedEdge.computeStrandedGroupErrorProb),
+ * so the rest are not kept. Memory per instance does not depend on coverage.
+ */
+public class TopScores implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int capacity;
+    private byte[] scores; //descending. allocated on first add
+    private int size;
+
+    public TopScores(int capacity){
+	this.capacity = capacity;
+	this.scores = null;
+	this.size = 0;
+    }
+
+    public int size(){
+	return this.size;
+    }
+
+    //i-th highest score. 0-based
+    public byte get(int i){
+	return this.scores[i];
+    }
+
+    public void add(byte score){
+	if(this.scores == null)
+	    this.scores = new byte[this.capacity];
+	int i;
+	if(this.size < this.capacity){
+	    i = this.size;
+	    this.size++;
+	}else if(this.scores[this.size - 1] < score)
+	    i = this.size - 1;
+	else
+	    return;
+	//shift lower scores down, keeping equal scores in front
+	while(i > 0 && this.scores[i-1] < score){
+	    this.scores[i] = this.scores[i-1];
+	    i--;
+	}
+	this.scores[i] = score;
+    }
+
+    public void addAll(TopScores other){
+	for(int i=0; i<other.size; i++)
+	    this.add(other.scores[i]);
+    }
+}
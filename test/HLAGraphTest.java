@@ -0,0 +1,58 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/*
+ * Out-edge cache of nodes (HLAGraph.getEdge) after edges and vertices are removed.
+ */
+public class HLAGraphTest{
+
+    //two alleles differing at column 6 (C/T)
+    private static HLAGraph graph(){
+	LogHandler log = new LogHandler("test");
+	ArrayList<Sequence> seqs = new ArrayList<Sequence>();
+	seqs.add(new Sequence("A*01:01", "ACG|TAC|GTA", log));
+	seqs.add(new Sequence("A*02:01", "ACG|TAT|GTA", log));
+	return new HLAGraph(seqs, "A", new RunContext("test"));
+    }
+
+    private static Node node(HLAGraph hg, int colIndex, char base){
+	for(Node n : hg.getGraph().vertexSet()){
+	    if(n.getColIndex() == colIndex && n.getBase() == base)
+		return n;
+	}
+	return null;
+    }
+
+    @Test
+    public void removedEdgeIsNotReturned(){
+	HLAGraph hg = graph();
+	Node source = node(hg, 5, 'A');
+	Node target = node(hg, 6, 'C');
+	CustomWeightedEdge e = hg.getEdge(source, target); //cached on source
+	assertNotNull(e);
+	hg.removeEdge(e);
+	assertNull(hg.getEdge(source, target));
+	assertNotNull(hg.getEdge(source, node(hg, 6, 'T')));
+    }
+
+    @Test
+    public void edgeToRemovedVertexIsNotReturned(){
+	HLAGraph hg = graph();
+	Node source = node(hg, 5, 'A');
+	Node target = node(hg, 6, 'T');
+	assertNotNull(hg.getEdge(source, target));
+	hg.removeVertex(target);
+	assertNull(hg.getEdge(source, target));
+	assertEquals(1, hg.getGraph().outDegreeOf(source));
+	assertNotNull(hg.getEdge(source, node(hg, 6, 'C')));
+    }
+}
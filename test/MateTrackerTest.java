@@ -0,0 +1,74 @@
+/*
+Part of Kourami HLA typer/assembler
+(c) 2017 by  Heewook Lee, Carl Kingsford, and Carnegie Mellon University.
+See LICENSE for licensing.
+*/
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Window mode of MateTracker on coordinate-sorted input.
+ */
+public class MateTrackerTest{
+
+    private static SAMFileHeader header(){
+	SAMFileHeader header = new SAMFileHeader();
+	SAMSequenceDictionary dict = new SAMSequenceDictionary();
+	dict.addSequence(new SAMSequenceRecord("A*01:01:01:01", 10000));
+	header.setSequenceDictionary(dict);
+	return header;
+    }
+
+    private static SAMRecord record(SAMFileHeader header, String name, int pos, int matePos){
+	SAMRecord sr = new SAMRecord(header);
+	sr.setReadName(name);
+	sr.setReferenceIndex(0);
+	sr.setAlignmentStart(pos);
+	sr.setReadPairedFlag(true);
+	sr.setMateReferenceIndex(0);
+	sr.setMateAlignmentStart(matePos);
+	return sr;
+    }
+
+    //first mates of 5 pairs in sorted order, window of 3: the 2 whose pairs are furthest ahead are dropped
+    @Test
+    public void fullWindowKeepsNearestMates(){
+	SAMFileHeader header = header();
+	int[] pos     = {10, 11, 12, 13, 14};
+	int[] matePos = {500, 40, 300, 20, 60};
+	MateTracker mates = new MateTracker(3);
+	for(int i=0; i<pos.length; i++){
+	    SAMRecord sr = record(header, "r" + i, pos[i], matePos[i]);
+	    assertEquals(0, mates.take(sr));
+	    mates.put(sr, i+1);
+	}
+	assertEquals(3, mates.size());
+	assertEquals(2, mates.getNumDropped());
+
+	//second mates in sorted order
+	int[] order = {3, 1, 4, 2, 0};
+	int[] expected = {4, 2, 5, 0, 0};
+	for(int k=0; k<order.length; k++){
+	    int i = order[k];
+	    assertEquals("mate of r" + i, expected[k], mates.take(record(header, "r" + i, matePos[i], pos[i])));
+	}
+	assertEquals(0, mates.size());
+    }
+
+    //a mate whose pair position has been passed is dropped
+    @Test
+    public void passedMatesAreDropped(){
+	SAMFileHeader header = header();
+	MateTracker mates = new MateTracker(10);
+	mates.put(record(header, "a", 10, 20), 1);
+	mates.put(record(header, "b", 11, 200), 2);
+	assertEquals(0, mates.take(record(header, "c", 100, 100)));
+	assertEquals(1, mates.getNumDropped());
+	assertEquals(2, mates.take(record(header, "b", 200, 11)));
+    }
+}